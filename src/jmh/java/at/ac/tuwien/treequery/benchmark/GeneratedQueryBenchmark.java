@@ -0,0 +1,108 @@
+package at.ac.tuwien.treequery.benchmark;
+
+import at.ac.tuwien.treequery.execution.PreparedSubject;
+import at.ac.tuwien.treequery.query.QueryNode;
+import at.ac.tuwien.treequery.subject.SubjectNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This benchmark matches generated queries against generated subjects of different shapes and sizes, like {@link GeneratorRunner}.
+ * <p>
+ * The query starts in the middle of the subject and consists of a representative node of each subtree,
+ * whose children use the given container mode. Generated queries always match their subject.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xss64m")
+public class GeneratedQueryBenchmark {
+
+    /**
+     * The sizes of the query tried in turn, until the selection contains enough nodes
+     */
+    private static final int[] QUERY_SIZES = {10, 5, 1};
+
+    @Param({"rectangle", "triangle", "exponential"})
+    public String shape;
+
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    @Param({"EXACT", "ORDERED", "UNORDERED", "ANY"})
+    public String mode;
+
+    private SubjectNode subject;
+    private PreparedSubject prepared;
+    private QueryNode query;
+
+    @Setup
+    public void setup() {
+        subject = generateSubject(shape, size);
+
+        QueryGenerator generator = GeneratorRunner.createQueryGenerator();
+        SubjectNodeWrapper wrapper = new SubjectNodeWrapper(subject);
+        int level = (wrapper.height + 1) / 2;
+        SubjectNodeSelection selected = generator.generateSelection(wrapper.getRandom(level, level, 0.75));
+        for (int querySize : QUERY_SIZES) {
+            query = generator.buildAllSubtrees(selected, QueryGenerator.Mode.valueOf(mode), false, querySize);
+            if (query != null) {
+                break;
+            }
+        }
+        if (query == null || !query.hasMatches(subject)) {
+            throw new IllegalStateException("No positive query generated");
+        }
+
+        prepared = new PreparedSubject(subject);
+    }
+
+    /**
+     * Generates a subject with the first shape setting of {@link GeneratorRunner}
+     *
+     * @param shape The name of the shape
+     * @param size The approximate number of nodes
+     * @return The root node of the generated subject
+     */
+    static SubjectNode generateSubject(String shape, int size) {
+        SubjectGenerator generator = GeneratorRunner.createSubjectGenerator();
+        switch (shape) {
+            case "rectangle":
+                return generator.rectangle(size, 0.5);
+            case "triangle":
+                return generator.triangle(size, 2);
+            case "exponential":
+                return generator.exponential(size, 3);
+            default:
+                throw new IllegalArgumentException("Unknown shape " + shape);
+        }
+    }
+
+    @Benchmark
+    public boolean hasMatches() {
+        return query.hasMatches(subject);
+    }
+
+    @Benchmark
+    public boolean hasMatchesPrepared() {
+        return query.hasMatches(prepared);
+    }
+
+    @Benchmark
+    public long findReferences() {
+        return query.findReferences(subject).count();
+    }
+}
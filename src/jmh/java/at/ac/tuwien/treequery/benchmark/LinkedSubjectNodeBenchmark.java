@@ -0,0 +1,66 @@
+package at.ac.tuwien.treequery.benchmark;
+
+import at.ac.tuwien.treequery.matching.LinkedSubjectNode;
+import at.ac.tuwien.treequery.subject.SubjectNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This benchmark measures linking a generated subject and traversing the linked nodes
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xss64m")
+public class LinkedSubjectNodeBenchmark {
+
+    @Param({"rectangle", "triangle", "exponential"})
+    public String shape;
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    private SubjectNode subject;
+    private LinkedSubjectNode root;
+    private LinkedSubjectNode last;
+
+    @Setup
+    public void setup() {
+        subject = GeneratedQueryBenchmark.generateSubject(shape, size);
+        root = new LinkedSubjectNode(subject);
+        last = root.getFirstChild().within(root).reduce((a, b) -> b).orElseThrow();
+    }
+
+    @Benchmark
+    public LinkedSubjectNode link() {
+        return new LinkedSubjectNode(subject);
+    }
+
+    @Benchmark
+    public long within() {
+        return root.getFirstChild().within(root).count();
+    }
+
+    @Benchmark
+    public long neighbors() {
+        return root.getFirstChild().neighbors().count();
+    }
+
+    @Benchmark
+    public int compare() {
+        return root.getFirstChild().compareTo(last);
+    }
+}
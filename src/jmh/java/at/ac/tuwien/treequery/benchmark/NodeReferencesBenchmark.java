@@ -0,0 +1,82 @@
+package at.ac.tuwien.treequery.benchmark;
+
+import at.ac.tuwien.treequery.matching.NodeReferences;
+import at.ac.tuwien.treequery.subject.BaseSubjectNode;
+import at.ac.tuwien.treequery.subject.SubjectNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This benchmark measures creating, comparing and deduplicating the named references collected while matching
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class NodeReferencesBenchmark {
+
+    /**
+     * The number of reference collections deduplicated at once, which differ in at most as many nodes as there are references
+     */
+    private static final int DISTINCT_COUNT = 100;
+
+    @Param({"1", "4", "16"})
+    public int references;
+
+    private String[] names;
+    private SubjectNode[] nodes;
+    private NodeReferences first;
+    private NodeReferences second;
+    private List<NodeReferences> collections;
+
+    @Setup
+    public void setup() {
+        names = new String[references];
+        nodes = new SubjectNode[references];
+        for (int i = 0; i < references; i++) {
+            names[i] = "ref" + i;
+            nodes[i] = new BaseSubjectNode("node", null, null);
+        }
+        first = build();
+        second = build();
+
+        collections = new ArrayList<>();
+        for (int i = 0; i < DISTINCT_COUNT; i++) {
+            collections.add(first.withReference(names[0], nodes[i / 2 % references]));
+        }
+    }
+
+    @Benchmark
+    public NodeReferences build() {
+        NodeReferences result = NodeReferences.EMPTY;
+        for (int i = 0; i < references; i++) {
+            result = result.withReference(names[i], nodes[i]);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public boolean compare() {
+        return first.hashCode() == second.hashCode() && first.equals(second);
+    }
+
+    @Benchmark
+    public long distinct() {
+        return collections.stream().distinct().count();
+    }
+}
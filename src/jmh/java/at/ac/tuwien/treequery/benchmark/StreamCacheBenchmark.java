@@ -0,0 +1,59 @@
+package at.ac.tuwien.treequery.benchmark;
+
+import at.ac.tuwien.treequery.matching.StreamCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * This benchmark measures loading and replaying a stream through a {@link StreamCache}, compared to collecting it into a list
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class StreamCacheBenchmark {
+
+    @Param({"1", "10", "1000"})
+    public int count;
+
+    @Benchmark
+    public long replay() {
+        StreamCache<Integer> cache = new StreamCache<>(IntStream.range(0, count).boxed());
+        return cache.get().count() + cache.get().count();
+    }
+
+    @Benchmark
+    public long alternate() {
+        // Two copies consumed alternately, like shared children results of different parts of a query
+        StreamCache<Integer> cache = new StreamCache<>(IntStream.range(0, count).boxed());
+        Iterator<Integer> first = cache.get().iterator();
+        Iterator<Integer> second = cache.get().iterator();
+        long sum = 0;
+        while (first.hasNext()) {
+            sum += first.next() + second.next();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long collect() {
+        List<Integer> list = IntStream.range(0, count).boxed().collect(Collectors.toList());
+        return list.stream().count() + list.stream().count();
+    }
+}
@@ -7,9 +7,12 @@ import at.ac.tuwien.treequery.query.ExactQueryNode;
 import at.ac.tuwien.treequery.query.QueryNode;
 import at.ac.tuwien.treequery.query.SingleQueryNode;
 
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 
 /**
  * This is a utility class for building a {@link QueryNode} instance.
@@ -49,6 +52,9 @@ public class QueryNodeBuilder {
         private QueryNode children;
         private boolean direct;
         private String reference;
+        private int minDepth = 1;
+        private int maxDepth = SingleQueryNode.UNBOUNDED;
+        private final Set<String> barriers = new LinkedHashSet<>();
 
         private SingleQueryNodeBuilder(String type) {
             this.type = type;
@@ -93,6 +99,46 @@ public class QueryNodeBuilder {
             return this;
         }
 
+        /**
+         * Sets the minimum depth of matched nodes, relative to the query parent's match.
+         * Such a query node will not match nodes closer to the query parent's match, e.g. 2 skips its immediate children.
+         *
+         * @param minDepth The minimum depth, at least 1
+         * @return This builder instance
+         */
+        @PublicApi
+        public SingleQueryNodeBuilder minDepth(int minDepth) {
+            this.minDepth = minDepth;
+            return this;
+        }
+
+        /**
+         * Sets the maximum depth of matched nodes, relative to the query parent's match.
+         * Such a query node will not search below the given depth, e.g. 1 only matches immediate children like {@link #direct}.
+         *
+         * @param maxDepth The maximum depth, at least the minimum depth
+         * @return This builder instance
+         */
+        @PublicApi
+        public SingleQueryNodeBuilder maxDepth(int maxDepth) {
+            this.maxDepth = maxDepth;
+            return this;
+        }
+
+        /**
+         * Adds barrier types for searching matched nodes.
+         * Such a query node will not search within the subtrees of nodes with one of these types, e.g. nested classes or lambdas.
+         * The barrier nodes themselves can still be matched.
+         *
+         * @param types The types of barrier nodes
+         * @return This builder instance
+         */
+        @PublicApi
+        public SingleQueryNodeBuilder barrier(String... types) {
+            barriers.addAll(Arrays.asList(types));
+            return this;
+        }
+
         /**
          * Associates a named reference with this query node
          *
@@ -114,7 +160,7 @@ public class QueryNodeBuilder {
         @PublicApi
         public QueryNode build() {
             QueryNode childrenContainer = children == null ? new AllQueryNode(Collections.emptyList(), true) : children;
-            return new SingleQueryNode(type, properties.build(), childrenContainer, direct, reference);
+            return new SingleQueryNode(type, properties.build(), childrenContainer, direct, reference, minDepth, maxDepth, barriers);
         }
     }
 
@@ -0,0 +1,130 @@
+package at.ac.tuwien.treequery.execution;
+
+import at.ac.tuwien.treequery.annotation.PublicApi;
+import at.ac.tuwien.treequery.matching.LinkedSubjectNode;
+import at.ac.tuwien.treequery.matching.MatchingContext;
+import at.ac.tuwien.treequery.matching.MatchingState;
+import at.ac.tuwien.treequery.query.QueryNode;
+import at.ac.tuwien.treequery.query.SingleQueryNode;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+/**
+ * This strategy starts from the matches of a selective single query node, the anchor, which are looked up in the index.
+ * <p>
+ * The anchor must be matched by every match of the query, at a fixed number of single query nodes below the query root.
+ * Instances are created by the {@link QueryPlanner} for a specific query and cannot be used for any other query.
+ * Each match of the query root must therefore be an ancestor of an anchor node at least that many levels up.
+ * Walking up from the anchor nodes yields these candidates, which are then verified top-down in pre-order,
+ * so the matches are the same and in the same order as when testing every subject node.
+ *
+ * @see QueryPlanner
+ */
+@PublicApi
+public class AnchorExecutor implements QueryExecutor {
+
+    final SingleQueryNode root;
+    final SingleQueryNode anchor;
+    final String key;
+    final int distance;
+
+    /**
+     * Creates a new strategy for a query, which is only done by the {@link QueryPlanner} finding a suitable anchor
+     *
+     * @param root The root of the query tree, which is the only query this strategy can be used for
+     * @param anchor The single query node to look up, which is required for every match of the query
+     * @param key The property key to look up, or null to look up the type of the anchor
+     * @param distance The number of single query nodes from the query root down to the anchor, i.e. 0 if the root is the anchor
+     */
+    AnchorExecutor(SingleQueryNode root, SingleQueryNode anchor, String key, int distance) {
+        this.root = root;
+        this.anchor = anchor;
+        this.key = key;
+        this.distance = distance;
+    }
+
+    /**
+     * Finds the matches of the query this strategy was planned for
+     *
+     * @throws IllegalArgumentException Thrown if the query is not the query this strategy was planned for
+     */
+    @Override
+    public Stream<MatchingState> findMatches(QueryNode query, PreparedSubject subject, MatchingContext context) {
+        if (query != root) {
+            // The anchor and its distance are only valid for the query they were found in
+            throw new IllegalArgumentException("Anchor strategy was planned for a different query");
+        }
+
+        // Collect the candidates for the root of each subject tree in pre-order
+        Map<LinkedSubjectNode, Set<LinkedSubjectNode>> candidates = new IdentityHashMap<>();
+        for (LinkedSubjectNode element : lookup(subject)) {
+            Set<LinkedSubjectNode> found = null;
+            LinkedSubjectNode ancestor = element;
+            for (int i = 0; ancestor.getParent() != null; i++, ancestor = ancestor.getParent()) {
+                if (i < distance) {
+                    continue;
+                }
+                if (found == null) {
+                    found = candidates.computeIfAbsent(getRoot(ancestor), r -> new TreeSet<>());
+                }
+                if (!found.add(ancestor)) {
+                    // All further ancestors were already added when walking up from another anchor node
+                    break;
+                }
+            }
+        }
+
+        List<MatchingState> starts = new ArrayList<>();
+        subject.getStarts(context).forEach(starts::add);
+        return starts.stream().flatMap(start -> {
+            Set<LinkedSubjectNode> found = start.getElement() != null ? candidates.get(getRoot(start.getElement())) : null;
+            if (found == null) {
+                return Stream.empty();
+            }
+            Stream<LinkedSubjectNode> elements = found.stream();
+            if (root.isDirect()) {
+                elements = elements.filter(e -> e.getParent().getParent() == null);
+            }
+            return elements.takeWhile(e -> !context.isCancelled()).flatMap(e -> root.matchCandidate(start, e));
+        });
+    }
+
+    /**
+     * Looks up the nodes which might match the anchor
+     *
+     * @param subject The prepared subject tree
+     * @return A list of nodes in pre-order
+     */
+    List<LinkedSubjectNode> lookup(PreparedSubject subject) {
+        return key != null ? subject.getNodes(key, anchor.getProperties().get(key)) : subject.getNodes(anchor.getType());
+    }
+
+    /**
+     * Counts the nodes which might match the anchor, without looking up the nodes of a type
+     *
+     * @param subject The prepared subject tree
+     * @return The size of the list returned by {@link #lookup}
+     */
+    int count(PreparedSubject subject) {
+        return key != null ? lookup(subject).size() : subject.getNodeCount(anchor.getType());
+    }
+
+    private static LinkedSubjectNode getRoot(LinkedSubjectNode element) {
+        LinkedSubjectNode root = element;
+        while (root.getParent() != null) {
+            root = root.getParent();
+        }
+        return root;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Anchor[%s, %s, distance=%d]", anchor.getType(), key, distance);
+    }
+}
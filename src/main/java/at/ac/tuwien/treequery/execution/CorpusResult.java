@@ -0,0 +1,93 @@
+package at.ac.tuwien.treequery.execution;
+
+import at.ac.tuwien.treequery.annotation.PublicApi;
+import at.ac.tuwien.treequery.subject.SubjectNode;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class contains the result of running a query against a single subject file of a corpus
+ *
+ * @see CorpusRunner
+ */
+@PublicApi
+public class CorpusResult {
+
+    private final Path file;
+    private final List<Map<String, SubjectNode>> references;
+    private final int nodeCount;
+    private final IOException error;
+
+    CorpusResult(Path file, List<Map<String, SubjectNode>> references, int nodeCount) {
+        this.file = file;
+        this.references = references;
+        this.nodeCount = nodeCount;
+        this.error = null;
+    }
+
+    CorpusResult(Path file, IOException error) {
+        this.file = file;
+        this.references = Collections.emptyList();
+        this.nodeCount = 0;
+        this.error = error;
+    }
+
+    /**
+     * Get the subject file this result belongs to
+     *
+     * @return The path of the subject file
+     */
+    @PublicApi
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Get the named references of all matches in the subject file
+     *
+     * @return A (possibly empty) list of named references in the order returned by {@code QueryNode.findReferences}
+     */
+    @PublicApi
+    public List<Map<String, SubjectNode>> getReferences() {
+        return references;
+    }
+
+    /**
+     * Check whether the query matched the subject file
+     *
+     * @return True iff at least one match exists
+     */
+    @PublicApi
+    public boolean hasMatches() {
+        return !references.isEmpty();
+    }
+
+    /**
+     * Get the number of subject nodes loaded from the file
+     *
+     * @return The node count, or zero if the file could not be loaded
+     */
+    @PublicApi
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Get the error that occurred while loading the subject file
+     *
+     * @return The error, or null if the file was processed successfully
+     */
+    @PublicApi
+    public IOException getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Result[%s, matches=%d, nodes=%d, error=%s]", file, references.size(), nodeCount, error);
+    }
+}
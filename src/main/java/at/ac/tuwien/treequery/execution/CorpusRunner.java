@@ -0,0 +1,206 @@
+package at.ac.tuwien.treequery.execution;
+
+import at.ac.tuwien.treequery.annotation.PublicApi;
+import at.ac.tuwien.treequery.query.QueryNode;
+import at.ac.tuwien.treequery.subject.SubjectNode;
+import at.ac.tuwien.treequery.xml.SubjectXmlConverter;
+import at.ac.tuwien.treequery.xml.XmlConverter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * This class runs a query against every subject file in a directory tree using a bounded thread pool.
+ * <p>
+ * Files are parsed and matched in parallel, but at most {@code maxPending} files are loaded or waiting to be consumed at any time.
+ * The directory is only scanned further once a slot becomes available, so memory usage does not depend on the corpus size.
+ * Results are passed to the consumer on the calling thread in the order of completion.
+ */
+@PublicApi
+public class CorpusRunner {
+
+    private final QueryNode query;
+    private final XmlConverter<SubjectNode> converter;
+    private final int threads;
+    private final int maxPending;
+
+    private Predicate<Path> fileFilter = path -> path.getFileName().toString().endsWith(".xml");
+
+    /**
+     * Creates a new runner using one thread per available processor
+     *
+     * @param query The query to run against every subject file
+     */
+    @PublicApi
+    public CorpusRunner(QueryNode query) {
+        this(query, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a new runner allowing four pending files per thread
+     *
+     * @param query The query to run against every subject file
+     * @param threads The number of worker threads
+     */
+    @PublicApi
+    public CorpusRunner(QueryNode query, int threads) {
+        this(query, threads, 4 * threads);
+    }
+
+    /**
+     * Creates a new runner
+     *
+     * @param query The query to run against every subject file
+     * @param threads The number of worker threads
+     * @param maxPending The maximum number of files that are processed or waiting to be consumed at the same time
+     */
+    @PublicApi
+    public CorpusRunner(QueryNode query, int threads, int maxPending) {
+        this(query, new SubjectXmlConverter(), threads, maxPending);
+    }
+
+    /**
+     * Creates a new runner with a custom subject converter
+     *
+     * @param query The query to run against every subject file
+     * @param converter The converter used for parsing the subject files, which must be safe to use from multiple threads
+     * @param threads The number of worker threads
+     * @param maxPending The maximum number of files that are processed or waiting to be consumed at the same time
+     */
+    @PublicApi
+    public CorpusRunner(QueryNode query, XmlConverter<SubjectNode> converter, int threads, int maxPending) {
+        if (threads < 1 || maxPending < 1) {
+            throw new IllegalArgumentException("Thread count and pending file limit must be positive");
+        }
+        this.query = query;
+        this.converter = converter;
+        this.threads = threads;
+        this.maxPending = maxPending;
+    }
+
+    /**
+     * Sets the filter determining which regular files in the directory tree are loaded as subjects.
+     * By default, all files with the extension {@code .xml} are loaded.
+     *
+     * @param fileFilter The filter for subject files
+     * @return This runner instance
+     */
+    @PublicApi
+    public CorpusRunner fileFilter(Predicate<Path> fileFilter) {
+        this.fileFilter = fileFilter;
+        return this;
+    }
+
+    /**
+     * Runs the query against all subject files in the given directory tree
+     *
+     * @param directory The root directory of the corpus
+     * @param consumer The consumer receiving the result of each file, which is always called on the calling thread
+     * @return The throughput figures of the run
+     * @throws IOException Thrown if the directory tree could not be scanned
+     */
+    @PublicApi
+    public CorpusStatistics run(Path directory, Consumer<CorpusResult> consumer) throws IOException {
+        long start = System.nanoTime();
+        Totals totals = new Totals();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (Stream<Path> files = Files.walk(directory)) {
+            CompletionService<CorpusResult> completion = new ExecutorCompletionService<>(executor);
+            Iterator<Path> iterator = files.filter(Files::isRegularFile).filter(fileFilter).iterator();
+
+            int pending = 0;
+            while (iterator.hasNext()) {
+                if (pending >= maxPending) {
+                    // All slots are taken: Wait for a result before scanning any further
+                    totals.accept(take(completion), consumer);
+                    pending--;
+                }
+
+                Path file = iterator.next();
+                completion.submit(() -> process(file));
+                pending++;
+            }
+
+            // Directory fully scanned, collect the remaining results
+            for (; pending > 0; pending--) {
+                totals.accept(take(completion), consumer);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return new CorpusStatistics(totals.files, totals.nodes, totals.matches, totals.errors, System.nanoTime() - start);
+    }
+
+    private CorpusResult take(CompletionService<CorpusResult> completion) throws IOException {
+        try {
+            return completion.take().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for corpus results", e);
+        } catch (ExecutionException e) {
+            // Loading errors are part of the result, so this is an unexpected error in the matching itself
+            throw new IllegalStateException("Matching failed", e.getCause());
+        }
+    }
+
+    private CorpusResult process(Path file) {
+        SubjectNode subject;
+        try {
+            subject = converter.parseFile(file.toString());
+        } catch (IOException e) {
+            return new CorpusResult(file, e);
+        }
+
+        List<Map<String, SubjectNode>> references = query.findReferences(subject).collect(Collectors.toList());
+        return new CorpusResult(file, references, countNodes(subject));
+    }
+
+    private static int countNodes(SubjectNode root) {
+        // Count iteratively, so deep subjects do not need any additional stack space
+        int count = 0;
+        Deque<SubjectNode> open = new ArrayDeque<>();
+        open.push(root);
+        while (!open.isEmpty()) {
+            SubjectNode node = open.pop();
+            count++;
+            node.getChildren().forEach(open::push);
+        }
+        return count;
+    }
+
+    /**
+     * Aggregates the results, which is only done on the calling thread
+     */
+    private static class Totals {
+
+        private long files;
+        private long nodes;
+        private long matches;
+        private long errors;
+
+        void accept(CorpusResult result, Consumer<CorpusResult> consumer) {
+            files++;
+            nodes += result.getNodeCount();
+            matches += result.hasMatches() ? 1 : 0;
+            errors += result.getError() != null ? 1 : 0;
+            consumer.accept(result);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package at.ac.tuwien.treequery.execution;
+
+import at.ac.tuwien.treequery.annotation.PublicApi;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class contains the throughput figures of a corpus run
+ *
+ * @see CorpusRunner
+ */
+@PublicApi
+public class CorpusStatistics {
+
+    private final long fileCount;
+    private final long nodeCount;
+    private final long matchCount;
+    private final long errorCount;
+    private final long elapsedNanos;
+
+    CorpusStatistics(long fileCount, long nodeCount, long matchCount, long errorCount, long elapsedNanos) {
+        this.fileCount = fileCount;
+        this.nodeCount = nodeCount;
+        this.matchCount = matchCount;
+        this.errorCount = errorCount;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Get the number of processed files, including files that could not be loaded
+     *
+     * @return The total file count
+     */
+    @PublicApi
+    public long getFileCount() {
+        return fileCount;
+    }
+
+    /**
+     * Get the number of subject nodes in all successfully loaded files
+     *
+     * @return The total node count
+     */
+    @PublicApi
+    public long getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Get the number of files with at least one match
+     *
+     * @return The number of matching files
+     */
+    @PublicApi
+    public long getMatchCount() {
+        return matchCount;
+    }
+
+    /**
+     * Get the number of files that could not be loaded
+     *
+     * @return The number of failed files
+     */
+    @PublicApi
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    /**
+     * Get the wall-clock time of the whole run
+     *
+     * @return The elapsed time in nanoseconds
+     */
+    @PublicApi
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Get the file throughput of the run
+     *
+     * @return The number of processed files per second
+     */
+    @PublicApi
+    public double getFilesPerSecond() {
+        return perSecond(fileCount);
+    }
+
+    /**
+     * Get the node throughput of the run
+     *
+     * @return The number of processed subject nodes per second
+     */
+    @PublicApi
+    public double getNodesPerSecond() {
+        return perSecond(nodeCount);
+    }
+
+    private double perSecond(long count) {
+        return elapsedNanos > 0 ? count * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ENGLISH, "Statistics[files=%d, nodes=%d, matches=%d, errors=%d, %.1f files/s, %.1f nodes/s]",
+                fileCount, nodeCount, matchCount, errorCount, getFilesPerSecond(), getNodesPerSecond());
+    }
+}
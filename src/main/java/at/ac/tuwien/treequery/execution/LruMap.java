@@ -0,0 +1,119 @@
+package at.ac.tuwien.treequery.execution;
+
+import at.ac.tuwien.treequery.annotation.InternalApi;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * This class implements a map which is bounded by the number of entries and by the total weight of their values.
+ * When either bound is exceeded, the least recently used entries are evicted.
+ * <p>
+ * Instances are not thread-safe, the caches using them synchronize all accesses.
+ *
+ * @param <K> The type of the keys
+ * @param <V> The type of the values
+ */
+@InternalApi
+class LruMap<K, V> {
+
+    private final int maxEntries;
+    private final long maxWeight;
+    private final ToLongFunction<? super V> weigher;
+    private final LinkedHashMap<K, V> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long weight;
+
+    /**
+     * Creates a new empty map
+     *
+     * @param maxEntries The maximum number of entries
+     * @param maxWeight The maximum total weight of all values
+     * @param weigher Computes the weight of a value, which must not change while it is stored
+     */
+    LruMap(int maxEntries, long maxWeight, ToLongFunction<? super V> weigher) {
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    /**
+     * Get the value of a key and mark the entry as most recently used
+     *
+     * @param key The key to look up
+     * @return The value, or null if there is no entry
+     */
+    V get(K key) {
+        return entries.get(key);
+    }
+
+    /**
+     * Adds or replaces an entry and evicts the least recently used entries until both bounds are met again
+     *
+     * @param key The key of the entry
+     * @param value The value of the entry
+     * @return The number of evicted entries
+     */
+    int put(K key, V value) {
+        V previous = entries.put(key, value);
+        if (previous != null) {
+            weight -= weigher.applyAsLong(previous);
+        }
+        weight += weigher.applyAsLong(value);
+
+        // The iteration order of an access-ordered map starts with the least recently used entry
+        int evicted = 0;
+        Iterator<V> iterator = entries.values().iterator();
+        while (entries.size() > maxEntries || weight > maxWeight) {
+            weight -= weigher.applyAsLong(iterator.next());
+            iterator.remove();
+            evicted++;
+        }
+        return evicted;
+    }
+
+    /**
+     * Removes all entries whose key matches a predicate
+     *
+     * @param predicate The condition for removing an entry
+     */
+    void removeIf(Predicate<? super K> predicate) {
+        Iterator<Map.Entry<K, V>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<K, V> entry = iterator.next();
+            if (predicate.test(entry.getKey())) {
+                weight -= weigher.applyAsLong(entry.getValue());
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes all entries
+     */
+    void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    /**
+     * Get the number of entries
+     *
+     * @return The current entry count
+     */
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Get the total weight of all values
+     *
+     * @return The current weight
+     */
+    long getWeight() {
+        return weight;
+    }
+}
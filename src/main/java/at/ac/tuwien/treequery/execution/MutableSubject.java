@@ -0,0 +1,487 @@
+package at.ac.tuwien.treequery.execution;
+
+import at.ac.tuwien.treequery.annotation.InternalApi;
+import at.ac.tuwien.treequery.annotation.PublicApi;
+import at.ac.tuwien.treequery.subject.BaseSubjectNode;
+import at.ac.tuwien.treequery.subject.SubjectNode;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * This class represents a subject tree which can be edited, and keeps its index up to date with each edit.
+ * <p>
+ * Each node has a label which increases in pre-order, so the descendants of a node are the labels between its own label
+ * and the label of the next node after its subtree. Labels are spaced by gaps, so inserted nodes get labels within the gap
+ * at their position. Only if a gap is exhausted, the smallest enclosing subtree with enough room is labeled again.
+ * The nodes below the root are indexed by type in label order, and each node keeps a summary of its subtree,
+ * i.e. the number of nodes per type. An edit therefore updates the index for the nodes of the edited subtree
+ * and the summaries of its ancestors only.
+ * <p>
+ * The nodes are {@link BaseSubjectNode}s, so queries match them like the original subject nodes, which are copied on insertion.
+ * Since the root node is a container like the root of every subject, it cannot be removed or replaced.
+ * Instances are not thread-safe.
+ */
+@PublicApi
+public class MutableSubject {
+
+    /**
+     * The label distance between consecutive nodes when labeling a subtree with enough room
+     */
+    private static final long GAP = 1L << 32;
+
+    /**
+     * The label after the last node
+     */
+    private static final long END = Long.MAX_VALUE;
+
+    private final Node root;
+    private final Map<String, NavigableMap<Long, Node>> byType = new HashMap<>();
+    private final List<EditListener> listeners = new ArrayList<>();
+
+    private long version;
+    private long relabelCount;
+    private long relabeledNodeCount;
+
+    /**
+     * Creates a new mutable subject by copying a subject tree
+     *
+     * @param node The root node of the subject tree
+     */
+    @PublicApi
+    public MutableSubject(SubjectNode node) {
+        List<Node> nodes = new ArrayList<>();
+        this.root = copy(node, null, nodes);
+        long label = 0;
+        for (Node copy : nodes) {
+            copy.label = label;
+            label += GAP;
+        }
+        nodes.subList(1, nodes.size()).forEach(this::index);
+    }
+
+    /**
+     * Get the root node, which can be matched like any subject node
+     *
+     * @return The root node of the current tree
+     */
+    @PublicApi
+    public Node getRoot() {
+        return root;
+    }
+
+    /**
+     * Get a counter which increases with each edit, so it can be used as version token, e.g. for {@link ResultCache}
+     *
+     * @return The current version
+     */
+    @PublicApi
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Get the nodes of a type below the root
+     *
+     * @param type The node type
+     * @return The nodes in pre-order
+     */
+    @PublicApi
+    public List<Node> getNodes(String type) {
+        NavigableMap<Long, Node> nodes = byType.get(type);
+        return nodes != null ? new ArrayList<>(nodes.values()) : Collections.emptyList();
+    }
+
+    /**
+     * Get the nodes of a type within a subtree
+     *
+     * @param type The node type
+     * @param ancestor The root node of the subtree, which is not included
+     * @return The descendant nodes in pre-order
+     */
+    @PublicApi
+    public List<Node> getDescendants(String type, Node ancestor) {
+        checkAttached(ancestor);
+        NavigableMap<Long, Node> nodes = byType.get(type);
+        // The summary of the ancestor tells whether the subtree contains any node of the type besides the ancestor itself
+        if (nodes == null || ancestor.count(type) == (Objects.equals(type, ancestor.getType()) ? 1 : 0)) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<>(nodes.subMap(ancestor.label, false, nextLabel(ancestor), false).values());
+    }
+
+    /**
+     * Check whether a node is a proper ancestor of another node
+     *
+     * @param ancestor The possible ancestor
+     * @param node The possible descendant
+     * @return True iff the descendant is within the subtree of the ancestor and not the ancestor itself
+     */
+    @PublicApi
+    public boolean isAncestor(Node ancestor, Node node) {
+        checkAttached(ancestor);
+        checkAttached(node);
+        return ancestor.label < node.label && node.label < nextLabel(ancestor);
+    }
+
+    /**
+     * Inserts a copy of a subject tree
+     *
+     * @param parent The parent of the inserted subtree
+     * @param index The position among the children of the parent
+     * @param node The root node of the subject tree to copy
+     * @return The root node of the inserted subtree
+     */
+    @PublicApi
+    public Node insert(Node parent, int index, SubjectNode node) {
+        checkAttached(parent);
+        if (index < 0 || index > parent.children.size()) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of range for " + parent.children.size() + " children");
+        }
+
+        Node copy = attach(parent, index, node);
+        version++;
+        notifyListeners(parent, null, copy);
+        return copy;
+    }
+
+    /**
+     * Removes a subtree
+     *
+     * @param node The root node of the subtree, which must not be the root of this subject
+     */
+    @PublicApi
+    public void remove(Node node) {
+        checkAttached(node);
+        if (node == root) {
+            throw new IllegalArgumentException("The root node cannot be removed");
+        }
+
+        detach(node);
+        version++;
+        notifyListeners(node.parent, node, null);
+    }
+
+    /**
+     * Replaces a subtree by a copy of a subject tree
+     *
+     * @param node The root node of the replaced subtree, which must not be the root of this subject
+     * @param replacement The root node of the subject tree to copy
+     * @return The root node of the inserted subtree
+     */
+    @PublicApi
+    public Node replace(Node node, SubjectNode replacement) {
+        checkAttached(node);
+        if (node == root) {
+            throw new IllegalArgumentException("The root node cannot be replaced");
+        }
+
+        int index = node.parent.children.indexOf(node);
+        detach(node);
+        Node copy = attach(node.parent, index, replacement);
+        version++;
+        notifyListeners(node.parent, node, copy);
+        return copy;
+    }
+
+    /**
+     * Registers a listener, which is notified after each edit
+     *
+     * @param listener The listener to add
+     */
+    @PublicApi
+    public void addListener(EditListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Unregisters a listener
+     *
+     * @param listener The listener to remove
+     */
+    @PublicApi
+    public void removeListener(EditListener listener) {
+        listeners.remove(listener);
+    }
+
+    private Node attach(Node parent, int index, SubjectNode node) {
+        // The new labels must lie between the node before the insertion point in pre-order and the node after it
+        long before = index == 0 ? parent.label : last(parent.children.get(index - 1)).label;
+        long after = index < parent.children.size() ? parent.children.get(index).label : nextLabel(parent);
+
+        List<Node> nodes = new ArrayList<>();
+        Node copy = copy(node, parent, nodes);
+        parent.children.add(index, copy);
+        for (Node ancestor = parent; ancestor != null; ancestor = ancestor.parent) {
+            ancestor.add(copy, 1);
+        }
+
+        long step = Math.min(GAP, (after - before) / (nodes.size() + 1));
+        if (step > 0) {
+            long label = before;
+            for (Node inserted : nodes) {
+                label += step;
+                inserted.label = label;
+                index(inserted);
+            }
+        } else {
+            relabel(parent);
+        }
+        return copy;
+    }
+
+    private void detach(Node node) {
+        node.parent.children.remove(node);
+        for (Node ancestor = node.parent; ancestor != null; ancestor = ancestor.parent) {
+            ancestor.add(node, -1);
+        }
+        for (Node removed : preOrder(node)) {
+            unindex(removed);
+            removed.subject = null;
+        }
+    }
+
+    private void notifyListeners(Node parent, Node removed, Node inserted) {
+        // Listeners may unregister themselves while being notified
+        for (EditListener listener : new ArrayList<>(listeners)) {
+            listener.edited(parent, removed, inserted);
+        }
+    }
+
+    /**
+     * Get the number of times a subtree was labeled again, because a gap was exhausted
+     *
+     * @return The total relabel count
+     */
+    @InternalApi
+    public long getRelabelCount() {
+        return relabelCount;
+    }
+
+    /**
+     * Get the number of node labels changed by labeling subtrees again
+     *
+     * @return The total number of relabeled nodes
+     */
+    @InternalApi
+    public long getRelabeledNodeCount() {
+        return relabeledNodeCount;
+    }
+
+    private Node copy(SubjectNode node, Node parent, List<Node> nodes) {
+        Node copy = new Node(this, parent, node.getType(), node.getProperties(), new ArrayList<>(node.getChildren().size()));
+        nodes.add(copy);
+        for (SubjectNode child : node.getChildren()) {
+            Node childCopy = copy(child, copy, nodes);
+            copy.children.add(childCopy);
+            copy.add(childCopy, 1);
+        }
+        return copy;
+    }
+
+    /**
+     * Labels the smallest enclosing subtree whose label range leaves enough room between its nodes
+     */
+    private void relabel(Node node) {
+        // Higher subtrees need more room per node, so frequent insertions at the same position relabel exponentially larger
+        // subtrees, which keeps the number of relabeled nodes per insertion amortized logarithmic in practice
+        long density = 2;
+        Node subtree = node;
+        long after = nextLabel(subtree);
+        while (subtree.parent != null && (after - subtree.label) / (subtree.size + 1) < density) {
+            subtree = subtree.parent;
+            after = nextLabel(subtree);
+            density = Math.min(density * 2, GAP);
+        }
+
+        List<Node> nodes = preOrder(subtree);
+        long step = Math.min(GAP, (after - subtree.label) / (nodes.size() + 1));
+        for (Node relabeled : nodes.subList(1, nodes.size())) {
+            if (relabeled.label >= 0) {
+                unindex(relabeled);
+            }
+        }
+        long label = subtree.label;
+        for (Node relabeled : nodes.subList(1, nodes.size())) {
+            label += step;
+            relabeled.label = label;
+            index(relabeled);
+        }
+        relabelCount++;
+        relabeledNodeCount += nodes.size() - 1;
+    }
+
+    private void index(Node node) {
+        byType.computeIfAbsent(node.getType(), k -> new TreeMap<>()).put(node.label, node);
+    }
+
+    private void unindex(Node node) {
+        NavigableMap<Long, Node> nodes = byType.get(node.getType());
+        nodes.remove(node.label);
+        if (nodes.isEmpty()) {
+            byType.remove(node.getType());
+        }
+    }
+
+    private void checkAttached(Node node) {
+        if (node.subject != this) {
+            throw new IllegalArgumentException("The node is not part of this subject");
+        }
+    }
+
+    /**
+     * Get the last node of a subtree in pre-order
+     */
+    private static Node last(Node node) {
+        while (!node.children.isEmpty()) {
+            node = node.children.get(node.children.size() - 1);
+        }
+        return node;
+    }
+
+    /**
+     * Get the label of the first node after a subtree in pre-order
+     */
+    private static long nextLabel(Node node) {
+        for (; node.parent != null; node = node.parent) {
+            List<Node> siblings = node.parent.children;
+            int index = siblings.indexOf(node);
+            if (index + 1 < siblings.size()) {
+                return siblings.get(index + 1).label;
+            }
+        }
+        return END;
+    }
+
+    /**
+     * Get the nodes of a subtree in pre-order, which may already be removed
+     */
+    static List<Node> preOrder(Node node) {
+        List<Node> nodes = new ArrayList<>(node.size);
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(node);
+        while (!stack.isEmpty()) {
+            Node next = stack.pop();
+            nodes.add(next);
+            for (int i = next.children.size() - 1; i >= 0; i--) {
+                stack.push(next.children.get(i));
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * This interface is notified after each edit of a mutable subject
+     */
+    @PublicApi
+    @FunctionalInterface
+    public interface EditListener {
+
+        /**
+         * Called after a subtree was inserted, removed or replaced
+         *
+         * @param parent The parent of the edited subtree, which is still part of the subject
+         * @param removed The root node of the removed subtree, or null if a subtree was inserted
+         * @param inserted The root node of the inserted subtree, or null if a subtree was removed
+         */
+        void edited(Node parent, Node removed, Node inserted);
+    }
+
+    /**
+     * This class represents a node of a mutable subject, which is changed through the methods of the subject
+     */
+    @PublicApi
+    public static class Node extends BaseSubjectNode {
+
+        private final Node parent;
+        private final List<Node> children;
+        private final Map<String, Integer> typeCounts = new HashMap<>();
+
+        private MutableSubject subject;
+        private long label = -1;
+        private int size;
+
+        private Node(MutableSubject subject, Node parent, String type, Map<String, Object> properties, List<Node> children) {
+            super(type, properties, children);
+            this.subject = subject;
+            this.parent = parent;
+            this.children = children;
+            this.size = 1;
+            if (type != null) {
+                this.typeCounts.put(type, 1);
+            }
+        }
+
+        @Override
+        public List<Node> getChildren() {
+            return Collections.unmodifiableList(children);
+        }
+
+        /**
+         * Get the parent node
+         *
+         * @return The parent, or null for the root node
+         */
+        @PublicApi
+        public Node getParent() {
+            return parent;
+        }
+
+        /**
+         * Check whether this node is still part of its subject, i.e. it was not removed or replaced
+         *
+         * @return True iff the node is part of the subject
+         */
+        @PublicApi
+        public boolean isAttached() {
+            return subject != null;
+        }
+
+        /**
+         * Get the number of nodes in the subtree of this node
+         *
+         * @return The node count, including this node
+         */
+        @PublicApi
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * Get the number of nodes of a type in the subtree of this node
+         *
+         * @param type The node type
+         * @return The node count, including this node if it has the type
+         */
+        @PublicApi
+        public int count(String type) {
+            return typeCounts.getOrDefault(type, 0);
+        }
+
+        /**
+         * Get the label of this node, which increases in pre-order, but changes when the subject is labeled again
+         *
+         * @return The current label
+         */
+        @InternalApi
+        public long getLabel() {
+            return label;
+        }
+
+        /**
+         * Adds the summary of a subtree to the summary of this node
+         */
+        private void add(Node subtree, int sign) {
+            size += sign * subtree.size;
+            subtree.typeCounts.forEach((type, count) -> typeCounts.merge(type, sign * count, (a, b) -> a + b == 0 ? null : a + b));
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package at.ac.tuwien.treequery.execution;
+
+import at.ac.tuwien.treequery.annotation.PublicApi;
+import at.ac.tuwien.treequery.matching.LinkedSubjectNode;
+import at.ac.tuwien.treequery.matching.MatchingContext;
+import at.ac.tuwien.treequery.matching.MatchingState;
+import at.ac.tuwien.treequery.query.QueryNode;
+import at.ac.tuwien.treequery.query.SingleQueryNode;
+import at.ac.tuwien.treequery.subject.SubjectNode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * This class runs a single query on multiple cores by exploring the candidates of the query root in parallel.
+ * <p>
+ * The candidate subject nodes of the root {@link SingleQueryNode} are split into fork/join tasks, which are balanced by work stealing.
+ * {@link #hasMatches} cancels all remaining tasks as soon as any match is found.
+ * {@link #findReferences} merges the task results in candidate order, so it returns the same results in the same order as
+ * {@link QueryNode#findReferences}.
+ * Queries with a container as root are matched sequentially.
+ */
+@PublicApi
+public class ParallelMatcher {
+
+    private static final int DEFAULT_THRESHOLD = 64;
+
+    private final ForkJoinPool pool;
+    private final int threshold;
+
+    /**
+     * Creates a new matcher using the common fork/join pool
+     */
+    @PublicApi
+    public ParallelMatcher() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a new matcher using the given pool
+     *
+     * @param pool The pool executing the matching tasks
+     */
+    @PublicApi
+    public ParallelMatcher(ForkJoinPool pool) {
+        this(pool, DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Creates a new matcher using the given pool
+     *
+     * @param pool The pool executing the matching tasks
+     * @param threshold The maximum number of candidates handled by a single task without splitting it any further
+     */
+    @PublicApi
+    public ParallelMatcher(ForkJoinPool pool, int threshold) {
+        if (threshold < 1) {
+            throw new IllegalArgumentException("Threshold must be positive");
+        }
+        this.pool = pool;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Checks the subject tree rooted in the given subject node for matches of the query
+     *
+     * @param query The query to run
+     * @param node The root node of the subject tree
+     * @return True iff at least one match exists
+     * @see QueryNode#hasMatches
+     */
+    @PublicApi
+    public boolean hasMatches(QueryNode query, SubjectNode node) {
+        if (!(query instanceof SingleQueryNode)) {
+            return query.hasMatches(node);
+        }
+
+        // The context is cancelled once a match is found, which stops all other tasks
+        MatchingContext context = MatchingContext.create();
+        SingleQueryNode single = (SingleQueryNode) query;
+        return MatchingState.fromSubjectNode(node, context)
+                .anyMatch(start -> pool.invoke(new SearchTask(single, start, collectCandidates(single, start), 0)));
+    }
+
+    /**
+     * Obtains all matching collections of references in the subject tree rooted in the given subject node
+     *
+     * @param query The query to run
+     * @param node The root node of the subject tree
+     * @return A stream of named references in the same order as returned by {@link QueryNode#findReferences}
+     */
+    @PublicApi
+    public Stream<Map<String, SubjectNode>> findReferences(QueryNode query, SubjectNode node) {
+        if (!(query instanceof SingleQueryNode)) {
+            return query.findReferences(node);
+        }
+
+        SingleQueryNode single = (SingleQueryNode) query;
+        return MatchingState.fromSubjectNode(node)
+                .flatMap(start -> pool.invoke(new CollectTask(single, start, collectCandidates(single, start), 0)).stream())
+                .map(s -> s.getReferences().getData());
+    }
+
+    private List<LinkedSubjectNode> collectCandidates(SingleQueryNode query, MatchingState start) {
+        // Collecting the candidates is a cheap traversal compared to the actual matching, so it is done sequentially
+        return query.streamCandidates(start).collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    /**
+     * This task checks a range of candidates for any match
+     */
+    private class SearchTask extends RecursiveTask<Boolean> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final SingleQueryNode query;
+        private final MatchingState start;
+        private final List<LinkedSubjectNode> candidates;
+        private final int from;
+        private final int to;
+
+        SearchTask(SingleQueryNode query, MatchingState start, List<LinkedSubjectNode> candidates, int from) {
+            this(query, start, candidates, from, candidates.size());
+        }
+
+        private SearchTask(SingleQueryNode query, MatchingState start, List<LinkedSubjectNode> candidates, int from, int to) {
+            this.query = query;
+            this.start = start;
+            this.candidates = candidates;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Boolean compute() {
+            MatchingContext context = start.getContext();
+            if (to - from > threshold) {
+                // Split the range, the second half is open for stealing by other workers
+                int middle = (from + to) >>> 1;
+                SearchTask second = new SearchTask(query, start, candidates, middle, to);
+                second.fork();
+                boolean found = new SearchTask(query, start, candidates, from, middle).compute();
+                return second.join() || found;
+            }
+
+            for (int i = from; i < to && !context.isCancelled(); i++) {
+                if (query.matchCandidate(start, candidates.get(i)).findAny().isPresent()) {
+                    // Found a match: Stop all other tasks
+                    context.cancel();
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * This task collects all matches for a range of candidates, keeping the candidate order
+     */
+    private class CollectTask extends RecursiveTask<List<MatchingState>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final SingleQueryNode query;
+        private final MatchingState start;
+        private final List<LinkedSubjectNode> candidates;
+        private final int from;
+        private final int to;
+
+        CollectTask(SingleQueryNode query, MatchingState start, List<LinkedSubjectNode> candidates, int from) {
+            this(query, start, candidates, from, candidates.size());
+        }
+
+        private CollectTask(SingleQueryNode query, MatchingState start, List<LinkedSubjectNode> candidates, int from, int to) {
+            this.query = query;
+            this.start = start;
+            this.candidates = candidates;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<MatchingState> compute() {
+            if (to - from > threshold) {
+                // Split the range and merge the results in order
+                int middle = (from + to) >>> 1;
+                CollectTask second = new CollectTask(query, start, candidates, middle, to);
+                second.fork();
+                List<MatchingState> result = new CollectTask(query, start, candidates, from, middle).compute();
+                result.addAll(second.join());
+                return result;
+            }
+
+            List<MatchingState> result = new ArrayList<>();
+            for (int i = from; i < to; i++) {
+                query.matchCandidate(start, candidates.get(i)).forEachOrdered(result::add);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package at.ac.tuwien.treequery.execution;
+
+import at.ac.tuwien.treequery.annotation.PublicApi;
+import at.ac.tuwien.treequery.subject.BaseSubjectNode;
+import at.ac.tuwien.treequery.subject.SubjectNode;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * This class represents an immutable snapshot of a subject tree, where edits create new snapshots sharing the unchanged subtrees.
+ * <p>
+ * An edit copies only the nodes on the path from the root to the edited node, so it costs the depth and the fan-out
+ * along that path instead of the size of the tree. Older snapshots are never changed, so they can be queried by other threads
+ * without locks while a writer creates newer ones.
+ * Each node summarizes its subtree, i.e. its size and the number of nodes per type, which is computed when the node is created
+ * and shared by all snapshots containing it. The nodes of a type are found by only descending into subtrees containing that type.
+ * The {@link PreparedSubject} of a snapshot is not built by indexing the snapshot: {@link #prepare()} answers type lookups
+ * and pre-order intervals from these shared summaries, so preparing an edited snapshot does not visit its unchanged subtrees.
+ * It is created on demand and kept with the snapshot, and properties are not indexed for snapshots.
+ * <p>
+ * Nodes are addressed by their path of child indices from the root, like {@link at.ac.tuwien.treequery.matching.LinkedSubjectNode}.
+ * The nodes are {@link BaseSubjectNode}s, so queries match them like the original subject nodes, which are copied.
+ * Inserted nodes of persistent subjects are shared instead, so a subtree may occur at multiple positions
+ * like in a {@link at.ac.tuwien.treequery.subject.SubjectDag}.
+ * Instances are thread-safe.
+ */
+@PublicApi
+public class PersistentSubject {
+
+    private final Node root;
+    private final long version;
+
+    private volatile PreparedSubject prepared;
+
+    /**
+     * Creates the first snapshot by copying a subject tree
+     *
+     * @param node The root node of the subject tree
+     */
+    @PublicApi
+    public PersistentSubject(SubjectNode node) {
+        this(copy(node), 0);
+    }
+
+    private PersistentSubject(Node root, long version) {
+        this.root = root;
+        this.version = version;
+    }
+
+    /**
+     * Get the root node of this snapshot, which can be matched like any subject node
+     *
+     * @return The root node
+     */
+    @PublicApi
+    public Node getRoot() {
+        return root;
+    }
+
+    /**
+     * Get the number of edits which led from the first snapshot to this one
+     *
+     * @return The version of this snapshot
+     */
+    @PublicApi
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Get a node of this snapshot
+     *
+     * @param path The indices of the children leading from the root to the node
+     * @return The node
+     */
+    @PublicApi
+    public Node getNode(int... path) {
+        Node node = root;
+        for (int index : path) {
+            node = node.children.get(index);
+        }
+        return node;
+    }
+
+    /**
+     * Get the nodes of a type below the root, skipping all subtrees which do not contain the type
+     *
+     * @param type The node type
+     * @return The nodes in pre-order
+     */
+    @PublicApi
+    public List<Node> getNodes(String type) {
+        List<Node> nodes = new ArrayList<>(root.count(type));
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            if (node.count(type) > 0) {
+                if (node != root && type.equals(node.getType())) {
+                    nodes.add(node);
+                }
+                for (int i = node.children.size() - 1; i >= 0; i--) {
+                    stack.push(node.children.get(i));
+                }
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * Get the prepared subject of this snapshot, which is created on first use without indexing the snapshot
+     *
+     * @return The prepared subject for this snapshot, which is unaffected by newer snapshots
+     */
+    @PublicApi
+    public PreparedSubject prepare() {
+        PreparedSubject result = prepared;
+        if (result == null) {
+            synchronized (this) {
+                result = prepared;
+                if (result == null) {
+                    result = new PreparedSnapshot(root);
+                    prepared = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Creates a snapshot with a copy of a subject tree inserted
+     *
+     * @param path The path of the parent of the inserted subtree
+     * @param index The position among the children of the parent
+     * @param node The root node of the subject tree to insert, which is shared if it is a node of a persistent subject
+     * @return The new snapshot
+     */
+    @PublicApi
+    public PersistentSubject insert(int[] path, int index, SubjectNode node) {
+        Node inserted = copy(node);
+        return edit(path, path.length, parent -> {
+            List<Node> children = new ArrayList<>(parent.children);
+            children.add(index, inserted);
+            return parent.withChildren(children);
+        });
+    }
+
+    /**
+     * Creates a snapshot with a subtree removed
+     *
+     * @param path The path of the root node of the subtree, which must not be the root of the subject
+     * @return The new snapshot
+     */
+    @PublicApi
+    public PersistentSubject remove(int... path) {
+        if (path.length == 0) {
+            throw new IllegalArgumentException("The root node cannot be removed");
+        }
+        return edit(path, path.length - 1, parent -> {
+            List<Node> children = new ArrayList<>(parent.children);
+            children.remove(path[path.length - 1]);
+            return parent.withChildren(children);
+        });
+    }
+
+    /**
+     * Creates a snapshot with a subtree replaced by a copy of a subject tree
+     *
+     * @param path The path of the root node of the replaced subtree, which must not be the root of the subject
+     * @param node The root node of the subject tree to insert, which is shared if it is a node of a persistent subject
+     * @return The new snapshot
+     */
+    @PublicApi
+    public PersistentSubject replace(int[] path, SubjectNode node) {
+        if (path.length == 0) {
+            throw new IllegalArgumentException("The root node cannot be replaced");
+        }
+        Node replacement = copy(node);
+        return edit(path, path.length - 1, parent -> {
+            List<Node> children = new ArrayList<>(parent.children);
+            children.set(path[path.length - 1], replacement);
+            return parent.withChildren(children);
+        });
+    }
+
+    /**
+     * Copies the nodes from the root to the edited node, whose children are changed
+     *
+     * @param path The path containing the edited node
+     * @param depth The length of the path prefix leading to the edited node
+     * @param change Creates the changed copy of the edited node
+     * @return The new snapshot
+     */
+    private PersistentSubject edit(int[] path, int depth, UnaryOperator<Node> change) {
+        Node[] spine = new Node[depth + 1];
+        spine[0] = root;
+        for (int i = 0; i < depth; i++) {
+            spine[i + 1] = spine[i].children.get(path[i]);
+        }
+
+        Node node = change.apply(spine[depth]);
+        for (int i = depth - 1; i >= 0; i--) {
+            List<Node> children = new ArrayList<>(spine[i].children);
+            children.set(path[i], node);
+            node = spine[i].withChildren(children);
+        }
+        return new PersistentSubject(node, version + 1);
+    }
+
+    private static Node copy(SubjectNode node) {
+        if (node instanceof Node) {
+            return (Node) node;
+        }
+
+        List<Node> children = new ArrayList<>(node.getChildren().size());
+        for (SubjectNode child : node.getChildren()) {
+            children.add(copy(child));
+        }
+        return new Node(node.getType(), node.getProperties(), children);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PersistentSubject[version=%d, nodes=%d]", version, root.size);
+    }
+
+    /**
+     * This class represents an immutable node of a persistent subject, which may be shared by multiple snapshots
+     */
+    @PublicApi
+    public static class Node extends BaseSubjectNode {
+
+        private final List<Node> children;
+        private final int size;
+        private final long depthSum;
+        private final Map<String, Integer> typeCounts;
+
+        private Node(String type, Map<String, Object> properties, List<Node> children) {
+            super(type, properties, children);
+            this.children = Collections.unmodifiableList(children);
+
+            // The summary is computed from the summaries of the children, which are shared with other snapshots
+            int size = 1;
+            long depthSum = 0;
+            Map<String, Integer> typeCounts = new HashMap<>();
+            if (type != null) {
+                typeCounts.put(type, 1);
+            }
+            for (Node child : children) {
+                size += child.size;
+                depthSum += child.depthSum + child.size;
+                child.typeCounts.forEach((t, count) -> typeCounts.merge(t, count, Integer::sum));
+            }
+            this.size = size;
+            this.depthSum = depthSum;
+            this.typeCounts = typeCounts;
+        }
+
+        private Node withChildren(List<Node> children) {
+            return new Node(getType(), getProperties(), children);
+        }
+
+        @Override
+        public List<Node> getChildren() {
+            return children;
+        }
+
+        /**
+         * Get the number of nodes in the subtree of this node
+         *
+         * @return The node count, including this node
+         */
+        @PublicApi
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * Get the number of nodes of a type in the subtree of this node
+         *
+         * @param type The node type
+         * @return The node count, including this node if it has the type
+         */
+        @PublicApi
+        public int count(String type) {
+            return typeCounts.getOrDefault(type, 0);
+        }
+
+        /**
+         * Get the sum of the depths of all nodes in the subtree of this node
+         *
+         * @return The number of ancestors of each node up to this node, summed over all nodes
+         */
+        long getDepthSum() {
+            return depthSum;
+        }
+    }
+}
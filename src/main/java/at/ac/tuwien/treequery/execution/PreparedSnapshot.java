@@ -0,0 +1,199 @@
+package at.ac.tuwien.treequery.execution;
+
+import at.ac.tuwien.treequery.annotation.InternalApi;
+import at.ac.tuwien.treequery.matching.LinkedSubjectNode;
+import at.ac.tuwien.treequery.query.PropertyPredicate;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * This class prepares a snapshot of a {@link PersistentSubject} without indexing it,
+ * by answering the lookups from the subtree summaries which are shared by all snapshots.
+ * <p>
+ * The nodes of a type are found by only descending into the subtrees containing that type,
+ * and the pre-order interval of a node is computed from the sizes of its ancestors' preceding siblings.
+ * So preparing an edited snapshot does not visit its unchanged subtrees, and a lookup only visits the subtrees it returns nodes from.
+ * The nodes are linked when they are visited, so the rest of the snapshot is not linked either.
+ * Properties are not indexed, so they are not used as anchors by the {@link QueryPlanner},
+ * and queries without a type visit all nodes once.
+ * <p>
+ * The results of lookups are kept, so instances can be matched from multiple threads at the same time.
+ */
+@InternalApi
+final class PreparedSnapshot extends PreparedSubject {
+
+    private final PersistentSubject.Node root;
+    private final LinkedSubjectNode linkedRoot;
+    private final Map<LinkedSubjectNode, int[]> intervals = new ConcurrentHashMap<>();
+    private final Map<String, List<LinkedSubjectNode>> byType = new ConcurrentHashMap<>();
+    private final AtomicLong visitCount = new AtomicLong();
+
+    private volatile List<LinkedSubjectNode> nodes;
+
+    /**
+     * Prepares a snapshot
+     *
+     * @param root The root node of the snapshot
+     */
+    PreparedSnapshot(PersistentSubject.Node root) {
+        super(root, Collections.emptySet(), false);
+        this.root = root;
+        this.linkedRoot = getRoots().get(0);
+    }
+
+    /**
+     * Get the number of nodes visited to answer lookups, which only exceeds the number of returned nodes
+     * by the nodes on their paths and the siblings of these nodes
+     *
+     * @return The total visit count
+     */
+    @InternalApi
+    long getVisitCount() {
+        return visitCount.get();
+    }
+
+    @Override
+    public int getNodeCount() {
+        return root.getSize() - 1;
+    }
+
+    @Override
+    public double getAverageDepth() {
+        return root.getSize() > 1 ? (double) root.getDepthSum() / (root.getSize() - 1) : 0;
+    }
+
+    @Override
+    public List<LinkedSubjectNode> getNodes() {
+        List<LinkedSubjectNode> result = nodes;
+        if (result == null) {
+            synchronized (this) {
+                result = nodes;
+                if (result == null) {
+                    result = linkedRoot != null
+                            ? linkedRoot.getFirstChild().within(linkedRoot).collect(Collectors.toUnmodifiableList())
+                            : Collections.emptyList();
+                    visitCount.addAndGet(result.size());
+                    nodes = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public int getIndex(LinkedSubjectNode element) {
+        return getInterval(element)[0];
+    }
+
+    @Override
+    public int getEnd(LinkedSubjectNode element) {
+        return getInterval(element)[1];
+    }
+
+    @Override
+    public int getNodeCount(String type) {
+        if (type == null) {
+            return getNodes(null).size();
+        }
+        return root.count(type) - (type.equals(root.getType()) ? 1 : 0);
+    }
+
+    @Override
+    public List<LinkedSubjectNode> getNodes(String type) {
+        if (type == null) {
+            // Nodes without a type are not counted by the summaries
+            return getNodes().stream().filter(e -> e.node().getType() == null).collect(Collectors.toUnmodifiableList());
+        }
+        return byType.computeIfAbsent(type, this::findNodes);
+    }
+
+    @Override
+    public List<LinkedSubjectNode> getNodes(String key, Object value) {
+        // Properties are not indexed, so all nodes are checked
+        return getNodes().stream()
+                .filter(e -> hasValue(e, key, value))
+                .collect(Collectors.toUnmodifiableList());
+    }
+
+    @Override
+    public List<LinkedSubjectNode> getNodes(String type, String key, PropertyPredicate range) {
+        return getNodes(type).stream()
+                .filter(e -> e.node().getProperties().get(key) instanceof Number && range.test(e.node().getProperties().get(key)))
+                .collect(Collectors.toUnmodifiableList());
+    }
+
+    @Override
+    public boolean isIndexed(String key, Object value) {
+        return false;
+    }
+
+    private List<LinkedSubjectNode> findNodes(String type) {
+        List<LinkedSubjectNode> result = new ArrayList<>(getNodeCount(type));
+        if (linkedRoot == null) {
+            return Collections.emptyList();
+        }
+
+        // Only descend into subtrees containing the type, like PersistentSubject.getNodes
+        Deque<LinkedSubjectNode> stack = new ArrayDeque<>();
+        stack.push(linkedRoot);
+        List<LinkedSubjectNode> children = new ArrayList<>();
+        while (!stack.isEmpty()) {
+            LinkedSubjectNode element = stack.pop();
+            visitCount.incrementAndGet();
+            if (element != linkedRoot && type.equals(element.node().getType())) {
+                result.add(element);
+            }
+            for (LinkedSubjectNode child = element.getFirstChild(); child != null; child = child.getDirectNeighbor()) {
+                if (((PersistentSubject.Node) child.node()).count(type) > 0) {
+                    children.add(child);
+                }
+            }
+            for (int i = children.size() - 1; i >= 0; i--) {
+                stack.push(children.get(i));
+            }
+            children.clear();
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    private int[] getInterval(LinkedSubjectNode element) {
+        int[] interval = intervals.get(element);
+        if (interval != null) {
+            return interval;
+        }
+
+        LinkedSubjectNode parent = element.getParent();
+        if (parent == null) {
+            // The root is numbered first, followed by all other nodes
+            intervals.putIfAbsent(element, new int[]{0, root.getSize()});
+            return intervals.get(element);
+        }
+
+        // Number all children of the parent at once, where each child follows the subtrees of its preceding siblings
+        int index = getInterval(parent)[0] + 1;
+        for (LinkedSubjectNode child = parent.getFirstChild(); child != null; child = child.getDirectNeighbor()) {
+            int size = ((PersistentSubject.Node) child.node()).getSize();
+            intervals.putIfAbsent(child, new int[]{index, index + size});
+            index += size;
+            visitCount.incrementAndGet();
+        }
+        return intervals.get(element);
+    }
+
+    private static boolean hasValue(LinkedSubjectNode element, String key, Object value) {
+        // Like the index, only plain values are found
+        Object actual = element.node().getProperties().get(key);
+        if (!isPlainValue(actual)) {
+            return false;
+        }
+        return value instanceof PropertyPredicate ? ((PropertyPredicate) value).test(actual) : PropertyPredicate.valueEquals(actual, value);
+    }
+}
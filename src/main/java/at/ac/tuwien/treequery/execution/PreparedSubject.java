@@ -0,0 +1,603 @@
+package at.ac.tuwien.treequery.execution;
+
+import at.ac.tuwien.treequery.annotation.InternalApi;
+import at.ac.tuwien.treequery.annotation.PublicApi;
+import at.ac.tuwien.treequery.matching.LinkedSubjectNode;
+import at.ac.tuwien.treequery.matching.MatchingContext;
+import at.ac.tuwien.treequery.matching.MatchingState;
+import at.ac.tuwien.treequery.query.PropertyPredicate;
+import at.ac.tuwien.treequery.query.SingleQueryNode;
+import at.ac.tuwien.treequery.subject.SubjectNode;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * This class links a subject tree once and indexes its nodes, so it can be matched against many queries.
+ * <p>
+ * The nodes are indexed by their type and by their properties with plain values (strings, numbers, booleans and characters).
+ * Each posting list contains the nodes in pre-order, i.e. in the order in which they are visited by top-down matching.
+ * The plain values are also sorted by their string representation, so prefix predicates are answered from a range of values,
+ * and "in" predicates are answered from the posting lists of their values.
+ * Nodes with {@link Number} values are additionally sorted by value per type and key, so range predicates are answered
+ * by binary search. Their results are sorted into pre-order again, so they can be restricted to the interval of a node.
+ * Optionally, the string representations of plain values of selected keys are split into trigrams, i.e. substrings of length 3,
+ * with a compact posting list of node positions per trigram. Substring and regular expression predicates are then answered
+ * by intersecting the posting lists of the trigrams of their required substrings, which yields a superset of the matching nodes.
+ * The nodes are also numbered in pre-order, so the descendants of each node are the nodes numbered within its interval.
+ * On demand, a content hash of each subtree is computed bottom-up, so results for subtrees can be reused across subject instances.
+ * Like {@link QuerySet}, the index assumes that types and plain property values are compared by equality,
+ * like {@link at.ac.tuwien.treequery.subject.BaseSubjectNode} does.
+ * <p>
+ * Snapshots of a {@link PersistentSubject} are prepared without building this index, see {@link PersistentSubject#prepare()}.
+ * <p>
+ * Instances are immutable after construction, so they can be matched from multiple threads at the same time.
+ */
+@PublicApi
+public class PreparedSubject {
+
+    private final SubjectNode node;
+    private final List<MatchingState> starts;
+    private final List<LinkedSubjectNode> roots = new ArrayList<>();
+    private final List<LinkedSubjectNode> nodes = new ArrayList<>();
+    private final Map<LinkedSubjectNode, int[]> intervals = new IdentityHashMap<>();
+    private final Map<String, List<LinkedSubjectNode>> byType = new HashMap<>();
+    private final Map<String, Map<Object, List<LinkedSubjectNode>>> byProperty = new HashMap<>();
+    private final Map<String, NavigableMap<String, List<LinkedSubjectNode>>> byText = new HashMap<>();
+    private final Map<String, Map<String, List<LinkedSubjectNode>>> byNumber = new HashMap<>();
+    private final Map<String, Map<String, Posting>> byTrigram = new HashMap<>();
+    private final int nodeCount;
+    private final long depthSum;
+    private volatile Map<LinkedSubjectNode, SubtreeHash> hashes;
+
+    /**
+     * Links and indexes a subject tree
+     *
+     * @param node The root node of the subject tree
+     */
+    @PublicApi
+    public PreparedSubject(SubjectNode node) {
+        this(node, Collections.emptySet());
+    }
+
+    /**
+     * Links and indexes a subject tree, with additional trigram indexes for substring searches
+     *
+     * @param node The root node of the subject tree
+     * @param trigramKeys The property keys whose values are indexed by their trigrams, e.g. {@code value}
+     */
+    @PublicApi
+    public PreparedSubject(SubjectNode node, Collection<String> trigramKeys) {
+        this(node, trigramKeys, true);
+    }
+
+    /**
+     * Links a subject tree, and indexes it unless a subclass answers the lookups from other structures
+     *
+     * @param node The root node of the subject tree
+     * @param trigramKeys The property keys whose values are indexed by their trigrams
+     * @param indexed Whether to index the nodes, otherwise only the starts and roots are linked
+     */
+    PreparedSubject(SubjectNode node, Collection<String> trigramKeys, boolean indexed) {
+        this.node = node;
+        for (String key : trigramKeys) {
+            byTrigram.put(key, new HashMap<>());
+        }
+        this.starts = MatchingState.fromSubjectNode(node).collect(Collectors.toList());
+
+        int count = 0;
+        long depths = 0;
+        int index = 0;
+        for (MatchingState start : starts) {
+            if (start.getElement() == null) {
+                // The root has no children, so there is nothing to index
+                roots.add(null);
+                continue;
+            }
+
+            // Number the nodes in pre-order, so the descendants of a node form an interval
+            LinkedSubjectNode root = start.getElement().getParent();
+            roots.add(root);
+            if (!indexed) {
+                continue;
+            }
+            int first = nodes.size();
+            intervals.put(root, new int[]{index++, 0});
+            for (LinkedSubjectNode element : (Iterable<LinkedSubjectNode>) start.streamWithin()::iterator) {
+                count++;
+                depths += element.getDepth();
+                nodes.add(element);
+                intervals.put(element, new int[]{index, index + 1});
+                index++;
+
+                SubjectNode subjectNode = element.node();
+                byType.computeIfAbsent(subjectNode.getType(), t -> new ArrayList<>()).add(element);
+                subjectNode.getProperties().forEach((key, value) -> {
+                    if (isPlainValue(value)) {
+                        // Numbers and their canonical text share a posting list, since they are equal when matching
+                        byProperty.computeIfAbsent(key, k -> new HashMap<>())
+                                .computeIfAbsent(PropertyPredicate.normalize(value), v -> new ArrayList<>())
+                                .add(element);
+                        byText.computeIfAbsent(key, k -> new TreeMap<>())
+                                .computeIfAbsent(value.toString(), v -> new ArrayList<>())
+                                .add(element);
+                        Map<String, Posting> trigrams = byTrigram.get(key);
+                        if (trigrams != null) {
+                            addTrigrams(trigrams, value.toString(), nodes.size() - 1);
+                        }
+                    }
+                    if (value instanceof Number) {
+                        byNumber.computeIfAbsent(key, k -> new HashMap<>())
+                                .computeIfAbsent(subjectNode.getType(), t -> new ArrayList<>())
+                                .add(element);
+                    }
+                });
+            }
+
+            // The interval of a node ends after the interval of its last descendant
+            intervals.get(root)[1] = index;
+            for (int i = nodes.size() - 1; i >= first; i--) {
+                int[] parent = intervals.get(nodes.get(i).getParent());
+                parent[1] = Math.max(parent[1], intervals.get(nodes.get(i))[1]);
+            }
+        }
+        this.nodeCount = count;
+        this.depthSum = depths;
+
+        // Sort the numeric values once, where the stable sort keeps equal values in pre-order
+        byNumber.forEach((key, byType) -> byType.values().forEach(list -> list.sort((a, b) -> PropertyPredicate.compare(
+                (Number) a.node().getProperties().get(key), (Number) b.node().getProperties().get(key)))));
+        byTrigram.values().forEach(trigrams -> trigrams.values().forEach(Posting::trim));
+    }
+
+    /**
+     * Get the subject tree
+     *
+     * @return The root node of the subject tree
+     */
+    @PublicApi
+    public SubjectNode getNode() {
+        return node;
+    }
+
+    /**
+     * Get the number of nodes which can be matched by the root of a query
+     *
+     * @return The number of nodes below the matching targets of the root node
+     */
+    @PublicApi
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Get the average depth of the nodes which can be matched by the root of a query
+     *
+     * @return The average number of ancestors of the nodes, or 0 if there are none
+     */
+    @PublicApi
+    public double getAverageDepth() {
+        return nodeCount > 0 ? (double) depthSum / nodeCount : 0;
+    }
+
+    /**
+     * Get all nodes which can be matched by the root of a query
+     *
+     * @return An unmodifiable list of nodes in pre-order
+     */
+    @InternalApi
+    public List<LinkedSubjectNode> getNodes() {
+        return Collections.unmodifiableList(nodes);
+    }
+
+    /**
+     * Get the roots of the subject trees, i.e. the matching targets of the root node
+     *
+     * @return An unmodifiable list of roots in the order of {@link #getStarts}, containing null for roots without children
+     */
+    @InternalApi
+    public List<LinkedSubjectNode> getRoots() {
+        return Collections.unmodifiableList(roots);
+    }
+
+    /**
+     * Get the number of a node in pre-order
+     *
+     * @param element A node of the subject tree, or one of its roots
+     * @return The number of the node, which is unique within this instance
+     */
+    @InternalApi
+    public int getIndex(LinkedSubjectNode element) {
+        return intervals.get(element)[0];
+    }
+
+    /**
+     * Get the end of the interval of a node in pre-order
+     *
+     * @param element A node of the subject tree, or one of its roots
+     * @return The number following the numbers of all descendants of the node
+     */
+    @InternalApi
+    public int getEnd(LinkedSubjectNode element) {
+        return intervals.get(element)[1];
+    }
+
+    /**
+     * Get the number of nodes with a given type, without looking them up
+     *
+     * @param type The type
+     * @return The size of the list returned by {@link #getNodes(String)}
+     */
+    @InternalApi
+    public int getNodeCount(String type) {
+        return byType.getOrDefault(type, Collections.emptyList()).size();
+    }
+
+    /**
+     * Get all nodes with a given type
+     *
+     * @param type The type
+     * @return An unmodifiable list of nodes in pre-order
+     */
+    @InternalApi
+    public List<LinkedSubjectNode> getNodes(String type) {
+        return Collections.unmodifiableList(byType.getOrDefault(type, Collections.emptyList()));
+    }
+
+    /**
+     * Get all nodes with a given property value
+     *
+     * @param key The key of the property
+     * @param value The plain value of the property, or a predicate which can be looked up in the index
+     * @return An unmodifiable list of nodes in pre-order, which may contain nodes not matching predicates looked up by their trigrams
+     *         or conjunctions looked up by one of their predicates
+     * @see #isIndexed(String, Object)
+     */
+    @InternalApi
+    public List<LinkedSubjectNode> getNodes(String key, Object value) {
+        if (!(value instanceof PropertyPredicate)) {
+            return Collections.unmodifiableList(byProperty.getOrDefault(key, Collections.emptyMap())
+                    .getOrDefault(PropertyPredicate.normalize(value), Collections.emptyList()));
+        }
+
+        PropertyPredicate predicate = (PropertyPredicate) value;
+        if (predicate.getOperator() == PropertyPredicate.Operator.AND && !predicate.isRange()) {
+            // Look up the first indexed predicate, the others are checked by the query node itself
+            for (PropertyPredicate part : predicate.getParts()) {
+                if (isIndexed(key, part)) {
+                    return getNodes(key, part);
+                }
+            }
+        }
+
+        List<List<LinkedSubjectNode>> postings = new ArrayList<>();
+        if (predicate.getOperator() == PropertyPredicate.Operator.PREFIX) {
+            // The values with the prefix form a range of the sorted values
+            String prefix = predicate.getText();
+            NavigableMap<String, List<LinkedSubjectNode>> values = byText.getOrDefault(key, Collections.emptyNavigableMap());
+            for (Map.Entry<String, List<LinkedSubjectNode>> entry : values.tailMap(prefix, true).entrySet()) {
+                if (!entry.getKey().startsWith(prefix)) {
+                    break;
+                }
+                postings.add(entry.getValue());
+            }
+        } else if (predicate.getOperator() == PropertyPredicate.Operator.IN) {
+            // Values normalized to the same key, e.g. "120" and 120L, share their posting list
+            predicate.getValues().stream().map(PropertyPredicate::normalize).distinct().forEach(v -> postings.add(getNodes(key, v)));
+        } else if (predicate.isRange()) {
+            byNumber.getOrDefault(key, Collections.emptyMap()).keySet().forEach(type -> postings.add(getNodes(type, key, predicate)));
+        } else if (isTrigramIndexed(key, predicate)) {
+            return getTrigramNodes(byTrigram.get(key), predicate);
+        } else {
+            throw new IllegalArgumentException("Predicate cannot be looked up in the index: " + predicate);
+        }
+        return merge(postings);
+    }
+
+    /**
+     * Get all nodes with a given type whose numeric property value is within a range
+     *
+     * @param type The type
+     * @param key The key of the property
+     * @param range The range predicate
+     * @return An unmodifiable list of nodes in pre-order
+     */
+    @InternalApi
+    public List<LinkedSubjectNode> getNodes(String type, String key, PropertyPredicate range) {
+        List<LinkedSubjectNode> sorted = byNumber.getOrDefault(key, Collections.emptyMap()).getOrDefault(type, Collections.emptyList());
+
+        // Find the first node within the lower bound and the first node beyond the upper bound
+        int from = searchNumber(sorted, key, v -> !range.isAboveLower(v));
+        int to = searchNumber(sorted, key, range::isBelowUpper);
+        if (from >= to) {
+            return Collections.emptyList();
+        }
+        List<LinkedSubjectNode> result = new ArrayList<>(sorted.subList(from, to));
+        result.sort(Comparator.comparingInt(this::getIndex));
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Obtains the content hash of the subtree of a node, which is computed for all nodes on the first call
+     *
+     * @param element A node of this subject
+     * @return The hash, or null if the subtree contains property values which are not plain
+     * @see SubtreeResultCache
+     */
+    @InternalApi
+    public SubtreeHash getHash(LinkedSubjectNode element) {
+        Map<LinkedSubjectNode, SubtreeHash> result = hashes;
+        if (result == null) {
+            synchronized (this) {
+                if (hashes == null) {
+                    hashes = computeHashes();
+                }
+                result = hashes;
+            }
+        }
+        return result.get(element);
+    }
+
+    private Map<LinkedSubjectNode, SubtreeHash> computeHashes() {
+        Map<LinkedSubjectNode, SubtreeHash> result = new IdentityHashMap<>();
+        Map<LinkedSubjectNode, List<SubtreeHash>> children = new IdentityHashMap<>();
+        Set<LinkedSubjectNode> unknown = Collections.newSetFromMap(new IdentityHashMap<>());
+        MessageDigest digest = SubtreeHash.createDigest();
+
+        // In reverse pre-order, the children of each node are visited before the node itself, from the last to the first one
+        List<LinkedSubjectNode> nodes = getNodes();
+        for (int i = nodes.size() - 1; i >= 0; i--) {
+            LinkedSubjectNode element = nodes.get(i);
+            List<SubtreeHash> childHashes = children.remove(element);
+            if (childHashes == null) {
+                childHashes = Collections.emptyList();
+            }
+            Collections.reverse(childHashes);
+            SubtreeHash hash = unknown.remove(element) ? null : SubtreeHash.compute(digest, element.node(), childHashes);
+            if (hash != null) {
+                result.put(element, hash);
+                children.computeIfAbsent(element.getParent(), p -> new ArrayList<>()).add(hash);
+            } else {
+                // The content of the parent is not known either
+                unknown.add(element.getParent());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Selects the descendants of a node from a list of nodes
+     *
+     * @param nodes A list of nodes of this subject in pre-order
+     * @param ancestor A node of the subject tree, or one of its roots
+     * @return An unmodifiable view of the nodes within the interval of the ancestor
+     */
+    @InternalApi
+    public List<LinkedSubjectNode> getDescendants(List<LinkedSubjectNode> nodes, LinkedSubjectNode ancestor) {
+        return Collections.unmodifiableList(nodes.subList(search(nodes, getIndex(ancestor) + 1), search(nodes, getEnd(ancestor))));
+    }
+
+    /**
+     * Looks up the nodes matching the type and properties of a single query node, using the smallest posting list
+     *
+     * @param query The single query node
+     * @return A new list of nodes in pre-order, which match the query node when no references are set
+     */
+    @InternalApi
+    public List<LinkedSubjectNode> getCandidates(SingleQueryNode query) {
+        List<LinkedSubjectNode> posting = query.getType() != null ? getNodes(query.getType()) : getNodes();
+        if (query.getProperties() != null) {
+            for (Map.Entry<String, Object> property : query.getProperties().entrySet()) {
+                if (isIndexed(property.getKey(), property.getValue())) {
+                    List<LinkedSubjectNode> candidates = query.getType() != null && isRange(property.getValue())
+                            ? getNodes(query.getType(), property.getKey(), (PropertyPredicate) property.getValue())
+                            : getNodes(property.getKey(), property.getValue());
+                    posting = candidates.size() < posting.size() ? candidates : posting;
+                }
+            }
+        }
+
+        // The posting lists only cover one property, so the node itself still needs to be checked
+        return posting.stream()
+                .filter(e -> e.node().matches(query.getType(), query.getProperties(), Collections.emptyMap()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Obtains the initial matching states of the subject tree, one for each matching target of the root node
+     *
+     * @param context The context of the matching run
+     * @return A stream of empty matching states
+     */
+    @InternalApi
+    public Stream<MatchingState> getStarts(MatchingContext context) {
+        return starts.stream().map(start -> start.withContext(context));
+    }
+
+    /**
+     * Checks whether a property value can be looked up in the index
+     *
+     * @param value The property value of a query
+     * @return True iff the value is a string, number, boolean or character
+     */
+    @InternalApi
+    public static boolean isPlainValue(Object value) {
+        return value instanceof String || value instanceof Number || value instanceof Boolean || value instanceof Character;
+    }
+
+    /**
+     * Checks whether a property value of a query can be looked up in the index
+     *
+     * @param value The property value of a query
+     * @return True iff the value is plain, a prefix predicate, a range predicate, an "in" predicate of plain values,
+     *         or a conjunction containing any of these predicates
+     */
+    @InternalApi
+    public static boolean isIndexed(Object value) {
+        if (value instanceof PropertyPredicate) {
+            PropertyPredicate predicate = (PropertyPredicate) value;
+            return predicate.getOperator() == PropertyPredicate.Operator.PREFIX
+                    || predicate.isRange()
+                    || predicate.getOperator() == PropertyPredicate.Operator.AND
+                    && predicate.getParts().stream().anyMatch(PreparedSubject::isIndexed)
+                    || predicate.getOperator() == PropertyPredicate.Operator.IN
+                    && predicate.getValues().stream().allMatch(PreparedSubject::isPlainValue);
+        }
+        return isPlainValue(value);
+    }
+
+    /**
+     * Checks whether a property of a query can be looked up in the indexes of this subject
+     *
+     * @param key The key of the property
+     * @param value The property value of a query
+     * @return True iff the value can be looked up in any subject, or if the key has a trigram index and the value is a predicate
+     * requiring a substring of at least 3 characters
+     */
+    @InternalApi
+    public boolean isIndexed(String key, Object value) {
+        return isIndexed(value) || value instanceof PropertyPredicate && isTrigramIndexed(key, (PropertyPredicate) value);
+    }
+
+    private boolean isTrigramIndexed(String key, PropertyPredicate predicate) {
+        return byTrigram.containsKey(key) && predicate.getRequiredSubstrings().stream().anyMatch(text -> text.length() >= 3);
+    }
+
+    private List<LinkedSubjectNode> getTrigramNodes(Map<String, Posting> trigrams, PropertyPredicate predicate) {
+        // Intersect the shortest posting lists first, so the intermediate results stay small
+        List<Posting> postings = new ArrayList<>();
+        for (String text : predicate.getRequiredSubstrings()) {
+            for (int i = 0; i + 3 <= text.length(); i++) {
+                Posting posting = trigrams.get(text.substring(i, i + 3));
+                if (posting == null) {
+                    return Collections.emptyList();
+                }
+                postings.add(posting);
+            }
+        }
+        postings.sort(Comparator.comparingInt(posting -> posting.size));
+
+        int[] positions = Arrays.copyOf(postings.get(0).positions, postings.get(0).size);
+        int size = positions.length;
+        for (Posting posting : postings.subList(1, postings.size())) {
+            size = posting.retain(positions, size);
+        }
+
+        List<LinkedSubjectNode> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            result.add(nodes.get(positions[i]));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    private static void addTrigrams(Map<String, Posting> trigrams, String text, int position) {
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            trigrams.computeIfAbsent(text.substring(i, i + 3), t -> new Posting()).add(position);
+        }
+    }
+
+    private static boolean isRange(Object value) {
+        return value instanceof PropertyPredicate && ((PropertyPredicate) value).isRange();
+    }
+
+    private static int searchNumber(List<LinkedSubjectNode> sorted, String key, Predicate<Number> before) {
+        // Find the position of the first node whose value is not before the searched bound
+        int low = 0;
+        int high = sorted.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (before.test((Number) sorted.get(mid).node().getProperties().get(key))) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private List<LinkedSubjectNode> merge(List<List<LinkedSubjectNode>> postings) {
+        if (postings.size() == 1) {
+            return Collections.unmodifiableList(postings.get(0));
+        }
+
+        // Each node has a single value per key, so the posting lists of distinct index keys or types are disjoint
+        List<LinkedSubjectNode> merged = new ArrayList<>();
+        postings.forEach(merged::addAll);
+        merged.sort(Comparator.comparingInt(this::getIndex));
+        return Collections.unmodifiableList(merged);
+    }
+
+    /**
+     * This class stores the ascending positions of the nodes containing a trigram
+     */
+    private static class Posting {
+
+        private int[] positions = new int[4];
+        private int size;
+
+        void add(int position) {
+            if (size > 0 && positions[size - 1] == position) {
+                // The trigram occurs multiple times in the same value
+                return;
+            }
+            if (size == positions.length) {
+                positions = Arrays.copyOf(positions, size * 2);
+            }
+            positions[size++] = position;
+        }
+
+        void trim() {
+            positions = Arrays.copyOf(positions, size);
+        }
+
+        /**
+         * Removes all positions not contained in this posting list
+         *
+         * @param candidates The ascending positions, which are overwritten by the retained positions
+         * @param count The number of candidates
+         * @return The number of retained positions
+         */
+        int retain(int[] candidates, int count) {
+            int retained = 0;
+            int j = 0;
+            for (int i = 0; i < count && j < size; i++) {
+                while (j < size && positions[j] < candidates[i]) {
+                    j++;
+                }
+                if (j < size && positions[j] == candidates[i]) {
+                    candidates[retained++] = candidates[i];
+                }
+            }
+            return retained;
+        }
+    }
+
+    private int search(List<LinkedSubjectNode> nodes, int index) {
+        // Find the position of the first node with at least the given number
+        int low = 0;
+        int high = nodes.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (getIndex(nodes.get(mid)) < index) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,31 @@
+package at.ac.tuwien.treequery.execution;
+
+import at.ac.tuwien.treequery.annotation.PublicApi;
+import at.ac.tuwien.treequery.matching.MatchingContext;
+import at.ac.tuwien.treequery.matching.MatchingState;
+import at.ac.tuwien.treequery.query.QueryNode;
+
+import java.util.stream.Stream;
+
+/**
+ * This interface is the base for strategies of matching a query against a prepared subject.
+ * <p>
+ * All strategies return the same matches in the same order as {@link QueryNode#findMatches(at.ac.tuwien.treequery.subject.SubjectNode)},
+ * but differ in which subject nodes they consider as candidates for the root of the query.
+ *
+ * @see QueryPlanner
+ */
+@PublicApi
+public interface QueryExecutor {
+
+    /**
+     * Obtains all matches of a query in a prepared subject
+     *
+     * @param query The root of the query tree
+     * @param subject The prepared subject tree
+     * @param context The context for the matching run
+     * @return A stream of matching states, or an empty stream if no match could be found
+     */
+    @PublicApi
+    Stream<MatchingState> findMatches(QueryNode query, PreparedSubject subject, MatchingContext context);
+}
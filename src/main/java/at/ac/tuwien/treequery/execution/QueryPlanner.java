@@ -0,0 +1,128 @@
+package at.ac.tuwien.treequery.execution;
+
+import at.ac.tuwien.treequery.annotation.PublicApi;
+import at.ac.tuwien.treequery.query.AllQueryNode;
+import at.ac.tuwien.treequery.query.AnyQueryNode;
+import at.ac.tuwien.treequery.query.ContainerQueryNode;
+import at.ac.tuwien.treequery.query.ExactQueryNode;
+import at.ac.tuwien.treequery.query.QueryNode;
+import at.ac.tuwien.treequery.query.SingleQueryNode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class chooses the strategy for matching a query against a prepared subject.
+ * <p>
+ * Top-down matching visits every subject node and verifies the whole query for each node matching the query root.
+ * Anchor-based matching looks up the nodes matching a single query node which is required by every match of the query,
+ * walks up to their ancestors and only verifies those.
+ * Single query nodes are required if they can only be reached through single query nodes, ordered, unordered and exact containers,
+ * or "any" containers with a single child, and if they have a type or a property value to look up in the index.
+ * <p>
+ * The cost of each strategy is estimated from the sizes of the posting lists of the prepared subject:
+ * Top-down matching costs one step per subject node plus the size of the query for each node matching the root.
+ * Anchor-based matching costs one step per ancestor of each anchor node plus the size of the query for each candidate.
+ * The strategy with the lowest estimated cost is chosen for each query and subject.
+ * <p>
+ * Top-down matching of queries with references may create many intermediate matching states, which the estimate does not capture.
+ * Twig queries with references are therefore always matched using {@link TwigJoinExecutor}, which also uses the index,
+ * and other queries with references using {@link SemiJoinExecutor}, which removes dead branches before enumerating the references.
+ */
+@PublicApi
+public class QueryPlanner {
+
+    /**
+     * Chooses the strategy for matching a query against a subject
+     *
+     * @param query The root of the query tree
+     * @param subject The prepared subject tree
+     * @return The strategy with the lowest estimated cost
+     */
+    @PublicApi
+    public QueryExecutor plan(QueryNode query, PreparedSubject subject) {
+        if (query.hasReferences()) {
+            // The number of intermediate states when enumerating references cannot be estimated, so dead branches are pruned first
+            return TwigJoinExecutor.supports(query) ? TwigJoinExecutor.INSTANCE : SemiJoinExecutor.INSTANCE;
+        }
+        if (query.getClass() != SingleQueryNode.class) {
+            // Candidates for a container are not single subject nodes
+            return TopDownExecutor.INSTANCE;
+        }
+
+        SingleQueryNode root = (SingleQueryNode) query;
+
+        double verifyCost = size(root);
+        double walkCost = subject.getAverageDepth() + 1;
+        int rootCount = root.getType() != null ? subject.getNodeCount(root.getType()) : subject.getNodeCount();
+        double best = subject.getNodeCount() + rootCount * verifyCost;
+        QueryExecutor executor = TopDownExecutor.INSTANCE;
+
+        for (AnchorExecutor anchor : findAnchors(root, subject)) {
+            int size = anchor.count(subject);
+            double walk = anchor.distance == 0 ? size : size * walkCost;
+            double cost = walk + Math.min(walk, subject.getNodeCount()) * verifyCost;
+            if (cost < best) {
+                best = cost;
+                executor = anchor;
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Obtains the anchor-based strategies for all required single query nodes and their keys
+     *
+     * @param root The root of the query tree
+     * @param subject The prepared subject tree, whose indexes are used for the lookups
+     * @return A new list of strategies
+     */
+    static List<AnchorExecutor> findAnchors(SingleQueryNode root, PreparedSubject subject) {
+        List<AnchorExecutor> anchors = new ArrayList<>();
+        collectAnchors(root, root, 0, subject, anchors);
+        return anchors;
+    }
+
+    private static void collectAnchors(SingleQueryNode root, QueryNode query, int distance, PreparedSubject subject,
+            List<AnchorExecutor> anchors) {
+        if (query.getClass() == SingleQueryNode.class) {
+            SingleQueryNode single = (SingleQueryNode) query;
+            lookupKeys(single, subject).forEach(key -> anchors.add(new AnchorExecutor(root, single, key, distance)));
+            collectAnchors(root, single.getChildren(), distance + 1, subject, anchors);
+        } else if (query.getClass() == AllQueryNode.class || query.getClass() == ExactQueryNode.class) {
+            // All children need to be matched
+            ((ContainerQueryNode) query).getChildren().forEach(child -> collectAnchors(root, child, distance, subject, anchors));
+        } else if (query.getClass() == AnyQueryNode.class && !((AnyQueryNode) query).isOptional()
+                && ((AnyQueryNode) query).getChildren().size() == 1) {
+            // The only alternative needs to be matched
+            collectAnchors(root, ((AnyQueryNode) query).getChildren().get(0), distance, subject, anchors);
+        }
+    }
+
+    private static List<String> lookupKeys(SingleQueryNode query, PreparedSubject subject) {
+        List<String> keys = new ArrayList<>();
+        if (query.getType() != null) {
+            // A null key stands for the type
+            keys.add(null);
+        }
+        if (query.getProperties() != null) {
+            for (Map.Entry<String, Object> property : query.getProperties().entrySet()) {
+                if (subject.isIndexed(property.getKey(), property.getValue())) {
+                    keys.add(property.getKey());
+                }
+            }
+        }
+        return keys;
+    }
+
+    private static int size(QueryNode query) {
+        if (query instanceof SingleQueryNode) {
+            return 1 + size(((SingleQueryNode) query).getChildren());
+        }
+        if (query instanceof ContainerQueryNode) {
+            return ((ContainerQueryNode) query).getChildren().stream().mapToInt(QueryPlanner::size).sum();
+        }
+        return 1;
+    }
+}
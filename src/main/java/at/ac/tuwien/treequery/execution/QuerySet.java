@@ -0,0 +1,351 @@
+package at.ac.tuwien.treequery.execution;
+
+import at.ac.tuwien.treequery.annotation.PublicApi;
+import at.ac.tuwien.treequery.matching.LinkedSubjectNode;
+import at.ac.tuwien.treequery.matching.MatchingContext;
+import at.ac.tuwien.treequery.matching.MatchingState;
+import at.ac.tuwien.treequery.optimizer.QueryCanonicalizer;
+import at.ac.tuwien.treequery.optimizer.QueryLattice;
+import at.ac.tuwien.treequery.optimizer.QueryNormalizer;
+import at.ac.tuwien.treequery.query.PropertyPredicate;
+import at.ac.tuwien.treequery.query.QueryNode;
+import at.ac.tuwien.treequery.query.SingleQueryNode;
+import at.ac.tuwien.treequery.subject.SubjectNode;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * This class evaluates many queries against a subject in a single traversal of the subject tree.
+ * <p>
+ * The queries are compiled into a dispatch table keyed by the type and one property of their root {@link SingleQueryNode}.
+ * While visiting each subject node once, only the queries whose root could match the visited node are started there.
+ * Queries with a container as root cannot be dispatched and are matched separately, sharing the same linked subject tree.
+ * <p>
+ * The queries are normalized using a {@link QueryNormalizer},
+ * and equal sub-queries of different queries are replaced by shared instances using a {@link QueryCanonicalizer}.
+ * All queries are evaluated within the same shared {@link MatchingContext}, so each distinct sub-query is only evaluated once
+ * for each matching state.
+ * <p>
+ * Unless disabled, the containment between the queries is detected when creating the set.
+ * The queries are then evaluated in multiple traversals, one for each level of the {@link QueryLattice},
+ * and queries are skipped if any of their generalizations failed.
+ * <p>
+ * Dispatching compares the type and plain property values (strings, numbers, booleans and characters) of the subject nodes
+ * by equality, like {@link at.ac.tuwien.treequery.subject.BaseSubjectNode} does.
+ * Subject implementations with different matching semantics for these should not be used with a query set.
+ * Every dispatched query still checks its root against the subject node, so dispatching never adds false matches.
+ */
+@PublicApi
+public class QuerySet {
+
+    private final List<QueryNode> queries;
+    private final List<QueryNode> canonical;
+    private final Map<String, DispatchTable> byType = new HashMap<>();
+    private final List<Integer> fallback = new ArrayList<>();
+    private final QueryLattice lattice;
+    private final List<BitSet> levels;
+
+    /**
+     * Creates a new query set, which skips queries whose generalizations in the set failed
+     *
+     * @param queries The queries to evaluate, which are identified by their position in the collection
+     */
+    @PublicApi
+    public QuerySet(Collection<? extends QueryNode> queries) {
+        this(queries, true);
+    }
+
+    /**
+     * Creates a new query set
+     *
+     * @param queries The queries to evaluate, which are identified by their position in the collection
+     * @param useContainment Whether to detect containment between the queries, so queries with a failed generalization are skipped
+     * @see QueryLattice
+     */
+    @PublicApi
+    public QuerySet(Collection<? extends QueryNode> queries, boolean useContainment) {
+        this.queries = List.copyOf(queries);
+        QueryNormalizer normalizer = new QueryNormalizer();
+        this.canonical = new QueryCanonicalizer().canonicalize(this.queries.stream().map(normalizer::normalize).collect(Collectors.toList()));
+
+        if (useContainment) {
+            // Evaluate the queries level by level, so the results of all generalizations are known before evaluating a query
+            this.lattice = new QueryLattice(canonical);
+            this.levels = lattice.getLevels();
+        } else {
+            BitSet all = new BitSet(this.queries.size());
+            all.set(0, this.queries.size());
+            this.lattice = null;
+            this.levels = List.of(all);
+        }
+
+        for (int i = 0; i < canonical.size(); i++) {
+            QueryNode query = canonical.get(i);
+            if (query instanceof SingleQueryNode) {
+                SingleQueryNode single = (SingleQueryNode) query;
+                byType.computeIfAbsent(single.getType(), t -> new DispatchTable()).add(new Entry(i, single));
+            } else {
+                fallback.add(i);
+            }
+        }
+    }
+
+    /**
+     * Get the queries of this set
+     *
+     * @return An unmodifiable list of queries in the order given to the constructor
+     */
+    @PublicApi
+    public List<QueryNode> getQueries() {
+        return queries;
+    }
+
+    /**
+     * Get the containment lattice of the queries
+     *
+     * @return The lattice, or null if containment detection is disabled
+     */
+    @PublicApi
+    public QueryLattice getLattice() {
+        return lattice;
+    }
+
+    /**
+     * Get the number of queries in this set
+     *
+     * @return The number of queries
+     */
+    @PublicApi
+    public int size() {
+        return queries.size();
+    }
+
+    /**
+     * Checks the subject tree rooted in the given subject node for matches of each query
+     *
+     * @param node The root node of the subject tree
+     * @return A set containing the positions of all queries with at least one match
+     * @see QueryNode#hasMatches(SubjectNode)
+     */
+    @PublicApi
+    public BitSet hasMatches(SubjectNode node) {
+        List<MatchingState> starts = MatchingState.fromSubjectNode(node, MatchingContext.createShared()).collect(Collectors.toList());
+        BitSet matched = new BitSet(queries.size());
+
+        for (BitSet level : levels) {
+            // Equivalent queries have the same result, so only their representative needs to be evaluated
+            BitSet active = activeQueries(level, matched);
+            for (int i = active.nextSetBit(0); lattice != null && i >= 0; i = active.nextSetBit(i + 1)) {
+                if (!lattice.isRepresentative(i)) {
+                    active.clear(i);
+                }
+            }
+
+            for (MatchingState start : starts) {
+                evaluate(start, active, (index, matches) -> {
+                    if (matches.findAny().isPresent()) {
+                        matched.set(index);
+                        // No need to look for further matches of this query
+                        active.clear(index);
+                    }
+                });
+            }
+        }
+
+        if (lattice != null) {
+            for (int i = 0; i < queries.size(); i++) {
+                matched.set(i, matched.get(lattice.getRepresentative(i)));
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * Obtains all matching collections of references in the subject tree rooted in the given subject node for each query
+     *
+     * @param node The root node of the subject tree
+     * @return A list containing the references of each query in the same order as returned by {@link QueryNode#findReferences}
+     */
+    @PublicApi
+    public List<List<Map<String, SubjectNode>>> findReferences(SubjectNode node) {
+        List<MatchingState> starts = MatchingState.fromSubjectNode(node, MatchingContext.createShared()).collect(Collectors.toList());
+        List<List<Map<String, SubjectNode>>> result = queries.stream()
+                .<List<Map<String, SubjectNode>>>map(q -> new ArrayList<>())
+                .collect(Collectors.toList());
+        BitSet matched = new BitSet(queries.size());
+
+        for (BitSet level : levels) {
+            // Equivalent queries may still store different references, so all of them are evaluated
+            BitSet active = activeQueries(level, matched);
+            for (MatchingState start : starts) {
+                evaluate(start, active, (index, matches) -> matches.forEachOrdered(s -> result.get(index).add(s.getReferences().getData())));
+            }
+            for (int i = active.nextSetBit(0); i >= 0; i = active.nextSetBit(i + 1)) {
+                matched.set(i, !result.get(i).isEmpty());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Determines the queries of a level, which need to be evaluated
+     *
+     * @param level The positions of the queries at the level
+     * @param matched The positions of the queries known to have a match
+     * @return A new set containing the positions of all queries of the level without a failed generalization
+     */
+    private BitSet activeQueries(BitSet level, BitSet matched) {
+        BitSet active = (BitSet) level.clone();
+        for (int i = active.nextSetBit(0); lattice != null && i >= 0; i = active.nextSetBit(i + 1)) {
+            if (!lattice.parentsMatched(i, matched)) {
+                // A query cannot match if any of its generalizations failed
+                active.clear(i);
+            }
+        }
+        return active;
+    }
+
+    /**
+     * Evaluates all active queries starting from the given state
+     *
+     * @param start The initial matching state
+     * @param active The positions of the queries to evaluate
+     * @param consumer The consumer called with the position and the matches of each query for each root candidate
+     */
+    private void evaluate(MatchingState start, BitSet active, BiConsumer<Integer, Stream<MatchingState>> consumer) {
+        for (int index : fallback) {
+            if (active.get(index)) {
+                consumer.accept(index, canonical.get(index).findMatches(start));
+            }
+        }
+
+        // Candidates are visited in pre-order, so the results of each query are collected in their usual order
+        traverse(start, active, e -> consumer.accept(e.index, e.query.matchCandidate(start, e.element)));
+    }
+
+    /**
+     * Visits every subject node below the root of the given state once and passes all dispatched queries to the consumer
+     *
+     * @param start The initial matching state
+     * @param active The positions of the queries to dispatch
+     * @param consumer The consumer called for each dispatched query and candidate element
+     */
+    private void traverse(MatchingState start, BitSet active, Consumer<Dispatch> consumer) {
+        if (byType.isEmpty() || active.isEmpty()) {
+            return;
+        }
+
+        DispatchTable anyType = byType.get(null);
+        start.streamWithin().forEachOrdered(element -> {
+            SubjectNode node = element.node();
+            boolean directChild = element.getParent() == start.getElement().getParent();
+            Consumer<Entry> dispatch = entry -> {
+                if (active.get(entry.index)) {
+                    consumer.accept(new Dispatch(entry, element));
+                }
+            };
+
+            DispatchTable sameType = node.getType() != null ? byType.get(node.getType()) : null;
+            if (sameType != null) {
+                sameType.dispatch(node, directChild, dispatch);
+            }
+            if (anyType != null) {
+                anyType.dispatch(node, directChild, dispatch);
+            }
+        });
+    }
+
+    /**
+     * This class stores the queries with the same root type, grouped by a property of their root
+     */
+    private static class DispatchTable {
+
+        private final List<Entry> unkeyed = new ArrayList<>();
+        private final Map<String, Map<Object, List<Entry>>> byProperty = new TreeMap<>();
+
+        void add(Entry entry) {
+            // Use the first property with a plain value as dispatch key, others are only checked by the query itself
+            Map<String, Object> properties = entry.query.getProperties() != null ? entry.query.getProperties() : Collections.emptyMap();
+            String key = new TreeMap<>(properties).entrySet().stream()
+                    .filter(e -> isPlainValue(e.getValue()))
+                    .map(Map.Entry::getKey)
+                    .findFirst()
+                    .orElse(null);
+
+            if (key != null) {
+                byProperty.computeIfAbsent(key, k -> new HashMap<>())
+                        .computeIfAbsent(PropertyPredicate.normalize(properties.get(key)), v -> new ArrayList<>())
+                        .add(entry);
+            } else {
+                unkeyed.add(entry);
+            }
+        }
+
+        void dispatch(SubjectNode node, boolean directChild, Consumer<Entry> consumer) {
+            // Entries are kept in the order of the query set, but this order is not required for correctness
+            dispatch(unkeyed, directChild, consumer);
+            if (!byProperty.isEmpty()) {
+                Map<String, Object> properties = node.getProperties();
+                byProperty.forEach((key, values) -> {
+                    Object value = properties.get(key);
+                    if (value != null) {
+                        dispatch(values.getOrDefault(PropertyPredicate.normalize(value), Collections.emptyList()), directChild, consumer);
+                    }
+                });
+            }
+        }
+
+        private static void dispatch(List<Entry> entries, boolean directChild, Consumer<Entry> consumer) {
+            for (Entry entry : entries) {
+                if (directChild || !entry.query.isDirect()) {
+                    consumer.accept(entry);
+                }
+            }
+        }
+
+        private static boolean isPlainValue(Object value) {
+            return value instanceof String || value instanceof Number || value instanceof Boolean || value instanceof Character;
+        }
+    }
+
+    /**
+     * This class stores a compiled query together with its position in the query set
+     */
+    private static class Entry {
+
+        final int index;
+        final SingleQueryNode query;
+
+        Entry(int index, SingleQueryNode query) {
+            this.index = index;
+            this.query = query;
+        }
+    }
+
+    /**
+     * This class stores a query dispatched to a candidate element
+     */
+    private static class Dispatch {
+
+        final int index;
+        final SingleQueryNode query;
+        final LinkedSubjectNode element;
+
+        Dispatch(Entry entry, LinkedSubjectNode element) {
+            this.index = entry.index;
+            this.query = entry.query;
+            this.element = element;
+        }
+    }
+}
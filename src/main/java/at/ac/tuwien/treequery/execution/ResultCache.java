@@ -0,0 +1,219 @@
+package at.ac.tuwien.treequery.execution;
+
+import at.ac.tuwien.treequery.annotation.PublicApi;
+import at.ac.tuwien.treequery.optimizer.QueryNormalizer;
+import at.ac.tuwien.treequery.query.QueryNode;
+import at.ac.tuwien.treequery.subject.SubjectNode;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * This class caches the results of matching queries against subjects which are checked repeatedly, e.g. unchanged files.
+ * <p>
+ * Entries are keyed by a version token of the subject and the normalized query, so structurally equal queries share their entries.
+ * The token must change whenever the subject changes, e.g. a combination of the file path and its modification time.
+ * The subject is only loaded on a cache miss.
+ * <p>
+ * The cache is bounded by the number of entries and by the estimated size of the cached results in bytes.
+ * When either bound is exceeded, the least recently used entries are evicted.
+ * The estimate only covers the result lists and maps, not the subject nodes they refer to,
+ * which stay reachable as long as results referring to them are cached.
+ * <p>
+ * Instances are thread-safe. Results are computed outside of the lock, so concurrent misses for the same key may compute the
+ * same results more than once, but all of them are equal.
+ */
+@PublicApi
+public class ResultCache {
+
+    /**
+     * The estimated size of an entry without its results, i.e. the key, the entry and the linked hash map node
+     */
+    static final long ENTRY_BYTES = 96;
+
+    /**
+     * The estimated size of a result map without its references
+     */
+    static final long RESULT_BYTES = 48;
+
+    /**
+     * The estimated size of a single reference within a result map
+     */
+    static final long REFERENCE_BYTES = 40;
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final QueryNormalizer normalizer = new QueryNormalizer();
+    private final LruMap<Key, Entry> entries;
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    /**
+     * Creates a new empty cache
+     *
+     * @param maxEntries The maximum number of cached entries
+     * @param maxBytes The maximum estimated size of all cached entries in bytes
+     */
+    @PublicApi
+    public ResultCache(int maxEntries, long maxBytes) {
+        if (maxEntries < 0 || maxBytes < 0) {
+            throw new IllegalArgumentException("Bounds must not be negative");
+        }
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.entries = new LruMap<>(maxEntries, maxBytes, entry -> entry.bytes);
+    }
+
+    /**
+     * Checks whether a query matches a subject, using the cached result if available
+     *
+     * @param query The root of the query tree
+     * @param token The version token of the subject
+     * @param subject Loads the root node of the subject tree on a cache miss
+     * @return True iff there is at least one match
+     */
+    @PublicApi
+    public boolean hasMatches(QueryNode query, Object token, Supplier<? extends SubjectNode> subject) {
+        Key key = new Key(token, normalizer.normalize(query));
+        Entry entry = get(key, false);
+        if (entry != null) {
+            return entry.matches;
+        }
+
+        boolean matches = key.query.hasMatches(subject.get());
+        put(key, new Entry(matches, null));
+        return matches;
+    }
+
+    /**
+     * Finds all matches of a query in a subject, using the cached results if available
+     *
+     * @param query The root of the query tree
+     * @param token The version token of the subject
+     * @param subject Loads the root node of the subject tree on a cache miss
+     * @return An unmodifiable list of the references of all matches, like {@link QueryNode#findReferences(SubjectNode)}
+     */
+    @PublicApi
+    public List<Map<String, SubjectNode>> findReferences(QueryNode query, Object token, Supplier<? extends SubjectNode> subject) {
+        Key key = new Key(token, normalizer.normalize(query));
+        Entry entry = get(key, true);
+        if (entry != null) {
+            return entry.references;
+        }
+
+        List<Map<String, SubjectNode>> references = key.query.findReferences(subject.get()).collect(Collectors.toUnmodifiableList());
+        put(key, new Entry(!references.isEmpty(), references));
+        return references;
+    }
+
+    /**
+     * Removes all entries of a subject version, e.g. when it is known to be outdated
+     *
+     * @param token The version token of the subject
+     */
+    @PublicApi
+    public synchronized void invalidate(Object token) {
+        entries.removeIf(key -> Objects.equals(key.token, token));
+    }
+
+    /**
+     * Removes all entries, but keeps the statistics
+     */
+    @PublicApi
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Obtains a snapshot of the metrics of this cache
+     *
+     * @return The current statistics
+     */
+    @PublicApi
+    public synchronized ResultCacheStatistics getStatistics() {
+        return new ResultCacheStatistics(hitCount, missCount, evictionCount, entries.size(), entries.getWeight());
+    }
+
+    private synchronized Entry get(Key key, boolean needsReferences) {
+        Entry entry = entries.get(key);
+        if (entry != null && (entry.references != null || !needsReferences)) {
+            hitCount++;
+            return entry;
+        }
+        missCount++;
+        return null;
+    }
+
+    private synchronized void put(Key key, Entry entry) {
+        if (entry.bytes > maxBytes || maxEntries == 0) {
+            // The entry would evict everything else and still not fit
+            return;
+        }
+        Entry previous = entries.get(key);
+        if (previous != null && previous.references != null && entry.references == null) {
+            // Keep the references computed concurrently
+            return;
+        }
+        evictionCount += entries.put(key, entry);
+    }
+
+    /**
+     * This class identifies the results of a query for a subject version
+     */
+    private static class Key {
+
+        private final Object token;
+        private final QueryNode query;
+
+        Key(Object token, QueryNode query) {
+            this.token = token;
+            this.query = query;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key that = (Key) o;
+            return Objects.equals(token, that.token) && query.equals(that.query);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(token, query);
+        }
+    }
+
+    /**
+     * This class stores the result of a query for a subject version
+     */
+    private static class Entry {
+
+        private final boolean matches;
+        private final List<Map<String, SubjectNode>> references;
+        private final long bytes;
+
+        /**
+         * Creates a new entry
+         *
+         * @param matches Whether there is at least one match
+         * @param references The references of all matches, or null if only the existence of a match is known
+         */
+        Entry(boolean matches, List<Map<String, SubjectNode>> references) {
+            this.matches = matches;
+            this.references = references;
+            this.bytes = ENTRY_BYTES + (references != null
+                    ? references.stream().mapToLong(r -> RESULT_BYTES + r.size() * REFERENCE_BYTES).sum()
+                    : 0);
+        }
+    }
+}
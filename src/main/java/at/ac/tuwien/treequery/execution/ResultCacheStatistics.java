@@ -0,0 +1,95 @@
+package at.ac.tuwien.treequery.execution;
+
+import at.ac.tuwien.treequery.annotation.PublicApi;
+
+import java.util.Locale;
+
+/**
+ * This class contains a snapshot of the metrics of a result cache
+ *
+ * @see ResultCache
+ */
+@PublicApi
+public class ResultCacheStatistics {
+
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final int entryCount;
+    private final long byteSize;
+
+    ResultCacheStatistics(long hitCount, long missCount, long evictionCount, int entryCount, long byteSize) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.entryCount = entryCount;
+        this.byteSize = byteSize;
+    }
+
+    /**
+     * Get the number of lookups answered from the cache
+     *
+     * @return The total hit count
+     */
+    @PublicApi
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Get the number of lookups which needed to match the query
+     *
+     * @return The total miss count
+     */
+    @PublicApi
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Get the number of entries removed to stay within the bounds
+     *
+     * @return The total eviction count
+     */
+    @PublicApi
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Get the number of cached entries
+     *
+     * @return The current entry count
+     */
+    @PublicApi
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Get the estimated size of all cached entries
+     *
+     * @return The current size in bytes
+     */
+    @PublicApi
+    public long getByteSize() {
+        return byteSize;
+    }
+
+    /**
+     * Get the share of lookups answered from the cache
+     *
+     * @return The hit rate between 0 and 1, or 0 if there were no lookups
+     */
+    @PublicApi
+    public double getHitRate() {
+        long lookups = hitCount + missCount;
+        return lookups > 0 ? (double) hitCount / lookups : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ENGLISH, "Statistics[hits=%d, misses=%d, evictions=%d, entries=%d, bytes=%d, %.1f%% hit rate]",
+                hitCount, missCount, evictionCount, entryCount, byteSize, getHitRate() * 100);
+    }
+}
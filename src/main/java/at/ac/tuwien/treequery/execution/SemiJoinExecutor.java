@@ -0,0 +1,164 @@
+package at.ac.tuwien.treequery.execution;
+
+import at.ac.tuwien.treequery.annotation.PublicApi;
+import at.ac.tuwien.treequery.matching.LinkedSubjectNode;
+import at.ac.tuwien.treequery.matching.MatchingContext;
+import at.ac.tuwien.treequery.matching.MatchingState;
+import at.ac.tuwien.treequery.query.AllQueryNode;
+import at.ac.tuwien.treequery.query.AnyQueryNode;
+import at.ac.tuwien.treequery.query.ContainerQueryNode;
+import at.ac.tuwien.treequery.query.ExactQueryNode;
+import at.ac.tuwien.treequery.query.QueryNode;
+import at.ac.tuwien.treequery.query.SingleQueryNode;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * This strategy removes dead branches before matching a query top-down, similar to a semi-join reduction.
+ * <p>
+ * A bottom-up pass computes for each single query node the subject nodes where its subtree might match:
+ * A subject node is kept if it matches the type and properties of the query node and if each single query node
+ * required by its children has a kept node among its descendants, or among its children if the query node is direct.
+ * Children of ordered, unordered and exact containers are required, and at least one child of "any" containers.
+ * The result is a superset of the actual matches, since the order of children and the references are not checked.
+ * <p>
+ * The top-down pass then only considers kept subject nodes as candidates for single query nodes, using a candidate filter of the
+ * {@link MatchingContext}, so the results are the same and in the same order as without the reduction.
+ * Like the index of {@link PreparedSubject}, this assumes that subject nodes match independently of the references found so far.
+ *
+ * @see QueryPlanner
+ */
+@PublicApi
+public class SemiJoinExecutor implements QueryExecutor {
+
+    /**
+     * The shared instance, since all state is kept per matching run
+     */
+    @PublicApi
+    public static final SemiJoinExecutor INSTANCE = new SemiJoinExecutor();
+
+    private SemiJoinExecutor() {
+    }
+
+    @Override
+    public Stream<MatchingState> findMatches(QueryNode query, PreparedSubject subject, MatchingContext context) {
+        Reduction reduction = new Reduction(subject);
+        reduction.reduce(query);
+        MatchingContext filtered = context.withCandidateFilter(reduction::isCandidate);
+
+        if (query.getClass() != SingleQueryNode.class) {
+            return subject.getStarts(filtered).flatMap(query::findMatches);
+        }
+
+        // Only visit the kept candidates of the root instead of the whole subject tree
+        SingleQueryNode root = (SingleQueryNode) query;
+        List<MatchingState> starts = subject.getStarts(filtered).collect(Collectors.toList());
+        List<LinkedSubjectNode> roots = subject.getRoots();
+        return IntStream.range(0, starts.size()).boxed().flatMap(i -> {
+            if (roots.get(i) == null) {
+                return Stream.empty();
+            }
+            MatchingState start = starts.get(i);
+            return reduction.within(root, roots.get(i)).stream()
+                    .takeWhile(e -> !filtered.isCancelled())
+                    .flatMap(e -> root.matchCandidate(start, e));
+        });
+    }
+
+    @Override
+    public String toString() {
+        return "SemiJoin";
+    }
+
+    /**
+     * This class computes and stores the kept subject nodes of each single query node for a single matching run
+     */
+    private static class Reduction {
+
+        private final PreparedSubject subject;
+        private final Map<SingleQueryNode, List<LinkedSubjectNode>> kept = new IdentityHashMap<>();
+        private final Map<SingleQueryNode, Set<LinkedSubjectNode>> keptSets = new IdentityHashMap<>();
+        private final Map<SingleQueryNode, Set<LinkedSubjectNode>> keptParents = new IdentityHashMap<>();
+
+        Reduction(PreparedSubject subject) {
+            this.subject = subject;
+        }
+
+        /**
+         * Computes the kept subject nodes for all single query nodes of a query tree
+         *
+         * @param query The root of the query tree
+         */
+        void reduce(QueryNode query) {
+            if (query.getClass() == SingleQueryNode.class) {
+                getKept((SingleQueryNode) query);
+            } else if (query instanceof ContainerQueryNode) {
+                ((ContainerQueryNode) query).getChildren().forEach(this::reduce);
+            }
+        }
+
+        boolean isCandidate(Object query, LinkedSubjectNode element) {
+            Set<LinkedSubjectNode> set = keptSets.get(query);
+            return set == null || set.contains(element);
+        }
+
+        List<LinkedSubjectNode> within(SingleQueryNode query, LinkedSubjectNode ancestor) {
+            List<LinkedSubjectNode> descendants = subject.getDescendants(getKept(query), ancestor);
+            if (!query.isRestricted()) {
+                return descendants;
+            }
+            int depth = ancestor.getDepth();
+            return descendants.stream().filter(e -> query.isReachable(e, e.getDepth() - depth)).collect(Collectors.toList());
+        }
+
+        private List<LinkedSubjectNode> getKept(SingleQueryNode query) {
+            List<LinkedSubjectNode> result = kept.get(query);
+            if (result == null) {
+                result = subject.getCandidates(query).stream()
+                        .filter(e -> canMatch(query.getChildren(), e))
+                        .collect(Collectors.toList());
+
+                kept.put(query, result);
+                Set<LinkedSubjectNode> set = Collections.newSetFromMap(new IdentityHashMap<>());
+                Set<LinkedSubjectNode> parents = Collections.newSetFromMap(new IdentityHashMap<>());
+                for (LinkedSubjectNode element : result) {
+                    set.add(element);
+                    parents.add(element.getParent());
+                }
+                keptSets.put(query, set);
+                keptParents.put(query, parents);
+            }
+            return result;
+        }
+
+        private boolean canMatch(QueryNode query, LinkedSubjectNode element) {
+            if (query.getClass() == SingleQueryNode.class) {
+                SingleQueryNode single = (SingleQueryNode) query;
+                List<LinkedSubjectNode> candidates = getKept(single);
+                if (single.isDirect()) {
+                    return keptParents.get(single).contains(element);
+                }
+                return single.isRestricted()
+                        ? !within(single, element).isEmpty()
+                        : !subject.getDescendants(candidates, element).isEmpty();
+            }
+            if (query.getClass() == AllQueryNode.class || query.getClass() == ExactQueryNode.class) {
+                return ((ContainerQueryNode) query).getChildren().stream().allMatch(child -> canMatch(child, element));
+            }
+            if (query.getClass() == AnyQueryNode.class) {
+                AnyQueryNode any = (AnyQueryNode) query;
+                return any.isOptional() || any.getChildren().isEmpty() || any.getChildren().stream().anyMatch(child -> canMatch(child, element));
+            }
+
+            // Nothing is known about other query node types
+            return true;
+        }
+    }
+}
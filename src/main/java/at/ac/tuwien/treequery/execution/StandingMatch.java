@@ -0,0 +1,66 @@
+package at.ac.tuwien.treequery.execution;
+
+import at.ac.tuwien.treequery.annotation.PublicApi;
+import at.ac.tuwien.treequery.subject.SubjectNode;
+
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * This class represents a match of a standing query, i.e. the subject node matched by the query root and the named references
+ *
+ * @see StandingQueries
+ */
+@PublicApi
+public class StandingMatch {
+
+    private final SubjectNode node;
+    private final Map<String, SubjectNode> references;
+
+    StandingMatch(SubjectNode node, Map<String, SubjectNode> references) {
+        this.node = node;
+        this.references = references;
+    }
+
+    /**
+     * Get the subject node matched by the query root
+     *
+     * @return The matched node, or the root node of the subject if the query root is not a single query node
+     */
+    @PublicApi
+    public SubjectNode getNode() {
+        return node;
+    }
+
+    /**
+     * Get the named references of the match
+     *
+     * @return A (possibly empty) map of named references
+     */
+    @PublicApi
+    public Map<String, SubjectNode> getReferences() {
+        return references;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        StandingMatch that = (StandingMatch) o;
+        return node == that.node && references.equals(that.references);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(System.identityHashCode(node), references);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("StandingMatch[%s, references=%s]", node.getType(), references.keySet());
+    }
+}
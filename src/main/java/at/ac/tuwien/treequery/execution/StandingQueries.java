@@ -0,0 +1,378 @@
+package at.ac.tuwien.treequery.execution;
+
+import at.ac.tuwien.treequery.annotation.InternalApi;
+import at.ac.tuwien.treequery.annotation.PublicApi;
+import at.ac.tuwien.treequery.matching.LinkedSubjectNode;
+import at.ac.tuwien.treequery.matching.MatchingContext;
+import at.ac.tuwien.treequery.matching.MatchingState;
+import at.ac.tuwien.treequery.optimizer.QueryNormalizer;
+import at.ac.tuwien.treequery.query.AllQueryNode;
+import at.ac.tuwien.treequery.query.AnyQueryNode;
+import at.ac.tuwien.treequery.query.ContainerQueryNode;
+import at.ac.tuwien.treequery.query.QueryNode;
+import at.ac.tuwien.treequery.query.SingleQueryNode;
+import at.ac.tuwien.treequery.subject.BaseSubjectNode;
+import at.ac.tuwien.treequery.subject.SubjectNode;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * This class keeps the matches of registered queries up to date while a mutable subject is edited,
+ * and notifies listeners about the matches which appeared or disappeared.
+ * <p>
+ * If the root of a query is a single query node, its matches are kept per subject node matched by the root.
+ * These only depend on the subtree of the subject node and its depth, so after an edit only the ancestors of the edited subtree
+ * and the nodes of the inserted subtree are matched again, using the type index of the subject to skip nodes of other types.
+ * Only the subtree of the topmost of these nodes is wrapped for matching, below a chain of stand-ins for its ancestors.
+ * The matches within a removed subtree disappear without matching.
+ * A root container with a single child, e.g. the container of a query loaded from XML, is replaced by its normalized child,
+ * so the matches are reported per subject node, even though the container would only report one of the matches
+ * of nodes followed by the same node in pre-order if they have equal references.
+ * Other queries are matched again completely after each edit.
+ * <p>
+ * Instances are not thread-safe and must be used by the thread editing the subject.
+ */
+@PublicApi
+public class StandingQueries {
+
+    private final MutableSubject subject;
+    private final MutableSubject.EditListener editListener = this::edited;
+    private final List<Registration> registrations = new ArrayList<>();
+
+    private long evaluationCount;
+    private long linkedNodeCount;
+
+    /**
+     * Creates a new instance without queries, which observes the edits of the subject until it is closed
+     *
+     * @param subject The mutable subject
+     */
+    @PublicApi
+    public StandingQueries(MutableSubject subject) {
+        this.subject = subject;
+        subject.addListener(editListener);
+    }
+
+    /**
+     * Registers a query, whose current matches are computed immediately
+     *
+     * @param query The query to keep up to date
+     * @param listener The listener notified after each edit which changed the matches
+     * @return The registration, which provides the current matches
+     */
+    @PublicApi
+    public Registration register(QueryNode query, Listener listener) {
+        Registration registration = new Registration(query, unwrap(new QueryNormalizer().normalize(query)), listener);
+        registration.matches.putAll(evaluate(registration.root));
+        registrations.add(registration);
+        return registration;
+    }
+
+    /**
+     * Stops observing the edits of the subject, so the registrations are no longer updated
+     */
+    @PublicApi
+    public void close() {
+        subject.removeListener(editListener);
+        registrations.clear();
+    }
+
+    /**
+     * Get the number of times a query was matched at a subject node, where a query without a single root node
+     * counts once per node of the subject
+     *
+     * @return The total evaluation count
+     */
+    @InternalApi
+    public long getEvaluationCount() {
+        return evaluationCount;
+    }
+
+    /**
+     * Get the number of subject nodes wrapped for matching, i.e. the whole subject for a complete evaluation,
+     * and the candidates of an edit with their subtrees and ancestors
+     *
+     * @return The total node count
+     */
+    @InternalApi
+    public long getLinkedNodeCount() {
+        return linkedNodeCount;
+    }
+
+    private void edited(MutableSubject.Node parent, MutableSubject.Node removed, MutableSubject.Node inserted) {
+        for (Registration registration : new ArrayList<>(registrations)) {
+            registration.update(parent, removed, inserted);
+        }
+    }
+
+    /**
+     * Matches a query at all subject nodes
+     *
+     * @param query The query
+     * @return The matches grouped by the matched subject node
+     */
+    private Map<MutableSubject.Node, List<StandingMatch>> evaluate(QueryNode query) {
+        Map<MutableSubject.Node, List<StandingMatch>> matches = new HashMap<>();
+        MatchingState start = MatchingState.fromSubjectNode(subject.getRoot(), MatchingContext.create()).findFirst().orElseThrow();
+        linkedNodeCount += subject.getRoot().getSize();
+        if (!(query instanceof SingleQueryNode)) {
+            evaluationCount += subject.getRoot().getSize() - 1;
+            List<StandingMatch> result = query.findMatches(start)
+                    .map(s -> new StandingMatch(subject.getRoot(), s.getReferences().getData()))
+                    .collect(Collectors.toList());
+            if (!result.isEmpty()) {
+                matches.put(subject.getRoot(), result);
+            }
+            return matches;
+        }
+
+        SingleQueryNode single = (SingleQueryNode) query;
+        single.streamCandidates(start).forEachOrdered(e -> match(single, start, e, matches));
+        return matches;
+    }
+
+    /**
+     * Matches a single query at some subject nodes, without visiting the other nodes of the subject
+     *
+     * @param query The query
+     * @param top The topmost candidate, or the node whose subtree contains all candidates
+     * @param candidates The subject nodes within the subtree of the topmost node, sorted in pre-order
+     * @return The matches grouped by the matched subject node
+     */
+    private Map<MutableSubject.Node, List<StandingMatch>> evaluate(SingleQueryNode query, MutableSubject.Node top,
+                                                                   List<MutableSubject.Node> candidates) {
+        // The ancestors of the topmost node are replaced by stand-ins with a single child, which keep their types for barriers
+        SubjectNode root = top;
+        int depth = 0;
+        for (MutableSubject.Node ancestor = top.getParent(); ancestor != null; ancestor = ancestor.getParent()) {
+            root = new BaseSubjectNode(ancestor.getType(), ancestor.getProperties(), List.of(root));
+            depth++;
+        }
+        linkedNodeCount += depth + top.getSize();
+
+        Map<MutableSubject.Node, List<StandingMatch>> matches = new HashMap<>();
+        MatchingState start = MatchingState.fromSubjectNode(root, MatchingContext.create()).findFirst().orElseThrow();
+        // The first element of the start state is the child of the root on the chain
+        LinkedSubjectNode linkedTop = start.getElement();
+        for (int i = 1; i < depth; i++) {
+            linkedTop = linkedTop.getFirstChild();
+        }
+        for (MutableSubject.Node candidate : candidates) {
+            match(query, start, find(linkedTop, candidate), matches);
+        }
+        return matches;
+    }
+
+    private void match(SingleQueryNode query, MatchingState start, LinkedSubjectNode element,
+                       Map<MutableSubject.Node, List<StandingMatch>> matches) {
+        evaluationCount++;
+        MutableSubject.Node node = (MutableSubject.Node) element.node();
+        List<StandingMatch> result = query.matchCandidate(start, element)
+                .map(s -> new StandingMatch(node, s.getReferences().getData()))
+                .collect(Collectors.toList());
+        if (!result.isEmpty()) {
+            matches.put(node, result);
+        }
+    }
+
+    /**
+     * Finds the wrapper of a subject node by following its ancestor chain down from the wrapper of an ancestor
+     */
+    private static LinkedSubjectNode find(LinkedSubjectNode ancestor, MutableSubject.Node node) {
+        Deque<MutableSubject.Node> path = new ArrayDeque<>();
+        for (MutableSubject.Node current = node; current != ancestor.node(); current = current.getParent()) {
+            path.push(current);
+        }
+        LinkedSubjectNode element = ancestor;
+        for (MutableSubject.Node next : path) {
+            element = element.getFirstChild();
+            while (element.node() != next) {
+                element = element.getDirectNeighbor();
+            }
+        }
+        return element;
+    }
+
+    /**
+     * Replaces a root container with a single single query node by that node
+     */
+    private static QueryNode unwrap(QueryNode query) {
+        if (query instanceof AllQueryNode || query instanceof AnyQueryNode && !((AnyQueryNode) query).isOptional()) {
+            List<QueryNode> children = ((ContainerQueryNode) query).getChildren();
+            if (children.size() == 1 && children.get(0) instanceof SingleQueryNode) {
+                return children.get(0);
+            }
+        }
+        return query;
+    }
+
+    /**
+     * Get the subject nodes whose matches may have changed by an edit
+     */
+    private Set<MutableSubject.Node> getCandidates(SingleQueryNode query, MutableSubject.Node parent, MutableSubject.Node inserted) {
+        Set<MutableSubject.Node> candidates = new HashSet<>();
+        for (MutableSubject.Node ancestor = parent; ancestor.getParent() != null; ancestor = ancestor.getParent()) {
+            if (query.getType() == null || query.getType().equals(ancestor.getType())) {
+                candidates.add(ancestor);
+            }
+        }
+        if (inserted != null) {
+            if (query.getType() == null) {
+                candidates.addAll(MutableSubject.preOrder(inserted));
+            } else {
+                candidates.addAll(subject.getDescendants(query.getType(), inserted));
+                if (query.getType().equals(inserted.getType())) {
+                    candidates.add(inserted);
+                }
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * This interface is notified about changed matches of a registered query
+     */
+    @PublicApi
+    @FunctionalInterface
+    public interface Listener {
+
+        /**
+         * Called after an edit which changed the matches of the query
+         *
+         * @param registration The registration of the query
+         * @param added The new matches in pre-order of the matched nodes
+         * @param removed The matches which no longer exist
+         */
+        void matchesChanged(Registration registration, List<StandingMatch> added, List<StandingMatch> removed);
+    }
+
+    /**
+     * This class represents a registered query and its current matches
+     */
+    @PublicApi
+    public class Registration {
+
+        private final QueryNode query;
+        private final QueryNode root;
+        private final Listener listener;
+        private final Map<MutableSubject.Node, List<StandingMatch>> matches = new HashMap<>();
+
+        private Registration(QueryNode query, QueryNode root, Listener listener) {
+            this.query = query;
+            this.root = root;
+            this.listener = listener;
+        }
+
+        /**
+         * Get the registered query
+         *
+         * @return The query node
+         */
+        @PublicApi
+        public QueryNode getQuery() {
+            return query;
+        }
+
+        /**
+         * Get the query which is actually matched, i.e. the child of a root container with a single child
+         *
+         * @return The query node, which is a normalized copy of the registered one
+         */
+        @PublicApi
+        public QueryNode getMatchedQuery() {
+            return root;
+        }
+
+        /**
+         * Get the current matches
+         *
+         * @return The matches in the order returned by {@code QueryNode.findReferences} of the matched query
+         */
+        @PublicApi
+        public List<StandingMatch> getMatches() {
+            return matches.entrySet().stream()
+                    .sorted(Comparator.comparingLong(e -> e.getKey().getLabel()))
+                    .flatMap(e -> e.getValue().stream())
+                    .collect(Collectors.toList());
+        }
+
+        /**
+         * Unregisters the query, so its matches are no longer updated
+         */
+        @PublicApi
+        public void cancel() {
+            registrations.remove(this);
+        }
+
+        private void update(MutableSubject.Node parent, MutableSubject.Node removed, MutableSubject.Node inserted) {
+            List<StandingMatch> addedMatches = new ArrayList<>();
+            List<StandingMatch> removedMatches = new ArrayList<>();
+            if (removed != null) {
+                for (MutableSubject.Node node : MutableSubject.preOrder(removed)) {
+                    removedMatches.addAll(matches.getOrDefault(node, Collections.emptyList()));
+                    matches.remove(node);
+                }
+            }
+
+            if (root instanceof SingleQueryNode) {
+                Set<MutableSubject.Node> candidates = getCandidates((SingleQueryNode) root, parent, inserted);
+                if (!candidates.isEmpty()) {
+                    // The first candidate in pre-order is the topmost ancestor, unless all candidates are within the inserted subtree
+                    List<MutableSubject.Node> sorted = candidates.stream()
+                            .sorted(Comparator.comparingLong(MutableSubject.Node::getLabel))
+                            .collect(Collectors.toList());
+                    MutableSubject.Node first = sorted.get(0);
+                    MutableSubject.Node top = inserted != null && (first == inserted || subject.isAncestor(inserted, first))
+                            ? inserted
+                            : first;
+                    Map<MutableSubject.Node, List<StandingMatch>> result = evaluate((SingleQueryNode) root, top, sorted);
+                    sorted.forEach(node -> replace(node, result.getOrDefault(node, Collections.emptyList()),
+                            addedMatches, removedMatches));
+                }
+            } else {
+                Map<MutableSubject.Node, List<StandingMatch>> result = evaluate(root);
+                replace(subject.getRoot(), result.getOrDefault(subject.getRoot(), Collections.emptyList()),
+                        addedMatches, removedMatches);
+            }
+
+            if (!addedMatches.isEmpty() || !removedMatches.isEmpty()) {
+                listener.matchesChanged(this, addedMatches, removedMatches);
+            }
+        }
+
+        private void replace(MutableSubject.Node node, List<StandingMatch> result, List<StandingMatch> added, List<StandingMatch> removed) {
+            List<StandingMatch> previous = matches.getOrDefault(node, Collections.emptyList());
+            if (result.isEmpty()) {
+                matches.remove(node);
+            } else {
+                matches.put(node, result);
+            }
+
+            // Matches of queries without a single root node may be equal, so they are compared as multisets
+            Map<StandingMatch, Integer> remaining = new HashMap<>();
+            previous.forEach(m -> remaining.merge(m, 1, Integer::sum));
+            for (StandingMatch match : result) {
+                if (remaining.merge(match, -1, Integer::sum) < 0) {
+                    remaining.remove(match);
+                    added.add(match);
+                }
+            }
+            for (StandingMatch match : previous) {
+                if (remaining.getOrDefault(match, 0) > 0) {
+                    remaining.merge(match, -1, Integer::sum);
+                    removed.add(match);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package at.ac.tuwien.treequery.execution;
+
+import at.ac.tuwien.treequery.annotation.InternalApi;
+import at.ac.tuwien.treequery.subject.SubjectNode;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * This class represents the content hash of a subject subtree, computed like a Merkle tree from the hashes of the children.
+ * <p>
+ * The hash covers the type and the plain property values of the root, including the classes of the values,
+ * and the hashes of the children in order. It is derived from SHA-256, so equal hashes can be assumed to stem from identical subtrees.
+ */
+@InternalApi
+public final class SubtreeHash {
+
+    private final long high;
+    private final long low;
+
+    private SubtreeHash(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    /**
+     * Creates a new digest for computing hashes, which is not thread-safe
+     *
+     * @return A new SHA-256 digest
+     */
+    static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Computes the hash of a subtree
+     *
+     * @param digest The digest to use, which is reset
+     * @param node The root node of the subtree
+     * @param children The hashes of the children in order
+     * @return The hash, or null if a property value is not plain, so its content is unknown
+     */
+    static SubtreeHash compute(MessageDigest digest, SubjectNode node, List<SubtreeHash> children) {
+        digest.reset();
+        update(digest, node.getType());
+        Map<String, Object> properties = new TreeMap<>(node.getProperties());
+        digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(properties.size()).array());
+        for (Map.Entry<String, Object> property : properties.entrySet()) {
+            if (!PreparedSubject.isPlainValue(property.getValue())) {
+                return null;
+            }
+            update(digest, property.getKey());
+            update(digest, property.getValue().getClass().getName());
+            update(digest, property.getValue().toString());
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + children.size() * 2 * Long.BYTES).putInt(children.size());
+        for (SubtreeHash child : children) {
+            buffer.putLong(child.high).putLong(child.low);
+        }
+        digest.update(buffer.array());
+
+        ByteBuffer result = ByteBuffer.wrap(digest.digest());
+        return new SubtreeHash(result.getLong(), result.getLong());
+    }
+
+    private static void update(MessageDigest digest, String text) {
+        // Prefix each string with its length, so the boundaries between strings are unambiguous
+        byte[] bytes = text != null ? text.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(text != null ? bytes.length : -1).array());
+        digest.update(bytes);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        SubtreeHash that = (SubtreeHash) o;
+        return high == that.high && low == that.low;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(high);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%016x%016x", high, low);
+    }
+}
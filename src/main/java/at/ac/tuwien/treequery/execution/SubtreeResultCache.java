@@ -0,0 +1,170 @@
+package at.ac.tuwien.treequery.execution;
+
+import at.ac.tuwien.treequery.annotation.PublicApi;
+import at.ac.tuwien.treequery.matching.LinkedSubjectNode;
+import at.ac.tuwien.treequery.matching.MatchingContext;
+import at.ac.tuwien.treequery.matching.SubtreeResults;
+
+import java.util.Objects;
+
+/**
+ * This class caches whether reference-free sub-queries matched within subject subtrees, keyed by the content hash of the subtree.
+ * <p>
+ * Unlike {@link MatchingContext#withSubtreeMemo()}, which remembers results per subject node instance, the results are reused
+ * for every subtree with the same content, e.g. when a file is parsed and prepared again after a small edit,
+ * so only the sub-queries within the changed subtrees are evaluated again.
+ * The sub-queries are compared structurally, so equal queries created again also reuse the results.
+ * Like the index of {@link PreparedSubject}, this assumes that subject nodes match independently of the references found so far,
+ * and that nodes with equal types and plain property values match alike, like {@link at.ac.tuwien.treequery.subject.BaseSubjectNode}.
+ * Subtrees containing other property values are not cached.
+ * <p>
+ * The cache is bounded by the number of entries and evicts the least recently used ones.
+ * A shared instance is provided for the whole process. Instances are thread-safe.
+ */
+@PublicApi
+public class SubtreeResultCache {
+
+    /**
+     * The number of entries of the shared instance
+     */
+    private static final int SHARED_ENTRIES = 1 << 20;
+
+    private static final SubtreeResultCache SHARED = new SubtreeResultCache(SHARED_ENTRIES);
+
+    private final LruMap<Key, Boolean> entries;
+
+    private long hitCount;
+    private long missCount;
+
+    /**
+     * Creates a new empty cache
+     *
+     * @param maxEntries The maximum number of cached sub-query results
+     */
+    @PublicApi
+    public SubtreeResultCache(int maxEntries) {
+        if (maxEntries < 0) {
+            throw new IllegalArgumentException("Bound must not be negative");
+        }
+        this.entries = new LruMap<>(maxEntries, Long.MAX_VALUE, result -> 0);
+    }
+
+    /**
+     * Get the cache shared by the whole process
+     *
+     * @return The shared instance
+     */
+    @PublicApi
+    public static SubtreeResultCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Creates a context for matching a prepared subject, which uses and fills this cache
+     *
+     * @param context The context whose other settings are kept
+     * @param subject The prepared subject, which computes the content hashes
+     * @return A new, not cancelled context instance
+     */
+    @PublicApi
+    public MatchingContext attach(MatchingContext context, PreparedSubject subject) {
+        return context.withSubtreeResults(new SubtreeResults() {
+            @Override
+            public Boolean get(Object query, LinkedSubjectNode element) {
+                SubtreeHash hash = subject.getHash(element);
+                return hash != null ? SubtreeResultCache.this.get(new Key(query, hash)) : null;
+            }
+
+            @Override
+            public void put(Object query, LinkedSubjectNode element, boolean result) {
+                SubtreeHash hash = subject.getHash(element);
+                if (hash != null) {
+                    SubtreeResultCache.this.put(new Key(query, hash), result);
+                }
+            }
+        });
+    }
+
+    /**
+     * Get the number of cached sub-query results
+     *
+     * @return The current entry count
+     */
+    @PublicApi
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Get the number of lookups answered from the cache
+     *
+     * @return The total hit count
+     */
+    @PublicApi
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Get the number of lookups which needed to match the sub-query
+     *
+     * @return The total miss count
+     */
+    @PublicApi
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Removes all entries, but keeps the statistics
+     */
+    @PublicApi
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    private synchronized Boolean get(Key key) {
+        Boolean result = entries.get(key);
+        if (result != null) {
+            hitCount++;
+        } else {
+            missCount++;
+        }
+        return result;
+    }
+
+    private synchronized void put(Key key, boolean result) {
+        entries.put(key, result);
+    }
+
+    /**
+     * This class identifies the result of a sub-query, which is compared structurally, for a subtree content
+     */
+    private static class Key {
+
+        private final Object query;
+        private final SubtreeHash hash;
+
+        Key(Object query, SubtreeHash hash) {
+            this.query = query;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key that = (Key) o;
+            return hash.equals(that.hash) && query.equals(that.query);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(query, hash);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package at.ac.tuwien.treequery.execution;
+
+import at.ac.tuwien.treequery.annotation.PublicApi;
+import at.ac.tuwien.treequery.matching.MatchingContext;
+import at.ac.tuwien.treequery.matching.MatchingState;
+import at.ac.tuwien.treequery.query.QueryNode;
+
+import java.util.stream.Stream;
+
+/**
+ * This strategy matches a query from the root of the subject tree downwards, i.e. every subject node is a candidate for the query root.
+ * It only reuses the linked subject tree of the prepared subject.
+ */
+@PublicApi
+public class TopDownExecutor implements QueryExecutor {
+
+    /**
+     * The shared instance, since this strategy has no state
+     */
+    @PublicApi
+    public static final TopDownExecutor INSTANCE = new TopDownExecutor();
+
+    private TopDownExecutor() {
+    }
+
+    @Override
+    public Stream<MatchingState> findMatches(QueryNode query, PreparedSubject subject, MatchingContext context) {
+        return subject.getStarts(context).flatMap(query::findMatches);
+    }
+
+    @Override
+    public String toString() {
+        return "TopDown";
+    }
+}
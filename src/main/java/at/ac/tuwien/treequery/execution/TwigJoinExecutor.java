@@ -0,0 +1,240 @@
+package at.ac.tuwien.treequery.execution;
+
+import at.ac.tuwien.treequery.annotation.PublicApi;
+import at.ac.tuwien.treequery.matching.LinkedSubjectNode;
+import at.ac.tuwien.treequery.matching.MatchingContext;
+import at.ac.tuwien.treequery.matching.MatchingState;
+import at.ac.tuwien.treequery.matching.NodeReferences;
+import at.ac.tuwien.treequery.query.AllQueryNode;
+import at.ac.tuwien.treequery.query.QueryNode;
+import at.ac.tuwien.treequery.query.SingleQueryNode;
+import at.ac.tuwien.treequery.subject.SubjectNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * This strategy joins the posting lists of all single query nodes of a twig query using the pre-order intervals of the subject nodes.
+ * <p>
+ * Twig queries consist of single query nodes only, whose children are ordered or unordered containers of single query nodes,
+ * and use each reference name at most once.
+ * For each pair of a single query node and a subject node matching it, the distinct references of the subtree are computed once
+ * and shared by all ancestors, instead of matching the subtree again for each candidate of each ancestor query node.
+ * The descendants of a subject node are looked up as an interval of the posting list of a child query node.
+ * Since the references of different children never overlap, combining the distinct results of the children yields distinct results,
+ * so the intermediate results are bounded by the size of the posting lists and the output.
+ * <p>
+ * The results are combined in the same way as by the container query nodes, so they are the same and in the same order
+ * as when matching top-down. Like the index of {@link PreparedSubject}, this assumes that subject nodes match independently of
+ * the references found so far, like {@link at.ac.tuwien.treequery.subject.BaseSubjectNode} does.
+ * Other queries are matched top-down.
+ *
+ * @see QueryPlanner
+ */
+@PublicApi
+public class TwigJoinExecutor implements QueryExecutor {
+
+    /**
+     * The shared instance, since all state is kept per matching run
+     */
+    @PublicApi
+    public static final TwigJoinExecutor INSTANCE = new TwigJoinExecutor();
+
+    /**
+     * The position after the last child of a subject node
+     */
+    private static final int END = Integer.MAX_VALUE;
+
+    private TwigJoinExecutor() {
+    }
+
+    /**
+     * Checks whether a query is a twig query which can be matched by this strategy
+     *
+     * @param query The root of the query tree
+     * @return True iff the query only consists of single query nodes and ordered or unordered containers, without repeated references
+     */
+    @PublicApi
+    public static boolean supports(QueryNode query) {
+        return isTwig(query, new HashSet<>());
+    }
+
+    private static boolean isTwig(QueryNode query, Set<String> references) {
+        if (query.getClass() != SingleQueryNode.class) {
+            return false;
+        }
+        SingleQueryNode single = (SingleQueryNode) query;
+        if (single.getReference() != null && !references.add(single.getReference())) {
+            // Repeated references would overwrite each other
+            return false;
+        }
+        return single.getChildren().getClass() == AllQueryNode.class
+                && ((AllQueryNode) single.getChildren()).getChildren().stream().allMatch(child -> isTwig(child, references));
+    }
+
+    @Override
+    public Stream<MatchingState> findMatches(QueryNode query, PreparedSubject subject, MatchingContext context) {
+        if (!supports(query)) {
+            return TopDownExecutor.INSTANCE.findMatches(query, subject, context);
+        }
+
+        SingleQueryNode root = (SingleQueryNode) query;
+        Join join = new Join(subject);
+        List<MatchingState> starts = subject.getStarts(context).collect(Collectors.toList());
+        return IntStream.range(0, starts.size()).boxed().flatMap(i -> {
+            LinkedSubjectNode subjectRoot = subject.getRoots().get(i);
+            if (subjectRoot == null) {
+                return Stream.empty();
+            }
+            MatchingState start = starts.get(i);
+            return join.within(root, subjectRoot).stream()
+                    .takeWhile(e -> !context.isCancelled())
+                    .flatMap(e -> join.bindings(root, e).stream().map(references -> start.neighborOf(e).withReferences(references)));
+        });
+    }
+
+    @Override
+    public String toString() {
+        return "TwigJoin";
+    }
+
+    /**
+     * This class stores the posting lists and results of a single matching run
+     */
+    private static class Join {
+
+        private final PreparedSubject subject;
+        private final Map<SingleQueryNode, List<LinkedSubjectNode>> postings = new IdentityHashMap<>();
+        private final Map<SingleQueryNode, Map<LinkedSubjectNode, List<NodeReferences>>> results = new IdentityHashMap<>();
+
+        Join(PreparedSubject subject) {
+            this.subject = subject;
+        }
+
+        /**
+         * Obtains the candidates of a query node below a subject node
+         *
+         * @param query The single query node
+         * @param ancestor The subject node matched by the parent query node, or the root of the subject tree
+         * @return The subject nodes matching the query node in pre-order
+         */
+        List<LinkedSubjectNode> within(SingleQueryNode query, LinkedSubjectNode ancestor) {
+            List<LinkedSubjectNode> descendants = subject.getDescendants(getPosting(query), ancestor);
+            if (!query.isRestricted()) {
+                return descendants;
+            }
+            int depth = ancestor.getDepth();
+            return descendants.stream().filter(e -> query.isReachable(e, e.getDepth() - depth)).collect(Collectors.toList());
+        }
+
+        /**
+         * Obtains the distinct references of all matches of a query node at a subject node
+         *
+         * @param query The single query node
+         * @param element The subject node matching the query node
+         * @return The references of the query subtree in the order of top-down matching
+         */
+        List<NodeReferences> bindings(SingleQueryNode query, LinkedSubjectNode element) {
+            Map<LinkedSubjectNode, List<NodeReferences>> cache = results.computeIfAbsent(query, q -> new IdentityHashMap<>());
+            List<NodeReferences> result = cache.get(element);
+            if (result == null) {
+                result = join(query, element);
+                cache.put(element, result);
+            }
+            return result;
+        }
+
+        private List<NodeReferences> join(SingleQueryNode query, LinkedSubjectNode element) {
+            AllQueryNode children = (AllQueryNode) query.getChildren();
+            int end = subject.getEnd(element);
+            int firstChild = subject.getIndex(element) + 1 < end ? subject.getIndex(element) + 1 : END;
+
+            // Combine the children in the same way as the container, but using positions instead of subject nodes
+            List<Entry> states = List.of(new Entry(firstChild, NodeReferences.EMPTY.withReference(query.getReference(), element.node())));
+            for (QueryNode child : children.getChildren()) {
+                List<Entry> sequence = sequence((SingleQueryNode) child, element, end);
+                Set<Entry> next = new LinkedHashSet<>();
+                for (Entry state : states) {
+                    for (Entry entry : sequence) {
+                        if (!children.isOrdered()) {
+                            next.add(new Entry(Math.max(state.position, entry.position), merge(state.references, entry.references)));
+                        } else if (entry.position > state.position) {
+                            next.add(new Entry(entry.position, merge(state.references, entry.references)));
+                        }
+                    }
+                }
+                if (next.isEmpty()) {
+                    return Collections.emptyList();
+                }
+                states = new ArrayList<>(next);
+            }
+
+            // The single query node only keeps the distinct references
+            return List.copyOf(states.stream().map(state -> state.references).collect(Collectors.toCollection(LinkedHashSet::new)));
+        }
+
+        private List<Entry> sequence(SingleQueryNode query, LinkedSubjectNode ancestor, int end) {
+            Set<Entry> sequence = new LinkedHashSet<>();
+            for (LinkedSubjectNode element : within(query, ancestor)) {
+                // Matching continues after the subtree of the matched node, or at the end of the ancestor
+                int position = subject.getEnd(element) < end ? subject.getEnd(element) : END;
+                for (NodeReferences references : bindings(query, element)) {
+                    sequence.add(new Entry(position, references));
+                }
+            }
+            return new ArrayList<>(sequence);
+        }
+
+        private List<LinkedSubjectNode> getPosting(SingleQueryNode query) {
+            return postings.computeIfAbsent(query, subject::getCandidates);
+        }
+
+        private static NodeReferences merge(NodeReferences references, NodeReferences other) {
+            for (Map.Entry<String, SubjectNode> reference : other.getData().entrySet()) {
+                references = references.withReference(reference.getKey(), reference.getValue());
+            }
+            return references;
+        }
+    }
+
+    /**
+     * This class stores a partial result: The position where matching continues, together with the references found so far
+     */
+    private static class Entry {
+
+        private final int position;
+        private final NodeReferences references;
+
+        Entry(int position, NodeReferences references) {
+            this.position = position;
+            this.references = references;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Entry that = (Entry) o;
+            return position == that.position && references.equals(that.references);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(position, references);
+        }
+    }
+}
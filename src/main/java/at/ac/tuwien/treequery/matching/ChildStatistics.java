@@ -0,0 +1,102 @@
+package at.ac.tuwien.treequery.matching;
+
+import at.ac.tuwien.treequery.annotation.InternalApi;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+
+/**
+ * This class tracks how often the children of a container pass or fail and how long they take to evaluate.
+ * <p>
+ * It is used for adaptively ordering the evaluation of independent children, similar to adaptive join ordering:
+ * Children failing often at low cost are evaluated first, so the container fails as early as possible for later candidates.
+ * <p>
+ * This class should not be used by third-party code directly.
+ */
+@InternalApi
+public class ChildStatistics {
+
+    /**
+     * The number of recorded evaluations after which the order is updated
+     */
+    private static final int UPDATE_INTERVAL = 16;
+
+    private final long[] evaluations;
+    private final long[] failures;
+    private final long[] costs;
+    private int[] order;
+    private int recordsSinceUpdate;
+
+    /**
+     * Creates a new instance for a container
+     *
+     * @param size The number of children of the container
+     */
+    ChildStatistics(int size) {
+        this.evaluations = new long[size];
+        this.failures = new long[size];
+        this.costs = new long[size];
+        this.order = IntStream.range(0, size).toArray();
+    }
+
+    /**
+     * Get the order in which the children should be evaluated
+     *
+     * @return An array of child indexes, which must not be modified
+     */
+    public synchronized int[] getOrder() {
+        return order;
+    }
+
+    /**
+     * Records the evaluation of a child
+     *
+     * @param index The index of the child
+     * @param passed Whether the child had a match
+     * @param cost The time spent for evaluating the child in nanoseconds
+     */
+    public synchronized void record(int index, boolean passed, long cost) {
+        evaluations[index]++;
+        costs[index] += cost;
+        if (!passed) {
+            failures[index]++;
+        }
+
+        if (++recordsSinceUpdate >= UPDATE_INTERVAL || !passed) {
+            // Sort by expected cost per failure, so children without any evaluation so far are explored first
+            recordsSinceUpdate = 0;
+            order = Arrays.stream(order).boxed()
+                    .sorted(Comparator.comparingDouble(this::rank))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+        }
+    }
+
+    /**
+     * Get the number of evaluations of a child
+     *
+     * @param index The index of the child
+     * @return The number of recorded evaluations
+     */
+    public synchronized long getEvaluations(int index) {
+        return evaluations[index];
+    }
+
+    /**
+     * Get the number of failed evaluations of a child
+     *
+     * @param index The index of the child
+     * @return The number of recorded evaluations without a match
+     */
+    public synchronized long getFailures(int index) {
+        return failures[index];
+    }
+
+    private double rank(int index) {
+        // Use add-one smoothing, so children with few evaluations are not ruled out early
+        double failureRate = (failures[index] + 1.0) / (evaluations[index] + 2.0);
+        double cost = (costs[index] + 1.0) / (evaluations[index] + 1.0);
+        return cost / failureRate;
+    }
+}
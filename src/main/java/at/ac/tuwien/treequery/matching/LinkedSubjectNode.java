@@ -6,6 +6,7 @@ import at.ac.tuwien.treequery.subject.SubjectNode;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
@@ -13,6 +14,9 @@ import java.util.stream.Stream;
 /**
  * This class wraps subject nodes in a linked structure to allow iterating along the tree
  * <p>
+ * The children of a node are wrapped when they are first visited, so only the visited part of a subject tree is linked.
+ * Each child is wrapped exactly once, even if the tree is iterated by multiple threads.
+ * <p>
  * This class should not be used by third-party code directly.
  */
 @InternalApi
@@ -21,7 +25,7 @@ public class LinkedSubjectNode implements Comparable<LinkedSubjectNode> {
     private final SubjectNode node;
     private final int[] path;
     private final LinkedSubjectNode parent;
-    private final List<LinkedSubjectNode> children;
+    private volatile List<LinkedSubjectNode> children;
 
     /**
      * Wraps the root node of a subject tree
@@ -50,14 +54,26 @@ public class LinkedSubjectNode implements Comparable<LinkedSubjectNode> {
         } else {
             path = new int[0];
         }
+    }
 
-        // Recursively create linked nodes for the children
-        List<SubjectNode> children = node.getChildren().stream()
-                .flatMap(SubjectNode::getMatchingTargets)
-                .collect(Collectors.toList());
-        this.children = IntStream.range(0, children.size())
-                .mapToObj(i -> new LinkedSubjectNode(children.get(i), this, i))
-                .collect(Collectors.toList());
+    private List<LinkedSubjectNode> getChildren() {
+        List<LinkedSubjectNode> result = children;
+        if (result == null) {
+            synchronized (this) {
+                result = children;
+                if (result == null) {
+                    // Create linked nodes for the children, which link their own children when they are visited
+                    List<SubjectNode> targets = node.getChildren().stream()
+                            .flatMap(SubjectNode::getMatchingTargets)
+                            .collect(Collectors.toList());
+                    result = IntStream.range(0, targets.size())
+                            .mapToObj(i -> new LinkedSubjectNode(targets.get(i), this, i))
+                            .collect(Collectors.toUnmodifiableList());
+                    children = result;
+                }
+            }
+        }
+        return result;
     }
 
     /**
@@ -69,6 +85,24 @@ public class LinkedSubjectNode implements Comparable<LinkedSubjectNode> {
         return node;
     }
 
+    /**
+     * Get the parent of this node
+     *
+     * @return The parent, or null if this is the root node
+     */
+    public LinkedSubjectNode getParent() {
+        return parent;
+    }
+
+    /**
+     * Get the depth of this node
+     *
+     * @return The number of ancestors, i.e. 0 for the root node
+     */
+    public int getDepth() {
+        return path.length;
+    }
+
     /**
      * Get a stream of nodes within a given ancestor, starting at this node
      *
@@ -79,6 +113,17 @@ public class LinkedSubjectNode implements Comparable<LinkedSubjectNode> {
         return Stream.iterate(this, Objects::nonNull, e -> e.getNext(ancestor));
     }
 
+    /**
+     * Get a stream of nodes within a given ancestor, starting at this node, which only descends into some of the nodes
+     *
+     * @param ancestor The ancestor
+     * @param descend Decides whether the children of a node are visited, or its whole subtree is skipped
+     * @return A stream of ordered nodes within (but excluding) the ancestor
+     */
+    public Stream<LinkedSubjectNode> within(LinkedSubjectNode ancestor, Predicate<LinkedSubjectNode> descend) {
+        return Stream.iterate(this, Objects::nonNull, e -> descend.test(e) ? e.getNext(ancestor) : e.getNeighborWithin(ancestor));
+    }
+
     /**
      * Get a stream of neighbors, starting at this node
      *
@@ -88,7 +133,7 @@ public class LinkedSubjectNode implements Comparable<LinkedSubjectNode> {
         if (parent == null) {
             return Stream.of(this);
         }
-        return parent.children.stream().skip(path[path.length - 1]);
+        return parent.getChildren().stream().skip(path[path.length - 1]);
     }
 
     /**
@@ -97,6 +142,7 @@ public class LinkedSubjectNode implements Comparable<LinkedSubjectNode> {
      * @return The first child, or null if no children exist
      */
     public LinkedSubjectNode getFirstChild() {
+        List<LinkedSubjectNode> children = getChildren();
         return !children.isEmpty() ? children.get(0) : null;
     }
 
@@ -153,7 +199,8 @@ public class LinkedSubjectNode implements Comparable<LinkedSubjectNode> {
 
         // Find the next child in the parent node
         int index = path[path.length - 1] + 1;
-        return parent.children.size() > index ? parent.children.get(index) : null;
+        List<LinkedSubjectNode> siblings = parent.getChildren();
+        return siblings.size() > index ? siblings.get(index) : null;
     }
 
     /**
@@ -164,6 +211,7 @@ public class LinkedSubjectNode implements Comparable<LinkedSubjectNode> {
      */
     private LinkedSubjectNode getNext(LinkedSubjectNode ancestor) {
         // Use the first child if it exists, or move up the tree to find a neighbor
+        List<LinkedSubjectNode> children = getChildren();
         return children.isEmpty() ? getNeighborWithin(ancestor) : children.get(0);
     }
 
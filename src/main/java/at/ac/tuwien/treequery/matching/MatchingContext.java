@@ -0,0 +1,383 @@
+package at.ac.tuwien.treequery.matching;
+
+import at.ac.tuwien.treequery.annotation.InternalApi;
+import at.ac.tuwien.treequery.annotation.PublicApi;
+import at.ac.tuwien.treequery.subject.SubjectNode;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.BiPredicate;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * This class contains the state shared by all matching states of a single matching run.
+ * <p>
+ * A context allows a running matching process to be cancelled cooperatively:
+ * Once a context is cancelled, query nodes stop considering further candidates, so all streams derived from it end early.
+ * <p>
+ * If an executor is set, container query nodes may evaluate independent child queries concurrently on the executor.
+ * Child queries running on the executor do not distribute their work any further,
+ * so a bounded executor cannot be exhausted by nested containers waiting for each other.
+ * <p>
+ * A shared context remembers the results of each sub-query for each matching state,
+ * so identical sub-queries of different queries are evaluated only once when using the same context.
+ * Query nodes are compared by identity, so the queries should be canonicalized before.
+ * <p>
+ * A context with a subtree memo remembers whether a reference-free sub-query matched within a subject node, per subject node instance,
+ * so subtrees shared by a compressed subject are only evaluated once. Other stores for these results, e.g. keyed by the content of
+ * the subtrees, may be provided as {@link SubtreeResults}.
+ * <p>
+ * A context with adaptive order records how often the children of unordered containers fail and how long they take,
+ * so children likely to fail cheaply are checked first for later candidates. The order of the results is not affected.
+ * <p>
+ * Contexts are safe to use from multiple threads, except for shared contexts, which must be used by a single thread only.
+ *
+ * @see at.ac.tuwien.treequery.optimizer.QueryCanonicalizer
+ */
+@PublicApi
+public class MatchingContext {
+
+    private final MatchingContext parent;
+    private final Executor executor;
+    private final Map<SharedKey, StreamCache<MatchingState>> sharedResults;
+    private final Map<Object, ChildStatistics> childStatistics;
+    private final BiPredicate<Object, LinkedSubjectNode> candidateFilter;
+    private final SubtreeResults subtreeResults;
+    private volatile boolean cancelled;
+
+    private MatchingContext(MatchingContext parent, Executor executor, Map<SharedKey, StreamCache<MatchingState>> sharedResults,
+            Map<Object, ChildStatistics> childStatistics, BiPredicate<Object, LinkedSubjectNode> candidateFilter,
+            SubtreeResults subtreeResults) {
+        this.parent = parent;
+        this.executor = executor;
+        this.sharedResults = sharedResults;
+        this.childStatistics = childStatistics;
+        this.candidateFilter = candidateFilter;
+        this.subtreeResults = subtreeResults;
+    }
+
+    /**
+     * Creates a new context for a sequential matching run
+     *
+     * @return A new, not cancelled context instance
+     */
+    @PublicApi
+    public static MatchingContext create() {
+        return new MatchingContext(null, null, null, null, null, null);
+    }
+
+    /**
+     * Creates a new context for a sequential matching run, which shares the results of sub-queries between all queries using it
+     *
+     * @return A new, not cancelled context instance
+     */
+    @PublicApi
+    public static MatchingContext createShared() {
+        return new MatchingContext(null, null, new HashMap<>(), null, null, null);
+    }
+
+    /**
+     * Creates a new context for a matching run, which evaluates independent child queries concurrently
+     *
+     * @param executor The executor used for running child queries
+     * @return A new, not cancelled context instance
+     */
+    @PublicApi
+    public static MatchingContext create(Executor executor) {
+        return new MatchingContext(null, executor, null, null, null, null);
+    }
+
+    /**
+     * Creates a child context, which can be cancelled independently but is also cancelled with this context
+     *
+     * @return A new context instance using the same executor
+     */
+    @InternalApi
+    public MatchingContext createChild() {
+        return createChild(executor);
+    }
+
+    /**
+     * Creates a new context with the same settings, which also adapts the evaluation order of independent children of containers.
+     * <p>
+     * The context tracks how often each child of an unordered container fails and how long it takes,
+     * and evaluates the children failing most cheaply first for later candidates.
+     * The results and their order are not affected.
+     * The statistics are kept as long as the context is used, so a context may be reused for matching similar subjects.
+     *
+     * @return A new, not cancelled context instance
+     */
+    @PublicApi
+    public MatchingContext withAdaptiveOrder() {
+        return new MatchingContext(parent, executor, sharedResults, new IdentityHashMap<>(), candidateFilter, subtreeResults);
+    }
+
+    /**
+     * Creates a new context with the same settings, which also remembers whether reference-free sub-queries matched within a subject node.
+     * <p>
+     * The results are remembered per query node and subject node instance, so subtrees shared by a subject compressed with
+     * {@link at.ac.tuwien.treequery.subject.SubjectDag} are only evaluated once, no matter how often they occur.
+     * Like the index of prepared subjects, this assumes that subject nodes match independently of the references found so far.
+     * The memo is kept as long as the context is used, so a context may be reused for matching subjects sharing the same instances.
+     *
+     * @return A new, not cancelled context instance
+     */
+    @PublicApi
+    public MatchingContext withSubtreeMemo() {
+        return withSubtreeResults(new SubtreeMemo());
+    }
+
+    /**
+     * Creates a new context with the same settings, which looks up and stores whether reference-free sub-queries matched within a
+     * subject node in the given store
+     *
+     * @param subtreeResults The thread-safe store for the results
+     * @return A new, not cancelled context instance
+     */
+    @InternalApi
+    public MatchingContext withSubtreeResults(SubtreeResults subtreeResults) {
+        return new MatchingContext(parent, executor, sharedResults, childStatistics, candidateFilter, subtreeResults);
+    }
+
+    /**
+     * Creates a child context, which only considers the subject nodes accepted by a filter as candidates for single query nodes.
+     * The filter must accept all subject nodes where a single query node can have a match, so the results are not affected.
+     * Like for {@link #createChild(Executor)}, shared results are only passed on by sequential contexts.
+     *
+     * @param candidateFilter A thread-safe predicate accepting the query node and the candidate subject node
+     * @return A new context instance, which is also cancelled with this context
+     */
+    @InternalApi
+    public MatchingContext withCandidateFilter(BiPredicate<Object, LinkedSubjectNode> candidateFilter) {
+        return new MatchingContext(this, executor, sequentialResults(executor), childStatistics, candidateFilter, subtreeResults);
+    }
+
+    /**
+     * Creates a child context, which can be cancelled independently but is also cancelled with this context.
+     * Shared results are only passed on from sequential to sequential child contexts, since they must not be used by multiple threads.
+     *
+     * @param executor The executor for the child context, or null to match sequentially
+     * @return A new context instance
+     */
+    @InternalApi
+    public MatchingContext createChild(Executor executor) {
+        return new MatchingContext(this, executor, sequentialResults(executor), childStatistics, candidateFilter, subtreeResults);
+    }
+
+    private Map<SharedKey, StreamCache<MatchingState>> sequentialResults(Executor executor) {
+        // Children of a concurrent context run on multiple threads, even if they do not distribute their work any further
+        return this.executor == null && executor == null ? sharedResults : null;
+    }
+
+    /**
+     * Checks whether a subject node needs to be considered as candidate for a single query node
+     *
+     * @param query The single query node
+     * @param element The candidate subject node
+     * @return False if the query node cannot match the subject node
+     */
+    @InternalApi
+    public boolean isCandidate(Object query, LinkedSubjectNode element) {
+        return candidateFilter == null || candidateFilter.test(query, element);
+    }
+
+    /**
+     * Get the executor for running independent child queries concurrently
+     *
+     * @return The executor, or null if matching should be sequential
+     */
+    @InternalApi
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Checks whether this context shares the results of sub-queries
+     *
+     * @return True iff this context was created by {@link #createShared()} or derived from such a context
+     */
+    @PublicApi
+    public boolean isShared() {
+        return sharedResults != null;
+    }
+
+    /**
+     * Obtains the results of a sub-query, which are only calculated once per query node and start state in a shared context
+     *
+     * @param query The query node, which is compared by identity
+     * @param start The matching state before reaching the query node
+     * @param matcher The function executing the matching process of the query node
+     * @return A stream of matching states after successfully matching the query node
+     */
+    @InternalApi
+    public Stream<MatchingState> shareResults(Object query, MatchingState start, Function<MatchingState, Stream<MatchingState>> matcher) {
+        if (sharedResults == null) {
+            return matcher.apply(start);
+        }
+        SharedKey key = new SharedKey(query, start);
+        StreamCache<MatchingState> result = sharedResults.get(key);
+        if (result == null) {
+            // Creating the stream may already match nested sub-queries, which also add results
+            result = new StreamCache<>(matcher.apply(start));
+            sharedResults.put(key, result);
+        }
+        return result.get();
+    }
+
+    /**
+     * Checks whether this context remembers the results of reference-free sub-queries per subject node
+     *
+     * @return True iff this context was created by {@link #withSubtreeMemo()} or {@link #withSubtreeResults}, or derived from such a context
+     */
+    @InternalApi
+    public boolean hasSubtreeResults() {
+        return subtreeResults != null;
+    }
+
+    /**
+     * Checks whether a reference-free sub-query matches within a subject node, which is only calculated once per subject node instance
+     * or subtree content, depending on the store of this context
+     *
+     * @param query The query node matched within the subject node
+     * @param element The subject node
+     * @param matcher The function executing the matching process of the query node
+     * @return True iff the query node matches within the subject node
+     */
+    @InternalApi
+    public boolean matchSubtree(Object query, LinkedSubjectNode element, BooleanSupplier matcher) {
+        if (subtreeResults == null) {
+            return matcher.getAsBoolean();
+        }
+        Boolean result = subtreeResults.get(query, element);
+        if (result == null) {
+            // Matching may already add results for nested sub-queries, so the store cannot compute them itself
+            result = matcher.getAsBoolean();
+            if (!isCancelled()) {
+                // The results of a cancelled run may be incomplete
+                subtreeResults.put(query, element, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Obtains the statistics for adaptively ordering the children of a container
+     *
+     * @param container The container query node, which is compared by identity
+     * @param size The number of children of the container
+     * @return The statistics, or null if the evaluation order should not be adapted
+     */
+    @InternalApi
+    public ChildStatistics getChildStatistics(Object container, int size) {
+        if (childStatistics == null) {
+            return null;
+        }
+        synchronized (childStatistics) {
+            return childStatistics.computeIfAbsent(container, c -> new ChildStatistics(size));
+        }
+    }
+
+    /**
+     * Cancels this context and all of its children.
+     * Results obtained from a cancelled context may be incomplete and should be discarded.
+     */
+    @PublicApi
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Checks whether this context or any of its ancestors was cancelled
+     *
+     * @return True iff the matching process should be stopped
+     */
+    @PublicApi
+    public boolean isCancelled() {
+        return cancelled || parent != null && parent.isCancelled();
+    }
+
+    /**
+     * This class stores the subtree results per query node and subject node instance
+     */
+    private static class SubtreeMemo implements SubtreeResults {
+
+        private final Map<SubtreeKey, Boolean> results = new ConcurrentHashMap<>();
+
+        @Override
+        public Boolean get(Object query, LinkedSubjectNode element) {
+            return results.get(new SubtreeKey(query, element.node()));
+        }
+
+        @Override
+        public void put(Object query, LinkedSubjectNode element, boolean result) {
+            results.put(new SubtreeKey(query, element.node()), result);
+        }
+    }
+
+    /**
+     * This class is the key for subtree results, consisting of a query node and a subject node, both compared by identity
+     */
+    private static class SubtreeKey {
+
+        private final Object query;
+        private final SubjectNode node;
+
+        SubtreeKey(Object query, SubjectNode node) {
+            this.query = query;
+            this.node = node;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            SubtreeKey that = (SubtreeKey) o;
+            return query == that.query && node == that.node;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(query) + System.identityHashCode(node);
+        }
+    }
+
+    /**
+     * This class is the key for shared results, consisting of a query node compared by identity and a matching state
+     */
+    private static class SharedKey {
+
+        private final Object query;
+        private final MatchingState start;
+
+        SharedKey(Object query, MatchingState start) {
+            this.query = query;
+            this.start = start;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            SharedKey that = (SharedKey) o;
+            return query == that.query && start.equals(that.start);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(query) + start.hashCode();
+        }
+    }
+}
@@ -4,6 +4,7 @@ import at.ac.tuwien.treequery.annotation.InternalApi;
 import at.ac.tuwien.treequery.subject.SubjectNode;
 
 import java.util.Objects;
+import java.util.function.Predicate;
 import java.util.stream.Stream;
 
 /**
@@ -14,6 +15,7 @@ import java.util.stream.Stream;
 @InternalApi
 public class MatchingState {
 
+    private final MatchingContext context;
     private final NodeReferences references;
     private final LinkedSubjectNode root;
     private final LinkedSubjectNode element;
@@ -25,17 +27,38 @@ public class MatchingState {
      * @return A stream of empty matching states
      */
     public static Stream<MatchingState> fromSubjectNode(SubjectNode node) {
+        return fromSubjectNode(node, MatchingContext.create());
+    }
+
+    /**
+     * Build a stream of (empty) matching states for a root node
+     *
+     * @param node The root node
+     * @param context The context shared by all states of the matching run
+     * @return A stream of empty matching states
+     */
+    public static Stream<MatchingState> fromSubjectNode(SubjectNode node, MatchingContext context) {
         return node.getMatchingTargets()
                 .map(LinkedSubjectNode::new)
-                .map(target -> new MatchingState(NodeReferences.EMPTY, target, target.getFirstChild()));
+                .map(target -> new MatchingState(context, NodeReferences.EMPTY, target, target.getFirstChild()));
     }
 
-    private MatchingState(NodeReferences references, LinkedSubjectNode root, LinkedSubjectNode element) {
+    private MatchingState(MatchingContext context, NodeReferences references, LinkedSubjectNode root, LinkedSubjectNode element) {
+        this.context = context;
         this.references = references;
         this.root = root;
         this.element = element;
     }
 
+    /**
+     * Get the context of the matching run this state belongs to
+     *
+     * @return The non-null context
+     */
+    public MatchingContext getContext() {
+        return context;
+    }
+
     /**
      * Get the references of the current matching state
      *
@@ -63,6 +86,26 @@ public class MatchingState {
         return element != null ? element.within(root) : Stream.empty();
     }
 
+    /**
+     * Get a stream of candidate elements starting at the current element, which only descends into some of the elements
+     *
+     * @param descend Decides whether the children of an element are visited, or its whole subtree is skipped
+     * @return A (possibly empty) stream of candidate elements
+     */
+    public Stream<LinkedSubjectNode> streamWithin(Predicate<LinkedSubjectNode> descend) {
+        return element != null ? element.within(root, descend) : Stream.empty();
+    }
+
+    /**
+     * Get the depth of an element relative to the parent
+     *
+     * @param element An element within the parent
+     * @return The number of levels between the parent and the element, i.e. 1 for direct children
+     */
+    public int getDepthOf(LinkedSubjectNode element) {
+        return element.getDepth() - root.getDepth();
+    }
+
     /**
      * Get a stream of candidate elements that are direct children of the parent
      *
@@ -122,7 +165,7 @@ public class MatchingState {
      * @return A new state instance
      */
     public MatchingState withReferences(NodeReferences references) {
-        return !this.references.equals(references) ? new MatchingState(references, root, element) : this;
+        return !this.references.equals(references) ? new MatchingState(context, references, root, element) : this;
     }
 
     /**
@@ -133,7 +176,18 @@ public class MatchingState {
      * @return A new state instance
      */
     public MatchingState buildChildState(String reference, LinkedSubjectNode element) {
-        return new MatchingState(references.withReference(reference, element.node()), element, element.getFirstChild());
+        return new MatchingState(context, references.withReference(reference, element.node()), element, element.getFirstChild());
+    }
+
+    /**
+     * Derive a new state instance belonging to another context.
+     * The context is not considered for equality, i.e. the new state is equal to this one.
+     *
+     * @param context The new context
+     * @return A new state instance if the context changed
+     */
+    public MatchingState withContext(MatchingContext context) {
+        return this.context != context ? new MatchingState(context, references, root, element) : this;
     }
 
     /**
@@ -143,7 +197,7 @@ public class MatchingState {
      * @return A new state instance if the element changed
      */
     private MatchingState withElement(LinkedSubjectNode element) {
-        return this.element != element ? new MatchingState(references, root, element) : this;
+        return this.element != element ? new MatchingState(context, references, root, element) : this;
     }
 
     /**
@@ -16,7 +16,10 @@ import java.util.Objects;
 @InternalApi
 public class NodeReferences {
 
-    static final NodeReferences EMPTY = new NodeReferences(Collections.emptyMap());
+    /**
+     * The instance without any references
+     */
+    public static final NodeReferences EMPTY = new NodeReferences(Collections.emptyMap());
 
     private final Map<String, SubjectNode> data;
 
@@ -2,7 +2,7 @@ package at.ac.tuwien.treequery.matching;
 
 import at.ac.tuwien.treequery.annotation.InternalApi;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Spliterator;
 import java.util.Spliterators;
@@ -12,13 +12,18 @@ import java.util.stream.StreamSupport;
 
 /**
  * This class wraps a stream and allows replaying items without loading them again
+ * <p>
+ * Instances are not thread-safe. They are only used within a single matching run and must not be consumed by multiple threads at once.
+ * Handing an instance over to another thread is fine if that is properly synchronized, e.g. by joining a future.
  *
  * @param <T>
  */
 @InternalApi
 public class StreamCache<T> {
 
-    private final CachingIterator<T> iterator;
+    private final Spliterator<T> source;
+    private final List<T> cache = new ArrayList<>();
+    private boolean exhausted;
 
     /**
      * Wrap a stream
@@ -26,35 +31,38 @@ public class StreamCache<T> {
      * @param source The source stream
      */
     public StreamCache(Stream<T> source) {
-        iterator = new CachingIterator<>(source.spliterator());
+        this.source = source.spliterator();
     }
 
     /**
-     * Creates a copy of the stream for all items in the original stream
+     * Creates a copy of the stream for all items in the original stream.
+     * Multiple copies may be consumed alternately, e.g. if the same results are shared by different parts of a query.
      *
      * @return A new stream instance
      */
     public Stream<T> get() {
-        return Stream.concat(iterator.cache.stream(), StreamSupport.stream(iterator, false));
+        return StreamSupport.stream(new ReplayIterator(), false);
     }
 
-    private static class CachingIterator<T> extends Spliterators.AbstractSpliterator<T> {
+    private class ReplayIterator extends Spliterators.AbstractSpliterator<T> {
 
-        private final Spliterator<T> iterator;
-        private final List<T> cache = new LinkedList<>();
+        private int position;
 
-        CachingIterator(Spliterator<T> iterator) {
-            super(iterator.estimateSize(), iterator.characteristics());
-            this.iterator = iterator;
+        ReplayIterator() {
+            super(Long.MAX_VALUE, Spliterator.ORDERED);
         }
 
         @Override
         public boolean tryAdvance(Consumer<? super T> action) {
-            return iterator.tryAdvance(item -> {
-                // Item handled: Add it to cache, then apply the original action
-                cache.add(item);
-                action.accept(item);
-            });
+            if (position == cache.size()) {
+                // Reached the end of the cached items: Load the next one from the source
+                if (exhausted || !source.tryAdvance(cache::add)) {
+                    exhausted = true;
+                    return false;
+                }
+            }
+            action.accept(cache.get(position++));
+            return true;
         }
     }
 }
@@ -0,0 +1,35 @@
+package at.ac.tuwien.treequery.matching;
+
+import at.ac.tuwien.treequery.annotation.InternalApi;
+
+/**
+ * This interface stores whether reference-free sub-queries matched within subject nodes.
+ * <p>
+ * Without references, the result of a sub-query only depends on the subtree of the subject node,
+ * so it may be reused wherever the same subtree occurs.
+ * Implementations decide which subject nodes are considered the same, e.g. by identity or by the content of their subtrees.
+ * Implementations must be thread-safe.
+ *
+ * @see MatchingContext#withSubtreeResults
+ */
+@InternalApi
+public interface SubtreeResults {
+
+    /**
+     * Looks up a stored result
+     *
+     * @param query The query node matched within the subject node
+     * @param element The subject node
+     * @return True or false if a result is known, otherwise null
+     */
+    Boolean get(Object query, LinkedSubjectNode element);
+
+    /**
+     * Stores a result, which may be discarded by the implementation
+     *
+     * @param query The query node matched within the subject node
+     * @param element The subject node
+     * @param result Whether the query node matched within the subject node
+     */
+    void put(Object query, LinkedSubjectNode element, boolean result);
+}
@@ -0,0 +1,95 @@
+package at.ac.tuwien.treequery.optimizer;
+
+import at.ac.tuwien.treequery.annotation.PublicApi;
+import at.ac.tuwien.treequery.query.AllQueryNode;
+import at.ac.tuwien.treequery.query.AnyQueryNode;
+import at.ac.tuwien.treequery.query.ExactQueryNode;
+import at.ac.tuwien.treequery.query.QueryNode;
+import at.ac.tuwien.treequery.query.SingleQueryNode;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * This class replaces structurally equal sub-queries of a batch of queries by shared instances.
+ * <p>
+ * Two sub-queries are equal if they have the same type, properties, direct flag, reference name, container mode and children.
+ * The canonical query trees match exactly like the original ones,
+ * but a shared {@link at.ac.tuwien.treequery.matching.MatchingContext} evaluates each shared sub-query only once per matching state.
+ * <p>
+ * Instances are not thread-safe.
+ */
+@PublicApi
+public class QueryCanonicalizer {
+
+    private final Map<QueryNode, QueryNode> canonical = new HashMap<>();
+
+    /**
+     * Obtains the canonical instance of a query tree.
+     * All sub-queries equal to a sub-query of a previously canonicalized query tree are replaced by the previous instance.
+     *
+     * @param query The root of the query tree
+     * @return The root of the canonical query tree, which is equal to the given one
+     */
+    @PublicApi
+    public QueryNode canonicalize(QueryNode query) {
+        QueryNode existing = canonical.get(query);
+        if (existing != null) {
+            return existing;
+        }
+
+        // Canonicalize the children first, so equal children are already shared when creating this node
+        QueryNode result = rebuild(query);
+        canonical.put(result, result);
+        return result;
+    }
+
+    /**
+     * Canonicalizes all given query trees
+     *
+     * @param queries The roots of the query trees
+     * @return A new list containing the roots of the canonical query trees in the same order
+     */
+    @PublicApi
+    public List<QueryNode> canonicalize(List<? extends QueryNode> queries) {
+        return queries.stream().map(this::canonicalize).collect(Collectors.toList());
+    }
+
+    /**
+     * Get the number of distinct sub-queries seen so far
+     *
+     * @return The number of canonical query nodes
+     */
+    @PublicApi
+    public int size() {
+        return canonical.size();
+    }
+
+    private QueryNode rebuild(QueryNode query) {
+        if (query.getClass() == SingleQueryNode.class) {
+            SingleQueryNode single = (SingleQueryNode) query;
+            return new SingleQueryNode(single.getType(), single.getProperties(), canonicalize(single.getChildren()),
+                    single.isDirect(), single.getReference(), single.getMinDepth(), single.getMaxDepth(), single.getBarriers());
+        }
+        if (query.getClass() == AllQueryNode.class) {
+            AllQueryNode all = (AllQueryNode) query;
+            return new AllQueryNode(canonicalizeChildren(all.getChildren()), all.isOrdered());
+        }
+        if (query.getClass() == AnyQueryNode.class) {
+            AnyQueryNode any = (AnyQueryNode) query;
+            return new AnyQueryNode(canonicalizeChildren(any.getChildren()), any.isOptional());
+        }
+        if (query.getClass() == ExactQueryNode.class) {
+            return new ExactQueryNode(canonicalizeChildren(((ExactQueryNode) query).getChildren()));
+        }
+
+        // Other query node types: Only share them as a whole
+        return query;
+    }
+
+    private List<QueryNode> canonicalizeChildren(List<QueryNode> children) {
+        return children.stream().map(this::canonicalize).collect(Collectors.toList());
+    }
+}
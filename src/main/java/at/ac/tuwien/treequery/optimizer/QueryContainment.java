@@ -0,0 +1,245 @@
+package at.ac.tuwien.treequery.optimizer;
+
+import at.ac.tuwien.treequery.annotation.PublicApi;
+import at.ac.tuwien.treequery.query.AllQueryNode;
+import at.ac.tuwien.treequery.query.AnyQueryNode;
+import at.ac.tuwien.treequery.query.ContainerQueryNode;
+import at.ac.tuwien.treequery.query.QueryNode;
+import at.ac.tuwien.treequery.query.SingleQueryNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * This class detects whether one query subsumes another one.
+ * <p>
+ * A general query contains a specific query if every subject with a match of the specific query also has a match of the general query.
+ * So if the general query fails on a subject, the specific one fails as well, and if the specific query matches, so does the general one.
+ * <p>
+ * The analysis is conservative: It may miss some containments, but never reports a wrong one.
+ * It assumes that subject nodes compare the type and properties by equality and do not use references for matching,
+ * like {@link at.ac.tuwien.treequery.subject.BaseSubjectNode} does.
+ * Named references are ignored, i.e. they do not affect the containment.
+ */
+@PublicApi
+public class QueryContainment {
+
+    /**
+     * Results of already compared pairs of query nodes, since the same sub-queries are compared repeatedly
+     */
+    private final Map<Pair, Boolean> results = new HashMap<>();
+
+    /**
+     * Creates a new instance, which remembers the results of all checks
+     */
+    QueryContainment() {
+    }
+
+    /**
+     * Checks whether the general query contains the specific query
+     *
+     * @param general The query that is expected to match at least as often
+     * @param specific The query that is expected to be a refinement
+     * @return True iff every match of the specific query implies a match of the general query
+     */
+    @PublicApi
+    public static boolean contains(QueryNode general, QueryNode specific) {
+        return new QueryContainment().check(general, specific);
+    }
+
+    /**
+     * Checks whether the general query contains the specific query, reusing the results of previous checks of this instance
+     *
+     * @param general The query that is expected to match at least as often
+     * @param specific The query that is expected to be a refinement
+     * @return True iff every match of the specific query implies a match of the general query
+     */
+    boolean check(QueryNode general, QueryNode specific) {
+        Pair pair = new Pair(general, specific);
+        Boolean result = results.get(pair);
+        if (result == null) {
+            result = compute(general, specific);
+            results.put(pair, result);
+        }
+        return result;
+    }
+
+    private boolean compute(QueryNode general, QueryNode specific) {
+        if (general == specific || alwaysMatches(general)) {
+            return true;
+        }
+
+        if (specific instanceof AnyQueryNode && !((AnyQueryNode) specific).isOptional()) {
+            // Some alternative of the specific query matched, so each of them needs to be contained
+            List<QueryNode> alternatives = ((AnyQueryNode) specific).getChildren();
+            if (alternatives.stream().allMatch(alternative -> check(general, alternative))) {
+                return true;
+            }
+        }
+
+        if (containsDirectly(general, specific)) {
+            return true;
+        }
+
+        // Every match of the specific query implies matches of some of its parts, which may already be enough
+        return impliedParts(specific).stream().anyMatch(part -> check(general, part));
+    }
+
+    private boolean containsDirectly(QueryNode general, QueryNode specific) {
+        if (general instanceof SingleQueryNode) {
+            return specific instanceof SingleQueryNode && containsSingle((SingleQueryNode) general, (SingleQueryNode) specific);
+        }
+
+        if (general instanceof AllQueryNode) {
+            AllQueryNode all = (AllQueryNode) general;
+            if (!all.isOrdered() || all.getChildren().size() <= 1) {
+                // Every child is matched independently from the same start state
+                return all.getChildren().stream().allMatch(child -> check(child, specific));
+            }
+            return specific instanceof AllQueryNode && ((AllQueryNode) specific).isOrdered()
+                    && containsOrdered(all.getChildren(), ((AllQueryNode) specific).getChildren());
+        }
+
+        if (general instanceof AnyQueryNode) {
+            // Optional containers always match, so only check the "any" case here
+            return ((AnyQueryNode) general).getChildren().stream().anyMatch(child -> check(child, specific));
+        }
+
+        // Exact containers are only contained in themselves
+        return false;
+    }
+
+    private boolean containsSingle(SingleQueryNode general, SingleQueryNode specific) {
+        if (general.getType() != null && !general.getType().equals(specific.getType())) {
+            return false;
+        }
+        if (minDepth(general) > minDepth(specific) || maxDepth(general) < maxDepth(specific)) {
+            // The specific query could match nodes at depths the general one does not reach
+            return false;
+        }
+        if (maxDepth(general) > 1 && !specific.getBarriers().containsAll(general.getBarriers())) {
+            // The specific query could match nodes within barriers of the general one
+            return false;
+        }
+
+        // All properties of the general query need to be required by the specific one as well
+        Map<String, Object> generalProperties = Objects.requireNonNullElse(general.getProperties(), Collections.emptyMap());
+        Map<String, Object> specificProperties = Objects.requireNonNullElse(specific.getProperties(), Collections.emptyMap());
+        boolean propertiesContained = generalProperties.entrySet().stream()
+                .allMatch(e -> specificProperties.containsKey(e.getKey()) && Objects.equals(specificProperties.get(e.getKey()), e.getValue()));
+
+        // Both children queries are matched below the same subject node
+        return propertiesContained && check(general.getChildren(), specific.getChildren());
+    }
+
+    private static int minDepth(SingleQueryNode query) {
+        return query.isDirect() ? 1 : query.getMinDepth();
+    }
+
+    private static int maxDepth(SingleQueryNode query) {
+        return query.isDirect() ? 1 : query.getMaxDepth();
+    }
+
+    private boolean containsOrdered(List<QueryNode> general, List<QueryNode> specific) {
+        // Find an order-preserving assignment of single queries, where greedily using the first possible child is optimal.
+        // The results of single queries within an ordered container are strictly increasing, so the general query can use the same elements.
+        int next = 0;
+        for (QueryNode generalChild : general) {
+            if (!(generalChild instanceof SingleQueryNode)) {
+                return false;
+            }
+            while (next < specific.size() && !(specific.get(next) instanceof SingleQueryNode && containsSingle(
+                    (SingleQueryNode) generalChild, (SingleQueryNode) specific.get(next)))) {
+                next++;
+            }
+            if (next == specific.size()) {
+                return false;
+            }
+            next++;
+        }
+        return true;
+    }
+
+    /**
+     * Collects the parts of a query, which have a match from the same start state whenever the query itself has a match
+     *
+     * @param query The query
+     * @return A (possibly empty) list of sub-queries
+     */
+    private static List<QueryNode> impliedParts(QueryNode query) {
+        if (!(query instanceof ContainerQueryNode) || query instanceof AnyQueryNode) {
+            return Collections.emptyList();
+        }
+
+        List<QueryNode> children = ((ContainerQueryNode) query).getChildren();
+        if (query instanceof AllQueryNode && !((AllQueryNode) query).isOrdered()) {
+            // Unordered: All children are matched from the start state
+            return children;
+        }
+
+        // Ordered or exact: The first child is matched from the start state.
+        // Single queries only find fewer candidates from later states, so they also match from the start state.
+        List<QueryNode> parts = new ArrayList<>();
+        for (int i = 0; i < children.size(); i++) {
+            if (i == 0 || children.get(i) instanceof SingleQueryNode) {
+                parts.add(children.get(i));
+            }
+        }
+        return parts;
+    }
+
+    /**
+     * Checks whether a query trivially matches every subject
+     *
+     * @param query The query
+     * @return True iff the query has a match from any start state
+     */
+    static boolean alwaysMatches(QueryNode query) {
+        if (query instanceof AnyQueryNode) {
+            AnyQueryNode any = (AnyQueryNode) query;
+            return any.isOptional() || any.getChildren().isEmpty() || any.getChildren().stream().anyMatch(QueryContainment::alwaysMatches);
+        }
+        if (query instanceof AllQueryNode) {
+            // Ordered children might depend on each other's positions, so only check unordered or trivial containers
+            AllQueryNode all = (AllQueryNode) query;
+            return (!all.isOrdered() || all.getChildren().size() <= 1)
+                    && all.getChildren().stream().allMatch(QueryContainment::alwaysMatches);
+        }
+        return false;
+    }
+
+    /**
+     * This class is a pair of query nodes, which are compared by identity
+     */
+    private static class Pair {
+
+        private final QueryNode general;
+        private final QueryNode specific;
+
+        Pair(QueryNode general, QueryNode specific) {
+            this.general = general;
+            this.specific = specific;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Pair that = (Pair) o;
+            return general == that.general && specific == that.specific;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(general) + System.identityHashCode(specific);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package at.ac.tuwien.treequery.optimizer;
+
+import at.ac.tuwien.treequery.annotation.PublicApi;
+import at.ac.tuwien.treequery.query.QueryNode;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class stores the containment relation between the queries of a batch as a lattice.
+ * <p>
+ * Queries containing each other are equivalent and represented by the first of them.
+ * The remaining representatives form a directed acyclic graph, where the parents of a query are its direct generalizations.
+ * Evaluating the queries level by level allows skipping every query with a failed generalization.
+ *
+ * @see QueryContainment
+ */
+@PublicApi
+public class QueryLattice {
+
+    private final int size;
+    private final int[] representatives;
+    private final BitSet[] generalizations;
+    private final BitSet[] parents;
+    private final List<BitSet> levels;
+
+    /**
+     * Builds the lattice for the given queries by comparing all pairs of queries
+     *
+     * @param queries The queries, which are identified by their position in the list
+     */
+    @PublicApi
+    public QueryLattice(List<? extends QueryNode> queries) {
+        this.size = queries.size();
+        this.representatives = new int[size];
+        this.generalizations = new BitSet[size];
+        this.parents = new BitSet[size];
+
+        QueryContainment containment = new QueryContainment();
+        BitSet[] contained = new BitSet[size];
+        for (int i = 0; i < size; i++) {
+            contained[i] = new BitSet(size);
+            for (int j = 0; j < size; j++) {
+                if (i != j && containment.check(queries.get(j), queries.get(i))) {
+                    contained[i].set(j);
+                }
+            }
+        }
+
+        // Containment is transitive, so complete the relation to find all equivalent queries (also within cycles)
+        for (int k = 0; k < size; k++) {
+            for (int i = 0; i < size; i++) {
+                if (contained[i].get(k)) {
+                    contained[i].or(contained[k]);
+                }
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            contained[i].clear(i);
+        }
+
+        // Equivalent queries are represented by the first of them
+        for (int i = 0; i < size; i++) {
+            representatives[i] = i;
+            for (int j = contained[i].nextSetBit(0); j >= 0 && j < i; j = contained[i].nextSetBit(j + 1)) {
+                if (contained[j].get(i)) {
+                    representatives[i] = representatives[j];
+                    break;
+                }
+            }
+        }
+
+        // Strict generalizations only contain representatives, which are not equivalent to the query itself
+        for (int i = 0; i < size; i++) {
+            int representative = representatives[i];
+            BitSet strict = new BitSet(size);
+            for (int j = contained[representative].nextSetBit(0); j >= 0; j = contained[representative].nextSetBit(j + 1)) {
+                if (!contained[j].get(representative)) {
+                    strict.set(representatives[j]);
+                }
+            }
+            generalizations[i] = strict;
+        }
+
+        // Direct parents are the generalizations, which are not already implied by another generalization
+        for (int i = 0; i < size; i++) {
+            BitSet direct = (BitSet) generalizations[i].clone();
+            for (int j = generalizations[i].nextSetBit(0); j >= 0; j = generalizations[i].nextSetBit(j + 1)) {
+                direct.andNot(generalizations[j]);
+            }
+            parents[i] = direct;
+        }
+
+        this.levels = buildLevels();
+    }
+
+    private List<BitSet> buildLevels() {
+        // The level of a query is the length of the longest path from a query without generalizations
+        int[] level = new int[size];
+        boolean[] done = new boolean[size];
+        List<BitSet> result = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            int value = levelOf(representatives[i], level, done);
+            while (result.size() <= value) {
+                result.add(new BitSet(size));
+            }
+            result.get(value).set(i);
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    private int levelOf(int index, int[] level, boolean[] done) {
+        if (!done[index]) {
+            // The graph is acyclic, so the recursion terminates
+            int value = 0;
+            for (int j = parents[index].nextSetBit(0); j >= 0; j = parents[index].nextSetBit(j + 1)) {
+                value = Math.max(value, levelOf(j, level, done) + 1);
+            }
+            level[index] = value;
+            done[index] = true;
+        }
+        return level[index];
+    }
+
+    /**
+     * Get the number of queries in this lattice
+     *
+     * @return The number of queries
+     */
+    @PublicApi
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the query representing all queries equivalent to the given one
+     *
+     * @param index The position of the query
+     * @return The position of the first equivalent query, which may be the given one
+     */
+    @PublicApi
+    public int getRepresentative(int index) {
+        return representatives[index];
+    }
+
+    /**
+     * Checks whether the given query is the representative of its equivalent queries
+     *
+     * @param index The position of the query
+     * @return True iff no equivalent query exists at an earlier position
+     */
+    @PublicApi
+    public boolean isRepresentative(int index) {
+        return representatives[index] == index;
+    }
+
+    /**
+     * Get all strict generalizations of a query
+     *
+     * @param index The position of the query
+     * @return A new set containing the positions of the representatives of all queries strictly containing the given one
+     */
+    @PublicApi
+    public BitSet getGeneralizations(int index) {
+        return (BitSet) generalizations[index].clone();
+    }
+
+    /**
+     * Get the direct generalizations of a query
+     *
+     * @param index The position of the query
+     * @return A new set containing the positions of the representatives of the parents in the lattice
+     */
+    @PublicApi
+    public BitSet getParents(int index) {
+        return (BitSet) parents[index].clone();
+    }
+
+    /**
+     * Checks whether all direct generalizations of a query are contained in the given set
+     *
+     * @param index The position of the query
+     * @param matched The positions of all queries known to have a match
+     * @return True iff the query may have a match
+     */
+    @PublicApi
+    public boolean parentsMatched(int index, BitSet matched) {
+        BitSet missing = (BitSet) parents[index].clone();
+        missing.andNot(matched);
+        return missing.isEmpty();
+    }
+
+    /**
+     * Get the queries grouped by their level in the lattice.
+     * All generalizations of a query are located at lower levels, and equivalent queries are located at the same level.
+     *
+     * @return An unmodifiable list of sets containing the positions of the queries, starting with the queries without generalizations
+     */
+    @PublicApi
+    public List<BitSet> getLevels() {
+        return levels;
+    }
+}
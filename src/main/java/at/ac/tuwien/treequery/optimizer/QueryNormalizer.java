@@ -0,0 +1,185 @@
+package at.ac.tuwien.treequery.optimizer;
+
+import at.ac.tuwien.treequery.annotation.PublicApi;
+import at.ac.tuwien.treequery.query.AllQueryNode;
+import at.ac.tuwien.treequery.query.AnyQueryNode;
+import at.ac.tuwien.treequery.query.ContainerQueryNode;
+import at.ac.tuwien.treequery.query.ExactQueryNode;
+import at.ac.tuwien.treequery.query.QueryNode;
+import at.ac.tuwien.treequery.query.SingleQueryNode;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * This class rewrites query trees into an equivalent form with fewer container nodes.
+ * <p>
+ * Each container adds stream stages and caches when matching, so the following rewrites are applied bottom-up:
+ * <ul>
+ *     <li>Unordered containers within unordered containers are merged into their parent.</li>
+ *     <li>Ordered containers within ordered containers are merged into their parent if they only contain containers.</li>
+ *     <li>Non-empty "any" containers within "any" or "optional" containers are merged into their parent if there are no references.</li>
+ *     <li>Empty containers are removed from ordered and unordered containers, since they always match without consuming anything.</li>
+ *     <li>Duplicate alternatives of "any" and "optional" containers are removed if there are no references.</li>
+ *     <li>Ordered, unordered and "any" containers with a single child are replaced by that child.</li>
+ * </ul>
+ * The normalized query returns the same matches and references in the same order as the original one.
+ * A rewrite is therefore only applied where the parent treats the original and the rewritten node alike:
+ * Children of exact containers are never replaced, since exact containers handle single query nodes differently,
+ * and ordered containers and single query nodes only accept a container in place of a container.
+ * The root node is never replaced, so the matches of the whole query keep their duplicates.
+ * <p>
+ * Query node types other than the built-in ones are kept as they are.
+ */
+@PublicApi
+public class QueryNormalizer {
+
+    /**
+     * The kind of node a query node is a child of
+     */
+    private enum Parent {
+        ROOT, SINGLE, ORDERED, UNORDERED, ANY, EXACT
+    }
+
+    /**
+     * Rewrites a query tree into its normalized form
+     *
+     * @param query The root of the query tree
+     * @return The root of the normalized query tree, which may be the given instance if nothing was rewritten
+     */
+    @PublicApi
+    public QueryNode normalize(QueryNode query) {
+        return normalize(query, Parent.ROOT);
+    }
+
+    private QueryNode normalize(QueryNode query, Parent parent) {
+        if (query.getClass() == SingleQueryNode.class) {
+            SingleQueryNode single = (SingleQueryNode) query;
+            QueryNode children = normalize(single.getChildren(), Parent.SINGLE);
+            return children != single.getChildren()
+                    ? new SingleQueryNode(single.getType(), single.getProperties(), children, single.isDirect(), single.getReference(),
+                            single.getMinDepth(), single.getMaxDepth(), single.getBarriers())
+                    : single;
+        }
+
+        if (query.getClass() == AllQueryNode.class) {
+            AllQueryNode all = (AllQueryNode) query;
+            Parent kind = all.isOrdered() ? Parent.ORDERED : Parent.UNORDERED;
+            List<QueryNode> children = new ArrayList<>();
+            for (QueryNode child : all.getChildren()) {
+                QueryNode normalized = normalize(child, kind);
+                if (isEmptyContainer(normalized)) {
+                    // Empty containers return the start state, which does not change the candidate of the next child
+                    continue;
+                }
+                if (all.isOrdered() ? isMergeableOrdered(normalized) : isMergeableUnordered(normalized)) {
+                    children.addAll(((ContainerQueryNode) normalized).getChildren());
+                } else {
+                    children.add(normalized);
+                }
+            }
+
+            if (children.size() == 1 && canUnwrap(children.get(0), parent) && (all.isOrdered() || isMonotonic(children.get(0)))) {
+                return children.get(0);
+            }
+            return !QueryOptimizer.sameInstances(children, all.getChildren()) ? new AllQueryNode(children, all.isOrdered()) : all;
+        }
+
+        if (query.getClass() == AnyQueryNode.class) {
+            AnyQueryNode any = (AnyQueryNode) query;
+            List<QueryNode> children = new ArrayList<>();
+            for (QueryNode child : any.getChildren()) {
+                QueryNode normalized = normalize(child, Parent.ANY);
+                if (!any.hasReferences() && isMergeableAny(normalized)) {
+                    // Without references every alternative is matched from the start state only, so nesting does not matter
+                    children.addAll(((AnyQueryNode) normalized).getChildren());
+                } else {
+                    children.add(normalized);
+                }
+            }
+            if (!any.hasReferences()) {
+                // Equal alternatives return equal states, which are removed as duplicates anyway
+                children = new ArrayList<>(new LinkedHashSet<>(children));
+            }
+
+            if (children.size() == 1 && !any.isOptional() && canUnwrap(children.get(0), parent)) {
+                return children.get(0);
+            }
+            return !QueryOptimizer.sameInstances(children, any.getChildren()) ? new AnyQueryNode(children, any.isOptional()) : any;
+        }
+
+        if (query.getClass() == ExactQueryNode.class) {
+            ExactQueryNode exact = (ExactQueryNode) query;
+            List<QueryNode> children = new ArrayList<>();
+            for (QueryNode child : exact.getChildren()) {
+                children.add(normalize(child, Parent.EXACT));
+            }
+            return !QueryOptimizer.sameInstances(children, exact.getChildren()) ? new ExactQueryNode(children) : exact;
+        }
+
+        // Other query node types are kept as they are
+        return query;
+    }
+
+    private static boolean isEmptyContainer(QueryNode query) {
+        return (query.getClass() == AllQueryNode.class || query.getClass() == AnyQueryNode.class)
+                && ((ContainerQueryNode) query).getChildren().isEmpty();
+    }
+
+    private static boolean isMergeableUnordered(QueryNode query) {
+        return query.getClass() == AllQueryNode.class && !((AllQueryNode) query).isOrdered();
+    }
+
+    private static boolean isMergeableOrdered(QueryNode query) {
+        // Single query nodes are matched relative to the start of their container, so they must stay in their container
+        return query.getClass() == AllQueryNode.class && ((AllQueryNode) query).isOrdered()
+                && ((AllQueryNode) query).getChildren().stream().allMatch(child -> child instanceof ContainerQueryNode);
+    }
+
+    private static boolean isMergeableAny(QueryNode query) {
+        // Empty containers match the start state, which would be lost after merging
+        return query.getClass() == AnyQueryNode.class && !((AnyQueryNode) query).isOptional()
+                && !((AnyQueryNode) query).getChildren().isEmpty();
+    }
+
+    private static boolean canUnwrap(QueryNode child, Parent parent) {
+        switch (parent) {
+            case UNORDERED:
+            case ANY:
+                // All children are matched from the start state of the parent
+                return true;
+            case ORDERED:
+            case SINGLE:
+                // Containers are matched from the candidate state, while single query nodes are handled differently
+                return child instanceof ContainerQueryNode;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Checks whether all matches of a query are at or after its start state.
+     * Unordered containers move their matches to the latest state, which does not change the matches of such a query.
+     *
+     * @param query The query to check
+     * @return Whether the query never returns a state before its start state
+     */
+    private static boolean isMonotonic(QueryNode query) {
+        if (query.getClass() == SingleQueryNode.class) {
+            return true;
+        }
+        if (query.getClass() == AllQueryNode.class) {
+            AllQueryNode all = (AllQueryNode) query;
+            // Single query nodes in ordered containers are only kept if they are later than the previous state
+            return !all.isOrdered() || all.getChildren().stream()
+                    .allMatch(child -> child instanceof SingleQueryNode || isMonotonic(child));
+        }
+        if (query.getClass() == AnyQueryNode.class) {
+            return ((AnyQueryNode) query).getChildren().stream().allMatch(QueryNormalizer::isMonotonic);
+        }
+
+        // Exact containers move their matches to the direct child of the root, which might be an earlier state
+        return false;
+    }
+}
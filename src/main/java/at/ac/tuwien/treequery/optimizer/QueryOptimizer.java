@@ -0,0 +1,179 @@
+package at.ac.tuwien.treequery.optimizer;
+
+import at.ac.tuwien.treequery.annotation.PublicApi;
+import at.ac.tuwien.treequery.query.AllQueryNode;
+import at.ac.tuwien.treequery.query.AnyQueryNode;
+import at.ac.tuwien.treequery.query.ContainerQueryNode;
+import at.ac.tuwien.treequery.query.ExactQueryNode;
+import at.ac.tuwien.treequery.query.QueryNode;
+import at.ac.tuwien.treequery.query.SingleQueryNode;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * This class reorders the children of unordered and "any" containers based on statistics of the subjects.
+ * <p>
+ * Children of unordered containers are sorted by ascending estimated match probability,
+ * so the most selective child is evaluated first and the container fails as early as possible.
+ * Children of "any" and "optional" containers are sorted by descending estimated match probability,
+ * so the first match is found as early as possible.
+ * <p>
+ * The order of children determines the order of the results of a container.
+ * To keep the order of references returned by the original query, containers are only reordered if the order of their results
+ * cannot be observed, i.e. if the container and all of its ancestors up to the nearest single query node store no references,
+ * or if the whole query stores no references.
+ * Single query nodes only keep distinct references of their children results, so the order of reference-free children does not matter.
+ * <p>
+ * The estimates assume that types and property values are independent and evenly distributed over the subject trees.
+ */
+@PublicApi
+public class QueryOptimizer {
+
+    private final SubjectStatistics statistics;
+
+    /**
+     * Creates a new optimizer
+     *
+     * @param statistics The statistics of the subjects the queries will be matched against
+     */
+    @PublicApi
+    public QueryOptimizer(SubjectStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    /**
+     * Reorders the children of containers in the query tree where that does not change the results
+     *
+     * @param query The root of the query tree
+     * @return The root of the optimized query tree, which may be the given instance if nothing was reordered
+     */
+    @PublicApi
+    public QueryNode optimize(QueryNode query) {
+        return optimize(query, !query.hasReferences(), new IdentityHashMap<>());
+    }
+
+    /**
+     * Estimates the probability that a query has a match when starting at an average subject node
+     *
+     * @param query The root of the query tree
+     * @return The estimated probability between 0 and 1
+     */
+    @PublicApi
+    public double estimateMatchProbability(QueryNode query) {
+        return estimate(query, new IdentityHashMap<>());
+    }
+
+    private QueryNode optimize(QueryNode query, boolean reorder, Map<QueryNode, Double> estimates) {
+        if (query.getClass() == SingleQueryNode.class) {
+            SingleQueryNode single = (SingleQueryNode) query;
+            // Results of the children are reduced to distinct references, so their order does not matter without references
+            QueryNode children = single.getChildren();
+            QueryNode optimized = optimize(children, reorder || !children.hasReferences(), estimates);
+            return optimized != children
+                    ? new SingleQueryNode(single.getType(), single.getProperties(), optimized, single.isDirect(), single.getReference(),
+                            single.getMinDepth(), single.getMaxDepth(), single.getBarriers())
+                    : single;
+        }
+
+        if (query.getClass() == AllQueryNode.class) {
+            AllQueryNode all = (AllQueryNode) query;
+            List<QueryNode> children = optimizeChildren(all.getChildren(), reorder, estimates);
+            if (reorder && !all.isOrdered()) {
+                // Most selective children first, so the container fails fast
+                children.sort(Comparator.comparingDouble(child -> estimate(child, estimates)));
+            }
+            return !sameInstances(children, all.getChildren()) ? new AllQueryNode(children, all.isOrdered()) : all;
+        }
+
+        if (query.getClass() == AnyQueryNode.class) {
+            AnyQueryNode any = (AnyQueryNode) query;
+            List<QueryNode> children = optimizeChildren(any.getChildren(), reorder, estimates);
+            if (reorder) {
+                // Most likely children first, so the first match is found early
+                children.sort(Comparator.comparingDouble(child -> -estimate(child, estimates)));
+            }
+            return !sameInstances(children, any.getChildren()) ? new AnyQueryNode(children, any.isOptional()) : any;
+        }
+
+        if (query.getClass() == ExactQueryNode.class) {
+            ExactQueryNode exact = (ExactQueryNode) query;
+            List<QueryNode> children = optimizeChildren(exact.getChildren(), reorder, estimates);
+            return !sameInstances(children, exact.getChildren()) ? new ExactQueryNode(children) : exact;
+        }
+
+        // Other query node types are kept as they are
+        return query;
+    }
+
+    private List<QueryNode> optimizeChildren(List<QueryNode> children, boolean reorder, Map<QueryNode, Double> estimates) {
+        return children.stream()
+                .map(child -> optimize(child, reorder, estimates))
+                .collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    static boolean sameInstances(List<QueryNode> a, List<QueryNode> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            if (a.get(i) != b.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private double estimate(QueryNode query, Map<QueryNode, Double> estimates) {
+        Double cached = estimates.get(query);
+        if (cached == null) {
+            cached = computeEstimate(query, estimates);
+            estimates.put(query, cached);
+        }
+        return cached;
+    }
+
+    private double computeEstimate(QueryNode query, Map<QueryNode, Double> estimates) {
+        if (query instanceof SingleQueryNode) {
+            SingleQueryNode single = (SingleQueryNode) query;
+            double probability = statistics.getTypeFrequency(single.getType());
+            if (single.getProperties() != null) {
+                for (Map.Entry<String, Object> property : single.getProperties().entrySet()) {
+                    probability *= statistics.getPropertyFrequency(property.getKey(), property.getValue());
+                }
+            }
+            probability *= estimate(single.getChildren(), estimates);
+
+            // Probability that at least one of the candidates matches
+            double candidates = single.isDirect() ? statistics.getAverageFanOut() : statistics.getAverageDescendants();
+            return 1 - Math.pow(1 - probability, Math.max(candidates, 1));
+        }
+
+        if (query instanceof AnyQueryNode) {
+            AnyQueryNode any = (AnyQueryNode) query;
+            if (any.isOptional() || any.getChildren().isEmpty()) {
+                return 1;
+            }
+            double none = 1;
+            for (QueryNode child : any.getChildren()) {
+                none *= 1 - estimate(child, estimates);
+            }
+            return 1 - none;
+        }
+
+        if (query instanceof AllQueryNode || query instanceof ExactQueryNode) {
+            double all = 1;
+            for (QueryNode child : ((ContainerQueryNode) query).getChildren()) {
+                all *= estimate(child, estimates);
+            }
+            return all;
+        }
+
+        // Nothing known about other query node types
+        return 1;
+    }
+}
@@ -0,0 +1,207 @@
+package at.ac.tuwien.treequery.optimizer;
+
+import at.ac.tuwien.treequery.annotation.PublicApi;
+import at.ac.tuwien.treequery.query.PropertyPredicate;
+import at.ac.tuwien.treequery.subject.SubjectNode;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * This class collects statistics about subject trees, which are used for estimating the cost of queries.
+ * <p>
+ * The statistics contain the frequency of each type and each property value, as well as histograms of the fan-out and depth of nodes.
+ * Nodes are counted as they are seen by the matching process, i.e. after replacing them by their matching targets.
+ * <p>
+ * Instances are not thread-safe.
+ */
+@PublicApi
+public class SubjectStatistics {
+
+    private long nodeCount;
+    private long depthSum;
+    private final Map<String, Long> typeCounts = new HashMap<>();
+    private final Map<String, Map<Object, Long>> propertyCounts = new HashMap<>();
+    private final SortedMap<Integer, Long> fanOutHistogram = new TreeMap<>();
+    private final SortedMap<Integer, Long> depthHistogram = new TreeMap<>();
+
+    /**
+     * Collects the statistics of the given subject trees
+     *
+     * @param nodes The root nodes of the subject trees
+     * @return A new statistics instance
+     */
+    @PublicApi
+    public static SubjectStatistics collect(Collection<? extends SubjectNode> nodes) {
+        SubjectStatistics statistics = new SubjectStatistics();
+        nodes.forEach(statistics::add);
+        return statistics;
+    }
+
+    /**
+     * Adds all nodes of a subject tree to the statistics
+     *
+     * @param node The root node of the subject tree
+     */
+    @PublicApi
+    public void add(SubjectNode node) {
+        // Traverse iteratively, since subject trees may be too deep for recursion
+        Deque<Entry> stack = new ArrayDeque<>();
+        node.getMatchingTargets().forEach(target -> stack.push(new Entry(target, 0)));
+
+        while (!stack.isEmpty()) {
+            Entry entry = stack.pop();
+            List<SubjectNode> children = entry.node.getChildren().stream()
+                    .flatMap(SubjectNode::getMatchingTargets)
+                    .collect(Collectors.toList());
+
+            nodeCount++;
+            depthSum += entry.depth;
+            typeCounts.merge(entry.node.getType(), 1L, Long::sum);
+            entry.node.getProperties().forEach((key, value) ->
+                    propertyCounts.computeIfAbsent(key, k -> new HashMap<>()).merge(value, 1L, Long::sum));
+            fanOutHistogram.merge(children.size(), 1L, Long::sum);
+            depthHistogram.merge(entry.depth, 1L, Long::sum);
+
+            children.forEach(child -> stack.push(new Entry(child, entry.depth + 1)));
+        }
+    }
+
+    /**
+     * Get the total number of nodes
+     *
+     * @return The number of nodes in all subject trees
+     */
+    @PublicApi
+    public long getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Get the number of nodes with a given type
+     *
+     * @param type The type
+     * @return The number of nodes with exactly this type
+     */
+    @PublicApi
+    public long getTypeCount(String type) {
+        return typeCounts.getOrDefault(type, 0L);
+    }
+
+    /**
+     * Get the number of nodes with a given property value
+     *
+     * @param key The key of the property
+     * @param value The value of the property, or a {@link PropertyPredicate} for the value
+     * @return The number of nodes with an equal or matching value for the property, see {@link PropertyPredicate#valueEquals}
+     */
+    @PublicApi
+    public long getPropertyCount(String key, Object value) {
+        Map<Object, Long> counts = propertyCounts.getOrDefault(key, Collections.emptyMap());
+        if (value instanceof PropertyPredicate) {
+            // Count all values matching the predicate
+            PropertyPredicate predicate = (PropertyPredicate) value;
+            return counts.entrySet().stream().filter(e -> predicate.test(e.getKey())).mapToLong(Map.Entry::getValue).sum();
+        }
+        if (PropertyPredicate.normalize(value) instanceof Number) {
+            // Numbers are also equal to their canonical text
+            return counts.entrySet().stream()
+                    .filter(e -> PropertyPredicate.valueEquals(e.getKey(), value))
+                    .mapToLong(Map.Entry::getValue)
+                    .sum();
+        }
+        return counts.getOrDefault(value, 0L);
+    }
+
+    /**
+     * Get the relative frequency of a type
+     *
+     * @param type The type, or null for any type
+     * @return The fraction of nodes with the given type between 0 and 1
+     */
+    @PublicApi
+    public double getTypeFrequency(String type) {
+        return type == null ? 1.0 : fraction(getTypeCount(type));
+    }
+
+    /**
+     * Get the relative frequency of a property value
+     *
+     * @param key The key of the property
+     * @param value The value of the property
+     * @return The fraction of nodes with the given property value between 0 and 1
+     */
+    @PublicApi
+    public double getPropertyFrequency(String key, Object value) {
+        return fraction(getPropertyCount(key, value));
+    }
+
+    /**
+     * Get the histogram of the number of children per node
+     *
+     * @return An unmodifiable map from the number of children to the number of nodes with that many children
+     */
+    @PublicApi
+    public SortedMap<Integer, Long> getFanOutHistogram() {
+        return Collections.unmodifiableSortedMap(fanOutHistogram);
+    }
+
+    /**
+     * Get the histogram of the depth of nodes
+     *
+     * @return An unmodifiable map from the depth (0 for root nodes) to the number of nodes at that depth
+     */
+    @PublicApi
+    public SortedMap<Integer, Long> getDepthHistogram() {
+        return Collections.unmodifiableSortedMap(depthHistogram);
+    }
+
+    /**
+     * Get the average number of children per node
+     *
+     * @return The average fan-out, or 0 if no nodes were added
+     */
+    @PublicApi
+    public double getAverageFanOut() {
+        // Every node except the roots is the child of another node
+        long roots = depthHistogram.getOrDefault(0, 0L);
+        return fraction(nodeCount - roots);
+    }
+
+    /**
+     * Get the average number of descendants per node.
+     * This equals the average depth, since every node is a descendant of exactly as many nodes as its depth.
+     *
+     * @return The average number of descendants, or 0 if no nodes were added
+     */
+    @PublicApi
+    public double getAverageDescendants() {
+        return nodeCount > 0 ? (double) depthSum / nodeCount : 0;
+    }
+
+    private double fraction(long count) {
+        return nodeCount > 0 ? (double) count / nodeCount : 0;
+    }
+
+    /**
+     * This class stores a node to visit together with its depth
+     */
+    private static class Entry {
+
+        private final SubjectNode node;
+        private final int depth;
+
+        Entry(SubjectNode node, int depth) {
+            this.node = node;
+            this.depth = depth;
+        }
+    }
+}
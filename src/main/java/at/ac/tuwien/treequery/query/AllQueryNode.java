@@ -2,10 +2,13 @@ package at.ac.tuwien.treequery.query;
 
 import at.ac.tuwien.treequery.annotation.InternalApi;
 import at.ac.tuwien.treequery.builder.QueryNodeBuilder;
+import at.ac.tuwien.treequery.matching.ChildStatistics;
 import at.ac.tuwien.treequery.matching.MatchingState;
 import at.ac.tuwien.treequery.matching.StreamCache;
 import at.ac.tuwien.treequery.xml.QueryXmlConverter;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -38,6 +41,15 @@ public class AllQueryNode extends ContainerQueryNode {
 
     @Override
     public Stream<MatchingState> findMatches(MatchingState start) {
+        if (!ordered && isConcurrent(start)) {
+            return findMatchesConcurrently(start);
+        }
+
+        ChildStatistics statistics = !ordered ? getChildStatistics(start) : null;
+        if (statistics != null) {
+            return findMatchesAdaptively(start, statistics);
+        }
+
         Stream<MatchingState> states = Stream.of(start);
         for (QueryNode query : children) {
             // Cache results, so they do not need to be loaded multiple times
@@ -60,6 +72,45 @@ public class AllQueryNode extends ContainerQueryNode {
         return states;
     }
 
+    private Stream<MatchingState> findMatchesConcurrently(MatchingState start) {
+        // Without references every child query runs from the same start state, so all of them can be started at once
+        List<StreamCache<MatchingState>> results = runConcurrently(start, true);
+        if (results == null) {
+            // Some child query did not match
+            return Stream.empty();
+        }
+
+        return combine(start, results);
+    }
+
+    private Stream<MatchingState> findMatchesAdaptively(MatchingState start, ChildStatistics statistics) {
+        // Without references every child query runs from the same start state, so they can be checked in any order
+        List<StreamCache<MatchingState>> results = new ArrayList<>(Collections.nCopies(children.size(), null));
+        for (int index : statistics.getOrder()) {
+            long begin = System.nanoTime();
+            StreamCache<MatchingState> result = new StreamCache<>(children.get(index).findMatches(start));
+            boolean passed = result.get().findAny().isPresent();
+            statistics.record(index, passed, System.nanoTime() - begin);
+
+            if (!passed) {
+                // Some child query did not match: Skip the remaining ones
+                return Stream.empty();
+            }
+            results.set(index, result);
+        }
+
+        return combine(start, results);
+    }
+
+    private Stream<MatchingState> combine(MatchingState start, List<StreamCache<MatchingState>> results) {
+        // Combine the results in the same way and order as the sequential unordered case
+        Stream<MatchingState> states = Stream.of(start);
+        for (StreamCache<MatchingState> result : results) {
+            states = states.flatMap(candidate -> result.get().map(s -> s.withMaxElement(candidate))).distinct();
+        }
+        return states;
+    }
+
     private Stream<MatchingState> runCached(MatchingState state, QueryNode query, Map<MatchingState, StreamCache<MatchingState>> cache) {
         if (!cache.containsKey(state)) {
             // Not yet in cache: Build the result
@@ -71,4 +122,14 @@ public class AllQueryNode extends ContainerQueryNode {
     public boolean isOrdered() {
         return ordered;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        return super.equals(o) && ordered == ((AllQueryNode) o).ordered;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * super.hashCode() + Boolean.hashCode(ordered);
+    }
 }
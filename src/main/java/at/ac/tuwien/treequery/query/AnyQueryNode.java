@@ -41,6 +41,10 @@ public class AnyQueryNode extends ContainerQueryNode {
             return Stream.of(start);
         }
 
+        if (isConcurrent(start)) {
+            return findMatchesConcurrently(start);
+        }
+
         StreamCache<MatchingState> states = new StreamCache<>(Stream.empty());
 
         for (QueryNode query : children) {
@@ -60,7 +64,26 @@ public class AnyQueryNode extends ContainerQueryNode {
         return optional && states.get().findAny().isEmpty() ? Stream.of(start) : states.get();
     }
 
+    private Stream<MatchingState> findMatchesConcurrently(MatchingState start) {
+        // Without references every child query runs from the same start state, so all of them can be started at once
+        List<StreamCache<MatchingState>> results = runConcurrently(start, false);
+
+        // Combine the results in the same way and order as the sequential case
+        StreamCache<MatchingState> states = new StreamCache<>(results.stream().flatMap(StreamCache::get).distinct());
+        return optional && states.get().findAny().isEmpty() ? Stream.of(start) : states.get();
+    }
+
     public boolean isOptional() {
         return optional;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        return super.equals(o) && optional == ((AnyQueryNode) o).optional;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * super.hashCode() + Boolean.hashCode(optional);
+    }
 }
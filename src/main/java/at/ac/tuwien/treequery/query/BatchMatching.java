@@ -0,0 +1,119 @@
+package at.ac.tuwien.treequery.query;
+
+import at.ac.tuwien.treequery.annotation.InternalApi;
+import at.ac.tuwien.treequery.subject.SubjectNode;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * This class implements running one query against a batch of subjects on an executor
+ */
+@InternalApi
+final class BatchMatching {
+
+    private BatchMatching() {
+    }
+
+    /**
+     * Submits one task per subject and returns the results in the order of completion
+     *
+     * @param query The query to run, which is shared by all tasks
+     * @param subjects The subjects to match
+     * @param executor The executor running the tasks
+     * @return A stream of results, which blocks until the next result is available
+     */
+    static Stream<BatchResult> run(QueryNode query, List<? extends SubjectNode> subjects, Executor executor) {
+        return run(query, subjects.iterator(), executor, Math.max(subjects.size(), 1));
+    }
+
+    /**
+     * Submits one task per subject, but only pulls the next subject once fewer than {@code maxPending} results are outstanding
+     *
+     * @param query The query to run, which is shared by all tasks
+     * @param subjects The subjects to match, which are only read while the results are consumed
+     * @param executor The executor running the tasks
+     * @param maxPending The maximum number of subjects that are matched or waiting to be consumed at the same time
+     * @return A stream of results, which blocks until the next result is available
+     */
+    static Stream<BatchResult> run(QueryNode query, Iterator<? extends SubjectNode> subjects, Executor executor, int maxPending) {
+        return StreamSupport.stream(new Window(query, subjects, executor, maxPending), false);
+    }
+
+    private static <T> T take(BlockingQueue<T> queue) {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            CancellationException cancellation = new CancellationException("Interrupted while waiting for batch results");
+            cancellation.initCause(e);
+            throw cancellation;
+        }
+    }
+
+    /**
+     * This class submits the tasks for a bounded window of subjects and yields their results in the order of completion
+     */
+    private static class Window extends Spliterators.AbstractSpliterator<BatchResult> {
+
+        private final QueryNode query;
+        private final Iterator<? extends SubjectNode> subjects;
+        private final Executor executor;
+        private final int maxPending;
+        private final BlockingQueue<CompletableFuture<BatchResult>> completed = new LinkedBlockingQueue<>();
+
+        private int submitted;
+        private int pending;
+
+        Window(QueryNode query, Iterator<? extends SubjectNode> subjects, Executor executor, int maxPending) {
+            super(Long.MAX_VALUE, Spliterator.NONNULL);
+            this.query = query;
+            this.subjects = subjects;
+            this.executor = executor;
+            this.maxPending = maxPending;
+
+            // Start matching right away, the results are typically consumed later
+            fill();
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super BatchResult> action) {
+            fill();
+            if (pending == 0) {
+                return false;
+            }
+
+            // Failed tasks rethrow their exception as CompletionException on the consuming thread
+            pending--;
+            action.accept(take(completed).join());
+            return true;
+        }
+
+        private void fill() {
+            while (pending < maxPending && subjects.hasNext()) {
+                int index = submitted++;
+                SubjectNode subject = subjects.next();
+                CompletableFuture<BatchResult> future = CompletableFuture.supplyAsync(() -> {
+                    List<Map<String, SubjectNode>> references = query.findReferences(subject).collect(Collectors.toList());
+                    return new BatchResult(index, subject, references);
+                }, executor);
+
+                // Queue the future once it is done, so the stream returns results as soon as they are available
+                future.whenComplete((result, error) -> completed.add(future));
+                pending++;
+            }
+        }
+    }
+}
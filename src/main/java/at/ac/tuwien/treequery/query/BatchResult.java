@@ -0,0 +1,71 @@
+package at.ac.tuwien.treequery.query;
+
+import at.ac.tuwien.treequery.annotation.PublicApi;
+import at.ac.tuwien.treequery.subject.SubjectNode;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class contains the result of running a query against a single subject of a batch
+ *
+ * @see QueryNode#findReferences(java.util.Collection, java.util.concurrent.Executor)
+ */
+@PublicApi
+public class BatchResult {
+
+    private final int index;
+    private final SubjectNode subject;
+    private final List<Map<String, SubjectNode>> references;
+
+    BatchResult(int index, SubjectNode subject, List<Map<String, SubjectNode>> references) {
+        this.index = index;
+        this.subject = subject;
+        this.references = references;
+    }
+
+    /**
+     * Get the position of the subject in the batch
+     *
+     * @return The zero-based index of the subject in the input collection or stream
+     */
+    @PublicApi
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Get the subject this result belongs to
+     *
+     * @return The root node of the subject tree
+     */
+    @PublicApi
+    public SubjectNode getSubject() {
+        return subject;
+    }
+
+    /**
+     * Get the named references of all matches in the subject
+     *
+     * @return A (possibly empty) list of named references in the order returned by {@link QueryNode#findReferences(SubjectNode)}
+     */
+    @PublicApi
+    public List<Map<String, SubjectNode>> getReferences() {
+        return references;
+    }
+
+    /**
+     * Check whether the query matched the subject
+     *
+     * @return True iff at least one match exists
+     */
+    @PublicApi
+    public boolean hasMatches() {
+        return !references.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BatchResult[%d, matches=%d]", index, references.size());
+    }
+}
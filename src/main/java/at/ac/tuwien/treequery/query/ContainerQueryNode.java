@@ -1,8 +1,16 @@
 package at.ac.tuwien.treequery.query;
 
 import at.ac.tuwien.treequery.annotation.InternalApi;
+import at.ac.tuwien.treequery.matching.ChildStatistics;
+import at.ac.tuwien.treequery.matching.MatchingContext;
+import at.ac.tuwien.treequery.matching.MatchingState;
+import at.ac.tuwien.treequery.matching.StreamCache;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
 
 /**
  * This class is the base for all container query nodes
@@ -14,10 +22,12 @@ public abstract class ContainerQueryNode implements QueryNode {
 
     protected final List<QueryNode> children;
     private final boolean hasReferences;
+    private final int hash;
 
     protected ContainerQueryNode(List<QueryNode> children) {
         this.children = children;
         this.hasReferences = children.stream().anyMatch(QueryNode::hasReferences);
+        this.hash = 31 * getClass().getName().hashCode() + children.hashCode();
     }
 
     @Override
@@ -28,4 +38,87 @@ public abstract class ContainerQueryNode implements QueryNode {
     public List<QueryNode> getChildren() {
         return children;
     }
+
+    /**
+     * Compares the query trees structurally, i.e. containers of the same type with equal children are equal
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        ContainerQueryNode that = (ContainerQueryNode) o;
+        return hash == that.hash && children.equals(that.children);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * Checks whether the child queries should be evaluated concurrently.
+     * This is only possible without named references, since otherwise the child queries depend on each other's results.
+     *
+     * @param start The state before matching this container
+     * @return True iff an executor is available and the child queries are independent
+     */
+    protected boolean isConcurrent(MatchingState start) {
+        return start.getContext().getExecutor() != null && !hasReferences && children.size() > 1;
+    }
+
+    /**
+     * Obtains the statistics for adapting the evaluation order of the child queries.
+     * Like concurrent evaluation, this is only possible without named references.
+     *
+     * @param start The state before matching this container
+     * @return The statistics of this container, or null if the order should not be adapted
+     */
+    protected ChildStatistics getChildStatistics(MatchingState start) {
+        return !hasReferences && children.size() > 1 ? start.getContext().getChildStatistics(this, children.size()) : null;
+    }
+
+    /**
+     * Starts all child queries from the given start state concurrently and waits for their first result.
+     * <p>
+     * The remaining results are loaded lazily on the calling thread when the returned caches are used.
+     * All returned states belong to the context of the start state.
+     *
+     * @param start The state before matching this container
+     * @param failFast Whether all child queries should be cancelled as soon as one of them has no result
+     * @return The cached results of the child queries in order, or null if failing fast and some child query had no result
+     */
+    protected List<StreamCache<MatchingState>> runConcurrently(MatchingState start, boolean failFast) {
+        MatchingContext context = start.getContext();
+        Executor executor = context.getExecutor();
+
+        // The child queries run sequentially within their tasks and can be cancelled together
+        MatchingContext childContext = context.createChild(null);
+        MatchingState childStart = start.withContext(childContext);
+
+        List<CompletableFuture<StreamCache<MatchingState>>> futures = children.stream()
+                .map(query -> CompletableFuture.supplyAsync(() -> {
+                    StreamCache<MatchingState> cache = new StreamCache<>(query.findMatches(childStart).map(s -> s.withContext(context)));
+                    if (failFast && cache.get().findAny().isEmpty()) {
+                        // No match for this child query, so the container cannot match: Stop the other ones
+                        childContext.cancel();
+                    }
+                    return cache;
+                }, executor))
+                .collect(Collectors.toList());
+
+        List<StreamCache<MatchingState>> results = new ArrayList<>();
+        for (CompletableFuture<StreamCache<MatchingState>> future : futures) {
+            StreamCache<MatchingState> result = future.join();
+            if (failFast && childContext.isCancelled()) {
+                // Some child query failed (or the whole run was cancelled): The other tasks end on their own
+                return null;
+            }
+            results.add(result);
+        }
+        return results;
+    }
 }
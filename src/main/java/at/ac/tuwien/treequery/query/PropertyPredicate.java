@@ -0,0 +1,651 @@
+package at.ac.tuwien.treequery.query;
+
+import at.ac.tuwien.treequery.annotation.PublicApi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * This class represents a property value of a query which matches a set of subject property values instead of a single one.
+ * <p>
+ * Predicates are created once when building or parsing the query, e.g. regular expressions are compiled only once.
+ * Text predicates match plain values (strings, numbers, booleans and characters) by their string representation,
+ * while "in" predicates match values equal to one of the given values, see {@link #valueEquals}.
+ * Range predicates only match {@link Number} values, e.g. as parsed by {@link at.ac.tuwien.treequery.xml.SubjectXmlConverter},
+ * where integral values are compared exactly and other values as doubles.
+ * Conjunctions combine several predicates for the same property, e.g. a lower and an upper bound written as two XML attributes.
+ * Predicates are compared by their operator and operand, so queries using them can still be compared structurally.
+ */
+@PublicApi
+public final class PropertyPredicate implements Predicate<Object> {
+
+    /**
+     * Candidates for numbers in texts, which are only numbers if the number is written as the same text again
+     */
+    private static final Pattern NUMBER = Pattern.compile("-?[0-9]+(\\.[0-9]+)?");
+
+    /**
+     * The supported operators, whose names are used as suffix of the property key in XML queries
+     */
+    @PublicApi
+    public enum Operator {
+        REGEX, PREFIX, SUFFIX, CONTAINS, IN, AND, GT, GE, LT, LE, BETWEEN;
+
+        /**
+         * Get the name of the operator
+         *
+         * @return The lower case name
+         */
+        @PublicApi
+        public String getName() {
+            return name().toLowerCase();
+        }
+
+        /**
+         * Find the operator with the given name
+         *
+         * @param name The lower case name
+         * @return The operator, or null if no operator has this name
+         */
+        @PublicApi
+        public static Operator fromName(String name) {
+            return Arrays.stream(values()).filter(o -> o.getName().equals(name)).findFirst().orElse(null);
+        }
+
+        /**
+         * Checks whether the operator compares numbers
+         *
+         * @return True iff this is a range operator
+         */
+        @PublicApi
+        public boolean isRange() {
+            return compareTo(GT) >= 0;
+        }
+    }
+
+    private final Operator operator;
+    private final Object operand;
+    private final Pattern pattern;
+    private final Number lower;
+    private final Number upper;
+    private final Set<Object> normalizedValues;
+
+    private PropertyPredicate(Operator operator, Object operand) {
+        this.operator = operator;
+        this.operand = operand;
+        this.pattern = operator == Operator.REGEX ? Pattern.compile((String) operand) : null;
+        this.normalizedValues = operator == Operator.IN
+                ? ((Set<?>) operand).stream().map(PropertyPredicate::normalize).collect(Collectors.toSet())
+                : null;
+
+        // Store the bounds of range predicates, where null denotes an unbounded side
+        switch (operator) {
+            case GT:
+            case GE:
+                lower = (Number) operand;
+                upper = null;
+                break;
+            case LT:
+            case LE:
+                lower = null;
+                upper = (Number) operand;
+                break;
+            case BETWEEN:
+                lower = (Number) ((List<?>) operand).get(0);
+                upper = (Number) ((List<?>) operand).get(1);
+                break;
+            case AND:
+                // The tightest bounds of the combined predicates, whose exclusiveness is only known to the predicates themselves
+                lower = getParts().stream().map(PropertyPredicate::getLower).filter(Objects::nonNull)
+                        .max(PropertyPredicate::compare).orElse(null);
+                upper = getParts().stream().map(PropertyPredicate::getUpper).filter(Objects::nonNull)
+                        .min(PropertyPredicate::compare).orElse(null);
+                break;
+            default:
+                lower = null;
+                upper = null;
+        }
+    }
+
+    /**
+     * Creates a predicate matching values whose string representation fully matches a regular expression
+     *
+     * @param regex The regular expression
+     * @return A new predicate with the compiled expression
+     */
+    @PublicApi
+    public static PropertyPredicate regex(String regex) {
+        return new PropertyPredicate(Operator.REGEX, regex);
+    }
+
+    /**
+     * Creates a predicate matching values whose string representation starts with a prefix
+     *
+     * @param prefix The prefix
+     * @return A new predicate
+     */
+    @PublicApi
+    public static PropertyPredicate prefix(String prefix) {
+        return new PropertyPredicate(Operator.PREFIX, prefix);
+    }
+
+    /**
+     * Creates a predicate matching values whose string representation ends with a suffix
+     *
+     * @param suffix The suffix
+     * @return A new predicate
+     */
+    @PublicApi
+    public static PropertyPredicate suffix(String suffix) {
+        return new PropertyPredicate(Operator.SUFFIX, suffix);
+    }
+
+    /**
+     * Creates a predicate matching values whose string representation contains a string
+     *
+     * @param text The contained string
+     * @return A new predicate
+     */
+    @PublicApi
+    public static PropertyPredicate contains(String text) {
+        return new PropertyPredicate(Operator.CONTAINS, text);
+    }
+
+    /**
+     * Creates a predicate matching values equal to one of the given values
+     *
+     * @param values The allowed values
+     * @return A new predicate
+     */
+    @PublicApi
+    public static PropertyPredicate in(Collection<?> values) {
+        return new PropertyPredicate(Operator.IN, Collections.unmodifiableSet(new LinkedHashSet<>(values)));
+    }
+
+    /**
+     * Creates a predicate matching numbers larger than a bound
+     *
+     * @param bound The exclusive lower bound
+     * @return A new predicate
+     */
+    @PublicApi
+    public static PropertyPredicate greaterThan(Number bound) {
+        return new PropertyPredicate(Operator.GT, bound);
+    }
+
+    /**
+     * Creates a predicate matching numbers larger than or equal to a bound
+     *
+     * @param bound The inclusive lower bound
+     * @return A new predicate
+     */
+    @PublicApi
+    public static PropertyPredicate atLeast(Number bound) {
+        return new PropertyPredicate(Operator.GE, bound);
+    }
+
+    /**
+     * Creates a predicate matching numbers smaller than a bound
+     *
+     * @param bound The exclusive upper bound
+     * @return A new predicate
+     */
+    @PublicApi
+    public static PropertyPredicate lessThan(Number bound) {
+        return new PropertyPredicate(Operator.LT, bound);
+    }
+
+    /**
+     * Creates a predicate matching numbers smaller than or equal to a bound
+     *
+     * @param bound The inclusive upper bound
+     * @return A new predicate
+     */
+    @PublicApi
+    public static PropertyPredicate atMost(Number bound) {
+        return new PropertyPredicate(Operator.LE, bound);
+    }
+
+    /**
+     * Creates a predicate matching numbers within a closed range
+     *
+     * @param min The inclusive lower bound
+     * @param max The inclusive upper bound
+     * @return A new predicate
+     */
+    @PublicApi
+    public static PropertyPredicate between(Number min, Number max) {
+        return new PropertyPredicate(Operator.BETWEEN, List.of(min, max));
+    }
+
+    /**
+     * Creates a predicate matching values which match all of the given predicates
+     *
+     * @param predicates The combined predicates, where nested conjunctions are flattened
+     * @return A new predicate, or the only given predicate
+     * @throws IllegalArgumentException If no predicates are given
+     */
+    @PublicApi
+    public static PropertyPredicate and(Collection<PropertyPredicate> predicates) {
+        List<PropertyPredicate> parts = new ArrayList<>();
+        for (PropertyPredicate predicate : predicates) {
+            if (predicate.operator == Operator.AND) {
+                parts.addAll(predicate.getParts());
+            } else {
+                parts.add(predicate);
+            }
+        }
+        if (parts.isEmpty()) {
+            throw new IllegalArgumentException("At least one predicate is required");
+        }
+        return parts.size() == 1 ? parts.get(0) : new PropertyPredicate(Operator.AND, List.copyOf(parts));
+    }
+
+    /**
+     * Creates a predicate from its textual representation, as used in XML queries
+     *
+     * @param operator The operator
+     * @param text The operand, where the values of "in" predicates and the bounds of "between" predicates are separated by commas
+     * @return A new predicate
+     * @throws NumberFormatException If the operand of a range predicate is not a number
+     * @throws IllegalArgumentException If the operator is "and", whose predicates are written separately
+     */
+    @PublicApi
+    public static PropertyPredicate parse(Operator operator, String text) {
+        if (operator == Operator.AND) {
+            throw new IllegalArgumentException("Conjunctions are written as one attribute per predicate");
+        }
+        if (operator == Operator.IN) {
+            return in(Arrays.asList(text.split(",")));
+        }
+        if (operator == Operator.BETWEEN) {
+            String[] bounds = text.split(",", 2);
+            if (bounds.length != 2) {
+                throw new NumberFormatException("Expected two bounds separated by a comma: " + text);
+            }
+            return between(parseNumber(bounds[0].trim()), parseNumber(bounds[1].trim()));
+        }
+        return operator.isRange() ? new PropertyPredicate(operator, parseNumber(text.trim())) : new PropertyPredicate(operator, text);
+    }
+
+    /**
+     * Parses a number, preferring integral values
+     *
+     * @param text The textual representation of the number
+     * @return A {@link Long} if the number is integral and fits, otherwise a {@link Double}
+     * @throws NumberFormatException If the text is not a number
+     */
+    @PublicApi
+    public static Number parseNumber(String text) {
+        try {
+            return Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            return Double.parseDouble(text);
+        }
+    }
+
+    /**
+     * Parses a text only if it is the canonical representation of a number, i.e. the number is written as the same text again
+     *
+     * @param text The text
+     * @return A {@link Long} or {@link Double} as returned by {@link #parseNumber}, or null if the text is not a canonical number
+     */
+    @PublicApi
+    public static Number parseCanonicalNumber(String text) {
+        if (text.isEmpty() || !Character.isDigit(text.charAt(text.length() - 1)) || !NUMBER.matcher(text).matches()) {
+            return null;
+        }
+        Number number = parseNumber(text);
+        return number.toString().equals(text) ? number : null;
+    }
+
+    /**
+     * Normalizes a plain property value for comparing it for equality.
+     * Canonical numeric texts become numbers, and all integral numbers become {@link Long} and other numbers {@link Double} values,
+     * so the same value is equal and has the same hash code, no matter whether it was parsed as a number or not.
+     *
+     * @param value The property value
+     * @return The normalized value, or the value itself if it is neither a number nor a canonical numeric text
+     */
+    @PublicApi
+    public static Object normalize(Object value) {
+        if (value instanceof String) {
+            Number number = parseCanonicalNumber((String) value);
+            return number != null ? number : value;
+        }
+        if (value instanceof Number && !(value instanceof Long) && !(value instanceof Double)) {
+            Number number = (Number) value;
+            return isIntegral(number) ? (Object) number.longValue() : (Object) number.doubleValue();
+        }
+        return value;
+    }
+
+    /**
+     * Compares two plain property values for equality, where a number equals its canonical text, e.g. {@code 120L} equals "120".
+     * This way, queries written as text still match subjects whose numeric properties were parsed as numbers.
+     *
+     * @param a The first value, which may be null
+     * @param b The second value, which may be null
+     * @return True iff the values are equal after normalizing them
+     * @see #normalize
+     */
+    @PublicApi
+    public static boolean valueEquals(Object a, Object b) {
+        if (Objects.equals(a, b)) {
+            return true;
+        }
+        // Only numbers can be equal to values of other classes
+        return (a instanceof Number || b instanceof Number) && Objects.equals(normalize(a), normalize(b));
+    }
+
+    /**
+     * Compares two numbers exactly, where integral values are compared as longs and other values as doubles.
+     * An integral value is compared to a double by its exact value, so the order stays transitive beyond 2^53,
+     * and zero is equal to both signed zeros, while NaN is larger than all other values.
+     *
+     * @param a The first number
+     * @param b The second number
+     * @return A negative number, zero, or a positive number if the first number is smaller, equal, or larger
+     */
+    @PublicApi
+    public static int compare(Number a, Number b) {
+        boolean integralA = isIntegral(a), integralB = isIntegral(b);
+        if (integralA && integralB) {
+            return Long.compare(a.longValue(), b.longValue());
+        }
+        if (integralA) {
+            return compare(a.longValue(), b.doubleValue());
+        }
+        if (integralB) {
+            return -compare(b.longValue(), a.doubleValue());
+        }
+        double x = a.doubleValue(), y = b.doubleValue();
+        return x == y ? 0 : Double.compare(x, y);
+    }
+
+    private static int compare(long a, double b) {
+        if (Double.isNaN(b) || b >= 0x1p63) {
+            return -1;
+        }
+        if (b < -0x1p63) {
+            return 1;
+        }
+        // Both the integral part and the fraction of a double within the range of longs are exact
+        long integral = (long) b;
+        if (a != integral) {
+            return Long.compare(a, integral);
+        }
+        double fraction = b - integral;
+        return fraction > 0 ? -1 : fraction < 0 ? 1 : 0;
+    }
+
+    private static boolean isIntegral(Number number) {
+        return number instanceof Long || number instanceof Integer || number instanceof Short || number instanceof Byte;
+    }
+
+    /**
+     * Obtains strings which are contained in the string representation of every value matching this predicate.
+     * For regular expressions, the runs of literal characters outside of groups are used if there are no alternatives or flags.
+     *
+     * @return A new list of required substrings, which is empty if nothing is known
+     */
+    @PublicApi
+    public List<String> getRequiredSubstrings() {
+        switch (operator) {
+            case PREFIX:
+            case SUFFIX:
+            case CONTAINS:
+                return new ArrayList<>(List.of((String) operand));
+            case REGEX:
+                return getRegexLiterals((String) operand);
+            case AND:
+                return getParts().stream().flatMap(p -> p.getRequiredSubstrings().stream())
+                        .collect(Collectors.toCollection(ArrayList::new));
+            default:
+                return new ArrayList<>();
+        }
+    }
+
+    private static List<String> getRegexLiterals(String regex) {
+        List<String> literals = new ArrayList<>();
+        if (regex.contains("|") || regex.contains("(?") || regex.contains("\\Q")) {
+            // Alternatives, flags and quoting are not analyzed
+            return literals;
+        }
+
+        StringBuilder run = new StringBuilder();
+        int depth = 0;
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (depth == 0 && (Character.isLetterOrDigit(c) || c == ' ' || c == '_')) {
+                run.append(c);
+                continue;
+            }
+            if ((c == '*' || c == '?' || c == '{') && run.length() > 0) {
+                // The previous character is optional
+                run.setLength(run.length() - 1);
+            }
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == '[' || c == '{') {
+                // Skip simple character classes and quantifiers
+                int end = regex.indexOf(c == '[' ? ']' : '}', i + 1);
+                String content = end < 0 ? "" : regex.substring(i + 1, end);
+                if (content.isEmpty() || content.equals("^") || content.contains("[") || content.contains("\\")) {
+                    // Nested classes and escapes are not analyzed
+                    return new ArrayList<>();
+                }
+                i = end;
+            } else if (c == '\\') {
+                // Skip the escaped character
+                i++;
+            }
+            if (run.length() > 0) {
+                literals.add(run.toString());
+                run.setLength(0);
+            }
+        }
+        if (run.length() > 0) {
+            literals.add(run.toString());
+        }
+        return literals;
+    }
+
+    /**
+     * Checks whether a property value of a subject node matches this predicate
+     *
+     * @param value The property value, which may be null
+     * @return True iff the value matches
+     */
+    @Override
+    public boolean test(Object value) {
+        if (operator == Operator.AND) {
+            return getParts().stream().allMatch(p -> p.test(value));
+        }
+        if (operator == Operator.IN) {
+            return getValues().contains(value) || normalizedValues.contains(normalize(value));
+        }
+        if (operator.isRange()) {
+            return value instanceof Number && isInRange((Number) value);
+        }
+        if (!(value instanceof String || value instanceof Number || value instanceof Boolean || value instanceof Character)) {
+            return false;
+        }
+
+        String text = value.toString();
+        switch (operator) {
+            case REGEX:
+                return pattern.matcher(text).matches();
+            case PREFIX:
+                return text.startsWith((String) operand);
+            case SUFFIX:
+                return text.endsWith((String) operand);
+            default:
+                return text.contains((String) operand);
+        }
+    }
+
+    /**
+     * Checks whether this predicate only matches numbers within a range, i.e. whether it is a range predicate or a conjunction of them
+     *
+     * @return True iff the value can be looked up by its bounds
+     */
+    @PublicApi
+    public boolean isRange() {
+        return operator.isRange() || operator == Operator.AND && getParts().stream().allMatch(PropertyPredicate::isRange);
+    }
+
+    /**
+     * Checks whether a number is within the range of a range predicate
+     *
+     * @param value The number
+     * @return True iff the number is within both bounds
+     */
+    @PublicApi
+    public boolean isInRange(Number value) {
+        return isAboveLower(value) && isBelowUpper(value);
+    }
+
+    /**
+     * Checks whether a number is within the lower bound of a range predicate
+     *
+     * @param value The number
+     * @return True iff the range has no lower bound or the number is larger than (or equal to, if inclusive) the bound
+     */
+    @PublicApi
+    public boolean isAboveLower(Number value) {
+        if (operator == Operator.AND) {
+            return getParts().stream().allMatch(p -> p.isAboveLower(value));
+        }
+        if (lower == null) {
+            return true;
+        }
+        int comparison = compare(value, lower);
+        return comparison > 0 || comparison == 0 && operator != Operator.GT;
+    }
+
+    /**
+     * Checks whether a number is within the upper bound of a range predicate
+     *
+     * @param value The number
+     * @return True iff the range has no upper bound or the number is smaller than (or equal to, if inclusive) the bound
+     */
+    @PublicApi
+    public boolean isBelowUpper(Number value) {
+        if (operator == Operator.AND) {
+            return getParts().stream().allMatch(p -> p.isBelowUpper(value));
+        }
+        if (upper == null) {
+            return true;
+        }
+        int comparison = compare(value, upper);
+        return comparison < 0 || comparison == 0 && operator != Operator.LT;
+    }
+
+    /**
+     * Get the lower bound of a range predicate, or the largest lower bound of a conjunction
+     *
+     * @return The lower bound, or null if the range has no lower bound
+     */
+    @PublicApi
+    public Number getLower() {
+        return lower;
+    }
+
+    /**
+     * Get the upper bound of a range predicate, or the smallest upper bound of a conjunction
+     *
+     * @return The upper bound, or null if the range has no upper bound
+     */
+    @PublicApi
+    public Number getUpper() {
+        return upper;
+    }
+
+    @PublicApi
+    public Operator getOperator() {
+        return operator;
+    }
+
+    /**
+     * Get the operand of this predicate
+     *
+     * @return The string operand, an unmodifiable set of values for "in" predicates, a number for range predicates,
+     *         a list of both bounds for "between" predicates, or a list of the combined predicates for conjunctions
+     */
+    @PublicApi
+    public Object getOperand() {
+        return operand;
+    }
+
+    /**
+     * Get the values of an "in" predicate
+     *
+     * @return The unmodifiable set of allowed values
+     */
+    @PublicApi
+    @SuppressWarnings("unchecked")
+    public Set<Object> getValues() {
+        return (Set<Object>) operand;
+    }
+
+    /**
+     * Get the predicates combined by a conjunction
+     *
+     * @return The unmodifiable list of predicates, none of which is a conjunction itself
+     */
+    @PublicApi
+    @SuppressWarnings("unchecked")
+    public List<PropertyPredicate> getParts() {
+        return (List<PropertyPredicate>) operand;
+    }
+
+    /**
+     * Get the textual representation of the operand, as used in XML queries
+     *
+     * @return The operand, where the values of "in" predicates and the bounds of "between" predicates are separated by commas
+     */
+    @PublicApi
+    public String getText() {
+        if (operator == Operator.AND) {
+            return getParts().stream().map(PropertyPredicate::toString).collect(Collectors.joining(","));
+        }
+        if (operator == Operator.IN) {
+            return getValues().stream().map(String::valueOf).collect(Collectors.joining(","));
+        }
+        return operator == Operator.BETWEEN ? lower + "," + upper : String.valueOf(operand);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        PropertyPredicate that = (PropertyPredicate) o;
+        return operator == that.operator && operand.equals(that.operand);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(operator, operand);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s(%s)", operator.getName(), getText());
+    }
+}
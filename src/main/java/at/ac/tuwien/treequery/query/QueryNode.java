@@ -2,14 +2,23 @@ package at.ac.tuwien.treequery.query;
 
 import at.ac.tuwien.treequery.annotation.InternalApi;
 import at.ac.tuwien.treequery.annotation.PublicApi;
+import at.ac.tuwien.treequery.execution.PreparedSubject;
+import at.ac.tuwien.treequery.execution.QueryPlanner;
+import at.ac.tuwien.treequery.matching.MatchingContext;
 import at.ac.tuwien.treequery.matching.MatchingState;
 import at.ac.tuwien.treequery.subject.SubjectNode;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.stream.Stream;
 
 /**
  * This interface is the base for all query node types
+ * <p>
+ * Query nodes are immutable, so a single query can be matched against different subjects from multiple threads at the same time.
+ * All state of a matching run is kept in the matching states and the {@link MatchingContext} created for that run.
  */
 @PublicApi
 public interface QueryNode {
@@ -22,7 +31,19 @@ public interface QueryNode {
      */
     @PublicApi
     default boolean hasMatches(SubjectNode node) {
-        return findMatches(node).findAny().isPresent();
+        return hasMatches(node, MatchingContext.create());
+    }
+
+    /**
+     * Checks the subject tree rooted in the given subject node for matches of the query tree rooted in this query node
+     *
+     * @param node The root node of the subject tree
+     * @param context The context for the matching run
+     * @return True iff at least one match exists
+     */
+    @PublicApi
+    default boolean hasMatches(SubjectNode node, MatchingContext context) {
+        return findMatches(node, context).findAny().isPresent();
     }
 
     /**
@@ -33,7 +54,79 @@ public interface QueryNode {
      */
     @PublicApi
     default Stream<Map<String, SubjectNode>> findReferences(SubjectNode node) {
-        return findMatches(node).map(s -> s.getReferences().getData());
+        return findReferences(node, MatchingContext.create());
+    }
+
+    /**
+     * Obtains all matching collections of references in the subject tree rooted in the given subject node
+     *
+     * @param node The root node of the subject tree
+     * @param context The context for the matching run
+     * @return A stream of named references, or an empty stream if no match could be found
+     */
+    @PublicApi
+    default Stream<Map<String, SubjectNode>> findReferences(SubjectNode node, MatchingContext context) {
+        return findMatches(node, context).map(s -> s.getReferences().getData());
+    }
+
+    /**
+     * Checks a prepared subject tree for matches of the query tree rooted in this query node.
+     * The matching strategy is chosen by a {@link QueryPlanner}.
+     *
+     * @param subject The prepared subject tree
+     * @return True iff at least one match exists
+     */
+    @PublicApi
+    default boolean hasMatches(PreparedSubject subject) {
+        return findMatches(subject, MatchingContext.create()).findAny().isPresent();
+    }
+
+    /**
+     * Obtains all matching collections of references in a prepared subject tree.
+     * The matching strategy is chosen by a {@link QueryPlanner}.
+     *
+     * @param subject The prepared subject tree
+     * @return A stream of named references, or an empty stream if no match could be found
+     */
+    @PublicApi
+    default Stream<Map<String, SubjectNode>> findReferences(PreparedSubject subject) {
+        return findMatches(subject, MatchingContext.create()).map(s -> s.getReferences().getData());
+    }
+
+    /**
+     * Obtains all matching collections of references for each subject of a batch.
+     * <p>
+     * One task per subject is submitted to the executor, e.g. a fixed thread pool or a virtual-thread-per-task executor.
+     * The returned stream yields the results in the order of completion and blocks until the next result is available.
+     * If matching a subject fails, consuming its result throws a {@link java.util.concurrent.CompletionException}.
+     *
+     * @param nodes The root nodes of the subject trees
+     * @param executor The executor running the matching tasks
+     * @return A stream containing one result per subject
+     */
+    @PublicApi
+    default Stream<BatchResult> findReferences(Collection<? extends SubjectNode> nodes, Executor executor) {
+        return BatchMatching.run(this, List.copyOf(nodes), executor);
+    }
+
+    /**
+     * Obtains all matching collections of references for each subject of a batch.
+     * <p>
+     * The input stream is consumed lazily while the results are consumed, so at most {@code maxPending} subjects
+     * are matched or waiting to be consumed at any time. Closing the returned stream closes the input stream.
+     *
+     * @param nodes The root nodes of the subject trees
+     * @param executor The executor running the matching tasks
+     * @param maxPending The maximum number of subjects that are matched or waiting to be consumed at the same time
+     * @return A stream containing one result per subject
+     * @see #findReferences(Collection, Executor)
+     */
+    @PublicApi
+    default Stream<BatchResult> findReferences(Stream<? extends SubjectNode> nodes, Executor executor, int maxPending) {
+        if (maxPending < 1) {
+            throw new IllegalArgumentException("The pending subject limit must be positive");
+        }
+        return BatchMatching.run(this, nodes.iterator(), executor, maxPending).onClose(nodes::close);
     }
 
     /**
@@ -44,7 +137,31 @@ public interface QueryNode {
      */
     @InternalApi
     default Stream<MatchingState> findMatches(SubjectNode node) {
-        return MatchingState.fromSubjectNode(node).flatMap(this::findMatches);
+        return findMatches(node, MatchingContext.create());
+    }
+
+    /**
+     * Obtains all matches in the subject tree rooted in the given subject node
+     *
+     * @param node The root node of the subject tree
+     * @param context The context for the matching run
+     * @return A stream of matching states, or an empty stream if no match could be found
+     */
+    @InternalApi
+    default Stream<MatchingState> findMatches(SubjectNode node, MatchingContext context) {
+        return MatchingState.fromSubjectNode(node, context).flatMap(this::findMatches);
+    }
+
+    /**
+     * Obtains all matches in a prepared subject tree using the strategy chosen by a {@link QueryPlanner}
+     *
+     * @param subject The prepared subject tree
+     * @param context The context for the matching run
+     * @return A stream of matching states, or an empty stream if no match could be found
+     */
+    @InternalApi
+    default Stream<MatchingState> findMatches(PreparedSubject subject, MatchingContext context) {
+        return new QueryPlanner().plan(this, subject).findMatches(this, subject, context);
     }
 
     /**
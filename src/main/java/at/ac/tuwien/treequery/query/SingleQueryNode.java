@@ -3,11 +3,16 @@ package at.ac.tuwien.treequery.query;
 import at.ac.tuwien.treequery.annotation.InternalApi;
 import at.ac.tuwien.treequery.builder.QueryNodeBuilder;
 import at.ac.tuwien.treequery.matching.LinkedSubjectNode;
+import at.ac.tuwien.treequery.matching.MatchingContext;
 import at.ac.tuwien.treequery.matching.MatchingState;
 import at.ac.tuwien.treequery.matching.NodeReferences;
 import at.ac.tuwien.treequery.xml.QueryXmlConverter;
 
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Stream;
 
 /**
@@ -18,12 +23,21 @@ import java.util.stream.Stream;
 @InternalApi
 public class SingleQueryNode implements QueryNode {
 
+    /**
+     * The maximum depth of query nodes without an upper bound
+     */
+    public static final int UNBOUNDED = Integer.MAX_VALUE;
+
     private final String type;
     private final Map<String, Object> properties;
     private final QueryNode children;
     private final boolean direct;
     private final String reference;
+    private final int minDepth;
+    private final int maxDepth;
+    private final Set<String> barriers;
     private final boolean hasReferences;
+    private final int hash;
 
     /**
      * Creates a new exact container query node instance.
@@ -39,20 +53,134 @@ public class SingleQueryNode implements QueryNode {
      * @see QueryXmlConverter
      */
     public SingleQueryNode(String type, Map<String, Object> properties, QueryNode children, boolean direct, String reference) {
+        this(type, properties, children, direct, reference, 1, UNBOUNDED);
+    }
+
+    /**
+     * Creates a new exact container query node instance, which only matches subject nodes within a range of depths.
+     * The depth is counted relative to the subject node matched by the parent query node, i.e. its direct children have depth 1.
+     * <p>
+     * Third-party code should not call this constructor directly, but use the provided builder or XML converter
+     *
+     * @param type The type to match
+     * @param properties A collection of optional properties to match
+     * @param children The query node wrapping the child query
+     * @param direct Flag indicating whether only direct children should be matched, which overrides the depth range
+     * @param reference The reference name used to store the matching subject node
+     * @param minDepth The minimum depth of matching subject nodes, at least 1
+     * @param maxDepth The maximum depth of matching subject nodes, or {@link #UNBOUNDED}
+     * @see QueryNodeBuilder#single
+     * @see QueryXmlConverter
+     */
+    public SingleQueryNode(String type, Map<String, Object> properties, QueryNode children, boolean direct, String reference,
+                           int minDepth, int maxDepth) {
+        this(type, properties, children, direct, reference, minDepth, maxDepth, Collections.emptySet());
+    }
+
+    /**
+     * Creates a new exact container query node instance, which only matches subject nodes within a range of depths
+     * and does not search within the subtrees of subject nodes with one of the given barrier types.
+     * The barrier nodes themselves can still be matched, and direct children are always reachable.
+     * <p>
+     * Third-party code should not call this constructor directly, but use the provided builder or XML converter
+     *
+     * @param type The type to match
+     * @param properties A collection of optional properties to match
+     * @param children The query node wrapping the child query
+     * @param direct Flag indicating whether only direct children should be matched, which overrides the depth range
+     * @param reference The reference name used to store the matching subject node
+     * @param minDepth The minimum depth of matching subject nodes, at least 1
+     * @param maxDepth The maximum depth of matching subject nodes, or {@link #UNBOUNDED}
+     * @param barriers The types of subject nodes whose descendants are not searched
+     * @see QueryNodeBuilder#single
+     * @see QueryXmlConverter
+     */
+    public SingleQueryNode(String type, Map<String, Object> properties, QueryNode children, boolean direct, String reference,
+                           int minDepth, int maxDepth, Set<String> barriers) {
+        if (minDepth < 1 || maxDepth < minDepth) {
+            throw new IllegalArgumentException(String.format("Invalid depth range %d to %d", minDepth, maxDepth));
+        }
         this.type = type;
         this.properties = properties;
         this.children = children;
         this.direct = direct;
         this.reference = reference;
+        this.minDepth = minDepth;
+        this.maxDepth = maxDepth;
+        this.barriers = Collections.unmodifiableSet(new LinkedHashSet<>(barriers));
         this.hasReferences = reference != null || children.hasReferences();
+        this.hash = Objects.hash(type, properties, children, direct, reference, minDepth, maxDepth, this.barriers);
     }
 
     @Override
     public Stream<MatchingState> findMatches(MatchingState start) {
-        Stream<LinkedSubjectNode> candidates = direct ? start.streamDirectChildren() : start.streamWithin();
-        return candidates
-                .filter(e -> matches(start.getReferences(), e))
-                .flatMap(e -> handleCandidate(start, e));
+        return streamCandidates(start).flatMap(e -> matchCandidate(start, e));
+    }
+
+    /**
+     * Obtains the subject nodes that need to be checked when matching from the given state.
+     * The stream ends early if the context of the state is cancelled.
+     *
+     * @param start The matching state before reaching this query node
+     * @return A stream of candidate elements in pre-order, which are not yet filtered by type or properties
+     */
+    @InternalApi
+    public Stream<LinkedSubjectNode> streamCandidates(MatchingState start) {
+        MatchingContext context = start.getContext();
+        Stream<LinkedSubjectNode> candidates;
+        if (direct) {
+            candidates = start.streamDirectChildren();
+        } else if (maxDepth != UNBOUNDED || !barriers.isEmpty()) {
+            // Skip subtrees below the maximum depth or within barriers, instead of visiting the whole subtree
+            candidates = start.streamWithin(e -> start.getDepthOf(e) < maxDepth && !isBarrier(e));
+        } else {
+            candidates = start.streamWithin();
+        }
+        return candidates.takeWhile(e -> !context.isCancelled());
+    }
+
+    /**
+     * Executes the matching process for a single candidate element obtained from {@link #streamCandidates}
+     *
+     * @param start The matching state before reaching this query node
+     * @param element The candidate element
+     * @return A stream of matching states after successfully matching the candidate, or an empty stream if it does not match
+     */
+    @InternalApi
+    public Stream<MatchingState> matchCandidate(MatchingState start, LinkedSubjectNode element) {
+        return isReachable(element, start.getDepthOf(element))
+                && matches(start.getReferences(), element)
+                && start.getContext().isCandidate(this, element)
+                ? handleCandidate(start, element)
+                : Stream.empty();
+    }
+
+    /**
+     * Checks whether a subject node can be reached from the subject node matched by the parent query node
+     *
+     * @param element The subject node
+     * @param depth The depth relative to the subject node matched by the parent query node, where 1 denotes its direct children
+     * @return True iff the depth is allowed by the direct flag and the depth range, and no ancestor in between is a barrier
+     */
+    @InternalApi
+    public boolean isReachable(LinkedSubjectNode element, int depth) {
+        if (direct ? depth != 1 : depth < minDepth || depth > maxDepth) {
+            return false;
+        }
+        if (!barriers.isEmpty()) {
+            // Candidates may start within a barrier when a previous sibling query matched there
+            LinkedSubjectNode ancestor = element.getParent();
+            for (int i = 1; i < depth; i++, ancestor = ancestor.getParent()) {
+                if (isBarrier(ancestor)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean isBarrier(LinkedSubjectNode element) {
+        return barriers.contains(element.node().getType());
     }
 
     private boolean matches(NodeReferences references, LinkedSubjectNode element) {
@@ -62,7 +190,16 @@ public class SingleQueryNode implements QueryNode {
     private Stream<MatchingState> handleCandidate(MatchingState state, LinkedSubjectNode element) {
         // Try to find children using the current element as parent
         MatchingState childState = state.buildChildState(reference, element);
-        Stream<NodeReferences> result = children.findMatches(childState).map(MatchingState::getReferences);
+        MatchingContext context = state.getContext();
+        if (!hasReferences && context.hasSubtreeResults()) {
+            // Without references, the result only depends on the subtree, which may be shared with other positions
+            return Stream.of(state.neighborOf(element)).filter(next -> context.matchSubtree(children, element,
+                    () -> context.shareResults(children, childState, children::findMatches).findAny().isPresent()));
+        }
+
+        // The children results only depend on the state, so they can be shared with other queries using the same children node
+        Stream<NodeReferences> result = state.getContext().shareResults(children, childState, children::findMatches)
+                .map(MatchingState::getReferences);
 
         // If there are no named refs in this query subtree we do not actually need to calculate every result, they will all be the same
         result = hasReferences ? result.distinct() : result.limit(1);
@@ -96,8 +233,68 @@ public class SingleQueryNode implements QueryNode {
         return reference;
     }
 
+    public int getMinDepth() {
+        return minDepth;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public Set<String> getBarriers() {
+        return barriers;
+    }
+
+    /**
+     * Checks whether the depth of matching subject nodes is restricted by a depth range
+     *
+     * @return True iff the minimum depth is larger than 1 or the maximum depth is bounded
+     */
+    public boolean hasDepthRange() {
+        return minDepth > 1 || maxDepth != UNBOUNDED;
+    }
+
+    /**
+     * Checks whether only some of the descendants of the subject node matched by the parent query node can be matched
+     *
+     * @return True iff this query node is direct, has a depth range or barriers
+     */
+    public boolean isRestricted() {
+        return direct || hasDepthRange() || !barriers.isEmpty();
+    }
+
+    /**
+     * Compares the query trees structurally, i.e. nodes with equal attributes and equal children are equal
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        SingleQueryNode that = (SingleQueryNode) o;
+        return hash == that.hash
+                && direct == that.direct
+                && minDepth == that.minDepth
+                && maxDepth == that.maxDepth
+                && barriers.equals(that.barriers)
+                && Objects.equals(type, that.type)
+                && Objects.equals(properties, that.properties)
+                && Objects.equals(reference, that.reference)
+                && Objects.equals(children, that.children);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
     @Override
     public String toString() {
-        return String.format("Single[%s, %s, direct=%s, reference=%s]", type, properties, direct, reference);
+        String depth = hasDepthRange() ? String.format(", depth=%d..%s", minDepth, maxDepth != UNBOUNDED ? maxDepth : "") : "";
+        String barrier = !barriers.isEmpty() ? ", barriers=" + barriers : "";
+        return String.format("Single[%s, %s, direct=%s, reference=%s%s%s]", type, properties, direct, reference, depth, barrier);
     }
 }
@@ -1,6 +1,7 @@
 package at.ac.tuwien.treequery.subject;
 
 import at.ac.tuwien.treequery.annotation.PublicApi;
+import at.ac.tuwien.treequery.query.PropertyPredicate;
 
 import java.util.Collections;
 import java.util.List;
@@ -77,12 +78,16 @@ public class BaseSubjectNode implements SubjectNode {
      * Check if this node has the requested property
      *
      * @param key The key of the required property
-     * @param value The required value of the property
-     * @return True iff this node fulfills the given property
+     * @param value The required value of the property, or a {@link PropertyPredicate} for the value
+     * @return True iff this node fulfills the given property, where numbers equal their canonical text
+     * @see PropertyPredicate#valueEquals
      */
     @PublicApi
     protected boolean propertyMatches(String key, Object value) {
-        return Objects.equals(properties.get(key), value);
+        if (value instanceof PropertyPredicate) {
+            return ((PropertyPredicate) value).test(properties.get(key));
+        }
+        return PropertyPredicate.valueEquals(properties.get(key), value);
     }
 
     @Override
@@ -0,0 +1,135 @@
+package at.ac.tuwien.treequery.subject;
+
+import at.ac.tuwien.treequery.annotation.PublicApi;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * This class compresses subject trees into directed acyclic graphs by sharing a single instance for identical subtrees.
+ * <p>
+ * Two subtrees are identical if their roots have equal types and properties, and their children are identical in the same order.
+ * Since children are interned before their parents, identical children are the same instances and are compared by identity,
+ * so each node is hashed only once, i.e. hash-consing.
+ * The compressed subject has the same structure when traversed, so it matches like the original one,
+ * but matching results for a subtree may be remembered per instance, see
+ * {@link at.ac.tuwien.treequery.matching.MatchingContext#withSubtreeMemo()}.
+ * Since references are distinguished by identity, matches whose references only differ by referring to different but identical
+ * subtrees are reported once.
+ * <p>
+ * The shared instances are {@link BaseSubjectNode}s, so subject nodes with other matching semantics should not be compressed.
+ * A single instance may be used for multiple subjects, so subtrees are also shared between them.
+ * Instances are not thread-safe.
+ */
+@PublicApi
+public class SubjectDag {
+
+    private final Map<Key, SubjectNode> nodes = new HashMap<>();
+    private long internCount;
+
+    /**
+     * Obtains the shared instance of a subject node, whose children must already be shared instances
+     *
+     * @param node The subject node
+     * @return The previously interned identical node, or the given node if it is the first one of its kind
+     */
+    @PublicApi
+    public SubjectNode intern(SubjectNode node) {
+        internCount++;
+        return nodes.computeIfAbsent(new Key(node.getType(), node.getProperties(), node.getChildren()), k -> node);
+    }
+
+    /**
+     * Compresses a whole subject tree
+     *
+     * @param node The root node of the subject tree
+     * @return The root node of the compressed subject
+     */
+    @PublicApi
+    public SubjectNode compress(SubjectNode node) {
+        List<SubjectNode> children = node.getChildren().stream().map(this::compress).collect(Collectors.toList());
+        return intern(new BaseSubjectNode(node.getType(), node.getProperties(), children));
+    }
+
+    /**
+     * Get the number of nodes interned so far, i.e. the number of nodes in all compressed subject trees
+     *
+     * @return The total node count
+     */
+    @PublicApi
+    public long getNodeCount() {
+        return internCount;
+    }
+
+    /**
+     * Get the number of distinct subtrees, i.e. the number of nodes actually kept
+     *
+     * @return The number of shared instances
+     */
+    @PublicApi
+    public int getDistinctCount() {
+        return nodes.size();
+    }
+
+    /**
+     * Get the ratio between the number of nodes of the subject trees and the number of shared instances
+     *
+     * @return The compression ratio, which is at least 1, or 1 if nothing was interned yet
+     */
+    @PublicApi
+    public double getCompressionRatio() {
+        return nodes.isEmpty() ? 1 : (double) internCount / nodes.size();
+    }
+
+    /**
+     * This class identifies a subtree by the type and properties of its root and the identities of its children
+     */
+    private static class Key {
+
+        private final String type;
+        private final Map<String, Object> properties;
+        private final List<? extends SubjectNode> children;
+        private final int hash;
+
+        Key(String type, Map<String, Object> properties, List<? extends SubjectNode> children) {
+            this.type = type;
+            this.properties = properties;
+            this.children = children;
+
+            int hash = Objects.hash(type, properties);
+            for (SubjectNode child : children) {
+                hash = 31 * hash + System.identityHashCode(child);
+            }
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key that = (Key) o;
+            if (hash != that.hash || !Objects.equals(type, that.type) || !properties.equals(that.properties)
+                    || children.size() != that.children.size()) {
+                return false;
+            }
+            for (int i = 0; i < children.size(); i++) {
+                if (children.get(i) != that.children.get(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
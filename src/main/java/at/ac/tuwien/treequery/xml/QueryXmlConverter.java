@@ -5,12 +5,16 @@ import at.ac.tuwien.treequery.query.AllQueryNode;
 import at.ac.tuwien.treequery.query.AnyQueryNode;
 import at.ac.tuwien.treequery.query.ContainerQueryNode;
 import at.ac.tuwien.treequery.query.ExactQueryNode;
+import at.ac.tuwien.treequery.query.PropertyPredicate;
 import at.ac.tuwien.treequery.query.QueryNode;
 import at.ac.tuwien.treequery.query.SingleQueryNode;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -59,6 +63,25 @@ public class QueryXmlConverter extends XmlConverter<QueryNode> {
             properties.remove("direct");
         }
 
+        // Restrict the depth of matched nodes relative to the parent's match
+        int minDepth = 1;
+        if (properties.containsKey("minDepth")) {
+            minDepth = parseDepth("minDepth", properties.get("minDepth"), 1);
+            properties.remove("minDepth");
+        }
+        int maxDepth = SingleQueryNode.UNBOUNDED;
+        if (properties.containsKey("maxDepth")) {
+            maxDepth = parseDepth("maxDepth", properties.get("maxDepth"), minDepth);
+            properties.remove("maxDepth");
+        }
+
+        // Do not search within nodes of the given types, which are separated by commas
+        Set<String> barriers = new LinkedHashSet<>();
+        if (properties.containsKey("barrier")) {
+            barriers.addAll(Arrays.asList(properties.get("barrier").split(",")));
+            properties.remove("barrier");
+        }
+
         // Assign a reference name to the matched node
         String reference = null;
         if (properties.containsKey("ref")) {
@@ -69,7 +92,50 @@ public class QueryXmlConverter extends XmlConverter<QueryNode> {
         // Add the value of text elements to the properties
         node.getValue().ifPresent(v -> properties.put("value", v));
 
-        return new SingleQueryNode(node.getName(), Collections.unmodifiableMap(properties), childrenContainer, direct, reference);
+        // Compile predicates for keys with an operator suffix, e.g. "name.prefix"
+        Map<String, Object> values = new LinkedHashMap<>();
+        Map<String, List<PropertyPredicate>> predicates = new LinkedHashMap<>();
+        properties.forEach((key, value) -> {
+            int separator = key.lastIndexOf('.');
+            PropertyPredicate.Operator operator = separator >= 0 ? PropertyPredicate.Operator.fromName(key.substring(separator + 1)) : null;
+            if (operator != null) {
+                predicates.computeIfAbsent(key.substring(0, separator), k -> new ArrayList<>()).add(parsePredicate(key, operator, value));
+                values.putIfAbsent(key.substring(0, separator), null);
+            } else {
+                values.put(key, value);
+            }
+        });
+
+        // Several predicates for the same key must all match, e.g. a lower and an upper bound
+        predicates.forEach((key, list) -> {
+            if (values.get(key) != null) {
+                throw new XmlException("Property " + key + " has both a value and a predicate");
+            }
+            values.put(key, PropertyPredicate.and(list));
+        });
+
+        return new SingleQueryNode(node.getName(), Collections.unmodifiableMap(values), childrenContainer, direct, reference,
+                minDepth, maxDepth, barriers);
+    }
+
+    private static int parseDepth(String attribute, String value, int min) {
+        try {
+            int depth = Integer.parseInt(value.trim());
+            if (depth < min) {
+                throw new XmlException("Attribute " + attribute + " must be at least " + min + ": " + value);
+            }
+            return depth;
+        } catch (NumberFormatException e) {
+            throw new XmlException("Invalid depth in attribute " + attribute + ": " + value, e);
+        }
+    }
+
+    private static PropertyPredicate parsePredicate(String attribute, PropertyPredicate.Operator operator, String value) {
+        try {
+            return PropertyPredicate.parse(operator, value);
+        } catch (IllegalArgumentException e) {
+            throw new XmlException("Invalid predicate in attribute " + attribute + ": " + value, e);
+        }
     }
 
     private QueryNode getChildrenContainer(String mode, List<QueryNode> children) {
@@ -120,10 +186,33 @@ public class QueryXmlConverter extends XmlConverter<QueryNode> {
     private XmlCreator createXml(SingleQueryNode node, XmlCreator parent) {
         XmlCreator xml = XmlCreator.createElement(node.getType(), parent);
 
-        node.getProperties().forEach((key, value) -> setXmlAttribute(xml, key, value));
+        node.getProperties().forEach((key, value) -> {
+            if (value instanceof PropertyPredicate) {
+                PropertyPredicate predicate = (PropertyPredicate) value;
+                // Conjunctions are written as one attribute per predicate
+                List<PropertyPredicate> parts = predicate.getOperator() == PropertyPredicate.Operator.AND
+                        ? predicate.getParts()
+                        : List.of(predicate);
+                if (parts.stream().map(PropertyPredicate::getOperator).distinct().count() < parts.size()) {
+                    throw new IllegalArgumentException("Predicates with the same operator cannot be combined in XML: " + predicate);
+                }
+                parts.forEach(part -> setXmlAttribute(xml, key + "." + part.getOperator().getName(), part.getText()));
+            } else {
+                setXmlAttribute(xml, key, value);
+            }
+        });
         if (node.isDirect()) {
             setXmlAttribute(xml, "direct", "true");
         }
+        if (node.getMinDepth() > 1) {
+            setXmlAttribute(xml, "minDepth", node.getMinDepth());
+        }
+        if (node.getMaxDepth() != SingleQueryNode.UNBOUNDED) {
+            setXmlAttribute(xml, "maxDepth", node.getMaxDepth());
+        }
+        if (!node.getBarriers().isEmpty()) {
+            setXmlAttribute(xml, "barrier", String.join(",", node.getBarriers()));
+        }
         if (node.getReference() != null) {
             setXmlAttribute(xml, "ref", node.getReference());
         }
@@ -1,20 +1,88 @@
 package at.ac.tuwien.treequery.xml;
 
 import at.ac.tuwien.treequery.annotation.PublicApi;
+import at.ac.tuwien.treequery.query.PropertyPredicate;
 import at.ac.tuwien.treequery.subject.BaseSubjectNode;
+import at.ac.tuwien.treequery.subject.SubjectDag;
 import at.ac.tuwien.treequery.subject.SubjectNode;
 
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
  * This converter can be used to parse and write subject trees as XML
+ * <p>
+ * By default, all properties are parsed as strings.
+ * Numeric properties can be parsed into {@link Number} values once when loading the subject, either for a fixed set of keys
+ * or by recognizing numbers in all properties, so they can be compared by range predicates without parsing them again.
+ * Plain query values and "in" predicates still match these properties, since numbers are equal to their canonical text.
+ * <p>
+ * Identical subtrees can be shared while loading the subject using a {@link SubjectDag}, so they need not be copied first.
  */
 @PublicApi
 public class SubjectXmlConverter extends XmlConverter<SubjectNode> {
 
+    private final boolean sniffNumbers;
+    private final Set<String> numericKeys;
+    private final SubjectDag dag;
+
+    /**
+     * Create a new converter parsing all properties as strings
+     */
+    @PublicApi
+    public SubjectXmlConverter() {
+        this(false, Collections.emptySet(), null);
+    }
+
+    /**
+     * Create a new converter which parses all properties looking like numbers as {@link Number} values
+     *
+     * @param sniffNumbers Whether to parse numbers, where integers become {@link Long} and decimals become {@link Double} values
+     */
+    @PublicApi
+    public SubjectXmlConverter(boolean sniffNumbers) {
+        this(sniffNumbers, Collections.emptySet(), null);
+    }
+
+    /**
+     * Create a new converter which parses the properties with the given keys as {@link Number} values
+     *
+     * @param numericKeys The keys of numeric properties, whose values must be numbers, otherwise parsing fails with an {@link XmlException}
+     */
+    @PublicApi
+    public SubjectXmlConverter(Set<String> numericKeys) {
+        this(false, numericKeys, null);
+    }
+
+    /**
+     * Create a new converter parsing all properties as strings, which shares identical subtrees between all parsed subjects
+     *
+     * @param dag The instance used for sharing subtrees, which also reports the compression ratio
+     */
+    @PublicApi
+    public SubjectXmlConverter(SubjectDag dag) {
+        this(false, Collections.emptySet(), dag);
+    }
+
+    /**
+     * Create a new converter combining the parsing of numbers with the sharing of identical subtrees
+     *
+     * @param sniffNumbers Whether to parse all properties looking like numbers, as with {@link #SubjectXmlConverter(boolean)}
+     * @param numericKeys The keys of numeric properties, whose values must be numbers, as with {@link #SubjectXmlConverter(Set)}
+     * @param dag The instance used for sharing subtrees, or null to keep all parsed nodes
+     */
+    @PublicApi
+    public SubjectXmlConverter(boolean sniffNumbers, Set<String> numericKeys, SubjectDag dag) {
+        this.sniffNumbers = sniffNumbers;
+        this.numericKeys = new HashSet<>(numericKeys);
+        this.dag = dag;
+    }
+
     @Override
     public SubjectNode parse(XmlNode node) {
         // Load children and properties
@@ -24,7 +92,37 @@ public class SubjectXmlConverter extends XmlConverter<SubjectNode> {
         // Add the value of text elements to the properties
         node.getValue().ifPresent(v -> properties.put("value", v));
 
-        return new BaseSubjectNode(node.getName(), Collections.unmodifiableMap(properties), children);
+        if (!sniffNumbers && numericKeys.isEmpty()) {
+            return intern(new BaseSubjectNode(node.getName(), Collections.unmodifiableMap(properties), children));
+        }
+
+        // Convert numeric properties once, instead of parsing them whenever they are compared
+        Map<String, Object> values = new LinkedHashMap<>();
+        properties.forEach((key, value) -> {
+            if (numericKeys.contains(key)) {
+                values.put(key, parseNumber(key, value));
+            } else if (sniffNumbers) {
+                // Numbers are only converted if they are exported as the same text again
+                Number number = PropertyPredicate.parseCanonicalNumber(value);
+                values.put(key, number != null ? number : value);
+            } else {
+                values.put(key, value);
+            }
+        });
+        return intern(new BaseSubjectNode(node.getName(), Collections.unmodifiableMap(values), children));
+    }
+
+    private static Number parseNumber(String attribute, String value) {
+        try {
+            return PropertyPredicate.parseNumber(value.trim());
+        } catch (NumberFormatException e) {
+            throw new XmlException("Invalid number in attribute " + attribute + ": " + value, e);
+        }
+    }
+
+    private SubjectNode intern(SubjectNode node) {
+        // The children were already interned when they were parsed
+        return dag != null ? dag.intern(node) : node;
     }
 
     @Override
@@ -34,4 +132,4 @@ public class SubjectXmlConverter extends XmlConverter<SubjectNode> {
         node.getChildren().forEach(child -> createXml(child, xml));
         return xml;
     }
-}
\ No newline at end of file
+}
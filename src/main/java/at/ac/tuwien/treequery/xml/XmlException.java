@@ -8,6 +8,10 @@ import at.ac.tuwien.treequery.annotation.PublicApi;
 @PublicApi
 public class XmlException extends RuntimeException {
 
+    public XmlException(String message) {
+        super(message);
+    }
+
     public XmlException(String message, Throwable cause) {
         super(message, cause);
     }
@@ -0,0 +1,96 @@
+package at.ac.tuwien.treequery;
+
+import at.ac.tuwien.treequery.query.QueryNode;
+import at.ac.tuwien.treequery.subject.SubjectNode;
+import at.ac.tuwien.treequery.xml.QueryXmlConverter;
+import at.ac.tuwien.treequery.xml.SubjectXmlConverter;
+import org.junit.jupiter.params.provider.Arguments;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * This class provides access to the XML test suites, e.g. for comparing alternative matching implementations
+ */
+public class TestResources {
+
+    private static final SubjectXmlConverter SUBJECT_CONVERTER = new SubjectXmlConverter();
+    private static final QueryXmlConverter QUERY_CONVERTER = new QueryXmlConverter();
+
+    private TestResources() {
+    }
+
+    /**
+     * Lists the names of all subject XML files, e.g. {@code subject_real01}
+     *
+     * @return A sorted list of subject names
+     */
+    public static List<String> subjectNames() {
+        return listResources("xml/subject");
+    }
+
+    /**
+     * Lists the names of all query XML files relative to the query directory, e.g. {@code real/real01}
+     *
+     * @return A sorted list of query names
+     */
+    public static List<String> queryNames() {
+        return listResources("xml/query");
+    }
+
+    /**
+     * Builds the cross product of all subjects and queries
+     *
+     * @return A stream of (subject name, query name) arguments
+     */
+    public static Stream<Arguments> allCases() {
+        List<String> subjects = subjectNames();
+        return queryNames().stream().flatMap(query -> subjects.stream().map(subject -> Arguments.of(subject, query)));
+    }
+
+    /**
+     * Loads a subject from the XML test suite
+     *
+     * @param name The subject name as returned by {@link #subjectNames()}
+     * @return The root of the subject tree
+     * @throws IOException Thrown if the subject could not be loaded
+     */
+    public static SubjectNode subject(String name) throws IOException {
+        return SUBJECT_CONVERTER.parseResource("xml/subject/" + name + ".xml");
+    }
+
+    /**
+     * Loads a query from the XML test suite
+     *
+     * @param name The query name as returned by {@link #queryNames()}
+     * @return The root of the query tree
+     * @throws IOException Thrown if the query could not be loaded
+     */
+    public static QueryNode query(String name) throws IOException {
+        return QUERY_CONVERTER.parseResource("xml/query/" + name + ".xml");
+    }
+
+    private static List<String> listResources(String directory) {
+        try {
+            Path root = Path.of(TestResources.class.getClassLoader().getResource(directory).toURI());
+            try (Stream<Path> files = Files.walk(root)) {
+                return files
+                        .filter(p -> p.toString().endsWith(".xml"))
+                        .map(p -> root.relativize(p).toString().replace('\\', '/'))
+                        .map(name -> name.substring(0, name.length() - ".xml".length()))
+                        .sorted()
+                        .collect(Collectors.toList());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
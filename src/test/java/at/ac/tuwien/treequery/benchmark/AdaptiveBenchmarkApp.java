@@ -0,0 +1,101 @@
+package at.ac.tuwien.treequery.benchmark;
+
+import static at.ac.tuwien.treequery.builder.QueryNodeBuilder.container;
+import static at.ac.tuwien.treequery.builder.QueryNodeBuilder.single;
+import static at.ac.tuwien.treequery.builder.SubjectNodeBuilder.type;
+
+import at.ac.tuwien.treequery.builder.SubjectNodeBuilder;
+import at.ac.tuwien.treequery.matching.MatchingContext;
+import at.ac.tuwien.treequery.optimizer.QueryOptimizer;
+import at.ac.tuwien.treequery.optimizer.SubjectStatistics;
+import at.ac.tuwien.treequery.query.QueryNode;
+import at.ac.tuwien.treequery.subject.SubjectNode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Supplier;
+
+/**
+ * This is the entry point for comparing static and adaptive ordering of unordered containers on skewed subjects.
+ * <p>
+ * The subjects contain many "filler" nodes, so the type "block" is rare overall and "leaf" is common.
+ * Below the "method" candidates however, a deep "block" is always present while a direct "leaf" never is.
+ * The static estimates therefore check the expensive "block" child first, while the adaptive order learns to check "leaf" first.
+ */
+public class AdaptiveBenchmarkApp {
+
+    /**
+     * The number of times each variant is evaluated
+     */
+    private static final int RUNS = 5;
+
+    /**
+     * Runs the benchmark
+     *
+     * @param args The number of subjects, the number of candidates per subject and the depth of the nested blocks
+     */
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            System.err.println("Subject count, candidate count and block depth required.");
+            System.exit(1);
+        }
+
+        int count = Integer.parseInt(args[0]);
+        int candidates = Integer.parseInt(args[1]);
+        int depth = Integer.parseInt(args[2]);
+
+        List<SubjectNode> subjects = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            subjects.add(subject(candidates, depth));
+        }
+
+        QueryNode query = single("method").children(container()
+                .child(single("block").children(container().child(single("block").build()).unordered()).build())
+                .child(single("leaf").direct().build())
+                .unordered()).build();
+        QueryNode optimized = new QueryOptimizer(SubjectStatistics.collect(subjects)).optimize(query);
+
+        // Warm up all variants once
+        run(query, subjects, MatchingContext::create);
+        run(optimized, subjects, MatchingContext::create);
+        run(query, subjects, () -> MatchingContext.create().withAdaptiveOrder());
+
+        long timeOriginal = 0;
+        long timeStatic = 0;
+        long timeAdaptive = 0;
+        for (int i = 0; i < RUNS; i++) {
+            timeOriginal += run(query, subjects, MatchingContext::create);
+            timeStatic += run(optimized, subjects, MatchingContext::create);
+            timeAdaptive += run(query, subjects, () -> MatchingContext.create().withAdaptiveOrder());
+        }
+
+        // original ms,static ms,adaptive ms,speedup over static
+        System.out.printf(Locale.ENGLISH, "%.1f,%.1f,%.1f,%.2f%n",
+                timeOriginal / 1e6 / RUNS, timeStatic / 1e6 / RUNS, timeAdaptive / 1e6 / RUNS, (double) timeStatic / timeAdaptive);
+    }
+
+    private static long run(QueryNode query, List<SubjectNode> subjects, Supplier<MatchingContext> contexts) {
+        // One context for all subjects, so the adaptive order is learned across them
+        MatchingContext context = contexts.get();
+        long start = System.nanoTime();
+        subjects.forEach(subject -> query.hasMatches(subject, context));
+        return System.nanoTime() - start;
+    }
+
+    private static SubjectNode subject(int candidates, int depth) {
+        SubjectNodeBuilder root = type("root");
+        for (int i = 0; i < candidates; i++) {
+            SubjectNode block = type("block").build();
+            for (int j = 0; j < depth; j++) {
+                block = type("block").child(type("filler").child(block).build()).build();
+            }
+            root.child(type("method").child(block).build());
+        }
+        // Many leaves elsewhere make the "leaf" type look common
+        for (int i = 0; i < candidates * depth * 4; i++) {
+            root.child(type("filler").child(type("leaf").build()).build());
+        }
+        return root.build();
+    }
+}
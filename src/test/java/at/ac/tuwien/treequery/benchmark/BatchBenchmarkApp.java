@@ -0,0 +1,85 @@
+package at.ac.tuwien.treequery.benchmark;
+
+import at.ac.tuwien.treequery.benchmark.QueryGenerator.Mode;
+import at.ac.tuwien.treequery.query.QueryNode;
+import at.ac.tuwien.treequery.subject.SubjectNode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This is the entry point for measuring the throughput of matching one query against a batch of subjects
+ */
+public class BatchBenchmarkApp {
+
+    /**
+     * The number of times each batch is matched
+     */
+    private static final int RUNS = 5;
+
+    /**
+     * Runs the benchmark
+     *
+     * @param args The number of subjects, the subject size and the number of threads (defaults to the number of processors)
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Subject count and subject size required.");
+            System.exit(1);
+        }
+
+        int count = Integer.parseInt(args[0]);
+        int size = Integer.parseInt(args[1]);
+        int threads = args.length >= 3 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        // Generate the subjects and derive a query from the first one, so there is at least one match
+        SubjectGenerator subjGenerator = new SubjectGenerator(2, 4, 0.1);
+        List<SubjectNode> subjects = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            subjects.add(subjGenerator.rectangle(size, 2));
+        }
+        QueryGenerator queryGenerator = new QueryGenerator(0.9, 0.7, 0.3);
+        SubjectNode start = new SubjectNodeWrapper(subjects.get(0)).getRandom(1, 1, 0.75);
+        QueryNode query = queryGenerator.buildAllSubtrees(queryGenerator.generateSelection(start), Mode.UNORDERED, false, 10);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            // Warm up both variants once
+            runSequential(query, subjects);
+            runBatch(query, subjects, executor);
+
+            long sequential = 0;
+            long batch = 0;
+            for (int i = 0; i < RUNS; i++) {
+                sequential += runSequential(query, subjects);
+                batch += runBatch(query, subjects, executor);
+            }
+
+            // subjects,size,threads,sequential subjects/s,batch subjects/s,speedup
+            System.out.printf(Locale.ENGLISH, "%d,%d,%d,%.1f,%.1f,%.2f%n",
+                    count, size, threads, throughput(count, sequential), throughput(count, batch), (double) sequential / batch);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static long runSequential(QueryNode query, List<SubjectNode> subjects) {
+        long start = System.nanoTime();
+        subjects.forEach(subject -> query.findReferences(subject).count());
+        return System.nanoTime() - start;
+    }
+
+    private static long runBatch(QueryNode query, List<SubjectNode> subjects, ExecutorService executor) {
+        long start = System.nanoTime();
+        query.findReferences(subjects, executor).count();
+        return System.nanoTime() - start;
+    }
+
+    private static double throughput(int count, long totalNanos) {
+        return count * RUNS * (double) TimeUnit.SECONDS.toNanos(1) / totalNanos;
+    }
+}
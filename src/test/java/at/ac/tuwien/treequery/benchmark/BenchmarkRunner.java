@@ -12,6 +12,9 @@ import java.util.concurrent.TimeUnit;
 
 /**
  * This class executes a benchmark and stores the result times
+ * <p>
+ * The times are measured after a single warm-up run. For results independent of the JIT compiler,
+ * see the JMH benchmarks of the {@code jmh} profile, e.g. {@code GeneratedQueryBenchmark}.
  */
 class BenchmarkRunner {
 
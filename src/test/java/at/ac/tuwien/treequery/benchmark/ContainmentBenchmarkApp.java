@@ -0,0 +1,116 @@
+package at.ac.tuwien.treequery.benchmark;
+
+import at.ac.tuwien.treequery.benchmark.QueryGenerator.Mode;
+import at.ac.tuwien.treequery.execution.QuerySet;
+import at.ac.tuwien.treequery.optimizer.QueryLattice;
+import at.ac.tuwien.treequery.query.QueryNode;
+import at.ac.tuwien.treequery.subject.SubjectNode;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * This is the entry point for measuring the savings of containment detection when evaluating a batch of nested queries
+ */
+public class ContainmentBenchmarkApp {
+
+    /**
+     * The sizes of the truncated queries generated from each selection, which are naturally nested
+     */
+    private static final int[] QUERY_SIZES = {1, 5, 10, 20, 30};
+
+    /**
+     * The number of times the batch is evaluated
+     */
+    private static final int RUNS = 5;
+
+    /**
+     * Runs the benchmark
+     *
+     * @param args The number of subjects, the subject size and the number of query selections
+     */
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            System.err.println("Subject count, subject size and selection count required.");
+            System.exit(1);
+        }
+
+        int count = Integer.parseInt(args[0]);
+        int size = Integer.parseInt(args[1]);
+        int selections = Integer.parseInt(args[2]);
+
+        SubjectGenerator subjGenerator = new SubjectGenerator(2, 4, 0.1);
+        List<SubjectNode> subjects = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            subjects.add(subjGenerator.rectangle(size, 2));
+        }
+
+        // Always include all properties, so truncated queries are refined by the larger ones of the same selection
+        QueryGenerator queryGenerator = new QueryGenerator(0.9, 0.7, 1.0);
+        List<QueryNode> queries = new ArrayList<>();
+        for (int i = 0; i < selections; i++) {
+            SubjectNodeWrapper wrapper = new SubjectNodeWrapper(subjects.get(i % subjects.size()));
+            SubjectNodeSelection selected = queryGenerator.generateSelection(wrapper.getRandom(1, wrapper.height - 1, 0.75));
+            for (Mode mode : new Mode[]{Mode.UNORDERED, Mode.ORDERED}) {
+                for (int querySize : QUERY_SIZES) {
+                    QueryNode query = queryGenerator.buildAllSubtrees(selected, mode, false, querySize);
+                    if (query != null) {
+                        queries.add(query);
+                    }
+                }
+            }
+        }
+
+        long start = System.nanoTime();
+        QuerySet withContainment = new QuerySet(queries, true);
+        long analysis = System.nanoTime() - start;
+        QuerySet withoutContainment = new QuerySet(queries, false);
+
+        // Warm up both variants once
+        run(withContainment, subjects);
+        run(withoutContainment, subjects);
+
+        long timeWith = 0;
+        long timeWithout = 0;
+        for (int i = 0; i < RUNS; i++) {
+            timeWithout += run(withoutContainment, subjects);
+            timeWith += run(withContainment, subjects);
+        }
+
+        QueryLattice lattice = withContainment.getLattice();
+        int edges = 0;
+        for (int i = 0; i < lattice.size(); i++) {
+            edges += lattice.getParents(i).cardinality();
+        }
+
+        // queries,lattice levels,lattice edges,skipped evaluations,analysis ms,without ms,with ms,speedup
+        System.out.printf(Locale.ENGLISH, "%d,%d,%d,%d,%.1f,%.1f,%.1f,%.2f%n",
+                queries.size(), lattice.getLevels().size(), edges, countSkipped(withContainment, subjects), analysis / 1e6,
+                timeWithout / 1e6 / RUNS, timeWith / 1e6 / RUNS, (double) timeWithout / timeWith);
+    }
+
+    private static long run(QuerySet querySet, List<SubjectNode> subjects) {
+        long start = System.nanoTime();
+        subjects.forEach(querySet::hasMatches);
+        return System.nanoTime() - start;
+    }
+
+    private static int countSkipped(QuerySet querySet, List<SubjectNode> subjects) {
+        // A query is skipped if any of its generalizations did not match
+        QueryLattice lattice = querySet.getLattice();
+        int skipped = 0;
+        for (SubjectNode subject : subjects) {
+            BitSet matched = querySet.hasMatches(subject);
+            for (int i = 0; i < lattice.size(); i++) {
+                BitSet failed = lattice.getGeneralizations(i);
+                failed.andNot(matched);
+                if (!failed.isEmpty()) {
+                    skipped++;
+                }
+            }
+        }
+        return skipped;
+    }
+}
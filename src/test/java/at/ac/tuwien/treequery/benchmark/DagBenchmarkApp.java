@@ -0,0 +1,89 @@
+package at.ac.tuwien.treequery.benchmark;
+
+import at.ac.tuwien.treequery.TestResources;
+import at.ac.tuwien.treequery.matching.MatchingContext;
+import at.ac.tuwien.treequery.query.QueryNode;
+import at.ac.tuwien.treequery.subject.BaseSubjectNode;
+import at.ac.tuwien.treequery.subject.SubjectDag;
+import at.ac.tuwien.treequery.subject.SubjectNode;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * This is the entry point for measuring the compression of real subjects into DAGs and the speedup of matching them with a subtree memo
+ */
+public class DagBenchmarkApp {
+
+    /**
+     * The number of times each query is matched
+     */
+    private static final int RUNS = 5;
+
+    /**
+     * Runs the benchmark
+     *
+     * @param args The number of copies of each real subject below a common root
+     * @throws IOException Thrown if a subject or query could not be loaded
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Copy count required.");
+            System.exit(1);
+        }
+
+        int copies = Integer.parseInt(args[0]);
+        List<QueryNode> queries = new ArrayList<>();
+        for (String name : TestResources.queryNames()) {
+            if (name.startsWith("real/")) {
+                queries.add(TestResources.query(name));
+            }
+        }
+
+        for (String name : TestResources.subjectNames()) {
+            if (!name.startsWith("subject_real")) {
+                continue;
+            }
+
+            // Scale up the subject by loading it repeatedly, so the copies are separate instances like different files
+            List<SubjectNode> children = new ArrayList<>();
+            for (int i = 0; i < copies; i++) {
+                children.add(TestResources.subject(name));
+            }
+            SubjectNode tree = new BaseSubjectNode("root", null, children);
+
+            long start = System.nanoTime();
+            SubjectDag dag = new SubjectDag();
+            SubjectNode compressed = dag.compress(tree);
+            long compression = System.nanoTime() - start;
+
+            // Warm up all variants once
+            run(queries, tree, false);
+            run(queries, compressed, true);
+
+            long timeTree = 0;
+            long timeDag = 0;
+            for (int i = 0; i < RUNS; i++) {
+                timeTree += run(queries, tree, false);
+                timeDag += run(queries, compressed, true);
+            }
+
+            // subject,nodes,distinct nodes,compression ratio,compression ms,tree ms,dag ms,speedup
+            System.out.printf(Locale.ENGLISH, "%s,%d,%d,%.2f,%.1f,%.1f,%.1f,%.2f%n",
+                    name, dag.getNodeCount(), dag.getDistinctCount(), dag.getCompressionRatio(), compression / 1e6,
+                    timeTree / 1e6 / RUNS, timeDag / 1e6 / RUNS, (double) timeTree / timeDag);
+        }
+    }
+
+    private static long run(List<QueryNode> queries, SubjectNode subject, boolean memo) {
+        long start = System.nanoTime();
+        for (QueryNode query : queries) {
+            // A new memo for each query, so the measured time includes filling it
+            MatchingContext context = memo ? MatchingContext.create().withSubtreeMemo() : MatchingContext.create();
+            query.findReferences(subject, context).count();
+        }
+        return System.nanoTime() - start;
+    }
+}
@@ -52,8 +52,8 @@ class GeneratorRunner {
         subjConverter = new SubjectXmlConverter();
         queryConverter = new QueryXmlConverter();
 
-        subjGenerator = new SubjectGenerator(2, 4, 0.1);
-        queryGenerator = new QueryGenerator(0.9, 0.7, 0.3);
+        subjGenerator = createSubjectGenerator();
+        queryGenerator = createQueryGenerator();
 
         subjSizeMin = 100;
         subjSizeMax = 1_000_000;
@@ -66,6 +66,24 @@ class GeneratorRunner {
         querySizes = new int[]{1, 5, 10, 20, 30};
     }
 
+    /**
+     * Creates the subject generator with the settings used for all generated subjects
+     *
+     * @return A new subject generator
+     */
+    static SubjectGenerator createSubjectGenerator() {
+        return new SubjectGenerator(2, 4, 0.1);
+    }
+
+    /**
+     * Creates the query generator with the settings used for all generated queries
+     *
+     * @return A new query generator
+     */
+    static QueryGenerator createQueryGenerator() {
+        return new QueryGenerator(0.9, 0.7, 0.3);
+    }
+
     /**
      * Runs the generation
      *
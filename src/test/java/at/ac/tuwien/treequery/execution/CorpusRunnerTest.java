@@ -0,0 +1,102 @@
+package at.ac.tuwien.treequery.execution;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import at.ac.tuwien.treequery.query.QueryNode;
+import at.ac.tuwien.treequery.subject.SubjectNode;
+import at.ac.tuwien.treequery.xml.QueryXmlConverter;
+import at.ac.tuwien.treequery.xml.SubjectXmlConverter;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+class CorpusRunnerTest {
+
+    private final SubjectXmlConverter subjectConverter = new SubjectXmlConverter();
+    private final QueryXmlConverter queryConverter = new QueryXmlConverter();
+
+    private static Stream<Arguments> cases() {
+        return Stream.of(
+                Arguments.of("real/real04", 1, 1),
+                Arguments.of("real/real04", 4, 2),
+                Arguments.of("ref/ref02", 2, 8),
+                Arguments.of("nested/nested01", 3, 3)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("cases")
+    void runCorpus(String queryFile, int threads, int maxPending) throws Exception {
+        QueryNode query = queryConverter.parseResource("xml/query/" + queryFile + ".xml");
+        Path directory = Path.of(getClass().getClassLoader().getResource("xml/subject").toURI());
+
+        Map<Path, CorpusResult> results = new HashMap<>();
+        CorpusStatistics statistics = new CorpusRunner(query, threads, maxPending)
+                .run(directory, result -> results.put(result.getFile(), result));
+
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(directory)) {
+            files = stream.filter(p -> p.toString().endsWith(".xml")).collect(Collectors.toList());
+        }
+
+        assertEquals(files.size(), results.size(), "Expected a result for every subject file");
+        assertEquals(files.size(), statistics.getFileCount());
+        assertEquals(0, statistics.getErrorCount());
+
+        long nodes = 0;
+        long matches = 0;
+        for (Path file : files) {
+            CorpusResult result = results.get(file);
+            assertNotNull(result, "Missing result for " + file);
+            assertNull(result.getError());
+
+            // Results must be the same as for a sequential run
+            SubjectNode subject = subjectConverter.parseFile(file.toString());
+            List<Map<String, SubjectNode>> expected = query.findReferences(subject).collect(Collectors.toList());
+            assertEquals(expected.size(), result.getReferences().size(), "Expected same number of results for " + file);
+            assertEquals(!expected.isEmpty(), result.hasMatches());
+
+            nodes += result.getNodeCount();
+            matches += result.hasMatches() ? 1 : 0;
+        }
+
+        assertEquals(nodes, statistics.getNodeCount());
+        assertEquals(matches, statistics.getMatchCount());
+        assertTrue(statistics.getNodesPerSecond() > 0);
+    }
+
+    @ParameterizedTest
+    @MethodSource("cases")
+    void reportInvalidFiles(String queryFile, int threads, int maxPending) throws Exception {
+        QueryNode query = queryConverter.parseResource("xml/query/" + queryFile + ".xml");
+
+        Path directory = Files.createTempDirectory("corpus");
+        Path invalid = Files.writeString(directory.resolve("invalid.xml"), "not xml");
+        Path ignored = Files.writeString(directory.resolve("ignored.txt"), "not xml");
+        try {
+            Map<Path, CorpusResult> results = new HashMap<>();
+            CorpusStatistics statistics = new CorpusRunner(query, threads, maxPending)
+                    .run(directory, result -> results.put(result.getFile(), result));
+
+            assertEquals(1, statistics.getFileCount());
+            assertEquals(1, statistics.getErrorCount());
+            assertNotNull(results.get(invalid).getError());
+            assertEquals(0, results.get(invalid).getNodeCount());
+        } finally {
+            Files.delete(invalid);
+            Files.delete(ignored);
+            Files.delete(directory);
+        }
+    }
+}
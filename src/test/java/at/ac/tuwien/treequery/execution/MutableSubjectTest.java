@@ -0,0 +1,158 @@
+package at.ac.tuwien.treequery.execution;
+
+import static at.ac.tuwien.treequery.builder.SubjectNodeBuilder.type;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import at.ac.tuwien.treequery.TestResources;
+import at.ac.tuwien.treequery.query.QueryNode;
+import at.ac.tuwien.treequery.subject.BaseSubjectNode;
+import at.ac.tuwien.treequery.subject.SubjectNode;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+class MutableSubjectTest {
+
+    @Test
+    void randomEdits() throws Exception {
+        Random random = new Random(42);
+        MutableSubject subject = new MutableSubject(TestResources.subject("subject_real01"));
+        List<QueryNode> queries = new ArrayList<>();
+        for (String name : TestResources.queryNames()) {
+            if (name.startsWith("real/")) {
+                queries.add(TestResources.query(name));
+            }
+        }
+        verify(subject, queries);
+
+        for (int i = 0; i < 200; i++) {
+            List<MutableSubject.Node> nodes = preOrder(subject.getRoot());
+            if (nodes.size() < 2) {
+                subject.insert(subject.getRoot(), 0, TestResources.subject("subject_real01"));
+                continue;
+            }
+            MutableSubject.Node node = nodes.get(1 + random.nextInt(nodes.size() - 1));
+            MutableSubject.Node source = nodes.get(1 + random.nextInt(nodes.size() - 1));
+            long version = subject.getVersion();
+
+            // Insert copies of existing subtrees, so the types stay realistic and the queries keep matching
+            switch (random.nextInt(3)) {
+                case 0:
+                    MutableSubject.Node inserted = subject.insert(node, random.nextInt(node.getChildren().size() + 1), source);
+                    assertEquals(source.getSize(), inserted.getSize());
+                    break;
+                case 1:
+                    subject.remove(node);
+                    assertFalse(node.isAttached());
+                    break;
+                default:
+                    subject.replace(node, source);
+                    break;
+            }
+            assertTrue(subject.getVersion() > version);
+            verify(subject, i % 20 == 0 ? queries : List.of());
+        }
+    }
+
+    @Test
+    void relabelLocally() {
+        MutableSubject subject = new MutableSubject(type("root")
+                .child(type("a").child(type("b").build()).child(type("b").build()).build())
+                .child(type("a").child(type("b").build()).build())
+                .build());
+        MutableSubject.Node parent = subject.getRoot().getChildren().get(0);
+
+        // Inserting at the same position repeatedly halves the gap each time until it is exhausted
+        for (int i = 0; i < 1000; i++) {
+            subject.insert(parent, 1, type("c").child(type("d").build()).build());
+        }
+        verify(subject, List.of());
+        assertTrue(subject.getRelabelCount() > 0);
+
+        // Relabeling the whole subject each time would change about 1000 * 1000 labels
+        assertTrue(subject.getRelabeledNodeCount() < 100_000,
+                () -> "Expected local relabeling, got " + subject.getRelabeledNodeCount() + " relabeled nodes");
+
+        assertEquals(1000, subject.getDescendants("c", parent).size());
+        assertEquals(1000, parent.count("d"));
+        assertEquals(0, subject.getDescendants("c", subject.getRoot().getChildren().get(1)).size());
+        assertEquals(List.of(parent.getChildren().get(1).getChildren().get(0)), subject.getDescendants("d", parent.getChildren().get(1)));
+    }
+
+    @Test
+    void rejectInvalidEdits() {
+        MutableSubject subject = new MutableSubject(type("root").child(type("a").build()).build());
+        MutableSubject other = new MutableSubject(type("root").child(type("a").build()).build());
+        MutableSubject.Node node = subject.getRoot().getChildren().get(0);
+
+        assertThrows(IllegalArgumentException.class, () -> subject.remove(subject.getRoot()));
+        assertThrows(IllegalArgumentException.class, () -> subject.replace(subject.getRoot(), type("b").build()));
+        assertThrows(IllegalArgumentException.class, () -> subject.remove(other.getRoot().getChildren().get(0)));
+        assertThrows(IndexOutOfBoundsException.class, () -> subject.insert(node, 1, type("b").build()));
+        assertThrows(UnsupportedOperationException.class, () -> subject.getRoot().getChildren().clear());
+
+        subject.remove(node);
+        assertThrows(IllegalArgumentException.class, () -> subject.insert(node, 0, type("b").build()));
+        assertEquals(List.of(), subject.getNodes("a"));
+        assertEquals(1, subject.getRoot().getSize());
+    }
+
+    /**
+     * Compares the maintained labels, index and summaries to the ones computed from scratch
+     */
+    private static void verify(MutableSubject subject, List<QueryNode> queries) {
+        List<MutableSubject.Node> nodes = preOrder(subject.getRoot());
+        for (int i = 1; i < nodes.size(); i++) {
+            assertTrue(nodes.get(i - 1).getLabel() < nodes.get(i).getLabel(), "Labels must increase in pre-order");
+        }
+
+        Map<String, List<MutableSubject.Node>> byType = nodes.subList(1, nodes.size()).stream()
+                .collect(Collectors.groupingBy(SubjectNode::getType));
+        for (Map.Entry<String, List<MutableSubject.Node>> entry : byType.entrySet()) {
+            assertEquals(entry.getValue(), subject.getNodes(entry.getKey()));
+        }
+
+        for (MutableSubject.Node node : nodes) {
+            List<MutableSubject.Node> subtree = preOrder(node);
+            assertEquals(subtree.size(), node.getSize());
+            Map<String, Integer> counts = new HashMap<>();
+            subtree.forEach(n -> counts.merge(n.getType(), 1, Integer::sum));
+            counts.forEach((type, count) -> assertEquals(count, node.count(type)));
+        }
+
+        MutableSubject.Node ancestor = nodes.get(nodes.size() / 3);
+        List<MutableSubject.Node> descendants = preOrder(ancestor);
+        for (String type : byType.keySet()) {
+            List<MutableSubject.Node> expected = descendants.subList(1, descendants.size()).stream()
+                    .filter(n -> n.getType().equals(type))
+                    .collect(Collectors.toList());
+            assertEquals(expected, subject.getDescendants(type, ancestor));
+            expected.forEach(n -> assertTrue(subject.isAncestor(ancestor, n)));
+        }
+
+        SubjectNode copy = copy(subject.getRoot());
+        for (QueryNode query : queries) {
+            assertEquals(query.findReferences(copy).count(), query.findReferences(subject.getRoot()).count());
+        }
+    }
+
+    private static List<MutableSubject.Node> preOrder(MutableSubject.Node node) {
+        List<MutableSubject.Node> nodes = new ArrayList<>();
+        nodes.add(node);
+        node.getChildren().forEach(child -> nodes.addAll(preOrder(child)));
+        return nodes;
+    }
+
+    private static SubjectNode copy(SubjectNode node) {
+        return new BaseSubjectNode(node.getType(), node.getProperties(),
+                node.getChildren().stream().map(MutableSubjectTest::copy).collect(Collectors.toList()));
+    }
+}
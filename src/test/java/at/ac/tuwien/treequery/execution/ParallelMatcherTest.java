@@ -0,0 +1,53 @@
+package at.ac.tuwien.treequery.execution;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import at.ac.tuwien.treequery.TestResources;
+import at.ac.tuwien.treequery.query.QueryNode;
+import at.ac.tuwien.treequery.subject.SubjectNode;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+class ParallelMatcherTest {
+
+    private static ForkJoinPool pool;
+
+    @BeforeAll
+    static void createPool() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterAll
+    static void shutdownPool() {
+        pool.shutdown();
+    }
+
+    private static Stream<Arguments> cases() {
+        return TestResources.allCases();
+    }
+
+    @ParameterizedTest
+    @MethodSource("cases")
+    void compareToSequential(String subjectName, String queryName) throws Exception {
+        SubjectNode subject = TestResources.subject(subjectName);
+        QueryNode query = TestResources.query(queryName);
+
+        // Use a threshold of 1 to split the candidates as far as possible
+        ParallelMatcher matcher = new ParallelMatcher(pool, 1);
+
+        assertEquals(query.hasMatches(subject), matcher.hasMatches(query, subject));
+
+        List<Map<String, SubjectNode>> expected = query.findReferences(subject).collect(Collectors.toList());
+        List<Map<String, SubjectNode>> actual = matcher.findReferences(query, subject).collect(Collectors.toList());
+        assertEquals(expected, actual, "Expected the same references in the same order");
+    }
+}
@@ -0,0 +1,223 @@
+package at.ac.tuwien.treequery.execution;
+
+import static at.ac.tuwien.treequery.builder.QueryNodeBuilder.container;
+import static at.ac.tuwien.treequery.builder.QueryNodeBuilder.single;
+import static at.ac.tuwien.treequery.builder.SubjectNodeBuilder.type;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import at.ac.tuwien.treequery.TestResources;
+import at.ac.tuwien.treequery.builder.SubjectNodeBuilder;
+import at.ac.tuwien.treequery.matching.LinkedSubjectNode;
+import at.ac.tuwien.treequery.matching.MatchingContext;
+import at.ac.tuwien.treequery.query.QueryNode;
+import at.ac.tuwien.treequery.subject.SubjectNode;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+class PersistentSubjectTest {
+
+    @Test
+    void copyEditedPathOnly() {
+        PersistentSubject first = new PersistentSubject(type("root")
+                .child(type("a").child(type("b").build()).build())
+                .child(type("a").child(type("b").build()).child(type("c").build()).build())
+                .build());
+
+        PersistentSubject second = first.replace(new int[]{1, 1}, type("b").child(type("b").build()).build());
+        assertEquals(1, second.getVersion());
+        assertNotSame(first.getRoot(), second.getRoot());
+        assertNotSame(first.getNode(1), second.getNode(1));
+        assertSame(first.getNode(0), second.getNode(0));
+        assertSame(first.getNode(1, 0), second.getNode(1, 0));
+
+        // The older snapshot and its summaries are unchanged
+        assertEquals("c", first.getNode(1, 1).getType());
+        assertEquals(List.of(first.getNode(0, 0), first.getNode(1, 0)), first.getNodes("b"));
+        assertEquals(6, first.getRoot().getSize());
+        assertEquals(List.of(second.getNode(0, 0), second.getNode(1, 0), second.getNode(1, 1), second.getNode(1, 1, 0)),
+                second.getNodes("b"));
+        assertEquals(7, second.getRoot().getSize());
+        assertEquals(0, second.getRoot().count("c"));
+
+        // Nodes of persistent subjects are shared when inserted
+        PersistentSubject third = second.insert(new int[0], 0, second.getNode(1)).remove(2);
+        assertSame(second.getNode(1), third.getNode(0));
+        assertSame(second.getNode(0), third.getNode(1));
+        assertEquals(3, third.getVersion());
+        assertEquals(List.of(), third.getNodes("c"));
+        assertSame(third.prepare(), third.prepare());
+
+        assertThrows(IllegalArgumentException.class, () -> first.remove());
+        assertThrows(IllegalArgumentException.class, () -> first.replace(new int[0], type("a").build()));
+        assertThrows(IndexOutOfBoundsException.class, () -> first.remove(2));
+    }
+
+    @Test
+    void prepareEditedSnapshotLazily() {
+        SubjectNodeBuilder builder = type("root");
+        for (int i = 0; i < 1000; i++) {
+            builder.child(type("class").child(type("method").child(type("return").build()).build()).build());
+        }
+        PersistentSubject first = new PersistentSubject(builder.build());
+        PersistentSubject second = first.insert(new int[]{500, 0}, 1, type("call").prop("name", "x").build());
+        QueryNode query = single("method").children(container().child(single("call").build()).unordered()).build();
+
+        // Preparing the edited snapshot visits no nodes, and the lookups of the planned anchor only visit the edited path
+        PreparedSnapshot prepared = (PreparedSnapshot) second.prepare();
+        assertEquals(0, prepared.getVisitCount());
+        assertEquals(query.findReferences(second.getRoot()).collect(Collectors.toList()),
+                query.findReferences(prepared).collect(Collectors.toList()));
+        assertEquals(1, query.findReferences(prepared).count());
+        assertTrue(prepared.getVisitCount() < 10, "Visited " + prepared.getVisitCount() + " nodes");
+        assertEquals(3001, prepared.getNodeCount());
+        assertEquals(1000, prepared.getNodeCount("method"));
+    }
+
+    @Test
+    void lookUpLikeIndex() throws Exception {
+        for (String name : TestResources.subjectNames()) {
+            PersistentSubject snapshot = new PersistentSubject(TestResources.subject(name));
+            PreparedSubject indexed = new PreparedSubject(snapshot.getRoot());
+            PreparedSubject prepared = snapshot.prepare();
+            assertEquals(indexed.getNodeCount(), prepared.getNodeCount(), name);
+            assertEquals(indexed.getAverageDepth(), prepared.getAverageDepth(), 1e-9, name);
+
+            // The nodes are linked separately, so they are compared by their subject nodes and their intervals
+            List<LinkedSubjectNode> nodes = prepared.getNodes();
+            assertEquals(describe(indexed, indexed.getNodes()), describe(prepared, nodes), name);
+            for (String type : nodes.stream().map(e -> e.node().getType()).distinct().collect(Collectors.toList())) {
+                assertEquals(describe(indexed, indexed.getNodes(type)), describe(prepared, prepared.getNodes(type)), name);
+                assertEquals(indexed.getNodeCount(type), prepared.getNodeCount(type), name);
+            }
+            for (LinkedSubjectNode element : nodes) {
+                for (Map.Entry<String, Object> property : element.node().getProperties().entrySet()) {
+                    assertEquals(describe(indexed, indexed.getNodes(property.getKey(), property.getValue())),
+                            describe(prepared, prepared.getNodes(property.getKey(), property.getValue())), name);
+                }
+            }
+        }
+    }
+
+    @Test
+    void compareExecutorsToTopDown() throws Exception {
+        for (String subjectName : TestResources.subjectNames()) {
+            PersistentSubject snapshot = new PersistentSubject(TestResources.subject(subjectName));
+            SubjectNode node = snapshot.getRoot();
+            PreparedSubject prepared = snapshot.prepare();
+            for (String queryName : TestResources.queryNames()) {
+                QueryNode query = TestResources.query(queryName);
+                List<Map<String, SubjectNode>> expected = query.findReferences(node).collect(Collectors.toList());
+                for (QueryExecutor executor : List.of(new QueryPlanner().plan(query, prepared), TwigJoinExecutor.INSTANCE,
+                        SemiJoinExecutor.INSTANCE)) {
+                    assertEquals(expected, executor.findMatches(query, prepared, MatchingContext.create())
+                            .map(s -> s.getReferences().getData())
+                            .collect(Collectors.toList()), subjectName + " " + queryName + " " + executor);
+                }
+            }
+        }
+    }
+
+    private static List<String> describe(PreparedSubject subject, List<LinkedSubjectNode> nodes) {
+        return nodes.stream()
+                .map(e -> e.node() + "@" + subject.getIndex(e) + ".." + subject.getEnd(e))
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    void readSnapshotsConcurrently() throws Exception {
+        List<QueryNode> queries = new ArrayList<>();
+        for (String name : TestResources.queryNames()) {
+            if (name.startsWith("real/")) {
+                queries.add(TestResources.query(name));
+            }
+        }
+
+        PersistentSubject first = new PersistentSubject(TestResources.subject("subject_real01"));
+        List<List<Map<String, SubjectNode>>> expected = references(first, queries);
+        AtomicReference<PersistentSubject> latest = new AtomicReference<>(first);
+        AtomicBoolean done = new AtomicBoolean();
+
+        ExecutorService executor = Executors.newFixedThreadPool(5);
+        try {
+            Future<?> writer = executor.submit(() -> {
+                Random random = new Random(11);
+                for (int i = 0; i < 300; i++) {
+                    latest.set(edit(latest.get(), random));
+                }
+                done.set(true);
+            });
+
+            // Each reader matches its snapshot twice while the writer goes on, and compares it to an unprepared copy
+            List<Future<Integer>> readers = new ArrayList<>();
+            for (int r = 0; r < 4; r++) {
+                readers.add(executor.submit(() -> {
+                    int checked = 0;
+                    do {
+                        PersistentSubject snapshot = latest.get();
+                        List<List<Map<String, SubjectNode>>> before = references(snapshot, queries);
+                        Thread.yield();
+                        assertEquals(before, references(snapshot, queries));
+                        for (int i = 0; i < queries.size(); i++) {
+                            assertEquals(before.get(i), queries.get(i).findReferences(snapshot.getRoot()).collect(Collectors.toList()));
+                        }
+                        checked++;
+                    } while (!done.get());
+                    return checked;
+                }));
+            }
+
+            writer.get(1, TimeUnit.MINUTES);
+            for (Future<Integer> reader : readers) {
+                assertTrue(reader.get(1, TimeUnit.MINUTES) > 0);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // The first snapshot still returns the same results after all edits
+        assertEquals(300, latest.get().getVersion());
+        assertEquals(expected, references(first, queries));
+    }
+
+    private static PersistentSubject edit(PersistentSubject snapshot, Random random) {
+        int[] path = randomPath(snapshot, random);
+        int[] source = randomPath(snapshot, random);
+        SubjectNode node = snapshot.getNode(source);
+        if (path.length > 0 && (random.nextBoolean() || snapshot.getRoot().getSize() > 5000)) {
+            return random.nextBoolean() ? snapshot.remove(path) : snapshot.replace(path, type(node.getType()).build());
+        }
+        return snapshot.insert(path, random.nextInt(snapshot.getNode(path).getChildren().size() + 1), node);
+    }
+
+    private static int[] randomPath(PersistentSubject snapshot, Random random) {
+        List<Integer> path = new ArrayList<>();
+        PersistentSubject.Node node = snapshot.getRoot();
+        while (!node.getChildren().isEmpty() && random.nextInt(8) != 0) {
+            int index = random.nextInt(node.getChildren().size());
+            path.add(index);
+            node = node.getChildren().get(index);
+        }
+        return path.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static List<List<Map<String, SubjectNode>>> references(PersistentSubject snapshot, List<QueryNode> queries) {
+        return queries.stream()
+                .map(q -> q.findReferences(snapshot.prepare()).collect(Collectors.toList()))
+                .collect(Collectors.toList());
+    }
+}
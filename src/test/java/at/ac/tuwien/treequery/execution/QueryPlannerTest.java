@@ -0,0 +1,139 @@
+package at.ac.tuwien.treequery.execution;
+
+import static at.ac.tuwien.treequery.builder.QueryNodeBuilder.container;
+import static at.ac.tuwien.treequery.builder.QueryNodeBuilder.single;
+import static at.ac.tuwien.treequery.builder.SubjectNodeBuilder.type;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import at.ac.tuwien.treequery.TestResources;
+import at.ac.tuwien.treequery.builder.SubjectNodeBuilder;
+import at.ac.tuwien.treequery.matching.LinkedSubjectNode;
+import at.ac.tuwien.treequery.matching.MatchingContext;
+import at.ac.tuwien.treequery.query.PropertyPredicate;
+import at.ac.tuwien.treequery.query.QueryNode;
+import at.ac.tuwien.treequery.query.SingleQueryNode;
+import at.ac.tuwien.treequery.subject.SubjectNode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+class QueryPlannerTest {
+
+    private static Stream<Arguments> cases() {
+        return TestResources.allCases();
+    }
+
+    @Test
+    void chooseAnchorForRareLeaf() {
+        SubjectNodeBuilder root = type("root");
+        for (int i = 0; i < 50; i++) {
+            root.child(type("method").child(type("body")
+                    .child(type("call").prop("name", i == 42 ? "exit" : "print").build())
+                    .build()).build());
+        }
+        PreparedSubject subject = new PreparedSubject(root.build());
+
+        QueryNode query = single("method").children(container()
+                .child(single("call").prop("name", "exit").build())
+                .unordered()).build();
+        QueryExecutor executor = new QueryPlanner().plan(query, subject);
+        assertInstanceOf(AnchorExecutor.class, executor);
+        assertEquals("name", ((AnchorExecutor) executor).key);
+        assertEquals(1, ((AnchorExecutor) executor).distance);
+
+        List<Map<String, SubjectNode>> references = query.findReferences(subject).collect(Collectors.toList());
+        assertEquals(query.findReferences(subject.getNode()).collect(Collectors.toList()), references);
+        assertEquals(1, references.size());
+
+        // The anchor is only valid for the query it was found in
+        QueryNode other = single("body").children(container().child(single("call").build()).unordered()).build();
+        assertThrows(IllegalArgumentException.class, () -> executor.findMatches(other, subject, MatchingContext.create()));
+        assertThrows(IllegalArgumentException.class, () -> executor.findMatches(container().child(query).ordered(), subject,
+                MatchingContext.create()));
+    }
+
+    @Test
+    void lookupPredicatesInIndex() {
+        SubjectNodeBuilder root = type("root");
+        for (int i = 0; i < 50; i++) {
+            root.child(type("method").child(type("body")
+                    .child(type("call").prop("name", i % 10 == 3 ? "exit" + i : "print" + i).build())
+                    .build()).build());
+        }
+        PreparedSubject subject = new PreparedSubject(root.build());
+
+        // Prefixes are looked up as a range of values, and the results are kept in pre-order
+        List<LinkedSubjectNode> nodes = subject.getNodes("name", PropertyPredicate.prefix("exit"));
+        assertEquals(List.of("exit3", "exit13", "exit23", "exit33", "exit43"),
+                nodes.stream().map(e -> e.node().getProperties().get("name")).collect(Collectors.toList()));
+        assertEquals(2, subject.getNodes("name", PropertyPredicate.in(List.of("print1", "exit3", "other"))).size());
+        assertFalse(PreparedSubject.isIndexed(PropertyPredicate.suffix("3")));
+
+        // Conjunctions are looked up by one of their predicates and may contain nodes not matching the others
+        PropertyPredicate conjunction = PropertyPredicate.and(List.of(PropertyPredicate.suffix("3"), PropertyPredicate.prefix("exit")));
+        assertTrue(PreparedSubject.isIndexed(conjunction));
+        assertEquals(nodes, subject.getNodes("name", conjunction));
+
+        QueryNode query = single("method").children(container()
+                .child(single("call").prop("name", PropertyPredicate.prefix("exit")).build())
+                .unordered()).build();
+        QueryExecutor executor = new QueryPlanner().plan(query, subject);
+        assertInstanceOf(AnchorExecutor.class, executor);
+        assertEquals("name", ((AnchorExecutor) executor).key);
+        assertEquals(query.findReferences(subject.getNode()).collect(Collectors.toList()),
+                query.findReferences(subject).collect(Collectors.toList()));
+    }
+
+    @Test
+    void chooseTopDownWithoutRequiredAnchor() {
+        PreparedSubject subject = new PreparedSubject(type("root").child(type("a").child(type("b").build()).build()).build());
+
+        // Optional and alternative children are not required by every match
+        QueryNode query = single(null).children(container()
+                .child(container().child(single("b").build()).optional())
+                .child(container().child(single("a").build()).child(single("b").build()).any())
+                .unordered()).build();
+        assertTrue(QueryPlanner.findAnchors((SingleQueryNode) query, subject).isEmpty());
+        assertSame(TopDownExecutor.INSTANCE, new QueryPlanner().plan(query, subject));
+
+        // Containers as root
+        assertSame(TopDownExecutor.INSTANCE, new QueryPlanner().plan(container().child(single("b").build()).ordered(), subject));
+    }
+
+    @ParameterizedTest
+    @MethodSource("cases")
+    void compareStrategies(String subjectName, String queryName) throws Exception {
+        SubjectNode node = TestResources.subject(subjectName);
+        QueryNode query = TestResources.query(queryName);
+        PreparedSubject subject = new PreparedSubject(node);
+
+        List<Map<String, SubjectNode>> expected = query.findReferences(node).collect(Collectors.toList());
+        assertEquals(expected, query.findReferences(subject).collect(Collectors.toList()));
+        assertEquals(query.hasMatches(node), query.hasMatches(subject));
+        assertEquals(expected, references(TopDownExecutor.INSTANCE, query, subject));
+
+        if (query instanceof SingleQueryNode) {
+            // Every anchor must return the same results in the same order
+            for (AnchorExecutor anchor : QueryPlanner.findAnchors((SingleQueryNode) query, subject)) {
+                assertEquals(expected, references(anchor, query, subject), anchor.toString());
+            }
+        }
+    }
+
+    private static List<Map<String, SubjectNode>> references(QueryExecutor executor, QueryNode query, PreparedSubject subject) {
+        return executor.findMatches(query, subject, MatchingContext.create())
+                .map(s -> s.getReferences().getData())
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,91 @@
+package at.ac.tuwien.treequery.execution;
+
+import static at.ac.tuwien.treequery.builder.QueryNodeBuilder.container;
+import static at.ac.tuwien.treequery.builder.QueryNodeBuilder.single;
+import static at.ac.tuwien.treequery.builder.SubjectNodeBuilder.type;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import at.ac.tuwien.treequery.TestResources;
+import at.ac.tuwien.treequery.query.QueryNode;
+import at.ac.tuwien.treequery.subject.SubjectNode;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+class QuerySetTest {
+
+    private static List<QueryNode> allQueries;
+
+    @BeforeAll
+    static void loadQueries() throws Exception {
+        allQueries = new ArrayList<>();
+        for (String name : TestResources.queryNames()) {
+            allQueries.add(TestResources.query(name));
+        }
+    }
+
+    private static List<String> subjects() {
+        return TestResources.subjectNames();
+    }
+
+    @ParameterizedTest
+    @MethodSource("subjects")
+    void compareToSingleQueries(String subjectName) throws Exception {
+        SubjectNode subject = TestResources.subject(subjectName);
+        QuerySet querySet = new QuerySet(allQueries);
+
+        assertEquals(expectedMatches(allQueries, subject), querySet.hasMatches(subject));
+        assertEquals(expectedReferences(allQueries, subject), querySet.findReferences(subject));
+    }
+
+    @Test
+    void dispatchByTypeAndProperties() {
+        SubjectNode subject = type("root")
+                .child(type("a").prop("name", "x").prop("size", 1).build())
+                .child(type("b").prop("name", "y")
+                        .child(type("a").prop("name", "y").build())
+                        .build())
+                .build();
+
+        List<QueryNode> queries = List.of(
+                single("a").build(),
+                single("a").prop("name", "y").ref("node").build(),
+                single("a").prop("name", "y").direct().build(),
+                single(null).prop("name", "x").prop("size", 1).build(),
+                single(null).prop("size", 2L).build(),
+                single("b").children(container().child(single("a").ref("inner").build()).unordered()).build(),
+                container().child(single("a").build()).child(single("b").build()).ordered(),
+                single("c").build()
+        );
+        QuerySet querySet = new QuerySet(queries);
+
+        BitSet expected = new BitSet();
+        expected.set(0, 2);
+        expected.set(3);
+        expected.set(5, 7);
+        assertEquals(expected, querySet.hasMatches(subject));
+        assertEquals(expectedMatches(queries, subject), querySet.hasMatches(subject));
+        assertEquals(expectedReferences(queries, subject), querySet.findReferences(subject));
+    }
+
+    private static BitSet expectedMatches(List<QueryNode> queries, SubjectNode subject) {
+        BitSet expected = new BitSet();
+        for (int i = 0; i < queries.size(); i++) {
+            expected.set(i, queries.get(i).hasMatches(subject));
+        }
+        return expected;
+    }
+
+    private static List<List<Map<String, SubjectNode>>> expectedReferences(List<QueryNode> queries, SubjectNode subject) {
+        return queries.stream()
+                .map(q -> q.findReferences(subject).collect(Collectors.toList()))
+                .collect(Collectors.toList());
+    }
+}
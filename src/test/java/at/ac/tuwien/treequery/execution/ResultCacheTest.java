@@ -0,0 +1,176 @@
+package at.ac.tuwien.treequery.execution;
+
+import static at.ac.tuwien.treequery.builder.QueryNodeBuilder.container;
+import static at.ac.tuwien.treequery.builder.QueryNodeBuilder.single;
+import static at.ac.tuwien.treequery.builder.SubjectNodeBuilder.type;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import at.ac.tuwien.treequery.query.QueryNode;
+import at.ac.tuwien.treequery.subject.SubjectNode;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+class ResultCacheTest {
+
+    private static final SubjectNode SUBJECT = type("root")
+            .child(type("a").child(type("b").build()).child(type("b").build()).build())
+            .child(type("c").build())
+            .build();
+
+    private final AtomicInteger loads = new AtomicInteger();
+    private final Supplier<SubjectNode> loader = () -> {
+        loads.incrementAndGet();
+        return SUBJECT;
+    };
+
+    @Test
+    void hitRepeatedQueries() {
+        ResultCache cache = new ResultCache(10, Long.MAX_VALUE);
+        QueryNode query = single("a").children(container().child(single("b").ref("x").build()).unordered()).build();
+        List<Map<String, SubjectNode>> expected = query.findReferences(SUBJECT).collect(Collectors.toList());
+
+        assertEquals(expected, cache.findReferences(query, "v1", loader));
+        assertEquals(expected, cache.findReferences(query, "v1", loader));
+        assertTrue(cache.hasMatches(query, "v1", loader));
+        assertEquals(1, loads.get());
+
+        // Structurally equal queries share the entry, even if they are only equal after normalization
+        QueryNode nested = single("a").children(container()
+                .child(container().child(single("b").ref("x").build()).unordered())
+                .unordered()).build();
+        assertEquals(expected, cache.findReferences(nested, "v1", loader));
+        assertEquals(1, loads.get());
+
+        // A new version of the subject is matched again
+        assertEquals(expected, cache.findReferences(query, "v2", loader));
+        assertEquals(2, loads.get());
+
+        ResultCacheStatistics statistics = cache.getStatistics();
+        assertEquals(3, statistics.getHitCount());
+        assertEquals(2, statistics.getMissCount());
+        assertEquals(2, statistics.getEntryCount());
+        assertEquals(0.6, statistics.getHitRate(), 1e-9);
+    }
+
+    @Test
+    void upgradeExistenceToReferences() {
+        ResultCache cache = new ResultCache(10, Long.MAX_VALUE);
+        QueryNode query = single("c").build();
+
+        assertTrue(cache.hasMatches(query, "v1", loader));
+        assertTrue(cache.hasMatches(query, "v1", loader));
+        assertEquals(1, loads.get());
+
+        // Only the existence of a match was cached, so the references need to be computed
+        assertEquals(1, cache.findReferences(query, "v1", loader).size());
+        assertEquals(2, loads.get());
+        assertEquals(1, cache.findReferences(query, "v1", loader).size());
+        assertEquals(2, loads.get());
+        assertFalse(cache.hasMatches(single("d").build(), "v1", loader));
+    }
+
+    @Test
+    void evictLeastRecentlyUsed() {
+        ResultCache cache = new ResultCache(2, Long.MAX_VALUE);
+        QueryNode a = single("a").build();
+        QueryNode b = single("b").build();
+        QueryNode c = single("c").build();
+
+        cache.hasMatches(a, "v1", loader);
+        cache.hasMatches(b, "v1", loader);
+        cache.hasMatches(a, "v1", loader);
+        cache.hasMatches(c, "v1", loader);
+        assertEquals(3, loads.get());
+        assertEquals(1, cache.getStatistics().getEvictionCount());
+
+        // The entry of b was used least recently
+        cache.hasMatches(a, "v1", loader);
+        assertEquals(3, loads.get());
+        cache.hasMatches(b, "v1", loader);
+        assertEquals(4, loads.get());
+    }
+
+    @Test
+    void evictBySize() {
+        ResultCache cache = new ResultCache(100, 3 * ResultCache.ENTRY_BYTES);
+        QueryNode b = single("b").ref("x").build();
+
+        // Each match of b adds a result with a single reference
+        cache.findReferences(b, "v1", loader);
+        long size = ResultCache.ENTRY_BYTES + 2 * (ResultCache.RESULT_BYTES + ResultCache.REFERENCE_BYTES);
+        assertEquals(size, cache.getStatistics().getByteSize());
+
+        cache.hasMatches(single("a").build(), "v1", loader);
+        cache.hasMatches(single("c").build(), "v1", loader);
+        assertEquals(1, cache.getStatistics().getEvictionCount());
+        assertEquals(2, cache.getStatistics().getEntryCount());
+        assertEquals(2 * ResultCache.ENTRY_BYTES, cache.getStatistics().getByteSize());
+
+        // Entries exceeding the bound on their own are not cached
+        ResultCache small = new ResultCache(100, ResultCache.ENTRY_BYTES);
+        small.findReferences(b, "v1", loader);
+        assertEquals(0, small.getStatistics().getEntryCount());
+    }
+
+    @Test
+    void invalidateVersion() {
+        ResultCache cache = new ResultCache(10, Long.MAX_VALUE);
+        cache.hasMatches(single("a").build(), "v1", loader);
+        cache.hasMatches(single("b").build(), "v1", loader);
+        cache.hasMatches(single("a").build(), "v2", loader);
+
+        cache.invalidate("v1");
+        assertEquals(1, cache.getStatistics().getEntryCount());
+        assertEquals(ResultCache.ENTRY_BYTES, cache.getStatistics().getByteSize());
+        cache.clear();
+        assertEquals(0, cache.getStatistics().getEntryCount());
+        assertEquals(0, cache.getStatistics().getByteSize());
+    }
+
+    @Test
+    void accessConcurrently() throws Exception {
+        ResultCache cache = new ResultCache(8, Long.MAX_VALUE);
+        List<QueryNode> queries = List.of(single("a").build(), single("b").ref("x").build(), single("c").build(), single(null).build());
+        List<List<Map<String, SubjectNode>>> expected = queries.stream()
+                .map(q -> q.findReferences(SUBJECT).collect(Collectors.toList()))
+                .collect(Collectors.toList());
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int offset = t;
+                futures.add(executor.submit(() -> {
+                    boolean correct = true;
+                    for (int i = 0; i < 500; i++) {
+                        int q = (i + offset) % queries.size();
+                        String token = "v" + (i % 3);
+                        correct &= expected.get(q).equals(cache.findReferences(queries.get(q), token, loader));
+                        correct &= !expected.get(q).isEmpty() == cache.hasMatches(queries.get(q), token, loader);
+                    }
+                    return correct;
+                }));
+            }
+            for (Future<Boolean> future : futures) {
+                assertTrue(future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        ResultCacheStatistics statistics = cache.getStatistics();
+        assertEquals(8 * 500 * 2, statistics.getHitCount() + statistics.getMissCount());
+        assertTrue(statistics.getEntryCount() <= 8);
+    }
+}
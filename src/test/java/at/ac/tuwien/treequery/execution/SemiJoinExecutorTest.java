@@ -0,0 +1,98 @@
+package at.ac.tuwien.treequery.execution;
+
+import static at.ac.tuwien.treequery.builder.QueryNodeBuilder.container;
+import static at.ac.tuwien.treequery.builder.QueryNodeBuilder.single;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import at.ac.tuwien.treequery.TestResources;
+import at.ac.tuwien.treequery.matching.MatchingContext;
+import at.ac.tuwien.treequery.query.QueryNode;
+import at.ac.tuwien.treequery.subject.BaseSubjectNode;
+import at.ac.tuwien.treequery.subject.SubjectNode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+class SemiJoinExecutorTest {
+
+    private static Stream<Arguments> cases() {
+        return TestResources.allCases();
+    }
+
+    @Test
+    void pruneDeadBranches() {
+        // Only one of many classes contains the node required deep down in the query
+        AtomicInteger counter = new AtomicInteger();
+        List<SubjectNode> classes = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            List<SubjectNode> methods = new ArrayList<>();
+            for (int j = 0; j < 4; j++) {
+                List<SubjectNode> calls = new ArrayList<>();
+                for (int k = 0; k < 3; k++) {
+                    calls.add(new CountingNode(i == 7 && j == 2 && k == 1 ? "target" : "call", List.of(), counter));
+                }
+                methods.add(new CountingNode("method", calls, counter));
+            }
+            classes.add(new CountingNode("class", methods, counter));
+        }
+        PreparedSubject subject = new PreparedSubject(new CountingNode("root", classes, counter));
+
+        QueryNode query = single("class").ref("class").children(container()
+                .child(single("method").ref("method").children(container()
+                        .child(single("target").ref("target").build())
+                        .any()).build())
+                .unordered()).build();
+        assertSame(SemiJoinExecutor.INSTANCE, new QueryPlanner().plan(query, subject));
+
+        counter.set(0);
+        List<Map<String, SubjectNode>> expected = query.findReferences(subject.getNode()).collect(Collectors.toList());
+        int topDown = counter.getAndSet(0);
+        assertEquals(expected, query.findReferences(subject).collect(Collectors.toList()));
+        int semiJoin = counter.get();
+
+        assertEquals(1, expected.size());
+        assertTrue(semiJoin * 2 < topDown, () -> String.format("Expected fewer checks than %d, got %d", topDown, semiJoin));
+    }
+
+    @ParameterizedTest
+    @MethodSource("cases")
+    void compareToTopDown(String subjectName, String queryName) throws Exception {
+        SubjectNode node = TestResources.subject(subjectName);
+        QueryNode query = TestResources.query(queryName);
+        PreparedSubject subject = new PreparedSubject(node);
+
+        List<Map<String, SubjectNode>> references = SemiJoinExecutor.INSTANCE.findMatches(query, subject, MatchingContext.create())
+                .map(s -> s.getReferences().getData())
+                .collect(Collectors.toList());
+        assertEquals(query.findReferences(node).collect(Collectors.toList()), references);
+    }
+
+    /**
+     * A subject node counting how often it is checked against a query node
+     */
+    private static class CountingNode extends BaseSubjectNode {
+
+        private final AtomicInteger counter;
+
+        CountingNode(String type, List<SubjectNode> children, AtomicInteger counter) {
+            super(type, null, children);
+            this.counter = counter;
+        }
+
+        @Override
+        public boolean matches(String type, Map<String, Object> properties, Map<String, SubjectNode> references) {
+            counter.incrementAndGet();
+            return super.matches(type, properties, references);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package at.ac.tuwien.treequery.execution;
+
+import static at.ac.tuwien.treequery.builder.QueryNodeBuilder.container;
+import static at.ac.tuwien.treequery.builder.QueryNodeBuilder.single;
+import static at.ac.tuwien.treequery.builder.SubjectNodeBuilder.type;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import at.ac.tuwien.treequery.TestResources;
+import at.ac.tuwien.treequery.query.QueryNode;
+import at.ac.tuwien.treequery.query.SingleQueryNode;
+import at.ac.tuwien.treequery.subject.BaseSubjectNode;
+import at.ac.tuwien.treequery.subject.SubjectNode;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+class StandingQueriesTest {
+
+    @Test
+    void notifyDeltas() {
+        MutableSubject subject = new MutableSubject(type("root")
+                .child(type("class").child(type("method").child(type("call").prop("name", "a").build()).build()).build())
+                .child(type("class").child(type("method").build()).build())
+                .build());
+        StandingQueries standing = new StandingQueries(subject);
+        QueryNode query = single("method").children(container().child(single("call").prop("name", "b").ref("call").build())
+                .unordered()).ref("method").build();
+
+        List<List<StandingMatch>> added = new ArrayList<>();
+        List<List<StandingMatch>> removed = new ArrayList<>();
+        StandingQueries.Registration registration = standing.register(query, (r, a, d) -> {
+            added.add(a);
+            removed.add(d);
+        });
+        assertEquals(List.of(), registration.getMatches());
+
+        // Inserting a matching call creates a match of its method
+        MutableSubject.Node method = subject.getRoot().getChildren().get(1).getChildren().get(0);
+        MutableSubject.Node call = subject.insert(method, 0, type("call").prop("name", "b").build());
+        assertEquals(List.of(List.of(new StandingMatch(method, Map.of("method", method, "call", call)))), added);
+        assertEquals(List.of(List.of()), removed);
+        assertEquals(added.get(0), registration.getMatches());
+
+        // Unrelated edits do not notify the listener
+        subject.insert(subject.getRoot().getChildren().get(0), 1, type("field").build());
+        assertEquals(1, added.size());
+
+        // Replacing the call removes the match
+        subject.replace(call, type("call").prop("name", "c").build());
+        assertEquals(List.of(), added.get(1));
+        assertEquals(added.get(0), removed.get(1));
+        assertEquals(List.of(), registration.getMatches());
+
+        // Cancelled registrations are no longer updated
+        registration.cancel();
+        subject.insert(method, 0, type("call").prop("name", "b").build());
+        assertEquals(2, added.size());
+        assertEquals(List.of(), registration.getMatches());
+        standing.close();
+    }
+
+    @Test
+    void compareToFullEvaluation() throws Exception {
+        Random random = new Random(7);
+        MutableSubject subject = new MutableSubject(TestResources.subject("subject_real02"));
+        StandingQueries standing = new StandingQueries(subject);
+
+        List<QueryNode> queries = new ArrayList<>();
+        for (String name : TestResources.queryNames()) {
+            if (name.startsWith("real/")) {
+                queries.add(TestResources.query(name));
+            }
+        }
+        // A query whose root is a container with multiple children is matched again completely
+        queries.add(container().child(single("method").build()).child(single("call").build()).unordered());
+
+        // The deltas applied to the initial matches must result in the current matches
+        Map<StandingQueries.Registration, List<StandingMatch>> applied = new HashMap<>();
+        for (QueryNode query : queries) {
+            StandingQueries.Registration registration = standing.register(query, (r, a, d) -> {
+                List<StandingMatch> matches = applied.get(r);
+                d.forEach(matches::remove);
+                matches.addAll(a);
+            });
+            applied.put(registration, new ArrayList<>(registration.getMatches()));
+        }
+        assertTrue(applied.keySet().stream().filter(r -> r.getMatchedQuery() instanceof SingleQueryNode).count() >= 5);
+
+        for (int i = 0; i < 60; i++) {
+            List<MutableSubject.Node> nodes = MutableSubject.preOrder(subject.getRoot());
+            MutableSubject.Node node = nodes.get(1 + random.nextInt(nodes.size() - 1));
+            MutableSubject.Node source = nodes.get(1 + random.nextInt(nodes.size() - 1));
+            if (random.nextBoolean() && node.getSize() < nodes.size() / 2) {
+                subject.replace(node, source);
+            } else if (source.getSize() < nodes.size() / 2) {
+                subject.insert(node, random.nextInt(node.getChildren().size() + 1), source);
+            } else {
+                subject.remove(node);
+            }
+
+            for (Map.Entry<StandingQueries.Registration, List<StandingMatch>> entry : applied.entrySet()) {
+                QueryNode query = entry.getKey().getMatchedQuery();
+                List<Map<String, SubjectNode>> expected = query.findReferences(subject.getRoot()).collect(Collectors.toList());
+                List<StandingMatch> matches = entry.getKey().getMatches();
+                assertEquals(expected, matches.stream().map(StandingMatch::getReferences).collect(Collectors.toList()));
+                assertEquals(matches.size(), entry.getValue().size());
+                assertTrue(entry.getValue().containsAll(matches));
+            }
+        }
+    }
+
+    @Test
+    void evaluateEditedRegionOnly() {
+        List<SubjectNode> classes = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            classes.add(type("class").child(type("method").child(type("call").build()).build()).build());
+        }
+        MutableSubject subject = new MutableSubject(new BaseSubjectNode("root", null, classes));
+        StandingQueries standing = new StandingQueries(subject);
+        standing.register(single("method").children(container().child(single("target").build()).unordered()).build(),
+                (r, a, d) -> { });
+        standing.register(single(null).children(container().child(single("target").build()).unordered()).build(),
+                (r, a, d) -> { });
+        long initial = standing.getEvaluationCount();
+
+        // Only the method of the edited class, and all ancestors and inserted nodes for the query without type, are matched again
+        MutableSubject.Node method = subject.getRoot().getChildren().get(50).getChildren().get(0);
+        subject.insert(method, 1, type("target").build());
+        assertEquals(1 + 3, standing.getEvaluationCount() - initial);
+    }
+
+    @Test
+    void linkEditedRegionOnly() {
+        // All classes are within the single child of the root, which is the topmost ancestor of every edit
+        List<SubjectNode> classes = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            classes.add(type("class").child(type("method").child(type("call").build()).build()).build());
+        }
+        MutableSubject subject = new MutableSubject(new BaseSubjectNode("root", null,
+                List.of(new BaseSubjectNode("file", null, classes))));
+        StandingQueries standing = new StandingQueries(subject);
+        StandingQueries.Registration registration = standing.register(
+                single("method").children(container().child(single("target").build()).unordered()).build(), (r, a, d) -> { });
+        assertEquals(302, standing.getLinkedNodeCount());
+
+        // Only the edited method with its subtree of three nodes and its three ancestors are wrapped
+        MutableSubject.Node method = subject.getRoot().getChildren().get(0).getChildren().get(50).getChildren().get(0);
+        subject.insert(method, 1, type("target").build());
+        assertEquals(302 + 6, standing.getLinkedNodeCount());
+        assertEquals(1, registration.getMatches().size());
+
+        // Without a matching ancestor, only the inserted class with its subtree of three nodes and its two ancestors are wrapped
+        MutableSubject.Node file = subject.getRoot().getChildren().get(0);
+        subject.insert(file, 0, type("class").child(type("method").child(type("target").build()).build()).build());
+        assertEquals(302 + 6 + 5, standing.getLinkedNodeCount());
+        assertEquals(2, registration.getMatches().size());
+    }
+}
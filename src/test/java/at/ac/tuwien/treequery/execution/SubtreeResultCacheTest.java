@@ -0,0 +1,169 @@
+package at.ac.tuwien.treequery.execution;
+
+import static at.ac.tuwien.treequery.builder.QueryNodeBuilder.container;
+import static at.ac.tuwien.treequery.builder.QueryNodeBuilder.single;
+import static at.ac.tuwien.treequery.builder.SubjectNodeBuilder.type;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import at.ac.tuwien.treequery.TestResources;
+import at.ac.tuwien.treequery.matching.LinkedSubjectNode;
+import at.ac.tuwien.treequery.matching.MatchingContext;
+import at.ac.tuwien.treequery.query.QueryNode;
+import at.ac.tuwien.treequery.subject.BaseSubjectNode;
+import at.ac.tuwien.treequery.subject.SubjectNode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+class SubtreeResultCacheTest {
+
+    private static Stream<Arguments> cases() {
+        return TestResources.allCases();
+    }
+
+    @Test
+    void hashSubtreeContent() {
+        PreparedSubject first = new PreparedSubject(type("root")
+                .child(type("a").prop("name", "x").child(type("b").prop("line", 1L).build()).build())
+                .child(type("a").prop("name", "x").child(type("b").prop("line", 1L).build()).build())
+                .child(type("a").prop("name", "x").child(type("b").prop("line", 1).build()).build())
+                .child(type("a").prop("name", List.of("x")).child(type("b").build()).build())
+                .build());
+        List<LinkedSubjectNode> nodes = first.getNodes();
+
+        // Identical subtrees have equal hashes, but the classes of property values are distinguished
+        assertEquals(first.getHash(nodes.get(0)), first.getHash(nodes.get(2)));
+        assertEquals(first.getHash(nodes.get(1)), first.getHash(nodes.get(3)));
+        assertNotEquals(first.getHash(nodes.get(0)), first.getHash(nodes.get(4)));
+        assertNotEquals(first.getHash(nodes.get(0)), first.getHash(nodes.get(1)));
+
+        // Subtrees with other property values are not hashed, but their children are
+        assertNull(first.getHash(nodes.get(6)));
+        assertNotNull(first.getHash(nodes.get(7)));
+
+        // Equal subtrees of different instances have equal hashes
+        PreparedSubject second = new PreparedSubject(type("root")
+                .child(type("a").prop("name", "x").child(type("b").prop("line", 1L).build()).build())
+                .build());
+        assertEquals(first.getHash(nodes.get(0)), second.getHash(second.getNodes().get(0)));
+        assertSame(first.getHash(nodes.get(0)), first.getHash(nodes.get(0)));
+    }
+
+    @Test
+    void reuseResultsAcrossVersions() {
+        AtomicInteger counter = new AtomicInteger();
+        QueryNode query = single("class").children(container()
+                .child(single("method").children(container().child(single("target").build()).unordered()).build())
+                .unordered()).build();
+        SubtreeResultCache cache = new SubtreeResultCache(10_000);
+
+        PreparedSubject original = new PreparedSubject(subject(counter, -1));
+        counter.set(0);
+        List<Map<String, SubjectNode>> expected = query.findReferences(original.getNode()).collect(Collectors.toList());
+        int topDown = counter.getAndSet(0);
+        assertEquals(expected, topDown(query, original, cache.attach(MatchingContext.create(), original)));
+        assertTrue(cache.size() > 0);
+
+        // After an edit within a single method, only the changed class needs to be matched again
+        PreparedSubject edited = new PreparedSubject(subject(counter, 17));
+        expected = query.findReferences(edited.getNode()).collect(Collectors.toList());
+        long hits = cache.getHitCount();
+        counter.set(0);
+        assertEquals(expected, topDown(query, edited, cache.attach(MatchingContext.create(), edited)));
+        int cached = counter.get();
+
+        assertEquals(1, expected.size());
+        assertTrue(cache.getHitCount() > hits);
+        assertTrue(cached * 2 < topDown, () -> String.format("Expected fewer checks than %d, got %d", topDown, cached));
+    }
+
+    @Test
+    void evictLeastRecentlyUsed() {
+        SubtreeResultCache cache = new SubtreeResultCache(2);
+        PreparedSubject subject = new PreparedSubject(subject(new AtomicInteger(), -1));
+        QueryNode query = single("class").children(container().child(single("call").build()).unordered()).build();
+
+        assertEquals(query.findReferences(subject.getNode()).count(), references(query, subject, cache).size());
+        assertEquals(2, cache.size());
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertSame(SubtreeResultCache.shared(), SubtreeResultCache.shared());
+    }
+
+    @ParameterizedTest
+    @MethodSource("cases")
+    void compareToTopDown(String subjectName, String queryName) throws Exception {
+        SubtreeResultCache cache = new SubtreeResultCache(1000);
+        QueryNode query = TestResources.query(queryName);
+        List<Map<String, SubjectNode>> expected = query.findReferences(TestResources.subject(subjectName)).collect(Collectors.toList());
+
+        // The second subject is a new instance, which reuses the results for the first one
+        for (int i = 0; i < 2; i++) {
+            SubjectNode node = TestResources.subject(subjectName);
+            List<Map<String, SubjectNode>> references = references(query, new PreparedSubject(node), cache);
+            assertEquals(expected.toString(), references.toString());
+            assertEquals(expected.size(), references.size());
+        }
+    }
+
+    private static List<Map<String, SubjectNode>> references(QueryNode query, PreparedSubject subject, SubtreeResultCache cache) {
+        return query.findMatches(subject, cache.attach(MatchingContext.create(), subject))
+                .map(s -> s.getReferences().getData())
+                .collect(Collectors.toList());
+    }
+
+    private static List<Map<String, SubjectNode>> topDown(QueryNode query, PreparedSubject subject, MatchingContext context) {
+        // Anchors would skip most classes anyway, so all candidates are matched to compare the number of checks
+        return TopDownExecutor.INSTANCE.findMatches(query, subject, context)
+                .map(s -> s.getReferences().getData())
+                .collect(Collectors.toList());
+    }
+
+    private static SubjectNode subject(AtomicInteger counter, int edited) {
+        List<SubjectNode> classes = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            List<SubjectNode> methods = new ArrayList<>();
+            for (int j = 0; j < 4; j++) {
+                List<SubjectNode> calls = new ArrayList<>();
+                for (int k = 0; k < 5; k++) {
+                    calls.add(new CountingNode(i == edited && j == 2 && k == 3 ? "target" : "call", Map.of("index", k), List.of(), counter));
+                }
+                methods.add(new CountingNode("method", Map.of("index", j), calls, counter));
+            }
+            classes.add(new CountingNode("class", Map.of("index", i), methods, counter));
+        }
+        return new CountingNode("root", Map.of(), classes, counter);
+    }
+
+    /**
+     * A subject node counting how often it is checked against a query node
+     */
+    private static class CountingNode extends BaseSubjectNode {
+
+        private final AtomicInteger counter;
+
+        CountingNode(String type, Map<String, Object> properties, List<SubjectNode> children, AtomicInteger counter) {
+            super(type, properties, children);
+            this.counter = counter;
+        }
+
+        @Override
+        public boolean matches(String type, Map<String, Object> properties, Map<String, SubjectNode> references) {
+            counter.incrementAndGet();
+            return super.matches(type, properties, references);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package at.ac.tuwien.treequery.execution;
+
+import static at.ac.tuwien.treequery.builder.QueryNodeBuilder.container;
+import static at.ac.tuwien.treequery.builder.QueryNodeBuilder.single;
+import static at.ac.tuwien.treequery.builder.SubjectNodeBuilder.type;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import at.ac.tuwien.treequery.builder.SubjectNodeBuilder;
+import at.ac.tuwien.treequery.matching.LinkedSubjectNode;
+import at.ac.tuwien.treequery.query.PropertyPredicate;
+import at.ac.tuwien.treequery.query.QueryNode;
+import at.ac.tuwien.treequery.query.SingleQueryNode;
+import at.ac.tuwien.treequery.subject.SubjectNode;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+class TrigramIndexTest {
+
+    private static final String[] WORDS = {"println", "print", "printf", "getValue", "setValue", "value", "toString", "Integer",
+            "parseInt", "exit", "ab", "abcabc", "value42", "42"};
+
+    @Test
+    void extractRequiredSubstrings() {
+        assertEquals(List.of("print"), PropertyPredicate.contains("print").getRequiredSubstrings());
+        assertEquals(List.of("get"), PropertyPredicate.prefix("get").getRequiredSubstrings());
+        assertEquals(List.of("get", "Value"), PropertyPredicate.regex("get.*Value").getRequiredSubstrings());
+        assertEquals(List.of("prin", "ln"), PropertyPredicate.regex("print?ln").getRequiredSubstrings());
+        assertEquals(List.of("prin", "ln"), PropertyPredicate.regex("print{0,1}ln").getRequiredSubstrings());
+        assertEquals(List.of("print", "ln"), PropertyPredicate.regex("print+ln").getRequiredSubstrings());
+        assertEquals(List.of("get", "Value"), PropertyPredicate.regex("get[A-Z]?Value").getRequiredSubstrings());
+        assertEquals(List.of("val", "ue"), PropertyPredicate.regex("val\\.ue").getRequiredSubstrings());
+        assertEquals(List.of("set"), PropertyPredicate.regex("set(Value)?").getRequiredSubstrings());
+
+        // Alternatives and flags are not analyzed
+        assertTrue(PropertyPredicate.regex("get|set").getRequiredSubstrings().isEmpty());
+        assertTrue(PropertyPredicate.regex("(?i)value").getRequiredSubstrings().isEmpty());
+        assertTrue(PropertyPredicate.in(List.of("value")).getRequiredSubstrings().isEmpty());
+    }
+
+    @Test
+    void lookupTrigrams() {
+        PreparedSubject plain = new PreparedSubject(subject());
+        PreparedSubject subject = new PreparedSubject(plain.getNode(), Set.of("value"));
+
+        List<PropertyPredicate> predicates = List.of(
+                PropertyPredicate.contains("print"),
+                PropertyPredicate.contains("Value"),
+                PropertyPredicate.contains("abc"),
+                PropertyPredicate.contains("missing"),
+                PropertyPredicate.suffix("Int"),
+                PropertyPredicate.regex("get.*Value"),
+                PropertyPredicate.regex("print?ln"),
+                PropertyPredicate.regex("[a-z]+ue42"),
+                PropertyPredicate.regex("abc(abc)*"));
+        for (PropertyPredicate predicate : predicates) {
+            List<LinkedSubjectNode> expected = subject.getNodes().stream()
+                    .filter(e -> predicate.test(e.node().getProperties().get("value")))
+                    .collect(Collectors.toList());
+
+            // The posting lists yield a superset in pre-order, which only needs to be verified
+            assertTrue(subject.isIndexed("value", predicate), predicate.toString());
+            List<LinkedSubjectNode> nodes = subject.getNodes("value", predicate);
+            assertTrue(nodes.containsAll(expected), predicate.toString());
+            assertEquals(expected, nodes.stream()
+                    .filter(e -> predicate.test(e.node().getProperties().get("value")))
+                    .collect(Collectors.toList()), predicate.toString());
+            assertEquals(nodes.stream().sorted((a, b) -> subject.getIndex(a) - subject.getIndex(b)).collect(Collectors.toList()), nodes);
+
+            SingleQueryNode query = (SingleQueryNode) single("call").prop("value", predicate).build();
+            assertEquals(plain.getCandidates(query).stream().map(LinkedSubjectNode::node).collect(Collectors.toList()),
+                    subject.getCandidates(query).stream().map(LinkedSubjectNode::node).collect(Collectors.toList()));
+        }
+
+        // Short substrings and other keys are not indexed
+        assertFalse(subject.isIndexed("value", PropertyPredicate.contains("ab")));
+        assertFalse(subject.isIndexed("value", PropertyPredicate.regex("(abc)+")));
+        assertFalse(subject.isIndexed("name", PropertyPredicate.contains("print")));
+        assertFalse(plain.isIndexed("value", PropertyPredicate.contains("print")));
+        assertThrows(IllegalArgumentException.class, () -> plain.getNodes("value", PropertyPredicate.contains("print")));
+    }
+
+    @Test
+    void chooseTrigramAnchor() {
+        SubjectNodeBuilder root = type("root");
+        for (int i = 0; i < 50; i++) {
+            root.child(type("method").child(type("body")
+                    .child(type("call").prop("value", i == 17 ? "System.exit" : "System.out.println").build())
+                    .build()).build());
+        }
+        PreparedSubject plain = new PreparedSubject(root.build());
+        PreparedSubject subject = new PreparedSubject(plain.getNode(), Set.of("value"));
+
+        QueryNode query = single("method").children(container()
+                .child(single("call").prop("value", PropertyPredicate.regex(".*\\.exit")).build())
+                .unordered()).build();
+        QueryExecutor executor = new QueryPlanner().plan(query, subject);
+        assertInstanceOf(AnchorExecutor.class, executor);
+        assertEquals("value", ((AnchorExecutor) executor).key);
+        assertEquals(1, ((AnchorExecutor) executor).lookup(subject).size());
+
+        // Without the trigram index, the predicate cannot be looked up
+        assertTrue(QueryPlanner.findAnchors((SingleQueryNode) query, plain).stream().noneMatch(anchor -> "value".equals(anchor.key)));
+        assertEquals(query.findReferences(plain.getNode()).collect(Collectors.toList()),
+                query.findReferences(subject).collect(Collectors.toList()));
+        assertEquals(1, query.findReferences(subject).count());
+    }
+
+    private static SubjectNode subject() {
+        Random random = new Random(43);
+        SubjectNodeBuilder root = type("root");
+        for (int i = 0; i < 20; i++) {
+            SubjectNodeBuilder method = type("method").prop("value", WORDS[random.nextInt(WORDS.length)]);
+            for (int j = 0; j < 5; j++) {
+                String value = WORDS[random.nextInt(WORDS.length)] + (random.nextBoolean() ? "" : WORDS[random.nextInt(WORDS.length)]);
+                method.child(type("call").prop("value", value).build());
+            }
+            if (i % 4 == 0) {
+                method.child(type("call").prop("value", 42).build());
+            }
+            root.child(method.build());
+        }
+        return root.build();
+    }
+}
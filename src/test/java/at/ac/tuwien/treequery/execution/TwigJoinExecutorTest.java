@@ -0,0 +1,116 @@
+package at.ac.tuwien.treequery.execution;
+
+import static at.ac.tuwien.treequery.builder.QueryNodeBuilder.container;
+import static at.ac.tuwien.treequery.builder.QueryNodeBuilder.single;
+import static at.ac.tuwien.treequery.builder.SubjectNodeBuilder.type;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import at.ac.tuwien.treequery.TestResources;
+import at.ac.tuwien.treequery.builder.QueryNodeBuilder.ContainerQueryNodeBuilder;
+import at.ac.tuwien.treequery.builder.SubjectNodeBuilder;
+import at.ac.tuwien.treequery.matching.MatchingContext;
+import at.ac.tuwien.treequery.query.PropertyPredicate;
+import at.ac.tuwien.treequery.query.QueryNode;
+import at.ac.tuwien.treequery.subject.SubjectNode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+class TwigJoinExecutorTest {
+
+    private static Stream<Arguments> cases() {
+        return TestResources.allCases();
+    }
+
+    @Test
+    void supportTwigQueries() {
+        assertTrue(TwigJoinExecutor.supports(single("a").ref("a").children(container()
+                .child(single("b").ref("b").direct().build())
+                .child(single("c").children(container().child(single("d").ref("d").build()).unordered()).build())
+                .ordered()).build()));
+
+        // Alternatives, exact containers, repeated references and container roots are not supported
+        assertFalse(TwigJoinExecutor.supports(single("a").children(container().child(single("b").build()).any()).build()));
+        assertFalse(TwigJoinExecutor.supports(single("a").children(container().child(single("b").build()).exact()).build()));
+        assertFalse(TwigJoinExecutor.supports(single("a").ref("x").children(container().child(single("b").ref("x").build()).unordered()).build()));
+        assertFalse(TwigJoinExecutor.supports(container().child(single("b").build()).unordered()));
+    }
+
+    @Test
+    void joinManyReferences() {
+        // Every class contains several methods with several calls, which results in many combinations
+        SubjectNodeBuilder root = type("root");
+        for (int i = 0; i < 5; i++) {
+            SubjectNodeBuilder cls = type("class");
+            for (int j = 0; j < 4; j++) {
+                SubjectNodeBuilder method = type("method");
+                for (int k = 0; k < 3; k++) {
+                    method.child(type("call").build());
+                }
+                cls.child(method.build());
+            }
+            root.child(cls.build());
+        }
+        PreparedSubject subject = new PreparedSubject(root.build());
+
+        for (boolean ordered : new boolean[]{false, true}) {
+            ContainerQueryNodeBuilder builder = container()
+                    .child(single("call").ref("first").build())
+                    .child(single("call").ref("second").direct().build());
+            QueryNode children = ordered ? builder.ordered() : builder.unordered();
+            QueryNode query = single("class").ref("class").children(container()
+                    .child(single("method").ref("method").children(children).build())
+                    .unordered()).build();
+
+            assertSame(TwigJoinExecutor.INSTANCE, new QueryPlanner().plan(query, subject));
+            List<Map<String, SubjectNode>> expected = query.findReferences(subject.getNode()).collect(Collectors.toList());
+            assertEquals(expected, query.findReferences(subject).collect(Collectors.toList()));
+            assertEquals(ordered ? 5 * 4 * 3 : 5 * 4 * 3 * 3, expected.size());
+        }
+    }
+
+    @Test
+    void lookUpEqualValuesOnce() {
+        // The text, the integer and the long value are all looked up as the same number in the index
+        SubjectNodeBuilder root = type("root");
+        for (long i = 0; i < 10; i++) {
+            root.child(type("n").prop("num", i).build());
+        }
+        SubjectNode node = root.build();
+        PreparedSubject subject = new PreparedSubject(node);
+        PropertyPredicate predicate = PropertyPredicate.in(List.of("7", 7L, 7));
+        QueryNode query = single("n").ref("n").prop("num", predicate).build();
+
+        List<Map<String, SubjectNode>> expected = query.findReferences(node).collect(Collectors.toList());
+        assertEquals(1, expected.size());
+        assertEquals(1, subject.getNodes("num", predicate).size());
+        QueryExecutor planned = new QueryPlanner().plan(query, subject);
+        for (QueryExecutor executor : List.of(planned, TwigJoinExecutor.INSTANCE, SemiJoinExecutor.INSTANCE)) {
+            assertEquals(expected, executor.findMatches(query, subject, MatchingContext.create())
+                    .map(s -> s.getReferences().getData())
+                    .collect(Collectors.toList()), executor.toString());
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("cases")
+    void compareToTopDown(String subjectName, String queryName) throws Exception {
+        SubjectNode node = TestResources.subject(subjectName);
+        QueryNode query = TestResources.query(queryName);
+        PreparedSubject subject = new PreparedSubject(node);
+
+        List<Map<String, SubjectNode>> references = TwigJoinExecutor.INSTANCE.findMatches(query, subject, MatchingContext.create())
+                .map(s -> s.getReferences().getData())
+                .collect(Collectors.toList());
+        assertEquals(query.findReferences(node).collect(Collectors.toList()), references);
+    }
+}
@@ -0,0 +1,75 @@
+package at.ac.tuwien.treequery.matching;
+
+import static at.ac.tuwien.treequery.builder.QueryNodeBuilder.container;
+import static at.ac.tuwien.treequery.builder.QueryNodeBuilder.single;
+import static at.ac.tuwien.treequery.builder.SubjectNodeBuilder.type;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import at.ac.tuwien.treequery.TestResources;
+import at.ac.tuwien.treequery.builder.SubjectNodeBuilder;
+import at.ac.tuwien.treequery.query.QueryNode;
+import at.ac.tuwien.treequery.subject.SubjectNode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+class AdaptiveMatchingTest {
+
+    private static Stream<Arguments> cases() {
+        return TestResources.allCases();
+    }
+
+    @ParameterizedTest
+    @MethodSource("cases")
+    void compareToSequential(String subjectName, String queryName) throws Exception {
+        SubjectNode subject = TestResources.subject(subjectName);
+        QueryNode query = TestResources.query(queryName);
+        MatchingContext context = MatchingContext.create().withAdaptiveOrder();
+
+        // Match twice with the same context, so the second run uses the learned order
+        for (int i = 0; i < 2; i++) {
+            assertEquals(query.hasMatches(subject), query.hasMatches(subject, context));
+            assertEquals(query.findReferences(subject).collect(Collectors.toList()),
+                    query.findReferences(subject, context).collect(Collectors.toList()),
+                    "Expected the same references in the same order");
+        }
+    }
+
+    @Test
+    void learnFailingChild() {
+        QueryNode children = container()
+                .child(single("present").build())
+                .child(single("absent").build())
+                .unordered();
+        QueryNode query = single("candidate").children(children).build();
+
+        SubjectNodeBuilder root = type("root");
+        for (int i = 0; i < 20; i++) {
+            root.child(type("candidate").child(type("present").build()).child(type("other").build()).build());
+        }
+        SubjectNode subject = root.build();
+
+        MatchingContext context = MatchingContext.create().withAdaptiveOrder();
+        assertFalse(query.hasMatches(subject, context));
+
+        ChildStatistics statistics = context.getChildStatistics(children, 2);
+        assertEquals(1, statistics.getOrder()[0]);
+        assertEquals(20, statistics.getEvaluations(1));
+        assertEquals(20, statistics.getFailures(1));
+        // The child which always passes is only checked until the other one is known to rule out candidates
+        assertTrue(statistics.getEvaluations(0) < 20);
+    }
+
+    @Test
+    void disabledByDefault() {
+        QueryNode children = container().child(single("a").build()).child(single("b").build()).unordered();
+        assertNull(MatchingContext.create().getChildStatistics(children, 2));
+    }
+}
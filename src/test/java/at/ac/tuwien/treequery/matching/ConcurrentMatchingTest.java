@@ -0,0 +1,98 @@
+package at.ac.tuwien.treequery.matching;
+
+import static at.ac.tuwien.treequery.builder.QueryNodeBuilder.container;
+import static at.ac.tuwien.treequery.builder.QueryNodeBuilder.single;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import at.ac.tuwien.treequery.TestResources;
+import at.ac.tuwien.treequery.builder.QueryNodeBuilder.ContainerQueryNodeBuilder;
+import at.ac.tuwien.treequery.query.QueryNode;
+import at.ac.tuwien.treequery.subject.SubjectNode;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+class ConcurrentMatchingTest {
+
+    private static ExecutorService executor;
+
+    @BeforeAll
+    static void createExecutor() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterAll
+    static void shutdownExecutor() {
+        executor.shutdown();
+    }
+
+    private static Stream<Arguments> cases() {
+        return TestResources.allCases();
+    }
+
+    @ParameterizedTest
+    @MethodSource("cases")
+    void compareToSequential(String subjectName, String queryName) throws Exception {
+        SubjectNode subject = TestResources.subject(subjectName);
+        QueryNode query = TestResources.query(queryName);
+
+        assertEquals(query.hasMatches(subject), query.hasMatches(subject, MatchingContext.create(executor)));
+
+        List<Map<String, SubjectNode>> expected = query.findReferences(subject).collect(Collectors.toList());
+        List<Map<String, SubjectNode>> actual = query.findReferences(subject, MatchingContext.create(executor))
+                .collect(Collectors.toList());
+        assertEquals(expected, actual, "Expected the same references in the same order");
+    }
+
+    @Test
+    void keepSharedResultsSequential() throws Exception {
+        MatchingContext shared = MatchingContext.createShared();
+        assertTrue(shared.createChild(null).isShared());
+        assertTrue(shared.withCandidateFilter((q, e) -> true).isShared());
+
+        // The tasks of a concurrent context use sequential children, which still run on multiple threads at the same time
+        MatchingContext concurrent = shared.createChild(executor);
+        assertFalse(concurrent.isShared());
+        assertFalse(concurrent.createChild(null).isShared());
+        assertFalse(concurrent.withCandidateFilter((q, e) -> true).isShared());
+
+        SubjectNode subject = TestResources.subject("subject_real02");
+        for (String queryName : TestResources.queryNames()) {
+            QueryNode query = TestResources.query(queryName);
+            assertEquals(query.findReferences(subject).collect(Collectors.toList()),
+                    query.findReferences(subject, shared.createChild(executor)).collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    void wideUnorderedContainer() throws Exception {
+        SubjectNode subject = TestResources.subject("subject_real01");
+
+        // Many independent children, one of them (in the middle) not matching anything
+        QueryNode positive = wideQuery(false);
+        QueryNode negative = wideQuery(true);
+
+        assertTrue(positive.hasMatches(subject, MatchingContext.create(executor)));
+        assertFalse(negative.hasMatches(subject, MatchingContext.create(executor)));
+    }
+
+    private QueryNode wideQuery(boolean withMissing) {
+        ContainerQueryNodeBuilder children = container();
+        for (int i = 0; i < 30; i++) {
+            children.child(single(i == 15 && withMissing ? "missing" : null).build());
+        }
+        return single(null).children(children.unordered()).build();
+    }
+}
@@ -0,0 +1,127 @@
+package at.ac.tuwien.treequery.matching;
+
+import static at.ac.tuwien.treequery.builder.QueryNodeBuilder.container;
+import static at.ac.tuwien.treequery.builder.QueryNodeBuilder.single;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import at.ac.tuwien.treequery.TestResources;
+import at.ac.tuwien.treequery.query.QueryNode;
+import at.ac.tuwien.treequery.subject.BaseSubjectNode;
+import at.ac.tuwien.treequery.subject.SubjectDag;
+import at.ac.tuwien.treequery.subject.SubjectNode;
+import at.ac.tuwien.treequery.xml.SubjectXmlConverter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+class DagMatchingTest {
+
+    private static Stream<Arguments> cases() {
+        return TestResources.allCases();
+    }
+
+    @ParameterizedTest
+    @MethodSource("cases")
+    void compareToTree(String subjectName, String queryName) throws Exception {
+        SubjectNode subject = TestResources.subject(subjectName);
+        SubjectNode compressed = new SubjectXmlConverter(new SubjectDag()).parseResource("xml/subject/" + subjectName + ".xml");
+        QueryNode query = TestResources.query(queryName);
+
+        // The shared instances are different from the original ones, so the references are compared by their content.
+        // References to identical subtrees are references to the same instance after compressing, so they are only reported once.
+        assertEquals(query.hasMatches(subject), query.hasMatches(compressed));
+        assertEquals(describe(query.findReferences(subject)).stream().distinct().collect(Collectors.toList()),
+                describe(query.findReferences(compressed)).stream().distinct().collect(Collectors.toList()));
+
+        MatchingContext context = MatchingContext.create().withSubtreeMemo();
+        for (int i = 0; i < 2; i++) {
+            assertEquals(query.hasMatches(compressed), query.hasMatches(compressed, context));
+            assertEquals(query.findReferences(compressed).collect(Collectors.toList()),
+                    query.findReferences(compressed, context).collect(Collectors.toList()),
+                    "Expected the same references in the same order");
+        }
+    }
+
+    @Test
+    void compressIdenticalSubtrees() {
+        List<SubjectNode> methods = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            SubjectNode getter = new BaseSubjectNode("return", Map.of("value", "x"), List.of());
+            methods.add(new BaseSubjectNode("method", Map.of("name", i % 2 == 0 ? "getX" : "setX"), List.of(getter)));
+        }
+        SubjectDag dag = new SubjectDag();
+        SubjectNode root = dag.compress(new BaseSubjectNode("class", null, methods));
+
+        assertEquals(21, dag.getNodeCount());
+        assertEquals(4, dag.getDistinctCount());
+        assertEquals(21 / 4.0, dag.getCompressionRatio(), 1e-9);
+        assertSame(root.getChildren().get(0), root.getChildren().get(2));
+        assertSame(root.getChildren().get(0).getChildren().get(0), root.getChildren().get(1).getChildren().get(0));
+        assertEquals(List.of("getX", "setX"), root.getChildren().stream().limit(2)
+                .map(m -> m.getProperties().get("name")).collect(Collectors.toList()));
+    }
+
+    @Test
+    void evaluateSharedSubtreesOnce() {
+        // The same method instance occurs in many classes
+        AtomicInteger counter = new AtomicInteger();
+        List<SubjectNode> calls = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            calls.add(new CountingNode("call", List.of(), counter));
+        }
+        SubjectNode method = new CountingNode("method", calls, counter);
+        List<SubjectNode> classes = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            classes.add(new CountingNode("class", List.of(method), counter));
+        }
+        SubjectNode subject = new CountingNode("root", classes, counter);
+
+        QueryNode query = single("class").children(container()
+                .child(single("method").children(container().child(single("target").build()).unordered()).build())
+                .unordered()).build();
+
+        counter.set(0);
+        assertEquals(0, query.findReferences(subject).count());
+        int tree = counter.getAndSet(0);
+        assertEquals(0, query.findReferences(subject, MatchingContext.create().withSubtreeMemo()).count());
+        int memo = counter.get();
+        // The calls of the shared method are only checked for the first class
+        assertEquals(tree - 29 * calls.size(), memo);
+    }
+
+    private static List<List<String>> describe(Stream<Map<String, SubjectNode>> references) {
+        return references.map(r -> new TreeMap<>(r).entrySet().stream()
+                        .map(e -> e.getKey() + "=" + e.getValue().getType() + e.getValue().getProperties())
+                        .collect(Collectors.toList()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * A subject node counting how often it is checked against a query node
+     */
+    private static class CountingNode extends BaseSubjectNode {
+
+        private final AtomicInteger counter;
+
+        CountingNode(String type, List<SubjectNode> children, AtomicInteger counter) {
+            super(type, null, children);
+            this.counter = counter;
+        }
+
+        @Override
+        public boolean matches(String type, Map<String, Object> properties, Map<String, SubjectNode> references) {
+            counter.incrementAndGet();
+            return super.matches(type, properties, references);
+        }
+    }
+}
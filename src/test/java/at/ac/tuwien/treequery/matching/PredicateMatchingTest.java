@@ -0,0 +1,22 @@
+package at.ac.tuwien.treequery.matching;
+
+import org.junit.jupiter.params.provider.Arguments;
+
+import java.util.stream.Stream;
+
+class PredicateMatchingTest extends XmlMatchingTest {
+
+    private static final String SUBJECT = "subject_props";
+
+    public static Stream<Arguments> cases() {
+        return Stream.of(
+                Arguments.of(SUBJECT, "predicate/predicate01_pos", true),
+                Arguments.of(SUBJECT, "predicate/predicate02_neg", false),
+                Arguments.of(SUBJECT, "predicate/predicate03_pos", true),
+                Arguments.of(SUBJECT, "predicate/predicate04_neg", false),
+                Arguments.of(SUBJECT, "predicate/predicate05_pos", true),
+                Arguments.of(SUBJECT, "predicate/predicate06_pos", true),
+                Arguments.of(SUBJECT, "predicate/predicate07_neg", false)
+        );
+    }
+}
@@ -0,0 +1,143 @@
+package at.ac.tuwien.treequery.matching;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import at.ac.tuwien.treequery.builder.QueryNodeBuilder;
+import at.ac.tuwien.treequery.execution.PreparedSubject;
+import at.ac.tuwien.treequery.execution.QuerySet;
+import at.ac.tuwien.treequery.optimizer.SubjectStatistics;
+import at.ac.tuwien.treequery.query.PropertyPredicate;
+import at.ac.tuwien.treequery.query.QueryNode;
+import at.ac.tuwien.treequery.subject.BaseSubjectNode;
+import at.ac.tuwien.treequery.subject.SubjectNode;
+import at.ac.tuwien.treequery.xml.QueryXmlConverter;
+import at.ac.tuwien.treequery.xml.SubjectXmlConverter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+class RangeMatchingTest {
+
+    private static final String SUBJECT = "xml/subject/subject_numbers.xml";
+
+    private final SubjectXmlConverter subjectConverter = new SubjectXmlConverter(true);
+    private final QueryXmlConverter queryConverter = new QueryXmlConverter();
+
+    public static Stream<Arguments> cases() {
+        return Stream.of(
+                Arguments.of("range/range01_pos", true),
+                Arguments.of("range/range02_neg", false),
+                Arguments.of("range/range03_pos", true),
+                Arguments.of("range/range04_neg", false),
+                Arguments.of("range/range05_pos", true),
+                Arguments.of("range/range06_neg", false),
+                Arguments.of("range/range07_pos", true)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("cases")
+    void runTestCase(String queryFile, boolean expected) throws Exception {
+        SubjectNode subject = subjectConverter.parseResource(SUBJECT);
+        QueryNode query = queryConverter.parseResource("xml/query/" + queryFile + ".xml");
+        assertEquals(expected, query.hasMatches(subject));
+
+        // The prepared subject looks up ranges in the numeric index
+        List<Map<String, SubjectNode>> references = query.findReferences(subject).collect(Collectors.toList());
+        assertEquals(references, query.findReferences(new PreparedSubject(subject)).collect(Collectors.toList()));
+    }
+
+    @Test
+    void matchPlainValuesOfTypedSubject() throws Exception {
+        SubjectNode text = new SubjectXmlConverter().parseResource(SUBJECT);
+        List<SubjectNode> typed = List.of(subjectConverter.parseResource(SUBJECT),
+                new SubjectXmlConverter(Set.of("line", "arity")).parseResource(SUBJECT));
+        List<QueryNode> queries = List.of(
+                parse("<container><class line=\"120\"><method ref=\"m\"/></class></container>"),
+                parse("<container><method arity.in=\"0,1\" ref=\"m\"/></container>"),
+                parse("<container><field line=\"-7\" name=\"007\"/></container>"),
+                parse("<container><class weight=\"2.5\"/></container>"),
+                QueryNodeBuilder.single("call").prop("line", 12).ref("c").build());
+
+        // Plain values written as text match the numbers parsed from the same text
+        for (QueryNode query : queries) {
+            int expected = (int) query.findReferences(text).count();
+            assertTrue(expected > 0, query.toString());
+            QuerySet set = new QuerySet(List.of(query));
+            for (SubjectNode subject : typed) {
+                assertEquals(expected, query.findReferences(subject).count(), query.toString());
+                assertEquals(expected, query.findReferences(new PreparedSubject(subject)).count(), query.toString());
+                assertEquals(expected, set.findReferences(subject).get(0).size(), query.toString());
+            }
+        }
+        assertEquals(1, SubjectStatistics.collect(List.of(typed.get(0))).getPropertyCount("line", "120"));
+    }
+
+    private QueryNode parse(String xml) throws Exception {
+        return queryConverter.parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void lookupRanges() throws Exception {
+        PreparedSubject subject = new PreparedSubject(subjectConverter.parseResource(SUBJECT));
+        List<PropertyPredicate> ranges = List.of(
+                PropertyPredicate.greaterThan(10), PropertyPredicate.atLeast(10L), PropertyPredicate.lessThan(4.5),
+                PropertyPredicate.atMost(-7), PropertyPredicate.between(3, 130), PropertyPredicate.between(200, 100),
+                PropertyPredicate.and(List.of(PropertyPredicate.atLeast(12), PropertyPredicate.lessThan(150))),
+                PropertyPredicate.and(List.of(PropertyPredicate.greaterThan(3), PropertyPredicate.between(1, 12))));
+
+        for (PropertyPredicate range : ranges) {
+            // The index returns the same nodes in pre-order as a scan of all nodes
+            List<LinkedSubjectNode> expected = subject.getNodes().stream()
+                    .filter(e -> range.test(e.node().getProperties().get("line")))
+                    .collect(Collectors.toList());
+            assertEquals(expected, subject.getNodes("line", range), range.toString());
+            assertEquals(expected.stream().filter(e -> e.node().getType().equals("call")).collect(Collectors.toList()),
+                    subject.getNodes("call", "line", range), range.toString());
+        }
+    }
+    @Test
+    void compareLargeNumbersExactly() {
+        // Doubles cannot represent every long beyond 2^53, so mixed pairs must not be compared as doubles
+        long big = 1L << 53;
+        assertTrue(PropertyPredicate.compare(big, big + 1) < 0);
+        assertTrue(PropertyPredicate.compare((double) big, big + 1) < 0);
+        assertTrue(PropertyPredicate.compare(big + 1, (double) big) > 0);
+        assertEquals(0, PropertyPredicate.compare(big, (double) big));
+        assertTrue(PropertyPredicate.compare(Long.MAX_VALUE, 0x1p63) < 0);
+        assertTrue(PropertyPredicate.compare(Long.MIN_VALUE, -0x1p63 - 4096) > 0);
+        assertTrue(PropertyPredicate.compare(-3L, -2.5) < 0);
+        assertTrue(PropertyPredicate.compare(5L, Double.NaN) < 0);
+        assertEquals(0, PropertyPredicate.compare(0L, -0.0));
+        assertEquals(0, PropertyPredicate.compare(0.0, -0.0));
+
+        // The numeric index is sorted and searched with mixed values around 2^53
+        List<SubjectNode> children = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            long offset = (i * 37) % 9 - 4;
+            Number value = i % 3 == 0 ? (Number) (double) (big + 2 * offset) : (Number) (big + offset);
+            children.add(new BaseSubjectNode("call", Map.of("line", value), List.of()));
+        }
+        PreparedSubject subject = new PreparedSubject(new BaseSubjectNode("root", null, children));
+        List<PropertyPredicate> ranges = List.of(
+                PropertyPredicate.greaterThan(big), PropertyPredicate.atLeast((double) big), PropertyPredicate.lessThan(big + 1),
+                PropertyPredicate.atMost((double) (big + 2)), PropertyPredicate.between(big - 1, (double) big));
+        for (PropertyPredicate range : ranges) {
+            List<LinkedSubjectNode> expected = subject.getNodes().stream()
+                    .filter(e -> range.test(e.node().getProperties().get("line")))
+                    .collect(Collectors.toList());
+            assertEquals(expected, subject.getNodes("call", "line", range), range.toString());
+        }
+    }
+}
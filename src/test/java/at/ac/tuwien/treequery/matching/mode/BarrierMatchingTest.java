@@ -0,0 +1,22 @@
+package at.ac.tuwien.treequery.matching.mode;
+
+import at.ac.tuwien.treequery.matching.XmlMatchingTest;
+import org.junit.jupiter.params.provider.Arguments;
+
+import java.util.stream.Stream;
+
+class BarrierMatchingTest extends XmlMatchingTest {
+
+    private static final String SUBJECT = "subject_modes";
+
+    public static Stream<Arguments> cases() {
+        return Stream.of(
+                Arguments.of(SUBJECT, "barrier/barrier01_pos", true),
+                Arguments.of(SUBJECT, "barrier/barrier02_neg", false),
+                Arguments.of(SUBJECT, "barrier/barrier03_pos", true),
+                Arguments.of(SUBJECT, "barrier/barrier04_neg", false),
+                Arguments.of(SUBJECT, "barrier/barrier05_neg", false),
+                Arguments.of(SUBJECT, "barrier/barrier06_pos", true)
+        );
+    }
+}
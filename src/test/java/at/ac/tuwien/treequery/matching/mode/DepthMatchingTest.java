@@ -0,0 +1,23 @@
+package at.ac.tuwien.treequery.matching.mode;
+
+import at.ac.tuwien.treequery.matching.XmlMatchingTest;
+import org.junit.jupiter.params.provider.Arguments;
+
+import java.util.stream.Stream;
+
+class DepthMatchingTest extends XmlMatchingTest {
+
+    private static final String SUBJECT = "subject_modes";
+
+    public static Stream<Arguments> cases() {
+        return Stream.of(
+                Arguments.of(SUBJECT, "depth/depth01_pos", true),
+                Arguments.of(SUBJECT, "depth/depth02_neg", false),
+                Arguments.of(SUBJECT, "depth/depth03_pos", true),
+                Arguments.of(SUBJECT, "depth/depth04_neg", false),
+                Arguments.of(SUBJECT, "depth/depth05_pos", true),
+                Arguments.of(SUBJECT, "depth/depth06_neg", false),
+                Arguments.of(SUBJECT, "depth/depth07_pos", true)
+        );
+    }
+}
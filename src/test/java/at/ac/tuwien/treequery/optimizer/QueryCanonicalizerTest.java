@@ -0,0 +1,132 @@
+package at.ac.tuwien.treequery.optimizer;
+
+import static at.ac.tuwien.treequery.builder.QueryNodeBuilder.container;
+import static at.ac.tuwien.treequery.builder.QueryNodeBuilder.single;
+import static at.ac.tuwien.treequery.builder.SubjectNodeBuilder.type;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import at.ac.tuwien.treequery.TestResources;
+import at.ac.tuwien.treequery.matching.MatchingContext;
+import at.ac.tuwien.treequery.matching.MatchingState;
+import at.ac.tuwien.treequery.query.ContainerQueryNode;
+import at.ac.tuwien.treequery.query.QueryNode;
+import at.ac.tuwien.treequery.query.SingleQueryNode;
+import at.ac.tuwien.treequery.subject.SubjectNode;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+class QueryCanonicalizerTest {
+
+    @Test
+    void shareEqualSubQueries() {
+        QueryCanonicalizer canonicalizer = new QueryCanonicalizer();
+        QueryNode first = canonicalizer.canonicalize(single("class").children(container()
+                .child(body())
+                .unordered()).build());
+        QueryNode second = canonicalizer.canonicalize(single("interface").children(container()
+                .child(single("field").build())
+                .child(body())
+                .ordered()).build());
+
+        QueryNode firstBody = ((SingleQueryNode) first).getChildren();
+        QueryNode secondBody = ((SingleQueryNode) second).getChildren();
+        assertSame(getChild(firstBody, 0), getChild(secondBody, 1));
+
+        // Attributes of the nodes and the container modes are part of the structure
+        assertNotEquals(single("a").build(), single("a").direct().build());
+        assertNotEquals(single("a").build(), single("a").ref("ref").build());
+        assertNotEquals(container().ordered(), container().unordered());
+        assertNotEquals(container().any(), container().optional());
+        assertEquals(body(), body());
+        assertEquals(body().hashCode(), body().hashCode());
+    }
+
+    @Test
+    void canonicalQueriesMatchEqually() throws Exception {
+        QueryCanonicalizer canonicalizer = new QueryCanonicalizer();
+        List<QueryNode> queries = new ArrayList<>();
+        for (String name : TestResources.queryNames()) {
+            queries.add(TestResources.query(name));
+        }
+        List<QueryNode> canonical = canonicalizer.canonicalize(queries);
+
+        for (String subjectName : TestResources.subjectNames()) {
+            SubjectNode subject = TestResources.subject(subjectName);
+            MatchingContext context = MatchingContext.createShared();
+            for (int i = 0; i < queries.size(); i++) {
+                assertEquals(canonical.get(i), queries.get(i));
+                assertEquals(queries.get(i).findReferences(subject).collect(Collectors.toList()),
+                        canonical.get(i).findReferences(subject, context).collect(Collectors.toList()));
+            }
+        }
+    }
+
+    @Test
+    void evaluateSharedSubQueryOnce() {
+        SubjectNode subject = type("root")
+                .child(type("method").child(type("body").build()).build())
+                .child(type("method").child(type("body").build()).build())
+                .build();
+
+        AtomicInteger evaluations = new AtomicInteger();
+        QueryNode children = new CountingQueryNode(container().child(single("body").build()).ordered(), evaluations);
+        QueryNode first = single("method").children(children).build();
+        QueryNode second = single(null).children(children).build();
+
+        MatchingContext context = MatchingContext.createShared();
+        List<MatchingState> starts = MatchingState.fromSubjectNode(subject, context).collect(Collectors.toList());
+        for (MatchingState start : starts) {
+            assertEquals(2, first.findMatches(start).count());
+            // Four candidates, but the children of both method nodes were already evaluated
+            assertEquals(2, second.findMatches(start).count());
+        }
+        assertEquals(4, evaluations.get());
+
+        evaluations.set(0);
+        first.findMatches(subject).count();
+        second.findMatches(subject).count();
+        assertEquals(6, evaluations.get());
+    }
+
+    private static QueryNode body() {
+        return single("body").children(container()
+                .child(single("call").prop("name", "exit").build())
+                .any()).build();
+    }
+
+    private static QueryNode getChild(QueryNode container, int index) {
+        return ((ContainerQueryNode) container).getChildren().get(index);
+    }
+
+    /**
+     * This query node counts how often it is evaluated
+     */
+    private static class CountingQueryNode implements QueryNode {
+
+        private final QueryNode query;
+        private final AtomicInteger evaluations;
+
+        CountingQueryNode(QueryNode query, AtomicInteger evaluations) {
+            this.query = query;
+            this.evaluations = evaluations;
+        }
+
+        @Override
+        public Stream<MatchingState> findMatches(MatchingState start) {
+            evaluations.incrementAndGet();
+            return query.findMatches(start);
+        }
+
+        @Override
+        public boolean hasReferences() {
+            return query.hasReferences();
+        }
+    }
+}
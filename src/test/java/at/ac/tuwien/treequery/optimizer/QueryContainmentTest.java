@@ -0,0 +1,150 @@
+package at.ac.tuwien.treequery.optimizer;
+
+import static at.ac.tuwien.treequery.builder.QueryNodeBuilder.container;
+import static at.ac.tuwien.treequery.builder.QueryNodeBuilder.single;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import at.ac.tuwien.treequery.TestResources;
+import at.ac.tuwien.treequery.query.QueryNode;
+import at.ac.tuwien.treequery.subject.SubjectNode;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+class QueryContainmentTest {
+
+    @Test
+    void singleNodes() {
+        QueryNode general = single("a").prop("x", 1).build();
+
+        assertTrue(QueryContainment.contains(general, single("a").prop("x", 1).prop("y", 2).build()));
+        assertTrue(QueryContainment.contains(general, single("a").prop("x", 1).direct().ref("ref").build()));
+        assertTrue(QueryContainment.contains(single(null).build(), general));
+        assertFalse(QueryContainment.contains(general, single("a").prop("x", 2).build()));
+        assertFalse(QueryContainment.contains(general, single("b").prop("x", 1).build()));
+        assertFalse(QueryContainment.contains(general, single("a").build()));
+        assertFalse(QueryContainment.contains(single("a").direct().build(), single("a").build()));
+        assertTrue(QueryContainment.contains(single("a").maxDepth(3).build(), single("a").minDepth(2).maxDepth(2).build()));
+        assertTrue(QueryContainment.contains(single("a").maxDepth(1).build(), single("a").direct().build()));
+        assertFalse(QueryContainment.contains(single("a").minDepth(2).build(), single("a").direct().build()));
+        assertFalse(QueryContainment.contains(single("a").maxDepth(2).build(), single("a").build()));
+        assertTrue(QueryContainment.contains(single("a").barrier("b").build(), single("a").barrier("b", "c").build()));
+        assertFalse(QueryContainment.contains(single("a").barrier("b").build(), single("a").build()));
+    }
+
+    @Test
+    void unorderedChildren() {
+        QueryNode general = single("a").children(container()
+                .child(single("b").build())
+                .child(single("c").build())
+                .unordered()).build();
+
+        assertTrue(QueryContainment.contains(general, single("a").children(container()
+                .child(single("d").build())
+                .child(single("c").prop("x", 1).build())
+                .child(single("b").build())
+                .unordered()).build()));
+        assertTrue(QueryContainment.contains(general, single("a").children(container()
+                .child(single("b").build())
+                .child(single("c").build())
+                .exact()).build()));
+        assertTrue(QueryContainment.contains(general, single("a").children(container()
+                .child(single("b").children(container().child(single("e").build()).ordered()).build())
+                .child(single("c").build())
+                .ordered()).build()));
+        assertFalse(QueryContainment.contains(general, single("a").children(container()
+                .child(single("b").build())
+                .unordered()).build()));
+        assertFalse(QueryContainment.contains(general, single("a").children(container()
+                .child(single("b").build())
+                .child(single("c").build())
+                .any()).build()));
+    }
+
+    @Test
+    void orderedChildren() {
+        QueryNode general = single("a").children(container()
+                .child(single("b").build())
+                .child(single("c").build())
+                .ordered()).build();
+
+        assertTrue(QueryContainment.contains(general, single("a").children(container()
+                .child(single("b").build())
+                .child(single("d").build())
+                .child(single("c").build())
+                .ordered()).build()));
+        assertFalse(QueryContainment.contains(general, single("a").children(container()
+                .child(single("c").build())
+                .child(single("b").build())
+                .ordered()).build()));
+        assertFalse(QueryContainment.contains(general, single("a").children(container()
+                .child(single("b").build())
+                .child(single("c").build())
+                .unordered()).build()));
+    }
+
+    @Test
+    void trivialContainers() {
+        QueryNode specific = single("a").children(container().child(single("b").build()).exact()).build();
+
+        assertTrue(QueryContainment.contains(container().ordered(), specific));
+        assertTrue(QueryContainment.contains(container().child(single("x").build()).optional(), specific));
+        assertTrue(QueryContainment.contains(container().child(single("a").build()).child(single("x").build()).any(), specific));
+        assertTrue(QueryContainment.contains(single("a").build(), container().child(specific).child(single("a").prop("y", 1).build()).any()));
+        assertFalse(QueryContainment.contains(specific, single("a").children(container().child(single("b").build()).ordered()).build()));
+    }
+
+    @Test
+    void soundOnTestSuite() throws Exception {
+        List<QueryNode> queries = new ArrayList<>();
+        for (String name : TestResources.queryNames()) {
+            queries.add(TestResources.query(name));
+        }
+        List<SubjectNode> subjects = new ArrayList<>();
+        for (String name : TestResources.subjectNames()) {
+            subjects.add(TestResources.subject(name));
+        }
+
+        // Whenever the specific query matches a subject, the general one must match as well
+        QueryLattice lattice = new QueryLattice(queries);
+        for (SubjectNode subject : subjects) {
+            BitSet matched = new BitSet();
+            for (int i = 0; i < queries.size(); i++) {
+                matched.set(i, queries.get(i).hasMatches(subject));
+            }
+            for (int i = matched.nextSetBit(0); i >= 0; i = matched.nextSetBit(i + 1)) {
+                BitSet generalizations = lattice.getGeneralizations(i);
+                generalizations.andNot(matched);
+                assertTrue(generalizations.isEmpty(), "Generalizations " + generalizations + " of query " + i + " did not match");
+                assertTrue(matched.get(lattice.getRepresentative(i)), "Equivalent query of " + i + " did not match");
+            }
+        }
+    }
+
+    @Test
+    void lattice() {
+        List<QueryNode> queries = List.of(
+                single("a").prop("x", 1).prop("y", 2).build(),
+                single("a").build(),
+                single("a").prop("x", 1).build(),
+                single("b").build(),
+                single("a").prop("x", 1).ref("ref").build()
+        );
+        QueryLattice lattice = new QueryLattice(queries);
+
+        assertEquals(3, lattice.getLevels().size());
+        assertEquals(BitSet.valueOf(new long[]{0b01010}), lattice.getLevels().get(0));
+        assertEquals(BitSet.valueOf(new long[]{0b10100}), lattice.getLevels().get(1));
+        assertEquals(BitSet.valueOf(new long[]{0b00001}), lattice.getLevels().get(2));
+
+        assertEquals(2, lattice.getRepresentative(4));
+        assertFalse(lattice.isRepresentative(4));
+        assertEquals(BitSet.valueOf(new long[]{0b00100}), lattice.getParents(0));
+        assertEquals(BitSet.valueOf(new long[]{0b00110}), lattice.getGeneralizations(0));
+        assertEquals(BitSet.valueOf(new long[]{0b00010}), lattice.getParents(4));
+    }
+}
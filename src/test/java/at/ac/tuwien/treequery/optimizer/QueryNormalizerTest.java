@@ -0,0 +1,155 @@
+package at.ac.tuwien.treequery.optimizer;
+
+import static at.ac.tuwien.treequery.builder.QueryNodeBuilder.container;
+import static at.ac.tuwien.treequery.builder.QueryNodeBuilder.single;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import at.ac.tuwien.treequery.TestResources;
+import at.ac.tuwien.treequery.query.AllQueryNode;
+import at.ac.tuwien.treequery.query.AnyQueryNode;
+import at.ac.tuwien.treequery.query.ContainerQueryNode;
+import at.ac.tuwien.treequery.query.ExactQueryNode;
+import at.ac.tuwien.treequery.query.QueryNode;
+import at.ac.tuwien.treequery.query.SingleQueryNode;
+import at.ac.tuwien.treequery.subject.SubjectNode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+class QueryNormalizerTest {
+
+    /**
+     * The number of randomly wrapped variants of each query
+     */
+    private static final int VARIANTS = 3;
+
+    private static Stream<Arguments> cases() {
+        return TestResources.allCases();
+    }
+
+    @Test
+    void removeRedundantContainers() {
+        QueryNormalizer normalizer = new QueryNormalizer();
+        QueryNode a = single("a").build();
+        QueryNode b = single("b").build();
+        QueryNode c = single("c").build();
+
+        // Nested unordered containers and empty containers
+        QueryNode query = single("root").children(container()
+                .child(a)
+                .child(container().child(b).child(container().child(c).unordered()).unordered())
+                .child(container().optional())
+                .unordered()).build();
+        assertEquals(single("root").children(container().child(a).child(b).child(c).unordered()).build(), normalizer.normalize(query));
+
+        // Nested and duplicate alternatives
+        query = single("root").children(container()
+                .child(a)
+                .child(container().child(b).child(a).any())
+                .optional()).build();
+        assertEquals(single("root").children(container().child(a).child(b).optional()).build(), normalizer.normalize(query));
+
+        // Single-child containers, with a container kept as children of the single query node
+        query = single("root").children(container()
+                .child(container().child(container().child(a).child(b).ordered()).any())
+                .unordered()).build();
+        assertEquals(single("root").children(container().child(a).child(b).ordered()).build(), normalizer.normalize(query));
+    }
+
+    @Test
+    void keepObservableDifferences() {
+        QueryNormalizer normalizer = new QueryNormalizer();
+        QueryNode a = single("a").ref("a").build();
+        QueryNode b = single("b").build();
+
+        // Alternatives with references are matched from the results of previous alternatives
+        QueryNode query = single("root").children(container().child(a).child(container().child(b).child(a).any()).any()).build();
+        assertSame(query, normalizer.normalize(query));
+
+        // Single query nodes in ordered containers are matched relative to the start of their container
+        query = single("root").children(container().child(b).child(container().child(b).ordered()).ordered()).build();
+        assertSame(query, normalizer.normalize(query));
+
+        // Children of exact containers are handled differently depending on their kind
+        query = single("root").children(container().child(container().child(b).unordered()).exact()).build();
+        assertSame(query, normalizer.normalize(query));
+
+        // Empty alternatives match the start state
+        query = single("root").children(container().child(b).child(container().any()).any()).build();
+        assertSame(query, normalizer.normalize(query));
+
+        // The root is never replaced
+        query = container().child(b).unordered();
+        assertSame(query, normalizer.normalize(query));
+    }
+
+    @ParameterizedTest
+    @MethodSource("cases")
+    void compareToOriginal(String subjectName, String queryName) throws Exception {
+        SubjectNode subject = TestResources.subject(subjectName);
+        QueryNode query = TestResources.query(queryName);
+        QueryNormalizer normalizer = new QueryNormalizer();
+
+        assertMatchEqually(subject, query, normalizer.normalize(query));
+
+        // Add redundant containers at random positions, which the normalizer should be able to remove again
+        Random random = new Random(queryName.hashCode());
+        for (int i = 0; i < VARIANTS; i++) {
+            QueryNode wrapped = wrap(query, random);
+            assertMatchEqually(subject, wrapped, normalizer.normalize(wrapped));
+        }
+    }
+
+    private static void assertMatchEqually(SubjectNode subject, QueryNode expected, QueryNode actual) {
+        assertEquals(expected.hasMatches(subject), actual.hasMatches(subject));
+        assertEquals(expected.findReferences(subject).collect(Collectors.toList()), actual.findReferences(subject).collect(Collectors.toList()),
+                "Expected the same references in the same order");
+    }
+
+    private static QueryNode wrap(QueryNode query, Random random) {
+        if (query instanceof SingleQueryNode) {
+            SingleQueryNode single = (SingleQueryNode) query;
+            return new SingleQueryNode(single.getType(), single.getProperties(), wrapContainer(single.getChildren(), random),
+                    single.isDirect(), single.getReference(), single.getMinDepth(), single.getMaxDepth(),
+                    single.getBarriers());
+        }
+        return wrapContainer(query, random);
+    }
+
+    private static QueryNode wrapContainer(QueryNode query, Random random) {
+        List<QueryNode> children = new ArrayList<>();
+        for (QueryNode child : ((ContainerQueryNode) query).getChildren()) {
+            QueryNode wrapped = wrap(child, random);
+            switch (random.nextInt(4)) {
+                case 0:
+                    children.add(new AllQueryNode(List.of(wrapped), random.nextBoolean()));
+                    break;
+                case 1:
+                    children.add(new AnyQueryNode(List.of(wrapped), false));
+                    break;
+                case 2:
+                    children.add(wrapped);
+                    children.add(new AllQueryNode(List.of(), random.nextBoolean()));
+                    break;
+                default:
+                    children.add(wrapped);
+            }
+        }
+
+        if (query instanceof AllQueryNode) {
+            return new AllQueryNode(children, ((AllQueryNode) query).isOrdered());
+        }
+        if (query instanceof AnyQueryNode) {
+            return new AnyQueryNode(children, ((AnyQueryNode) query).isOptional());
+        }
+        return new ExactQueryNode(children);
+    }
+}
@@ -0,0 +1,106 @@
+package at.ac.tuwien.treequery.optimizer;
+
+import static at.ac.tuwien.treequery.builder.QueryNodeBuilder.container;
+import static at.ac.tuwien.treequery.builder.QueryNodeBuilder.single;
+import static at.ac.tuwien.treequery.builder.SubjectNodeBuilder.type;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import at.ac.tuwien.treequery.TestResources;
+import at.ac.tuwien.treequery.query.ContainerQueryNode;
+import at.ac.tuwien.treequery.query.QueryNode;
+import at.ac.tuwien.treequery.query.SingleQueryNode;
+import at.ac.tuwien.treequery.subject.SubjectNode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+class QueryOptimizerTest {
+
+    private static final SubjectNode SUBJECT = type("root")
+            .child(type("common").prop("name", "x").build())
+            .child(type("common").prop("name", "y")
+                    .child(type("common").build())
+                    .child(type("rare").build())
+                    .build())
+            .child(type("common").build())
+            .build();
+
+    private static Stream<Arguments> cases() {
+        return TestResources.allCases();
+    }
+
+    @Test
+    void collectStatistics() {
+        SubjectStatistics statistics = SubjectStatistics.collect(List.of(SUBJECT));
+
+        assertEquals(6, statistics.getNodeCount());
+        assertEquals(4, statistics.getTypeCount("common"));
+        assertEquals(1.0 / 6, statistics.getTypeFrequency("rare"));
+        assertEquals(1.0, statistics.getTypeFrequency(null));
+        assertEquals(1, statistics.getPropertyCount("name", "y"));
+        assertEquals(0, statistics.getPropertyCount("name", "z"));
+        assertEquals(Map.of(0, 4L, 2, 1L, 3, 1L), statistics.getFanOutHistogram());
+        assertEquals(Map.of(0, 1L, 1, 3L, 2, 2L), statistics.getDepthHistogram());
+        assertEquals(5.0 / 6, statistics.getAverageFanOut());
+        assertEquals(7.0 / 6, statistics.getAverageDescendants());
+    }
+
+    @Test
+    void reorderBySelectivity() {
+        QueryOptimizer optimizer = new QueryOptimizer(SubjectStatistics.collect(List.of(SUBJECT)));
+        QueryNode common = single("common").build();
+        QueryNode rare = single("rare").build();
+
+        // Unordered: Most selective first
+        QueryNode unordered = optimizer.optimize(single(null).children(container().child(common).child(rare).unordered()).build());
+        assertEquals(List.of(rare, common), childrenOf(unordered));
+
+        // Any: Most likely first
+        QueryNode any = optimizer.optimize(single(null).children(container().child(rare).child(common).any()).build());
+        assertEquals(List.of(common, rare), childrenOf(any));
+
+        // Ordered: Never reordered
+        QueryNode query = single(null).children(container().child(common).child(rare).ordered()).build();
+        assertSame(query, optimizer.optimize(query));
+    }
+
+    @Test
+    void keepObservableReferenceOrder() {
+        QueryOptimizer optimizer = new QueryOptimizer(SubjectStatistics.collect(List.of(SUBJECT)));
+
+        // The results of the root container are returned directly, so their order is observable
+        QueryNode root = container().child(single("common").ref("a").build()).child(single("rare").ref("b").build()).unordered();
+        assertSame(root, optimizer.optimize(root));
+
+        // Reference-free children of a single node can still be reordered
+        QueryNode nested = single(null).ref("parent").children(container()
+                .child(single("common").build())
+                .child(single("rare").build())
+                .unordered()).build();
+        QueryNode optimized = optimizer.optimize(nested);
+        assertEquals("rare", ((SingleQueryNode) childrenOf(optimized).get(0)).getType());
+    }
+
+    @ParameterizedTest
+    @MethodSource("cases")
+    void compareToOriginal(String subjectName, String queryName) throws Exception {
+        SubjectNode subject = TestResources.subject(subjectName);
+        QueryNode query = TestResources.query(queryName);
+        QueryNode optimized = new QueryOptimizer(SubjectStatistics.collect(List.of(subject))).optimize(query);
+
+        assertEquals(query.hasMatches(subject), optimized.hasMatches(subject));
+        assertEquals(query.findReferences(subject).collect(Collectors.toList()), optimized.findReferences(subject).collect(Collectors.toList()),
+                "Expected the same references in the same order");
+    }
+
+    private static List<QueryNode> childrenOf(QueryNode query) {
+        return ((ContainerQueryNode) ((SingleQueryNode) query).getChildren()).getChildren();
+    }
+}
@@ -0,0 +1,154 @@
+package at.ac.tuwien.treequery.query;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import at.ac.tuwien.treequery.TestResources;
+import at.ac.tuwien.treequery.subject.BaseSubjectNode;
+import at.ac.tuwien.treequery.subject.SubjectNode;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+class BatchMatchingTest {
+
+    private static final int THREADS = 8;
+    private static final int REPETITIONS = 5;
+
+    private static ExecutorService executor;
+
+    @BeforeAll
+    static void createExecutor() {
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @AfterAll
+    static void shutdownExecutor() {
+        executor.shutdown();
+    }
+
+    @Test
+    void batchResults() throws Exception {
+        List<SubjectNode> subjects = new ArrayList<>();
+        for (String name : TestResources.subjectNames()) {
+            subjects.add(TestResources.subject(name));
+        }
+
+        for (String queryName : TestResources.queryNames()) {
+            QueryNode query = TestResources.query(queryName);
+
+            List<BatchResult> results = query.findReferences(subjects, executor).collect(Collectors.toList());
+            assertEquals(subjects.size(), results.size(), "Expected one result per subject");
+
+            // Results arrive in completion order, so sort them by index before comparing
+            results.sort((a, b) -> Integer.compare(a.getIndex(), b.getIndex()));
+            for (int i = 0; i < subjects.size(); i++) {
+                BatchResult result = results.get(i);
+                assertEquals(i, result.getIndex());
+                assertSame(subjects.get(i), result.getSubject());
+                assertEquals(query.findReferences(subjects.get(i)).collect(Collectors.toList()), result.getReferences(),
+                        "Unexpected references for " + queryName);
+            }
+        }
+    }
+
+    @Test
+    void boundedStreamInput() throws Exception {
+        QueryNode query = TestResources.query("real/real01");
+        SubjectNode subject = TestResources.subject("subject_real01");
+        List<Map<String, SubjectNode>> expected = query.findReferences(subject).collect(Collectors.toList());
+
+        // The input is only pulled while results are consumed, keeping at most two subjects in flight
+        AtomicInteger pulled = new AtomicInteger();
+        AtomicBoolean closed = new AtomicBoolean();
+        Stream<SubjectNode> input = Stream.generate(() -> subject).limit(20).peek(s -> pulled.incrementAndGet())
+                .onClose(() -> closed.set(true));
+        int consumed = 0;
+        try (Stream<BatchResult> results = query.findReferences(input, executor, 2)) {
+            Iterator<BatchResult> iterator = results.iterator();
+            while (iterator.hasNext()) {
+                assertEquals(expected, iterator.next().getReferences());
+                consumed++;
+                assertTrue(pulled.get() <= consumed + 2, "Pulled " + pulled.get() + " subjects for " + consumed + " results");
+            }
+        }
+        assertEquals(20, consumed);
+        assertTrue(closed.get());
+
+        assertThrows(IllegalArgumentException.class, () -> query.findReferences(Stream.of(subject), executor, 0));
+    }
+
+    @Test
+    void propagateFailures() throws Exception {
+        QueryNode query = TestResources.query("real/real01");
+        SubjectNode failing = new BaseSubjectNode("root", null, null) {
+            @Override
+            public List<? extends SubjectNode> getChildren() {
+                throw new IllegalStateException("Broken subject");
+            }
+        };
+
+        assertThrows(CompletionException.class,
+                () -> query.findReferences(Collections.singletonList(failing), executor).collect(Collectors.toList()));
+    }
+
+    @Test
+    void concurrentStress() throws Exception {
+        // Load every query and subject only once and share the instances between all threads
+        List<SubjectNode> subjects = new ArrayList<>();
+        for (String name : TestResources.subjectNames()) {
+            subjects.add(TestResources.subject(name));
+        }
+        List<QueryNode> queries = new ArrayList<>();
+        for (String name : TestResources.queryNames()) {
+            queries.add(TestResources.query(name));
+        }
+
+        // Determine the expected results sequentially
+        List<List<Map<String, SubjectNode>>> expected = new ArrayList<>();
+        for (QueryNode query : queries) {
+            for (SubjectNode subject : subjects) {
+                expected.add(query.findReferences(subject).collect(Collectors.toList()));
+            }
+        }
+
+        // Run all combinations repeatedly from all threads, each thread starting at a different offset
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int offset = t * expected.size() / THREADS;
+            futures.add(executor.submit(() -> {
+                for (int r = 0; r < REPETITIONS; r++) {
+                    for (int i = 0; i < expected.size(); i++) {
+                        int index = (i + offset) % expected.size();
+                        QueryNode query = queries.get(index / subjects.size());
+                        SubjectNode subject = subjects.get(index % subjects.size());
+
+                        assertEquals(expected.get(index), query.findReferences(subject).collect(Collectors.toList()));
+                        assertEquals(!expected.get(index).isEmpty(), query.hasMatches(subject));
+                    }
+                }
+            }));
+        }
+
+        for (Future<?> future : futures) {
+            // Rethrows assertion errors of the worker threads
+            future.get();
+        }
+    }
+}
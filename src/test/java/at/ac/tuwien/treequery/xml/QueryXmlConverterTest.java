@@ -5,19 +5,25 @@ import static at.ac.tuwien.treequery.builder.QueryNodeBuilder.single;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 import at.ac.tuwien.treequery.query.AllQueryNode;
 import at.ac.tuwien.treequery.query.AnyQueryNode;
 import at.ac.tuwien.treequery.query.ContainerQueryNode;
+import at.ac.tuwien.treequery.query.PropertyPredicate;
 import at.ac.tuwien.treequery.query.QueryNode;
 import at.ac.tuwien.treequery.query.SingleQueryNode;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.stream.Stream;
 
@@ -28,7 +34,11 @@ class QueryXmlConverterTest {
     private static Stream<Arguments> cases() {
         return Stream.of(
                 Arguments.of("export/export01", buildExport01()),
-                Arguments.of("nested/nested01", buildNested01())
+                Arguments.of("nested/nested01", buildNested01()),
+                Arguments.of("export/export02", buildExport02()),
+                Arguments.of("export/export03", buildExport03()),
+                Arguments.of("export/export04", buildExport04()),
+                Arguments.of("export/export05", buildExport05())
         );
     }
 
@@ -63,6 +73,80 @@ class QueryXmlConverterTest {
                 .ordered();
     }
 
+    private static QueryNode buildExport02() {
+        return container()
+                .child(single("a").ref("x").minDepth(2).maxDepth(3).children(container()
+                        .child(single("b").maxDepth(1).build())
+                        .ordered()
+                ).build())
+                .ordered();
+    }
+
+    private static QueryNode buildExport03() {
+        return container()
+                .child(single("a").direct().barrier("lambda", "class").children(container()
+                        .child(single("b").barrier("c").build())
+                        .ordered()
+                ).build())
+                .unordered();
+    }
+
+    private static QueryNode buildExport04() {
+        return container()
+                .child(single("a")
+                        .prop("p1", PropertyPredicate.prefix("get"))
+                        .prop("p2", PropertyPredicate.in(List.of("x", "y")))
+                        .prop("p3", PropertyPredicate.regex("[a-z]+"))
+                        .prop("p4", "v4")
+                        .build())
+                .ordered();
+    }
+
+    private static QueryNode buildExport05() {
+        return container()
+                .child(single("a")
+                        .prop("p1", PropertyPredicate.and(List.of(PropertyPredicate.atLeast(100L), PropertyPredicate.lessThan(140L))))
+                        .prop("p2", PropertyPredicate.and(List.of(PropertyPredicate.prefix("get"), PropertyPredicate.suffix("Value"))))
+                        .build())
+                .ordered();
+    }
+
+    @Test
+    void rejectConflictingProperties() {
+        // A plain value cannot be combined with a predicate for the same key
+        assertThrows(XmlException.class, () -> parse("<a name=\"x\" name.prefix=\"y\"/>"));
+        assertThrows(XmlException.class, () -> parse("<a value.prefix=\"x\">text</a>"));
+
+        // Operands of range predicates must be numbers
+        XmlException e = assertThrows(XmlException.class, () -> parse("<a line.gt=\"many\"/>"));
+        assertTrue(e.getMessage().contains("line.gt"), e.getMessage());
+        assertThrows(XmlException.class, () -> parse("<a line.between=\"1\"/>"));
+        assertThrows(XmlException.class, () -> parse("<a line.and=\"1\"/>"));
+
+        // Conjunctions of predicates with the same operator have no XML representation
+        PropertyPredicate prefixes = PropertyPredicate.and(List.of(PropertyPredicate.prefix("a"), PropertyPredicate.prefix("ab")));
+        QueryNode query = single("a").prop("name", prefixes).build();
+        assertThrows(IllegalArgumentException.class, () -> converter.export(query, new ByteArrayOutputStream()));
+    }
+
+    @Test
+    void rejectInvalidDepths() {
+        XmlException e = assertThrows(XmlException.class, () -> parse("<a minDepth=\"two\"/>"));
+        assertTrue(e.getMessage().contains("minDepth"), e.getMessage());
+        e = assertThrows(XmlException.class, () -> parse("<a minDepth=\"0\"/>"));
+        assertTrue(e.getMessage().contains("minDepth"), e.getMessage());
+        e = assertThrows(XmlException.class, () -> parse("<a maxDepth=\"\"/>"));
+        assertTrue(e.getMessage().contains("maxDepth"), e.getMessage());
+
+        // The maximum depth must not be below the minimum depth
+        e = assertThrows(XmlException.class, () -> parse("<a minDepth=\"3\" maxDepth=\"2\"/>"));
+        assertTrue(e.getMessage().contains("maxDepth"), e.getMessage());
+    }
+
+    private QueryNode parse(String xml) throws Exception {
+        return converter.parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+    }
+
     @ParameterizedTest
     @MethodSource("cases")
     void parseQuery(String xmlFile, QueryNode expected) throws Exception {
@@ -145,6 +229,12 @@ class QueryXmlConverterTest {
                     String.format("Expected direct mode to match at depth %d, index %d", depth, index));
             assertEquals(expectedSingle.getReference(), actualSingle.getReference(),
                     String.format("Expected reference name to match at depth %d, index %d", depth, index));
+            assertEquals(expectedSingle.getMinDepth(), actualSingle.getMinDepth(),
+                    String.format("Expected minimum depth to match at depth %d, index %d", depth, index));
+            assertEquals(expectedSingle.getMaxDepth(), actualSingle.getMaxDepth(),
+                    String.format("Expected maximum depth to match at depth %d, index %d", depth, index));
+            assertEquals(List.copyOf(expectedSingle.getBarriers()), List.copyOf(actualSingle.getBarriers()),
+                    String.format("Expected barriers to match at depth %d, index %d", depth, index));
 
             assertNodesEqual(expectedSingle.getChildren(), actualSingle.getChildren(), depth + 1, 0);
         } else {
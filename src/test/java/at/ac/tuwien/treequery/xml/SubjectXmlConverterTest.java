@@ -4,14 +4,21 @@ import static at.ac.tuwien.treequery.builder.SubjectNodeBuilder.type;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import at.ac.tuwien.treequery.subject.SubjectDag;
 import at.ac.tuwien.treequery.subject.SubjectNode;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Stream;
 
 class SubjectXmlConverterTest {
@@ -63,6 +70,64 @@ class SubjectXmlConverterTest {
                 .build();
     }
 
+    private static SubjectNode buildSubjectNumbers() {
+        return type("root")
+                .child(type("class").prop("line", 1L).prop("name", "A")
+                        .child(type("method").prop("arity", 0L).prop("line", 3L).prop("name", "run")
+                                .child(type("call").prop("line", 4L).prop("name", "print").build())
+                                .build()
+                        )
+                        .child(type("method").prop("arity", 6L).prop("line", 10L).prop("name", "apply")
+                                .child(type("call").prop("line", 12L).prop("name", "exec").build())
+                                .child(type("call").prop("line", 150L).prop("name", "exit").build())
+                                .build()
+                        )
+                        .build()
+                )
+                .child(type("class").prop("line", 120L).prop("name", "B").prop("weight", 2.5)
+                        .child(type("method").prop("arity", 1L).prop("line", 130L).prop("name", "main").build())
+                        .child(type("field").prop("line", -7L).prop("name", "007").build())
+                        .build()
+                )
+                .build();
+    }
+
+    @Test
+    void parseNumbers() throws Exception {
+        // Numbers are only recognized if they are exported as the same text
+        SubjectXmlConverter numbers = new SubjectXmlConverter(true);
+        SubjectNode parsed = numbers.parseResource("xml/subject/subject_numbers.xml");
+        assertNodesEqual(buildSubjectNumbers(), parsed, 0, 0);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        numbers.export(parsed, out);
+        try (InputStream expected = getSubjectXml("subject_numbers")) {
+            assertArrayEquals(expected.readAllBytes(), out.toByteArray());
+        }
+
+        // Only the given keys are parsed, but always as numbers
+        SubjectXmlConverter schema = new SubjectXmlConverter(Set.of("name"));
+        XmlException e = assertThrows(XmlException.class, () -> schema.parseResource("xml/subject/subject_numbers.xml"));
+        assertTrue(e.getMessage().contains("attribute name"), e.getMessage());
+        SubjectNode field = new SubjectXmlConverter(Set.of("line")).parseResource("xml/subject/subject_numbers.xml")
+                .getChildren().get(1).getChildren().get(1);
+        assertEquals(Map.of("line", -7L, "name", "007"), field.getProperties());
+    }
+
+    @Test
+    void parseNumbersIntoDag() throws Exception {
+        // Typed properties are part of the shared nodes
+        SubjectDag dag = new SubjectDag();
+        SubjectXmlConverter converter = new SubjectXmlConverter(true, Set.of("arity"), dag);
+        SubjectNode parsed = converter.parseResource("xml/subject/subject_numbers.xml");
+        assertNodesEqual(buildSubjectNumbers(), parsed, 0, 0);
+        assertEquals(10, dag.getNodeCount());
+
+        // Parsing the same subject again only returns shared instances
+        assertSame(parsed, converter.parseResource("xml/subject/subject_numbers.xml"));
+        assertEquals(10, dag.getDistinctCount());
+    }
+
     @ParameterizedTest
     @MethodSource("cases")
     void parseSubject(String xmlFile, SubjectNode expected) throws Exception {